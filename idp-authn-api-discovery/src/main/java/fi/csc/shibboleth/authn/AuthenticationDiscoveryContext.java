@@ -23,14 +23,20 @@
 
 package fi.csc.shibboleth.authn;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.opensaml.messaging.context.BaseContext;
 
 import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.logic.Constraint;
 
 /**
  * This class carries information for the authentication method discovery about
@@ -39,21 +45,141 @@ import net.shibboleth.shared.collection.Pair;
 public class AuthenticationDiscoveryContext extends BaseContext {
 
     /** The list of authentication methods by their tag. */
-    private List<Pair<String, String>> flowsWithAuthorities;
+    @Nonnull
+    private final FlowList flowsWithAuthorities;
 
     /**
      * Constructor.
      */
     public AuthenticationDiscoveryContext() {
-        flowsWithAuthorities = new ArrayList<>();
+        flowsWithAuthorities = new FlowList();
     }
 
     /**
-     * Get the list of authentication flows with their authority definitions.
+     * Get the list of authentication flows with their authority definitions. The
+     * lookup used by {@link #isSelectable(String, String)} is kept up to date as
+     * the list is modified.
      * 
      * @return The list of authentication flows with their authority definitions.
      */
     public @Nonnull List<Pair<String, String>> getFlowsWithAuthorities() {
         return flowsWithAuthorities;
     }
-}
\ No newline at end of file
+
+    /**
+     * Replace the authentication flows with their authority definitions by shared
+     * items. The items are held by reference and copied only if the list is
+     * modified later on.
+     * 
+     * @param items shared items
+     */
+    public void shareFlowsWithAuthorities(@Nonnull final DiscoveryItems items) {
+        flowsWithAuthorities.share(Constraint.isNotNull(items, "Items cannot be null"));
+    }
+
+    /**
+     * Whether the flow and authority match a listed item. Listed authorities are
+     * compared in url decoded form, decoded once when the item is listed.
+     * 
+     * @param flow      flow id
+     * @param authority authority, null for items without authority
+     * @return true if the flow and authority match a listed item
+     */
+    public boolean isSelectable(@Nullable final String flow, @Nullable final String authority) {
+        return flow != null && flowsWithAuthorities.selectableItems.contains(new Pair<>(flow, authority));
+    }
+
+    /**
+     * List of flows and authorities keeping the selection lookup in sync. Shared
+     * items are copied on first modification.
+     */
+    private static final class FlowList extends AbstractList<Pair<String, String>> implements RandomAccess {
+
+        /** The backing list. */
+        @Nonnull
+        private List<Pair<String, String>> items = new ArrayList<>();
+
+        /** The listed flows with url decoded authorities for selection lookups. */
+        @Nonnull
+        private Set<Pair<String, String>> selectableItems = new HashSet<>();
+
+        /** Whether the backing list and lookup are shared and not to be modified. */
+        private boolean shared;
+
+        /**
+         * Replace the content by shared items.
+         * 
+         * @param sharedItems shared items
+         */
+        private void share(@Nonnull final DiscoveryItems sharedItems) {
+            items = sharedItems.getItems();
+            selectableItems = sharedItems.getSelectableItems();
+            shared = true;
+            modCount++;
+        }
+
+        /** Copies shared items before modification. */
+        private void own() {
+            if (shared) {
+                items = new ArrayList<>(items);
+                selectableItems = new HashSet<>(selectableItems);
+                shared = false;
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Pair<String, String> get(final int index) {
+            return items.get(index);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void add(final int index, final Pair<String, String> element) {
+            own();
+            items.add(index, element);
+            modCount++;
+            DiscoveryItems.addSelectable(selectableItems, element);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Pair<String, String> set(final int index, final Pair<String, String> element) {
+            own();
+            final Pair<String, String> previous = items.set(index, element);
+            rebuild();
+            return previous;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Pair<String, String> remove(final int index) {
+            own();
+            final Pair<String, String> previous = items.remove(index);
+            modCount++;
+            rebuild();
+            return previous;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void clear() {
+            items = new ArrayList<>();
+            selectableItems = new HashSet<>();
+            shared = false;
+            modCount++;
+        }
+
+        /** Rebuilds the selection lookup after items have been replaced or removed. */
+        private void rebuild() {
+            selectableItems.clear();
+            items.forEach(item -> DiscoveryItems.addSelectable(selectableItems, item));
+        }
+    }
+}
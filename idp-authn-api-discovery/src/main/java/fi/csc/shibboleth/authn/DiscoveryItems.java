@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Immutable list of discovery items with the lookup used to validate selections.
+ * Instances may be shared between any number of {@link AuthenticationDiscoveryContext}s.
+ */
+public final class DiscoveryItems {
+
+    /** Instance without items. */
+    @Nonnull
+    public final static DiscoveryItems EMPTY = new DiscoveryItems(Collections.emptyList());
+
+    /** The items. */
+    @Nonnull
+    private final List<Pair<String, String>> items;
+
+    /** The items with url decoded authorities for selection lookups. */
+    @Nonnull
+    private final Set<Pair<String, String>> selectableItems;
+
+    /**
+     * Constructor.
+     * 
+     * @param flowsWithAuthorities the items
+     */
+    private DiscoveryItems(@Nonnull final Collection<Pair<String, String>> flowsWithAuthorities) {
+        items = Collections.unmodifiableList(new ArrayList<>(flowsWithAuthorities));
+        final Set<Pair<String, String>> selectable = new HashSet<>();
+        items.forEach(item -> addSelectable(selectable, item));
+        selectableItems = Collections.unmodifiableSet(selectable);
+    }
+
+    /**
+     * Create an instance holding a copy of the items.
+     * 
+     * @param flowsWithAuthorities the items
+     * @return instance holding a copy of the items
+     */
+    @Nonnull
+    public static DiscoveryItems of(@Nonnull final Collection<Pair<String, String>> flowsWithAuthorities) {
+        return flowsWithAuthorities.isEmpty() ? EMPTY : new DiscoveryItems(flowsWithAuthorities);
+    }
+
+    /**
+     * Get the unmodifiable list of flows with their authority definitions.
+     * 
+     * @return the unmodifiable list of flows with their authority definitions
+     */
+    @Nonnull
+    public List<Pair<String, String>> getItems() {
+        return items;
+    }
+
+    /**
+     * Get the unmodifiable set of items with url decoded authorities.
+     * 
+     * @return the unmodifiable set of items with url decoded authorities
+     */
+    @Nonnull
+    Set<Pair<String, String>> getSelectableItems() {
+        return selectableItems;
+    }
+
+    /**
+     * Whether the flow and authority match an item.
+     * 
+     * @param flow      flow id
+     * @param authority authority, null for items without authority
+     * @return true if the flow and authority match an item
+     */
+    public boolean isSelectable(@Nullable final String flow, @Nullable final String authority) {
+        return flow != null && selectableItems.contains(new Pair<>(flow, authority));
+    }
+
+    /**
+     * Adds the url decoded form of the item to the selection lookup.
+     * 
+     * @param selectable selection lookup
+     * @param item       listed item
+     */
+    static void addSelectable(@Nonnull final Set<Pair<String, String>> selectable,
+            @Nullable final Pair<String, String> item) {
+        if (item == null) {
+            return;
+        }
+        if (item.getSecond() == null) {
+            selectable.add(item);
+            return;
+        }
+        try {
+            selectable.add(new Pair<>(item.getFirst(), URLDecoder.decode(item.getSecond(), StandardCharsets.UTF_8)));
+        } catch (final IllegalArgumentException e) {
+            // Authority not in url encoded form cannot be matched.
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks encoding and decoding of {@link DiscoveryAuthenticatingAuthority}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DiscoveryAuthenticatingAuthorityBenchmark {
+
+    /** Authority to encode. */
+    private DiscoveryAuthenticatingAuthority authority;
+
+    /** Encoded authority to decode. */
+    private String encoded;
+
+    /**
+     * Generates the authority.
+     * 
+     * @throws Exception if encoding fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        authority = DiscoveryConfigurationGenerator.authority(42);
+        encoded = authority.toB64UrlEncoded();
+    }
+
+    /**
+     * Encode the authority.
+     * 
+     * @return encoded authority
+     * @throws Exception if encoding fails
+     */
+    @Benchmark
+    public String toB64UrlEncoded() throws Exception {
+        return authority.toB64UrlEncoded();
+    }
+
+    /**
+     * Decode the authority.
+     * 
+     * @return decoded authority
+     * @throws Exception if decoding fails
+     */
+    @Benchmark
+    public DiscoveryAuthenticatingAuthority parseB64UrlEncoded() throws Exception {
+        return DiscoveryAuthenticatingAuthority.parseB64UrlEncoded(encoded);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Generates discovery JSON configurations of given size for the benchmarks.
+ * 
+ * The default section and every relying party section configure
+ * {@link #FLOWS} flows with the given number of authorities each. Relying
+ * parties are named by {@link #relyingPartyId(int)}.
+ */
+public final class DiscoveryConfigurationGenerator {
+
+    /** Flows configured in every section. */
+    @Nonnull
+    public final static String[] FLOWS = { "authn/MFA", "authn/SAML", "authn/OIDC" };
+
+    /** Constructor. */
+    private DiscoveryConfigurationGenerator() {
+    }
+
+    /**
+     * Get the relying party id of the generated section.
+     * 
+     * @param index index of the relying party section
+     * @return relying party id
+     */
+    @Nonnull
+    public static String relyingPartyId(final int index) {
+        return "https://sp" + index + ".example.org/shibboleth";
+    }
+
+    /**
+     * Generate a configuration.
+     * 
+     * @param relyingParties     number of relying party sections
+     * @param authoritiesPerFlow number of authorities per flow
+     * @return configuration as JSON string
+     */
+    @Nonnull
+    public static String generate(final int relyingParties, final int authoritiesPerFlow) {
+        final StringBuilder json = new StringBuilder("{");
+        appendSection(json, DiscoveryConfiguration.DEFAULT_KEY, authoritiesPerFlow);
+        for (int i = 0; i < relyingParties; i++) {
+            json.append(',');
+            appendSection(json, relyingPartyId(i), authoritiesPerFlow);
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Generate an authority resembling the production ones.
+     * 
+     * @param index index of the authority
+     * @return authority
+     */
+    @Nonnull
+    public static DiscoveryAuthenticatingAuthority authority(final int index) {
+        return new DiscoveryAuthenticatingAuthority("https://idp.example.org/LoginMethod" + index, "entity",
+                "https://idp" + index + ".example.org/idp/shibboleth", null, "MethodName" + index, false);
+    }
+
+    /**
+     * Parse the size parameter of the form relyingPartiesxauthoritiesPerFlow,
+     * for instance 100x20.
+     * 
+     * @param size size parameter
+     * @return number of relying parties and authorities per flow
+     */
+    @Nonnull
+    public static int[] parseSize(@Nonnull final String size) {
+        final String[] parts = size.toLowerCase(Locale.ROOT).split("x");
+        return new int[] { Integer.parseInt(parts[0]), Integer.parseInt(parts[1]) };
+    }
+
+    /**
+     * Append one section to the configuration.
+     * 
+     * @param json               configuration being built
+     * @param key                key of the section
+     * @param authoritiesPerFlow number of authorities per flow
+     */
+    private static void appendSection(@Nonnull final StringBuilder json, @Nonnull final String key,
+            final int authoritiesPerFlow) {
+        json.append('"').append(key).append("\":{");
+        for (int f = 0; f < FLOWS.length; f++) {
+            if (f > 0) {
+                json.append(',');
+            }
+            json.append('"').append(FLOWS[f]).append("\":[");
+            for (int a = 0; a < authoritiesPerFlow; a++) {
+                if (a > 0) {
+                    json.append(',');
+                }
+                json.append("{\"acr\":\"https://idp.example.org/LoginMethod").append(a)
+                        .append("\",\"aaType\":\"entity\",\"aaValue\":\"https://idp").append(a)
+                        .append(".example.org/idp/shibboleth\",\"name\":\"MethodName").append(a).append("\"}");
+            }
+            json.append(']');
+        }
+        json.append('}');
+    }
+}
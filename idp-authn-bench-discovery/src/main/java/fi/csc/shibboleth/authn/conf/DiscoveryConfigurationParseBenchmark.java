@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link DiscoveryConfiguration#parse(String)}, the parallel
+ * {@link DiscoveryConfigurationLoader#load(byte[], DiscoveryTokenCodec, int)}
+ * and loading the compiled binary snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DiscoveryConfigurationParseBenchmark {
+
+    /**
+     * Relying party sections x authorities per flow. 10000x200 is left out as the
+     * configuration alone would not fit a default heap.
+     */
+    @Param({ "1x1", "1x200", "100x20", "100x200", "10000x1", "10000x20" })
+    private String size;
+
+    /** Generated configuration. */
+    private String json;
+
+    /** Generated configuration as UTF-8 bytes. */
+    private byte[] bytes;
+
+    /** Configuration compiled into a binary snapshot. */
+    private ByteBuffer snapshot;
+
+    /**
+     * Generates the configuration.
+     * 
+     * @throws Exception if compiling the snapshot fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        final int[] parsed = DiscoveryConfigurationGenerator.parseSize(size);
+        json = DiscoveryConfigurationGenerator.generate(parsed[0], parsed[1]);
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+        snapshot = ByteBuffer.wrap(DiscoveryBinaryConfiguration.compile(DiscoveryConfiguration.parse(json)));
+    }
+
+    /**
+     * Parse the configuration.
+     * 
+     * @return parsed configuration
+     * @throws Exception if parsing fails
+     */
+    @Benchmark
+    public DiscoveryConfiguration parse() throws Exception {
+        return DiscoveryConfiguration.parse(json);
+    }
+
+    /**
+     * Parse the configuration sections in parallel on all available processors.
+     * 
+     * @return parsed configuration
+     * @throws Exception if parsing fails
+     */
+    @Benchmark
+    public DiscoveryConfiguration parseParallel() throws Exception {
+        return DiscoveryConfigurationLoader.load(bytes, null, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Load the binary snapshot of the configuration.
+     * 
+     * @return loaded configuration
+     * @throws Exception if loading fails
+     */
+    @Benchmark
+    public DiscoveryConfiguration loadBinary() throws Exception {
+        return DiscoveryBinaryConfiguration.load(snapshot, null);
+    }
+}
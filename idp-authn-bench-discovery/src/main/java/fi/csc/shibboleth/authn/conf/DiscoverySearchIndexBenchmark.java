@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks type-ahead queries of {@link DiscoverySearchIndex} over generated
+ * authorities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DiscoverySearchIndexBenchmark {
+
+    /** Number of indexed authorities. */
+    @Param({ "100", "1000", "10000" })
+    private int size;
+
+    /** Query, short queries use the word index and longer ones the trigrams. */
+    @Param({ "i", "idp4", "example.org" })
+    private String query;
+
+    /** The index. */
+    private DiscoverySearchIndex index;
+
+    /** Result buffer. */
+    private int[] results;
+
+    /** Builds the index. */
+    @Setup
+    public void setUp() {
+        final List<List<String>> texts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final DiscoveryAuthenticatingAuthority authority = DiscoveryConfigurationGenerator.authority(i);
+            texts.add(List.of(authority.getName(), authority.getValue()));
+        }
+        index = new DiscoverySearchIndex(texts);
+        results = new int[10];
+    }
+
+    /**
+     * Search the top 10 matches of the query.
+     * 
+     * @return number of matches
+     */
+    @Benchmark
+    public int search() {
+        return index.search(query, results);
+    }
+}
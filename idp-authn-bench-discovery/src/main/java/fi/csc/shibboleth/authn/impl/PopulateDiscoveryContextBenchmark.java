@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationGenerator;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationService;
+import fi.csc.shibboleth.authn.conf.DiscoveryItemCache;
+import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
+import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.idp.profile.context.navigate.WebflowRequestContextProfileRequestContextLookup;
+import net.shibboleth.idp.profile.testing.RequestContextBuilder;
+import net.shibboleth.profile.context.RelyingPartyContext;
+
+/**
+ * Benchmarks {@link PopulateDiscoveryContext#doExecute(ProfileRequestContext, AuthenticationContext)}
+ * for a relying party in the middle of the generated configuration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PopulateDiscoveryContextBenchmark {
+
+    /**
+     * Relying party sections x authorities per flow. 10000x200 is left out as the
+     * configuration alone would not fit a default heap.
+     */
+    @Param({ "1x1", "1x200", "100x20", "100x200", "10000x1", "10000x20" })
+    private String size;
+
+    /** Whether the item cache is used. */
+    @Param({ "false", "true" })
+    private boolean cached;
+
+    /** Configuration service. */
+    private DiscoveryConfigurationService service;
+
+    /** The action. */
+    private PopulateDiscoveryContext action;
+
+    /** Profile request context. */
+    private ProfileRequestContext prc;
+
+    /** Authentication context. */
+    private AuthenticationContext authenticationContext;
+
+    /**
+     * Initializes the action and the contexts.
+     * 
+     * @throws Exception if initialization fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        final int[] parsed = DiscoveryConfigurationGenerator.parseSize(size);
+        service = new DiscoveryConfigurationService();
+        service.setId("benchmark");
+        service.setAuthorities(DiscoveryConfigurationGenerator.generate(parsed[0], parsed[1]));
+        service.initialize();
+
+        action = new PopulateDiscoveryContext();
+        action.setConfigurationService(service);
+        if (cached) {
+            final DiscoveryItemCache cache = new DiscoveryItemCache();
+            cache.setId("benchmark");
+            cache.initialize();
+            action.setItemCache(cache);
+        }
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        action.setHttpServletRequestSupplier(() -> request);
+        action.initialize();
+
+        prc = new WebflowRequestContextProfileRequestContextLookup()
+                .apply(new RequestContextBuilder().buildRequestContext());
+        prc.ensureSubcontext(RelyingPartyContext.class)
+                .setRelyingPartyId(DiscoveryConfigurationGenerator.relyingPartyId(parsed[0] / 2));
+        authenticationContext = prc.ensureSubcontext(AuthenticationContext.class);
+        for (final String flowId : DiscoveryConfigurationGenerator.FLOWS) {
+            final AuthenticationFlowDescriptor flow = new AuthenticationFlowDescriptor();
+            flow.setId(flowId);
+            authenticationContext.getPotentialFlows().put(flowId, flow);
+        }
+    }
+
+    /** Destroys the service. */
+    @TearDown
+    public void tearDown() {
+        action.destroy();
+        service.destroy();
+    }
+
+    /**
+     * Populate the discovery context.
+     * 
+     * @return profile request context
+     */
+    @Benchmark
+    public ProfileRequestContext doExecute() {
+        action.doPreExecute(prc, authenticationContext);
+        action.doExecute(prc, authenticationContext);
+        return prc;
+    }
+}
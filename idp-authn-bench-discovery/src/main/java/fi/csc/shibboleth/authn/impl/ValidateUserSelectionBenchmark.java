@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fi.csc.shibboleth.authn.AuthenticationDiscoveryContext;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationGenerator;
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Benchmarks {@link AbstractDiscoveryExtractionAction#validateUserSelection()}
+ * against the listed items of all generated flows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ValidateUserSelectionBenchmark {
+
+    /** Authorities per flow. */
+    @Param({ "1", "20", "200" })
+    private int authoritiesPerFlow;
+
+    /** The action. */
+    private ExtractAuthenticationFlowDecision action;
+
+    /** Encoded authority of the last listed item. */
+    private String lastAuthority;
+
+    /**
+     * Lists the items.
+     * 
+     * @throws Exception if encoding fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        final AuthenticationDiscoveryContext discoveryContext = new AuthenticationDiscoveryContext();
+        for (final String flow : DiscoveryConfigurationGenerator.FLOWS) {
+            for (int i = 0; i < authoritiesPerFlow; i++) {
+                lastAuthority = DiscoveryConfigurationGenerator.authority(i).toB64UrlEncoded();
+                discoveryContext.getFlowsWithAuthorities().add(new Pair<>(flow, lastAuthority));
+            }
+        }
+        action = new ExtractAuthenticationFlowDecision();
+        action.discoveryContext = discoveryContext;
+    }
+
+    /**
+     * Validate a selection matching the last listed item.
+     * 
+     * @return whether the selection is valid
+     */
+    @Benchmark
+    public boolean validateMatch() {
+        action.flow = DiscoveryConfigurationGenerator.FLOWS[DiscoveryConfigurationGenerator.FLOWS.length - 1];
+        action.authority = lastAuthority;
+        return action.validateUserSelection();
+    }
+
+    /**
+     * Validate a selection not matching any listed item.
+     * 
+     * @return whether the selection is valid
+     */
+    @Benchmark
+    public boolean validateMiss() {
+        action.flow = DiscoveryConfigurationGenerator.FLOWS[0];
+        action.authority = "unknown";
+        return action.validateUserSelection();
+    }
+}
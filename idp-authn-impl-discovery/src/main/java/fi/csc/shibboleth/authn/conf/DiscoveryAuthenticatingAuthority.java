@@ -23,16 +23,16 @@
 
 package fi.csc.shibboleth.authn.conf;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 
@@ -68,6 +68,15 @@ public class DiscoveryAuthenticatingAuthority {
     /** Key of Flow name. */
     public final static String FLOW_KEY = "flow";
 
+    /** Authenticating authority type of a SAML entity, value is the entity id. */
+    public final static String TYPE_ENTITY = "entity";
+
+    /** Authenticating authority type of a SAML discovery service, value is the discovery url. */
+    public final static String TYPE_DISCOVERY = "discovery";
+
+    /** Authenticating authority type of an OIDC provider, value is the issuer. */
+    public final static String TYPE_ISSUER = "issuer";
+
     /** Authenticating authority acr. */
     @Nonnull
     @JsonProperty(ACR_KEY)
@@ -97,14 +106,22 @@ public class DiscoveryAuthenticatingAuthority {
     @JsonProperty(HIDDEN_KEY)
     private final boolean hidden;
 
+    /** B64 url encoded JSON string, encoded on first use. */
+    @Nullable
+    @JsonIgnore
+    private volatile String b64UrlEncoded;
+
     /**
      * Constructor.
      * 
      * @param acr   Authenticating authority acr
      * @param type  Authenticating authority type
      * @param value Authenticating authority value
+     * @param flow  Flow
+     * @param name  Name
+     * @param hidden Whether item should be hidden from Discovery view
      */
-    private DiscoveryAuthenticatingAuthority(@Nonnull String acr, @Nullable String type, @Nullable String value,
+    DiscoveryAuthenticatingAuthority(@Nonnull String acr, @Nullable String type, @Nullable String value,
             @Nullable String flow, @Nullable String name, boolean hidden) {
         this.acr = acr;
         this.type = type;
@@ -115,6 +132,24 @@ public class DiscoveryAuthenticatingAuthority {
         assert acr != null;
     }
 
+    /**
+     * Constructor for authorities whose B64 url encoded form is known, see
+     * {@link DiscoveryBinaryConfiguration}.
+     * 
+     * @param acr           Authenticating authority acr
+     * @param type          Authenticating authority type
+     * @param value         Authenticating authority value
+     * @param flow          Flow
+     * @param name          Name
+     * @param hidden        Whether item should be hidden from Discovery view
+     * @param b64UrlEncoded B64 url encoded JSON string, null to encode on first use
+     */
+    DiscoveryAuthenticatingAuthority(@Nonnull String acr, @Nullable String type, @Nullable String value,
+            @Nullable String flow, @Nullable String name, boolean hidden, @Nullable String b64UrlEncoded) {
+        this(acr, type, value, flow, name, hidden);
+        this.b64UrlEncoded = b64UrlEncoded;
+    }
+
     /**
      * Get authenticating authority acr.
      * 
@@ -162,6 +197,16 @@ public class DiscoveryAuthenticatingAuthority {
         return (name != null && !name.isBlank()) ? name : acr.substring(acr.lastIndexOf("/") + 1);
     }
 
+    /**
+     * Get name as configured, without defaulting to the end of the acr.
+     * 
+     * @return Configured name, or null if there is none
+     */
+    @Nullable
+    String getConfiguredName() {
+        return name;
+    }
+
     /**
      * Get flow.
      * 
@@ -181,17 +226,24 @@ public class DiscoveryAuthenticatingAuthority {
     @Nonnull
     @NotEmpty
     public String toJSON() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return DiscoveryConfigurationLoader.WRITER.writeValueAsString(this);
     }
 
     /**
-     * Serializes object to B64 url encoded JSON string.
+     * Serializes object to B64 url encoded JSON string. The string is encoded once
+     * and reused, it is the value to set as authenticating authority for scripts
+     * using {@link #parseB64UrlEncoded(String)}.
      * 
      * @return object as B64 url encoded JSON string
      * @throws JsonProcessingException thrown if something unexpected occurs.
      */
     public String toB64UrlEncoded() throws JsonProcessingException {
-        return Base64.getUrlEncoder().withoutPadding().encodeToString(toJSON().getBytes());
+        String encoded = b64UrlEncoded;
+        if (encoded == null) {
+            encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(toJSON().getBytes(StandardCharsets.UTF_8));
+            b64UrlEncoded = encoded;
+        }
+        return encoded;
     }
 
     /**
@@ -206,7 +258,8 @@ public class DiscoveryAuthenticatingAuthority {
     @Nonnull
     public static DiscoveryAuthenticatingAuthority parseB64UrlEncoded(String discoveryAuthenticatingAuthority)
             throws Exception {
-        return parse(new String(Base64.getUrlDecoder().decode(discoveryAuthenticatingAuthority.getBytes())));
+        return parse(new String(Base64.getUrlDecoder().decode(discoveryAuthenticatingAuthority),
+                StandardCharsets.UTF_8));
     }
 
     /**
@@ -219,9 +272,7 @@ public class DiscoveryAuthenticatingAuthority {
      */
     @Nonnull
     public static DiscoveryAuthenticatingAuthority parse(String discoveryAuthenticatingAuthority) throws Exception {
-        return parse(new ObjectMapper().readValue(discoveryAuthenticatingAuthority,
-                new TypeReference<Map<String, Object>>() {
-                }));
+        return DiscoveryConfigurationLoader.parseAuthority(discoveryAuthenticatingAuthority);
     }
 
     /**
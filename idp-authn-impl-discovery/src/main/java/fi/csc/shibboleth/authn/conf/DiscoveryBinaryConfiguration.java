@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Compiled binary form of the discovery configuration. The snapshot is written
+ * from a parsed and validated configuration, see
+ * {@link DiscoveryConfigurationCompiler}, and loaded without JSON parsing or
+ * encoding.
+ * 
+ * All integers are big endian. The snapshot starts with the magic number
+ * {@value #MAGIC} and the format version {@value #FORMAT_VERSION}, followed by
+ * the string table and the relying party index:
+ * <ul>
+ * <li>string table: count, then length and UTF-8 bytes of each string. Strings
+ * are referred to by their index in the table, -1 for null.</li>
+ * <li>relying party index: count, then for each section in configuration order
+ * the relying party key and count of flows. Each flow has the flow id and the
+ * item array, count of authorities followed by acr, type, value, flow, name,
+ * hidden flag as a byte and the B64 url encoded authority.</li>
+ * </ul>
+ */
+public final class DiscoveryBinaryConfiguration {
+
+    /** Magic number starting the snapshot, "DSCB" in ASCII. */
+    public final static int MAGIC = 0x44534342;
+
+    /** Version of the snapshot format. */
+    public final static int FORMAT_VERSION = 1;
+
+    /** Index of a null string. */
+    private final static int NULL_INDEX = -1;
+
+    /** Minimum size of a string table entry, the length of an empty string. */
+    private final static int MIN_STRING_SIZE = Integer.BYTES;
+
+    /** Minimum size of a section, the relying party key and count of flows. */
+    private final static int MIN_SECTION_SIZE = 2 * Integer.BYTES;
+
+    /** Minimum size of a flow, the flow id and count of authorities. */
+    private final static int MIN_FLOW_SIZE = 2 * Integer.BYTES;
+
+    /** Size of an authority, six string indexes and the hidden flag. */
+    private final static int AUTHORITY_SIZE = 6 * Integer.BYTES + 1;
+
+    /** Constructor. */
+    private DiscoveryBinaryConfiguration() {
+    }
+
+    /**
+     * Whether the content is a binary snapshot. The position of the buffer is not
+     * changed.
+     * 
+     * @param content configuration content
+     * @return true if the content starts with the magic number
+     */
+    public static boolean isBinary(@Nonnull final ByteBuffer content) {
+        return content.remaining() >= Integer.BYTES && content.getInt(content.position()) == MAGIC;
+    }
+
+    /**
+     * Compiles a configuration into a binary snapshot.
+     * 
+     * @param configuration parsed configuration
+     * @return binary snapshot
+     * @throws IOException thrown if encoding an authority fails
+     */
+    @Nonnull
+    public static byte[] compile(@Nonnull final DiscoveryConfiguration configuration) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        final DataOutputStream indexOut = new DataOutputStream(index);
+        final Map<String, DiscoveryFlows> sections = configuration.getFlowMap();
+        indexOut.writeInt(sections.size());
+        for (final Entry<String, DiscoveryFlows> section : sections.entrySet()) {
+            indexOut.writeInt(intern(strings, section.getKey()));
+            final Map<String, List<DiscoveryAuthenticatingAuthority>> flows = section.getValue().getAuthorityMap();
+            indexOut.writeInt(flows.size());
+            for (final Entry<String, List<DiscoveryAuthenticatingAuthority>> flow : flows.entrySet()) {
+                indexOut.writeInt(intern(strings, flow.getKey()));
+                indexOut.writeInt(flow.getValue().size());
+                for (final DiscoveryAuthenticatingAuthority authority : flow.getValue()) {
+                    indexOut.writeInt(intern(strings, authority.getAcr()));
+                    indexOut.writeInt(intern(strings, authority.getType()));
+                    indexOut.writeInt(intern(strings, authority.getValue()));
+                    indexOut.writeInt(intern(strings, authority.getFlow()));
+                    indexOut.writeInt(intern(strings, authority.getConfiguredName()));
+                    indexOut.writeByte(authority.isHidden() ? 1 : 0);
+                    indexOut.writeInt(intern(strings, authority.toB64UrlEncoded()));
+                }
+            }
+        }
+        indexOut.flush();
+
+        final ByteArrayOutputStream snapshot = new ByteArrayOutputStream(index.size() * 2);
+        final DataOutputStream out = new DataOutputStream(snapshot);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(strings.size());
+        for (final String string : strings.keySet()) {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        index.writeTo(out);
+        out.flush();
+        return snapshot.toByteArray();
+    }
+
+    /**
+     * Loads a binary snapshot from a file through a memory mapped buffer.
+     * 
+     * @param file       snapshot file
+     * @param tokenCodec codec creating compact authority tokens, null for B64 url
+     *                   encoded authorities
+     * @return DiscoveryConfiguration instance
+     * @throws IOException thrown if reading fails or the file is not a valid
+     *                     snapshot
+     */
+    @Nonnull
+    public static DiscoveryConfiguration load(@Nonnull final Path file,
+            @Nullable final DiscoveryTokenCodec tokenCodec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), tokenCodec);
+        }
+    }
+
+    /**
+     * Loads a binary snapshot. The buffer is read from its position on and is not
+     * referred to after loading.
+     * 
+     * @param content    snapshot content
+     * @param tokenCodec codec creating compact authority tokens, null for B64 url
+     *                   encoded authorities
+     * @return DiscoveryConfiguration instance
+     * @throws IOException thrown if the content is not a valid snapshot
+     */
+    @Nonnull
+    public static DiscoveryConfiguration load(@Nonnull final ByteBuffer content,
+            @Nullable final DiscoveryTokenCodec tokenCodec) throws IOException {
+        final ByteBuffer buffer = content.duplicate();
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a discovery configuration snapshot");
+            }
+            final int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported discovery configuration snapshot version " + version);
+            }
+            final String[] strings = new String[checkCount(buffer, MIN_STRING_SIZE)];
+            for (int i = 0; i < strings.length; i++) {
+                final byte[] bytes = new byte[checkCount(buffer, 1)];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            final int sectionCount = checkCount(buffer, MIN_SECTION_SIZE);
+            final Map<String, DiscoveryFlows> relyingPartiesAndFlows = new LinkedHashMap<>();
+            for (int i = 0; i < sectionCount; i++) {
+                final String relyingPartyId = string(strings, buffer.getInt(), false);
+                if (relyingPartyId.startsWith(DiscoveryRelyingPartyMatcher.REGEX_KEY_PREFIX)) {
+                    DiscoveryRelyingPartyMatcher.compile(relyingPartyId);
+                }
+                final int flowCount = checkCount(buffer, MIN_FLOW_SIZE);
+                final Map<String, List<DiscoveryAuthenticatingAuthority>> flows = new LinkedHashMap<>();
+                for (int j = 0; j < flowCount; j++) {
+                    final String flowId = string(strings, buffer.getInt(), false);
+                    final int authorityCount = checkCount(buffer, AUTHORITY_SIZE);
+                    final List<DiscoveryAuthenticatingAuthority> authorities = new ArrayList<>(authorityCount);
+                    for (int k = 0; k < authorityCount; k++) {
+                        authorities.add(new DiscoveryAuthenticatingAuthority(string(strings, buffer.getInt(), false),
+                                string(strings, buffer.getInt(), true), string(strings, buffer.getInt(), true),
+                                string(strings, buffer.getInt(), true), string(strings, buffer.getInt(), true),
+                                buffer.get() != 0, string(strings, buffer.getInt(), true)));
+                    }
+                    flows.put(flowId, authorities);
+                }
+                relyingPartiesAndFlows.put(relyingPartyId, new DiscoveryFlows(flows, tokenCodec));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Unexpected content after discovery configuration snapshot");
+            }
+            return new DiscoveryConfiguration(relyingPartiesAndFlows, tokenCodec);
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Invalid discovery configuration snapshot", e);
+        }
+    }
+
+    /**
+     * Get the index of a string in the string table, adding it if needed.
+     * 
+     * @param strings string table
+     * @param string  the string, may be null
+     * @return index of the string, {@value #NULL_INDEX} for null
+     */
+    private static int intern(@Nonnull final Map<String, Integer> strings, @Nullable final String string) {
+        return string != null ? strings.computeIfAbsent(string, key -> strings.size()) : NULL_INDEX;
+    }
+
+    /**
+     * Get a string of the string table.
+     * 
+     * @param strings  string table
+     * @param index    index of the string
+     * @param nullable whether the string may be null
+     * @return the string
+     * @throws IOException thrown if the index is not valid
+     */
+    @Nullable
+    private static String string(@Nonnull final String[] strings, final int index, final boolean nullable)
+            throws IOException {
+        if (index == NULL_INDEX && nullable) {
+            return null;
+        }
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string index " + index + " in discovery configuration snapshot");
+        }
+        return strings[index];
+    }
+
+    /**
+     * Reads a count from the snapshot and verifies that the rest of the snapshot
+     * can hold that many elements, so that a corrupt count does not allocate
+     * arrays beyond the size of the snapshot.
+     * 
+     * @param buffer      snapshot positioned at the count
+     * @param elementSize minimum size of an element in bytes
+     * @return the count
+     * @throws IOException thrown if the count is negative or exceeds the
+     *                     remaining content
+     */
+    private static int checkCount(@Nonnull final ByteBuffer buffer, final int elementSize) throws IOException {
+        final int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / elementSize) {
+            throw new IOException("Invalid count " + count + " in discovery configuration snapshot");
+        }
+        return count;
+    }
+}
@@ -22,29 +22,128 @@
  */
 package fi.csc.shibboleth.authn.conf;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
-
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import javax.annotation.Nullable;
 
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.collection.Pair;
 
 public class DiscoveryConfiguration {
 
+    /** Key of the relying party section applied when there is no specific one. */
+    public final static String DEFAULT_KEY = "default";
+
+    /** Prefix of the keys of sections selected by the discovery profile of the relying party. */
+    public final static String PROFILE_KEY_PREFIX = "profile:";
+
     /** Flow information keyed by relying party. */
     @Nonnull
     @NotEmpty
     private final Map<String, DiscoveryFlows> relyingPartiesAndFlows;
 
-    private DiscoveryConfiguration(@Nonnull @NotEmpty Map<String, DiscoveryFlows> relyingPartiesAndFlows) {
+    /** Codec of the compact authority tokens, null if items use B64 url encoded authorities. */
+    @Nullable
+    private final DiscoveryTokenCodec tokenCodec;
+
+    /**
+     * Compiled matching of relying parties to sections, built on first use unless
+     * given by {@link #withRelyingPartyMatching(Map, long)}.
+     */
+    @Nullable
+    private volatile DiscoveryRelyingPartyMatcher<DiscoveryFlows> relyingPartyMatcher;
+
+    /**
+     * Constructor.
+     * 
+     * @param relyingPartiesAndFlows Flow information keyed by relying party
+     */
+    DiscoveryConfiguration(@Nonnull @NotEmpty Map<String, DiscoveryFlows> relyingPartiesAndFlows) {
+        this(relyingPartiesAndFlows, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param relyingPartiesAndFlows Flow information keyed by relying party
+     * @param codec                  codec of the compact authority tokens, null
+     *                               if items use B64 url encoded authorities
+     */
+    DiscoveryConfiguration(@Nonnull @NotEmpty Map<String, DiscoveryFlows> relyingPartiesAndFlows,
+            @Nullable final DiscoveryTokenCodec codec) {
         if (relyingPartiesAndFlows == null || relyingPartiesAndFlows.isEmpty()) {
             throw new IllegalArgumentException("relyingPartiesAndFlows must not be null or empty");
         }
-        this.relyingPartiesAndFlows = relyingPartiesAndFlows;
+        this.relyingPartiesAndFlows = Collections.unmodifiableMap(relyingPartiesAndFlows);
+        tokenCodec = codec;
+    }
+
+    /**
+     * Constructor for configurations loading their sections lazily, see
+     * {@link #getSection(String)}.
+     */
+    DiscoveryConfiguration() {
+        relyingPartiesAndFlows = Collections.emptyMap();
+        tokenCodec = null;
+        relyingPartyMatcher = new DiscoveryRelyingPartyMatcher<>(relyingPartiesAndFlows, Collections.emptyMap(), 0);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param configuration configuration whose sections and codec are shared
+     * @param groups        members of relying party groups keyed by group name
+     * @param memoSize      maximum number of memoized relying party matches
+     */
+    private DiscoveryConfiguration(@Nonnull final DiscoveryConfiguration configuration,
+            @Nonnull final Map<String, Set<String>> groups, final long memoSize) {
+        relyingPartiesAndFlows = configuration.relyingPartiesAndFlows;
+        tokenCodec = configuration.tokenCodec;
+        relyingPartyMatcher = new DiscoveryRelyingPartyMatcher<>(relyingPartiesAndFlows, groups, memoSize);
+    }
+
+    /**
+     * Get the matching of relying parties to sections. Configurations not given a
+     * matching build one without groups on first use, so that a configuration
+     * replaced by {@link #withRelyingPartyMatching(Map, long)} never compiles its
+     * patterns.
+     * 
+     * @return matching of relying parties to sections
+     */
+    @Nonnull
+    private DiscoveryRelyingPartyMatcher<DiscoveryFlows> getRelyingPartyMatcher() {
+        DiscoveryRelyingPartyMatcher<DiscoveryFlows> matcher = relyingPartyMatcher;
+        if (matcher == null) {
+            synchronized (this) {
+                matcher = relyingPartyMatcher;
+                if (matcher == null) {
+                    matcher = new DiscoveryRelyingPartyMatcher<>(relyingPartiesAndFlows, Collections.emptyMap(),
+                            DiscoveryRelyingPartyMatcher.DEFAULT_MEMO_SIZE);
+                    relyingPartyMatcher = matcher;
+                }
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * Get a configuration sharing the sections of this one, matching relying
+     * parties with the given groups and memo size.
+     * 
+     * @param groups   members of relying party groups keyed by group name
+     * @param memoSize maximum number of memoized relying party matches, zero
+     *                 disables memoizing
+     * @return configuration with the relying party matching
+     */
+    @Nonnull
+    public DiscoveryConfiguration withRelyingPartyMatching(@Nonnull final Map<String, Set<String>> groups,
+            final long memoSize) {
+        return new DiscoveryConfiguration(this, groups, memoSize);
     }
 
     /**
@@ -56,17 +155,160 @@ public class DiscoveryConfiguration {
         return relyingPartiesAndFlows;
     }
 
+    /**
+     * Get flow information of relying party. The section is matched by exact
+     * relying party id, group, prefix or regular expression, see
+     * {@link DiscoveryRelyingPartyMatcher}. Falls back to the default section if
+     * there is no relying party specific one.
+     * 
+     * @param relyingPartyId relying party id
+     * @return flow information of relying party, null if there is neither
+     *         relying party specific nor default section
+     */
+    @Nullable
+    public DiscoveryFlows getFlows(@Nullable final String relyingPartyId) {
+        final DiscoveryFlows flows = getRelyingPartyMatcher().match(relyingPartyId);
+        return flows != null ? flows : relyingPartiesAndFlows.get(DEFAULT_KEY);
+    }
+
+    /**
+     * Get flow information of relying party having a discovery profile. The
+     * section {@value #PROFILE_KEY_PREFIX}<i>profile</i> wins over the sections
+     * matched by relying party id.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @return flow information of relying party, null if there is neither
+     *         profile, relying party specific nor default section
+     */
+    @Nullable
+    public DiscoveryFlows getFlows(@Nullable final String relyingPartyId, @Nullable final String profile) {
+        final DiscoveryFlows flows = profile != null ? getSection(PROFILE_KEY_PREFIX + profile) : null;
+        return flows != null ? flows : getFlows(relyingPartyId);
+    }
+
+    /**
+     * Get the generation of the section serving a relying party, see
+     * {@link #getFlows(String, String)}. The sections of a configuration parsed
+     * at once never change, a configuration reading sections on demand gives a
+     * reread section a new generation without a new configuration version.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @return generation of the section, 0 if the sections never change
+     */
+    public long getGeneration(@Nullable final String relyingPartyId, @Nullable final String profile) {
+        return 0;
+    }
+
+    /**
+     * Get the section of a key as is, without matching or default fallback.
+     * 
+     * @param key section key
+     * @return the section, null if there is none
+     */
+    @Nullable
+    DiscoveryFlows getSection(@Nonnull final String key) {
+        return relyingPartiesAndFlows.get(key);
+    }
+
+    /**
+     * Get the flow and authenticating authority information matching an acr in
+     * the section of the relying party, or in the default section if there is no
+     * relying party specific one. Hidden items are included.
+     * 
+     * @param relyingPartyId relying party id
+     * @param acr            acr value
+     * @return pair of flow id and authenticating authority information, or null
+     *         if the section has no item with the acr
+     */
+    @Nullable
+    public Pair<String, DiscoveryAuthenticatingAuthority> getByAcr(@Nullable final String relyingPartyId,
+            @Nullable final String acr) {
+        return getByAcr(relyingPartyId, null, acr);
+    }
+
+    /**
+     * Get the flow and authenticating authority information matching an acr in
+     * the section of the relying party having a discovery profile, see
+     * {@link #getFlows(String, String)}. Hidden items are included.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @param acr            acr value
+     * @return pair of flow id and authenticating authority information, or null
+     *         if the section has no item with the acr
+     */
+    @Nullable
+    public Pair<String, DiscoveryAuthenticatingAuthority> getByAcr(@Nullable final String relyingPartyId,
+            @Nullable final String profile, @Nullable final String acr) {
+        final DiscoveryFlows flows = getFlows(relyingPartyId, profile);
+        return flows != null ? flows.getByAcr(acr) : null;
+    }
+
+    /**
+     * Get the acr values supported for the relying party, the acr values of the
+     * section of the relying party or of the default section if there is no
+     * relying party specific one. Hidden items are included.
+     * 
+     * @param relyingPartyId relying party id
+     * @return unmodifiable set of acr values, empty if there is no section
+     */
+    @Nonnull
+    public Set<String> getSupportedAcrs(@Nullable final String relyingPartyId) {
+        return getSupportedAcrs(relyingPartyId, null);
+    }
+
+    /**
+     * Get the acr values supported for the relying party having a discovery
+     * profile, the acr values of the section selected by
+     * {@link #getFlows(String, String)}. Hidden items are included.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @return unmodifiable set of acr values, empty if there is no section
+     */
+    @Nonnull
+    public Set<String> getSupportedAcrs(@Nullable final String relyingPartyId, @Nullable final String profile) {
+        final DiscoveryFlows flows = getFlows(relyingPartyId, profile);
+        return flows != null ? flows.getSupportedAcrs() : Collections.emptySet();
+    }
+
+    /**
+     * Get the codec of the compact authority tokens.
+     * 
+     * @return codec of the compact authority tokens, null if items use B64 url
+     *         encoded authorities
+     */
+    @Nullable
+    public DiscoveryTokenCodec getTokenCodec() {
+        return tokenCodec;
+    }
+
+    /**
+     * Resolves the compact authority token of an item to the authority instance
+     * created when the configuration was parsed.
+     * 
+     * @param token compact authority token
+     * @return authority, or null if items do not use compact authority tokens or
+     *         the token is not valid for this configuration
+     */
+    @Nullable
+    public DiscoveryAuthenticatingAuthority resolveAuthority(@Nullable final String token) {
+        return tokenCodec != null ? tokenCodec.resolve(token) : null;
+    }
+
     /**
      * Parses DiscoveryConfiguration object from JSON string.
      * 
      * @param relyingPartiesAndFlows DiscoveryConfiguration object as JSON string
      * @return DiscoveryConfiguration instance
      * @throws Exception thrown if something unexpected occurs
+     * @see DiscoveryConfigurationLoader
      */
     @Nonnull
     public static DiscoveryConfiguration parse(String relyingPartiesAndFlows) throws Exception {
-        return parse(new ObjectMapper().readValue(relyingPartiesAndFlows, new TypeReference<Map<String, Object>>() {
-        }));
+        return DiscoveryConfigurationLoader.parse(relyingPartiesAndFlows);
     }
 
     /**
@@ -80,7 +322,7 @@ public class DiscoveryConfiguration {
     @Nonnull
     public static DiscoveryConfiguration parse(Object object) throws Exception {
         if (object instanceof Map<?, ?> flowsPerRelyingParty) {
-            Map<String, DiscoveryFlows> relyingPartiesAndFlows = new HashMap<String, DiscoveryFlows>();
+            Map<String, DiscoveryFlows> relyingPartiesAndFlows = new LinkedHashMap<String, DiscoveryFlows>();
             for (Entry<?, ?> entry : flowsPerRelyingParty.entrySet()) {
                 if (!(entry.getKey() instanceof String)) {
                     throw new Exception("Invalid key: Parsing failed");
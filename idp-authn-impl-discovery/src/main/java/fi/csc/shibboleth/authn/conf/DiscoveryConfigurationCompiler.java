@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Command line tool validating a JSON discovery configuration and compiling it
+ * into a binary snapshot, see {@link DiscoveryBinaryConfiguration}.
+ * 
+ * <pre>
+ * java fi.csc.shibboleth.authn.conf.DiscoveryConfigurationCompiler discovery.json [discovery.bin]
+ * </pre>
+ * 
+ * Without the output file the configuration is only validated. The snapshot is
+ * written to a temporary file first and moved in place, so IdP nodes polling
+ * the file never read a partially written snapshot. Exit status is 0 on
+ * success, 1 if the configuration is not valid or the snapshot cannot be
+ * written and 2 on usage errors.
+ */
+public final class DiscoveryConfigurationCompiler {
+
+    /** Exit status of an invalid configuration or failed write. */
+    public final static int EXIT_INVALID = 1;
+
+    /** Exit status of a usage error. */
+    public final static int EXIT_USAGE = 2;
+
+    /** Constructor. */
+    private DiscoveryConfigurationCompiler() {
+    }
+
+    /**
+     * Runs the compiler and exits with its status.
+     * 
+     * @param args JSON configuration file and optional snapshot file
+     */
+    public static void main(@Nonnull final String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the compiler.
+     * 
+     * @param args JSON configuration file and optional snapshot file
+     * @param out  stream for progress messages
+     * @param err  stream for error messages
+     * @return exit status
+     */
+    public static int run(@Nonnull final String[] args, @Nonnull final PrintStream out,
+            @Nonnull final PrintStream err) {
+        if (args.length < 1 || args.length > 2) {
+            err.println("Usage: " + DiscoveryConfigurationCompiler.class.getName()
+                    + " <configuration.json> [<snapshot.bin>]");
+            return EXIT_USAGE;
+        }
+        final Path input = Path.of(args[0]);
+        final DiscoveryConfiguration configuration;
+        try {
+            configuration = DiscoveryConfigurationLoader.load(input);
+        } catch (final IOException e) {
+            err.println(input + ": " + e.getMessage());
+            return EXIT_INVALID;
+        }
+        out.println(input + ": " + configuration.getFlowMap().size() + " relying party sections");
+        if (args.length == 1) {
+            return 0;
+        }
+        final Path output = Path.of(args[1]).toAbsolutePath();
+        try {
+            final byte[] snapshot = DiscoveryBinaryConfiguration.compile(configuration);
+            final Path temporary = Files.createTempFile(output.getParent(), output.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, snapshot);
+                Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            out.println(output + ": " + snapshot.length + " bytes");
+            return 0;
+        } catch (final IOException e) {
+            err.println(output + ": " + e.getMessage());
+            return EXIT_INVALID;
+        }
+    }
+}
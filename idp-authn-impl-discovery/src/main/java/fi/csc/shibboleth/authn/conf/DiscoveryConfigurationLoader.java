@@ -0,0 +1,566 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.ContentReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+
+/**
+ * Streaming loader of {@link DiscoveryConfiguration}. The JSON document is
+ * read token by token and the configuration objects are built directly
+ * without materializing the document first. Errors are reported as
+ * {@link JsonParseException} carrying the line and column of the offending
+ * token.
+ * 
+ * The loader also holds the shared, thread-safe parser factory and writer used
+ * by the configuration classes.
+ */
+public final class DiscoveryConfigurationLoader {
+
+    /** Prefix of locations resolved as class path resources. */
+    public final static String CLASSPATH_PREFIX = "classpath:";
+
+    /** Shared object mapper, not to be reconfigured after construction. */
+    @Nonnull
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Shared thread-safe object writer. */
+    @Nonnull
+    final static ObjectWriter WRITER = MAPPER.writer();
+
+    /** Shared thread-safe parser factory. */
+    @Nonnull
+    private final static JsonFactory FACTORY = MAPPER.getFactory();
+
+    /** Constructor. */
+    private DiscoveryConfigurationLoader() {
+    }
+
+    /**
+     * Loads DiscoveryConfiguration from a file.
+     * 
+     * @param file file containing the JSON configuration
+     * @return DiscoveryConfiguration instance
+     * @throws IOException thrown if reading or parsing fails
+     */
+    @Nonnull
+    public static DiscoveryConfiguration load(@Nonnull final Path file) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(file.toFile())) {
+            return parseConfiguration(parser, null);
+        }
+    }
+
+    /**
+     * Loads DiscoveryConfiguration from a stream. The stream is not closed.
+     * 
+     * @param stream stream containing the JSON configuration
+     * @return DiscoveryConfiguration instance
+     * @throws IOException thrown if reading or parsing fails
+     */
+    @Nonnull
+    public static DiscoveryConfiguration load(@Nonnull final InputStream stream) throws IOException {
+        return load(stream, null);
+    }
+
+    /**
+     * Loads DiscoveryConfiguration from a stream using compact authority tokens.
+     * The stream is not closed.
+     * 
+     * @param stream     stream containing the JSON configuration
+     * @param tokenCodec codec creating compact authority tokens, null for B64 url
+     *                   encoded authorities
+     * @return DiscoveryConfiguration instance
+     * @throws IOException thrown if reading or parsing fails
+     */
+    @Nonnull
+    public static DiscoveryConfiguration load(@Nonnull final InputStream stream,
+            @Nullable final DiscoveryTokenCodec tokenCodec) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(stream)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            return parseConfiguration(parser, tokenCodec);
+        }
+    }
+
+    /**
+     * Loads DiscoveryConfiguration parsing and validating the relying party
+     * sections in parallel. The document is first scanned for the boundaries of
+     * the sections, which are then parsed on a fork-join pool and merged in
+     * configuration order. Compact authority tokens are allocated in
+     * configuration order, so they do not depend on the order the sections are
+     * parsed in. Errors of all sections are collected and reported together.
+     * 
+     * @param json        JSON configuration
+     * @param tokenCodec  codec creating compact authority tokens, null for B64
+     *                    url encoded authorities
+     * @param parallelism number of parsing threads, 1 or less parses sequentially
+     * @return DiscoveryConfiguration instance
+     * @throws IOException thrown if parsing any of the sections fails, the
+     *                     errors of the other sections are suppressed exceptions
+     */
+    @Nonnull
+    public static DiscoveryConfiguration load(@Nonnull final byte[] json,
+            @Nullable final DiscoveryTokenCodec tokenCodec, final int parallelism) throws IOException {
+        if (parallelism <= 1) {
+            return load(new ByteArrayInputStream(json), tokenCodec);
+        }
+        final List<Section> sections = scanSections(json);
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final List<ForkJoinTask<Map<String, List<DiscoveryAuthenticatingAuthority>>>> parsed =
+                    new ArrayList<>(sections.size());
+            for (final Section section : sections) {
+                parsed.add(pool.submit(() -> parseSection(json, section)));
+            }
+            final List<IOException> errors = new ArrayList<>();
+            final List<ForkJoinTask<DiscoveryFlows>> built = new ArrayList<>(sections.size());
+            for (int i = 0; i < sections.size(); i++) {
+                final Map<String, List<DiscoveryAuthenticatingAuthority>> flowMap = join(parsed.get(i), errors);
+                if (flowMap != null && errors.isEmpty()) {
+                    final int firstTokenIndex = tokenCodec != null
+                            ? tokenCodec.allocate(DiscoveryFlows.countVisible(flowMap))
+                            : 0;
+                    built.add(pool.submit(() -> new DiscoveryFlows(flowMap, tokenCodec, firstTokenIndex)));
+                }
+            }
+            if (!errors.isEmpty()) {
+                final IOException error = errors.get(0);
+                errors.subList(1, errors.size()).forEach(error::addSuppressed);
+                throw error;
+            }
+            final Map<String, DiscoveryFlows> relyingPartiesAndFlows = new LinkedHashMap<>();
+            for (int i = 0; i < sections.size(); i++) {
+                relyingPartiesAndFlows.put(sections.get(i).relyingPartyId(), join(built.get(i), errors));
+            }
+            if (!errors.isEmpty()) {
+                throw errors.get(0);
+            }
+            return new DiscoveryConfiguration(relyingPartiesAndFlows, tokenCodec);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Scans the configuration for the boundaries of the relying party sections.
+     * Relying party patterns are validated while scanning.
+     * 
+     * @param json JSON configuration
+     * @return sections in configuration order
+     * @throws IOException thrown if the document is not an object of sections or
+     *                     a relying party pattern is not valid
+     */
+    @Nonnull
+    private static List<Section> scanSections(@Nonnull final byte[] json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Invalid flows field: Parsing failed");
+            }
+            final List<Section> sections = new ArrayList<>();
+            final List<IOException> errors = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String relyingPartyId = parser.currentName();
+                try {
+                    validateRelyingPartyKey(parser, relyingPartyId);
+                } catch (final JsonParseException e) {
+                    errors.add(e);
+                }
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Invalid flows field: Parsing failed");
+                }
+                final JsonLocation start = parser.currentTokenLocation();
+                parser.skipChildren();
+                final int end = (int) parser.currentLocation().getByteOffset();
+                sections.add(new Section(relyingPartyId, (int) start.getByteOffset(), end - (int) start.getByteOffset(),
+                        start.getLineNr(), start.getColumnNr()));
+            }
+            if (sections.isEmpty()) {
+                throw new JsonParseException(parser, "Configuration has no relying parties: Parsing failed");
+            }
+            expectEnd(parser);
+            if (!errors.isEmpty()) {
+                final IOException error = errors.get(0);
+                errors.subList(1, errors.size()).forEach(error::addSuppressed);
+                throw error;
+            }
+            return sections;
+        }
+    }
+
+    /**
+     * Parses a relying party section. Errors are reported with the location in
+     * the whole configuration.
+     * 
+     * @param json    JSON configuration
+     * @param section section to parse
+     * @return authenticating authorities keyed by flow
+     * @throws IOException thrown if parsing fails
+     */
+    @Nonnull
+    private static Map<String, List<DiscoveryAuthenticatingAuthority>> parseSection(@Nonnull final byte[] json,
+            @Nonnull final Section section) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json, section.offset(), section.length())) {
+            parser.nextToken();
+            final Map<String, List<DiscoveryAuthenticatingAuthority>> flowMap = parseFlowMap(parser);
+            expectEnd(parser);
+            return flowMap;
+        } catch (final JsonProcessingException e) {
+            final JsonLocation location = e.getLocation();
+            final JsonLocation absolute = location == null
+                    ? new JsonLocation(ContentReference.unknown(), section.offset(), section.line(), section.column())
+                    : new JsonLocation(ContentReference.unknown(), section.offset() + location.getByteOffset(),
+                            section.line() + location.getLineNr() - 1, location.getLineNr() == 1
+                                    ? section.column() + location.getColumnNr() - 1
+                                    : location.getColumnNr());
+            throw new JsonParseException(null, "Relying party " + section.relyingPartyId() + ": "
+                    + e.getOriginalMessage(), absolute, e);
+        }
+    }
+
+    /**
+     * Waits for a task, collecting its failure.
+     * 
+     * @param <T>    result type of the task
+     * @param task   task to wait for
+     * @param errors collected failures
+     * @return result of the task, null if it failed
+     * @throws IOException thrown if interrupted while waiting
+     */
+    @Nullable
+    private static <T> T join(@Nonnull final ForkJoinTask<T> task, @Nonnull final List<IOException> errors)
+            throws IOException {
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing configuration");
+        } catch (final ExecutionException e) {
+            // Fork-join tasks wrap checked exceptions of callables, possibly more than once
+            Throwable cause = e.getCause();
+            while (!(cause instanceof IOException) && cause != null && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            errors.add(cause instanceof IOException ioe ? ioe : new IOException(e.getCause()));
+            return null;
+        }
+    }
+
+    /**
+     * Loads DiscoveryConfiguration from a location. Location prefixed with
+     * {@value #CLASSPATH_PREFIX} is resolved as a class path resource, anything
+     * else as a file path.
+     * 
+     * @param location location of the JSON configuration
+     * @return DiscoveryConfiguration instance
+     * @throws IOException thrown if the location does not exist or reading or
+     *                     parsing fails
+     */
+    @Nonnull
+    public static DiscoveryConfiguration loadResource(@Nonnull @NotEmpty final String location) throws IOException {
+        if (!location.startsWith(CLASSPATH_PREFIX)) {
+            return load(Path.of(location));
+        }
+        try (InputStream stream = openResource(location)) {
+            return load(stream);
+        }
+    }
+
+    /**
+     * Opens a class path resource.
+     * 
+     * @param location location prefixed with {@value #CLASSPATH_PREFIX}
+     * @return stream of the resource
+     * @throws IOException thrown if the resource does not exist
+     */
+    @Nonnull
+    static InputStream openResource(@Nonnull @NotEmpty final String location) throws IOException {
+        final String resource = location.substring(CLASSPATH_PREFIX.length());
+        final InputStream stream = DiscoveryConfigurationLoader.class.getClassLoader()
+                .getResourceAsStream(resource.startsWith("/") ? resource.substring(1) : resource);
+        if (stream == null) {
+            throw new IOException("Resource " + location + " not found");
+        }
+        return stream;
+    }
+
+    /**
+     * Parses DiscoveryConfiguration from JSON string.
+     * 
+     * @param json JSON configuration
+     * @return DiscoveryConfiguration instance
+     * @throws IOException thrown if parsing fails
+     */
+    @Nonnull
+    public static DiscoveryConfiguration parse(@Nonnull final String json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            return parseConfiguration(parser, null);
+        }
+    }
+
+    /**
+     * Parses DiscoveryFlows from JSON string.
+     * 
+     * @param json JSON flows object
+     * @return DiscoveryFlows instance
+     * @throws IOException thrown if parsing fails
+     */
+    @Nonnull
+    static DiscoveryFlows parseFlows(@Nonnull final String json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            parser.nextToken();
+            final DiscoveryFlows flows = parseFlows(parser, null);
+            expectEnd(parser);
+            return flows;
+        }
+    }
+
+    /**
+     * Loads DiscoveryFlows of a single relying party from a stream. The stream is
+     * not closed.
+     * 
+     * @param stream stream containing the JSON flows object
+     * @return DiscoveryFlows instance
+     * @throws IOException thrown if reading or parsing fails
+     */
+    @Nonnull
+    static DiscoveryFlows loadFlows(@Nonnull final InputStream stream) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(stream)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            parser.nextToken();
+            final DiscoveryFlows flows = parseFlows(parser, null);
+            expectEnd(parser);
+            return flows;
+        }
+    }
+
+    /**
+     * Parses DiscoveryAuthenticatingAuthority from JSON string.
+     * 
+     * @param json JSON authority object
+     * @return DiscoveryAuthenticatingAuthority instance
+     * @throws IOException thrown if parsing fails
+     */
+    @Nonnull
+    static DiscoveryAuthenticatingAuthority parseAuthority(@Nonnull final String json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            parser.nextToken();
+            final DiscoveryAuthenticatingAuthority authority = parseAuthority(parser);
+            expectEnd(parser);
+            return authority;
+        }
+    }
+
+    /**
+     * Parses the whole configuration document.
+     * 
+     * @param parser     parser positioned before the document
+     * @param tokenCodec codec creating compact authority tokens, null for B64 url
+     *                   encoded authorities
+     * @return DiscoveryConfiguration instance
+     * @throws IOException thrown if parsing fails
+     */
+    @Nonnull
+    private static DiscoveryConfiguration parseConfiguration(@Nonnull final JsonParser parser,
+            @Nullable final DiscoveryTokenCodec tokenCodec) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Invalid flows field: Parsing failed");
+        }
+        final Map<String, DiscoveryFlows> relyingPartiesAndFlows = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String relyingPartyId = parser.currentName();
+            validateRelyingPartyKey(parser, relyingPartyId);
+            parser.nextToken();
+            relyingPartiesAndFlows.put(relyingPartyId, parseFlows(parser, tokenCodec));
+        }
+        if (relyingPartiesAndFlows.isEmpty()) {
+            throw new JsonParseException(parser, "Configuration has no relying parties: Parsing failed");
+        }
+        expectEnd(parser);
+        return new DiscoveryConfiguration(relyingPartiesAndFlows, tokenCodec);
+    }
+
+    /**
+     * Validates the pattern of a relying party key.
+     * 
+     * @param parser         parser positioned at the key
+     * @param relyingPartyId relying party key
+     * @throws JsonParseException thrown if the key is not a valid pattern
+     */
+    private static void validateRelyingPartyKey(@Nonnull final JsonParser parser,
+            @Nonnull final String relyingPartyId) throws JsonParseException {
+        if (relyingPartyId.startsWith(DiscoveryRelyingPartyMatcher.REGEX_KEY_PREFIX)) {
+            try {
+                DiscoveryRelyingPartyMatcher.compile(relyingPartyId);
+            } catch (final PatternSyntaxException e) {
+                throw new JsonParseException(parser, "Invalid relying party pattern: Parsing failed", e);
+            }
+        }
+    }
+
+    /**
+     * Parses flows object of a relying party.
+     * 
+     * @param parser     parser positioned at the start of the object
+     * @param tokenCodec codec creating compact authority tokens, null for B64 url
+     *                   encoded authorities
+     * @return DiscoveryFlows instance
+     * @throws IOException thrown if parsing fails
+     */
+    @Nonnull
+    private static DiscoveryFlows parseFlows(@Nonnull final JsonParser parser,
+            @Nullable final DiscoveryTokenCodec tokenCodec) throws IOException {
+        return new DiscoveryFlows(parseFlowMap(parser), tokenCodec);
+    }
+
+    /**
+     * Parses authenticating authorities keyed by flow of a relying party.
+     * 
+     * @param parser parser positioned at the start of the object
+     * @return authenticating authorities keyed by flow, in configuration order
+     * @throws IOException thrown if parsing fails
+     */
+    @Nonnull
+    private static Map<String, List<DiscoveryAuthenticatingAuthority>> parseFlowMap(
+            @Nonnull final JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Invalid flows field: Parsing failed");
+        }
+        final Map<String, List<DiscoveryAuthenticatingAuthority>> flowsAndAuthorities = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String flowId = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Invalid authority information: Parsing failed");
+            }
+            final List<DiscoveryAuthenticatingAuthority> authorities = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                authorities.add(parseAuthority(parser));
+            }
+            flowsAndAuthorities.put(flowId, authorities);
+        }
+        if (flowsAndAuthorities.isEmpty()) {
+            throw new JsonParseException(parser, "Relying party has no flows: Parsing failed");
+        }
+        return flowsAndAuthorities;
+    }
+
+    /**
+     * Parses authenticating authority object. Non-string values of string fields
+     * and unknown fields are ignored.
+     * 
+     * @param parser parser positioned at the start of the object
+     * @return DiscoveryAuthenticatingAuthority instance
+     * @throws IOException thrown if parsing fails
+     */
+    @Nonnull
+    private static DiscoveryAuthenticatingAuthority parseAuthority(@Nonnull final JsonParser parser)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Invalid discovery aa object: Parsing failed");
+        }
+        String acr = null;
+        String type = null;
+        String value = null;
+        String flow = null;
+        String name = null;
+        boolean hidden = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.currentName();
+            final JsonToken token = parser.nextToken();
+            final String text = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+            switch (field) {
+                case DiscoveryAuthenticatingAuthority.ACR_KEY:
+                    acr = text;
+                    break;
+                case DiscoveryAuthenticatingAuthority.AA_TYPE_KEY:
+                    type = text;
+                    break;
+                case DiscoveryAuthenticatingAuthority.AA_VALUE_KEY:
+                    value = text;
+                    break;
+                case DiscoveryAuthenticatingAuthority.FLOW_KEY:
+                    flow = text;
+                    break;
+                case DiscoveryAuthenticatingAuthority.NAME_KEY:
+                    name = text;
+                    break;
+                case DiscoveryAuthenticatingAuthority.HIDDEN_KEY:
+                    hidden = token == JsonToken.VALUE_TRUE;
+                    break;
+                default:
+                    break;
+            }
+            parser.skipChildren();
+        }
+        return new DiscoveryAuthenticatingAuthority(acr, type, value, flow, name, hidden);
+    }
+
+    /**
+     * Boundaries of a relying party section in the configuration.
+     * 
+     * @param relyingPartyId relying party key of the section
+     * @param offset         byte offset of the section
+     * @param length         byte length of the section
+     * @param line           line of the start of the section
+     * @param column         column of the start of the section
+     */
+    private record Section(@Nonnull String relyingPartyId, int offset, int length, int line, int column) {
+    }
+
+    /**
+     * Verifies there is no content after the parsed value.
+     * 
+     * @param parser parser positioned at the end of the value
+     * @throws IOException thrown if there is trailing content
+     */
+    private static void expectEnd(@Nonnull final JsonParser parser) throws IOException {
+        if (parser.nextToken() != null) {
+            throw new JsonParseException(parser, "Unexpected content after configuration: Parsing failed");
+        }
+    }
+}
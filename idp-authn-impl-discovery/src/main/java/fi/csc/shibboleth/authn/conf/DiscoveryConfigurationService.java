@@ -0,0 +1,701 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Service holding the current {@link DiscoverySnapshot}. Sources are the
+ * authority properties file and the JSON configuration given either inline, as
+ * a file or class path resource, or as a directory of relying party files read
+ * on demand, see {@link DiscoveryDirectoryConfiguration}. A file or resource
+ * may also be a binary snapshot compiled by
+ * {@link DiscoveryConfigurationCompiler}, loaded without JSON parsing.
+ * 
+ * If a positive reload check interval is set, the files are polled for changes
+ * in the background. A changed configuration is parsed off the request path and
+ * swapped in atomically, readers never lock. A failed reload is logged and the
+ * last successfully loaded snapshot is kept in service.
+ * 
+ * The service is exported to the global context of the IdP as
+ * <code>shibboleth.authn.Discovery.ConfigurationService</code>, shared by the
+ * discovery flow and the functions and scripts using the configuration.
+ */
+public class DiscoveryConfigurationService extends AbstractIdentifiableInitializableComponent {
+
+    /** Number of version characters in compact authority tokens. */
+    private final static int TOKEN_VERSION_LENGTH = 8;
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(DiscoveryConfigurationService.class);
+
+    /** Filename of authenticating authorities property file. */
+    @Nullable
+    private Path authorityProperties;
+
+    /** Inline JSON configuration. */
+    @Nullable
+    private String authorities;
+
+    /** Location of JSON configuration. */
+    @Nullable
+    private String authoritiesResource;
+
+    /** Directory of JSON files, one per relying party. */
+    @Nullable
+    private Path authoritiesDirectory;
+
+    /** Maximum number of relying party sections of the directory kept in memory. */
+    private long directoryCacheSize;
+
+    /** Whether items use compact authority tokens instead of B64 url encoded authorities. */
+    private boolean compactTokens;
+
+    /** Key used to sign the compact authority tokens, null if tokens are not signed. */
+    @Nullable
+    private SecretKeySpec tokenSigningKey;
+
+    /** Members of relying party groups keyed by group name. */
+    @Nonnull
+    private Map<String, Set<String>> relyingPartyGroups;
+
+    /** Maximum number of memoized relying party matches. */
+    private long relyingPartyMatchCacheSize;
+
+    /** Number of threads parsing the relying party sections of the JSON configuration. */
+    private int parseParallelism;
+
+    /** Interval between checks for modified sources, zero disables. */
+    @Nonnull
+    private Duration reloadCheckInterval;
+
+    /** Last modification state of the polled files. */
+    @Nullable
+    private List<Object> sourceState;
+
+    /** The snapshot in service. */
+    @Nonnull
+    private volatile DiscoverySnapshot snapshot;
+
+    /** Executor checking for modified sources. */
+    @Nullable
+    private ScheduledExecutorService reloadExecutor;
+
+    /**
+     * Constructor.
+     */
+    public DiscoveryConfigurationService() {
+        reloadCheckInterval = Duration.ZERO;
+        relyingPartyGroups = Collections.emptyMap();
+        relyingPartyMatchCacheSize = DiscoveryRelyingPartyMatcher.DEFAULT_MEMO_SIZE;
+        parseParallelism = Runtime.getRuntime().availableProcessors();
+        directoryCacheSize = 10000;
+        snapshot = DiscoverySnapshot.EMPTY;
+    }
+
+    /**
+     * Set filename of authenticating authorities property file.
+     * 
+     * @param propertiesFile Filename of authenticating authorities property file
+     */
+    public void setAuthorityProperties(@Nullable final String propertiesFile) {
+        checkSetterPreconditions();
+        authorityProperties = propertiesFile == null || propertiesFile.isBlank() ? null
+                : Path.of(propertiesFile.trim());
+    }
+
+    /**
+     * Set JSON based alternative configuration to authorityProperties.
+     * 
+     * @param json JSON based alternative configuration to authorityProperties
+     */
+    public void setAuthorities(@Nullable final String json) {
+        checkSetterPreconditions();
+        authorities = json == null || json.isBlank() ? null : json;
+    }
+
+    /**
+     * Set location of JSON based alternative configuration to
+     * authorityProperties. Location prefixed with classpath: is read as class path
+     * resource, anything else as a file. Overrides inline configuration. The
+     * content may be a JSON document or a binary snapshot, files are read
+     * through a memory mapped buffer.
+     * 
+     * @param location location of JSON based alternative configuration
+     */
+    public void setAuthoritiesResource(@Nullable final String location) {
+        checkSetterPreconditions();
+        authoritiesResource = location == null || location.isBlank() ? null : location.trim();
+    }
+
+    /**
+     * Set directory of JSON configuration files, one flows object per relying
+     * party and default.json for the default section. Files are read on first
+     * access of the relying party. Overrides inline configuration and
+     * configuration resource.
+     * 
+     * @param directory directory of JSON configuration files
+     */
+    public void setAuthoritiesDirectory(@Nullable final String directory) {
+        checkSetterPreconditions();
+        authoritiesDirectory = directory == null || directory.isBlank() ? null : Path.of(directory.trim());
+    }
+
+    /**
+     * Set maximum number of relying party sections of the configuration directory
+     * kept in memory.
+     * 
+     * @param size maximum number of sections kept in memory
+     */
+    public void setDirectoryCacheSize(final long size) {
+        checkSetterPreconditions();
+        directoryCacheSize = Constraint.isGreaterThanOrEqual(0, size, "Cache size cannot be negative");
+    }
+
+    /**
+     * Set whether items use compact authority tokens, configuration version and
+     * item index, instead of B64 url encoded authorities.
+     * 
+     * @param flag whether items use compact authority tokens
+     */
+    public void setCompactTokens(final boolean flag) {
+        checkSetterPreconditions();
+        compactTokens = flag;
+    }
+
+    /**
+     * Set B64 encoded key used to sign the compact authority tokens. The key must
+     * be at least {@value DiscoveryTokenCodec#MIN_SIGNING_KEY_LENGTH} bytes.
+     * 
+     * @param key B64 encoded key, null or empty if tokens are not signed
+     */
+    public void setTokenSigningKey(@Nullable final String key) {
+        checkSetterPreconditions();
+        tokenSigningKey = key == null || key.isBlank() ? null
+                : new SecretKeySpec(Base64.getDecoder().decode(key.trim()), DiscoveryTokenCodec.MAC_ALGORITHM);
+    }
+
+    /**
+     * Set members of relying party groups keyed by group name. Sections keyed by
+     * {@value DiscoveryRelyingPartyMatcher#GROUP_KEY_PREFIX}<i>name</i> apply to
+     * the members of the group.
+     * 
+     * @param groups members of relying party groups keyed by group name
+     */
+    public void setRelyingPartyGroups(@Nullable final Map<String, ? extends Collection<String>> groups) {
+        checkSetterPreconditions();
+        relyingPartyGroups = DiscoveryRelyingPartyMatcher.toGroups(groups);
+    }
+
+    /**
+     * Set maximum number of memoized prefix and regular expression matches of
+     * relying parties.
+     * 
+     * @param size maximum number of memoized matches, zero disables memoizing
+     */
+    public void setRelyingPartyMatchCacheSize(final long size) {
+        checkSetterPreconditions();
+        relyingPartyMatchCacheSize = Constraint.isGreaterThanOrEqual(0, size, "Cache size cannot be negative");
+    }
+
+    /**
+     * Set number of threads parsing and validating the relying party sections of
+     * the JSON configuration in parallel. Defaults to the number of available
+     * processors.
+     * 
+     * @param parallelism number of threads, 1 parses sequentially and 0 uses the
+     *                    number of available processors
+     */
+    public void setParseParallelism(final int parallelism) {
+        checkSetterPreconditions();
+        Constraint.isGreaterThanOrEqual(0, parallelism, "Parse parallelism cannot be negative");
+        parseParallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Set interval between checks for modified configuration files. Zero disables
+     * reloading.
+     * 
+     * @param interval interval between checks for modified configuration files
+     */
+    public void setReloadCheckInterval(@Nonnull final Duration interval) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(interval, "Reload check interval cannot be null");
+        Constraint.isFalse(interval.isNegative(), "Reload check interval cannot be negative");
+        reloadCheckInterval = interval;
+    }
+
+    /**
+     * Get the snapshot in service.
+     * 
+     * @return the snapshot in service
+     */
+    @Nonnull
+    public DiscoverySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Get the JSON configuration of the snapshot in service. Callers doing
+     * several lookups for a request should fetch the configuration once to see a
+     * consistent version.
+     * 
+     * @return JSON configuration, or null if there is none
+     */
+    @Nullable
+    public DiscoveryConfiguration getConfiguration() {
+        return snapshot.getConfiguration();
+    }
+
+    /**
+     * Get flow information of relying party from the snapshot in service.
+     * 
+     * @param relyingPartyId relying party id
+     * @return flow information of relying party, null if there is no JSON
+     *         configuration or no section for the relying party
+     * @see DiscoveryConfiguration#getFlows(String)
+     */
+    @Nullable
+    public DiscoveryFlows getFlows(@Nullable final String relyingPartyId) {
+        final DiscoveryConfiguration configuration = snapshot.getConfiguration();
+        return configuration != null ? configuration.getFlows(relyingPartyId) : null;
+    }
+
+    /**
+     * Get flow information of relying party having a discovery profile from the
+     * snapshot in service.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @return flow information of relying party, null if there is no JSON
+     *         configuration or no section for the relying party
+     * @see DiscoveryConfiguration#getFlows(String, String)
+     */
+    @Nullable
+    public DiscoveryFlows getFlows(@Nullable final String relyingPartyId, @Nullable final String profile) {
+        final DiscoveryConfiguration configuration = snapshot.getConfiguration();
+        return configuration != null ? configuration.getFlows(relyingPartyId, profile) : null;
+    }
+
+    /**
+     * Get the flow and authenticating authority information matching an acr from
+     * the snapshot in service.
+     * 
+     * @param relyingPartyId relying party id
+     * @param acr            acr value
+     * @return pair of flow id and authenticating authority information, or null
+     *         if there is no match
+     * @see DiscoveryConfiguration#getByAcr(String, String)
+     */
+    @Nullable
+    public Pair<String, DiscoveryAuthenticatingAuthority> getByAcr(@Nullable final String relyingPartyId,
+            @Nullable final String acr) {
+        final DiscoveryConfiguration configuration = snapshot.getConfiguration();
+        return configuration != null ? configuration.getByAcr(relyingPartyId, acr) : null;
+    }
+
+    /**
+     * Get the flow and authenticating authority information matching an acr for
+     * a relying party having a discovery profile from the snapshot in service.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @param acr            acr value
+     * @return pair of flow id and authenticating authority information, or null
+     *         if there is no match
+     * @see DiscoveryConfiguration#getByAcr(String, String, String)
+     */
+    @Nullable
+    public Pair<String, DiscoveryAuthenticatingAuthority> getByAcr(@Nullable final String relyingPartyId,
+            @Nullable final String profile, @Nullable final String acr) {
+        final DiscoveryConfiguration configuration = snapshot.getConfiguration();
+        return configuration != null ? configuration.getByAcr(relyingPartyId, profile, acr) : null;
+    }
+
+    /**
+     * Get the acr values supported for the relying party from the snapshot in
+     * service.
+     * 
+     * @param relyingPartyId relying party id
+     * @return unmodifiable set of acr values, empty if there is none
+     * @see DiscoveryConfiguration#getSupportedAcrs(String)
+     */
+    @Nonnull
+    public Set<String> getSupportedAcrs(@Nullable final String relyingPartyId) {
+        final DiscoveryConfiguration configuration = snapshot.getConfiguration();
+        return configuration != null ? configuration.getSupportedAcrs(relyingPartyId) : Collections.emptySet();
+    }
+
+    /**
+     * Get the acr values supported for the relying party having a discovery
+     * profile from the snapshot in service.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @return unmodifiable set of acr values, empty if there is none
+     * @see DiscoveryConfiguration#getSupportedAcrs(String, String)
+     */
+    @Nonnull
+    public Set<String> getSupportedAcrs(@Nullable final String relyingPartyId, @Nullable final String profile) {
+        final DiscoveryConfiguration configuration = snapshot.getConfiguration();
+        return configuration != null ? configuration.getSupportedAcrs(relyingPartyId, profile)
+                : Collections.emptySet();
+    }
+
+    /**
+     * Resolves a compact authority token with the snapshot in service.
+     * 
+     * @param token compact authority token
+     * @return authority, or null if the token is not resolved
+     * @see DiscoveryConfiguration#resolveAuthority(String)
+     */
+    @Nullable
+    public DiscoveryAuthenticatingAuthority resolveAuthority(@Nullable final String token) {
+        final DiscoveryConfiguration configuration = snapshot.getConfiguration();
+        return configuration != null ? configuration.resolveAuthority(token) : null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (tokenSigningKey != null
+                && tokenSigningKey.getEncoded().length < DiscoveryTokenCodec.MIN_SIGNING_KEY_LENGTH) {
+            throw new ComponentInitializationException("Token signing key must be at least "
+                    + DiscoveryTokenCodec.MIN_SIGNING_KEY_LENGTH + " bytes");
+        }
+        if (compactTokens && authoritiesDirectory != null) {
+            throw new ComponentInitializationException("Compact tokens are not supported with a directory");
+        }
+        sourceState = readSourceState();
+        try {
+            snapshot = loadSnapshot(true);
+        } catch (final IOException e) {
+            throw new ComponentInitializationException(e);
+        }
+        if (!reloadCheckInterval.isZero()) {
+            reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "DiscoveryConfigurationReload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloadExecutor.scheduleWithFixedDelay(this::reloadIfModified, reloadCheckInterval.toMillis(),
+                    reloadCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+            reloadExecutor = null;
+        }
+        super.doDestroy();
+    }
+
+    /**
+     * Reloads the configuration if any of the files has been modified since last
+     * check. The sections of a configuration directory are reread one by one
+     * without a new snapshot, see {@link DiscoveryDirectoryConfiguration#refresh()}.
+     * On failure the current snapshot is kept. Any {@link Throwable} is
+     * caught, as a failure escaping the scheduled check would cancel all further
+     * checks.
+     * 
+     * @return true if a new snapshot was taken into service
+     */
+    public boolean reloadIfModified() {
+        try {
+            final List<Object> state = readSourceState();
+            if (Objects.equals(state, sourceState)) {
+                if (snapshot.getConfiguration() instanceof DiscoveryDirectoryConfiguration directory) {
+                    directory.refresh();
+                }
+                return false;
+            }
+            sourceState = state;
+            final DiscoverySnapshot loaded = loadSnapshot(false);
+            if (loaded.getVersion().equals(snapshot.getVersion())) {
+                return false;
+            }
+            snapshot = loaded;
+            log.info("Discovery configuration {}: Loaded version {}", getId(), loaded.getVersion());
+            return true;
+        } catch (final Throwable e) {
+            log.error("Discovery configuration {}: Reload failed, keeping version {}", getId(),
+                    snapshot.getVersion(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the modification time and size of the files. Of the configuration
+     * directory only the default section is included, the files of the other
+     * sections are checked by the directory configuration.
+     * 
+     * @return modification state of the files
+     */
+    @Nonnull
+    private List<Object> readSourceState() {
+        final List<Object> state = new ArrayList<>();
+        final Path defaultSection = authoritiesDirectory != null
+                ? authoritiesDirectory.resolve(DiscoveryConfiguration.DEFAULT_KEY
+                        + DiscoveryDirectoryConfiguration.FILE_SUFFIX)
+                : null;
+        for (final Path path : new Path[] { authorityProperties, getAuthoritiesFile(), defaultSection }) {
+            if (path != null) {
+                try {
+                    final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    state.add(attributes.lastModifiedTime());
+                    state.add(attributes.size());
+                } catch (final IOException e) {
+                    state.add(null);
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Get JSON configuration file if configured as a file.
+     * 
+     * @return JSON configuration file or null
+     */
+    @Nullable
+    private Path getAuthoritiesFile() {
+        return authoritiesResource != null
+                && !authoritiesResource.startsWith(DiscoveryConfigurationLoader.CLASSPATH_PREFIX)
+                        ? Path.of(authoritiesResource)
+                        : null;
+    }
+
+    /**
+     * Reads and parses all sources.
+     * 
+     * @param lenient whether to skip a failing source instead of failing the load
+     * @return new snapshot
+     * @throws IOException thrown if reading or parsing any of the sources fails
+     */
+    @Nonnull
+    protected DiscoverySnapshot loadSnapshot(final boolean lenient) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        final Map<String, List<String>> properties = new HashMap<>();
+        if (authorityProperties != null) {
+            final Properties loaded = new Properties();
+            try {
+                final byte[] content = Files.readAllBytes(authorityProperties);
+                digest.update(content);
+                try (InputStream stream = new ByteArrayInputStream(content)) {
+                    loaded.load(stream);
+                }
+            } catch (final IOException | IllegalArgumentException e) {
+                if (!lenient) {
+                    throw new IOException("Failed loading " + authorityProperties, e);
+                }
+                log.error("Discovery configuration {}: Error loading {}", getId(), authorityProperties, e);
+            }
+            for (final String key : loaded.stringPropertyNames()) {
+                final String value = loaded.getProperty(key);
+                if (value != null && !value.isEmpty()) {
+                    final List<String> values = new ArrayList<>();
+                    for (final String authority : value.split(",")) {
+                        values.add(authority.trim());
+                    }
+                    properties.put(key, List.copyOf(values));
+                }
+            }
+        }
+        digest.update((byte) 0);
+
+        if (authoritiesDirectory != null) {
+            return loadDirectorySnapshot(digest, properties, lenient);
+        }
+
+        ByteBuffer json = null;
+        try {
+            json = readAuthorities();
+        } catch (final IOException e) {
+            if (!lenient) {
+                throw e;
+            }
+            log.error("Discovery configuration {}: Failed reading authorities", getId(), e);
+        }
+        if (json != null) {
+            digest.update(json.duplicate());
+        }
+        final String version = HexFormat.of().formatHex(digest.digest(), 0, 8);
+
+        DiscoveryConfiguration configuration = null;
+        if (json != null) {
+            try {
+                final DiscoveryTokenCodec codec = compactTokens
+                        ? new DiscoveryTokenCodec(version.substring(0, TOKEN_VERSION_LENGTH), tokenSigningKey)
+                        : null;
+                configuration = (DiscoveryBinaryConfiguration.isBinary(json)
+                        ? DiscoveryBinaryConfiguration.load(json, codec)
+                        : DiscoveryConfigurationLoader.load(toArray(json), codec, parseParallelism))
+                        .withRelyingPartyMatching(relyingPartyGroups, relyingPartyMatchCacheSize);
+                for (final String key : configuration.getFlowMap().keySet()) {
+                    if (key.startsWith(DiscoveryRelyingPartyMatcher.GROUP_KEY_PREFIX) && !relyingPartyGroups
+                            .containsKey(key.substring(DiscoveryRelyingPartyMatcher.GROUP_KEY_PREFIX.length()))) {
+                        log.warn("Discovery configuration {}: Section {} refers to undefined group", getId(), key);
+                    }
+                }
+            } catch (final IOException e) {
+                if (!lenient) {
+                    throw e;
+                }
+                log.error("Discovery configuration {}: Failed parsing authorities", getId(), e);
+            }
+        }
+        return new DiscoverySnapshot(version, properties, configuration, relyingPartyGroups,
+                relyingPartyMatchCacheSize);
+    }
+
+    /**
+     * Creates the snapshot of a configuration directory. The version covers the
+     * authority properties, the directory and the state of the files checked for
+     * reloading, including the default section. The other files are read on
+     * demand and reread by the directory configuration once modified.
+     * 
+     * @param digest     digest updated with the authority properties
+     * @param properties authority properties
+     * @param lenient    whether to skip a failing directory instead of failing the
+     *                   load
+     * @return new snapshot
+     * @throws IOException thrown if reading the directory or the default section
+     *                     fails
+     */
+    @Nonnull
+    private DiscoverySnapshot loadDirectorySnapshot(@Nonnull final MessageDigest digest,
+            @Nonnull final Map<String, List<String>> properties, final boolean lenient) throws IOException {
+        DiscoveryConfiguration configuration = null;
+        try {
+            configuration = new DiscoveryDirectoryConfiguration(authoritiesDirectory, directoryCacheSize);
+        } catch (final IOException e) {
+            if (!lenient) {
+                throw e;
+            }
+            log.error("Discovery configuration {}: Failed reading {}", getId(), authoritiesDirectory, e);
+        }
+        digest.update(authoritiesDirectory.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(String.valueOf(sourceState).getBytes(StandardCharsets.UTF_8));
+        return new DiscoverySnapshot(HexFormat.of().formatHex(digest.digest(), 0, 8), properties, configuration,
+                relyingPartyGroups, relyingPartyMatchCacheSize);
+    }
+
+    /**
+     * Reads the JSON configuration or binary snapshot. A binary snapshot file is
+     * read through a memory mapped buffer, a JSON file is read into memory as
+     * parsing copies it anyway and a mapped file truncated while being read fails
+     * with an {@link InternalError}.
+     * 
+     * @return configuration content or null if not configured
+     * @throws IOException thrown if reading fails
+     */
+    @Nullable
+    private ByteBuffer readAuthorities() throws IOException {
+        if (authoritiesResource == null) {
+            return authorities != null ? ByteBuffer.wrap(authorities.getBytes(StandardCharsets.UTF_8)) : null;
+        }
+        final Path file = getAuthoritiesFile();
+        if (file != null) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+                channel.read(magic, 0);
+                if (DiscoveryBinaryConfiguration.isBinary(magic.flip())) {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+        try (InputStream stream = DiscoveryConfigurationLoader.openResource(authoritiesResource)) {
+            return ByteBuffer.wrap(stream.readAllBytes());
+        }
+    }
+
+    /**
+     * Get the content of a buffer as an array, without copying if the buffer is
+     * backed by a whole array.
+     * 
+     * @param buffer the buffer
+     * @return content of the buffer
+     */
+    @Nonnull
+    private static byte[] toArray(@Nonnull final ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] content = new byte[buffer.remaining()];
+        buffer.duplicate().get(content);
+        return content;
+    }
+}
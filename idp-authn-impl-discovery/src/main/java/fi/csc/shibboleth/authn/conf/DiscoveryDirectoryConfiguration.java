@@ -0,0 +1,355 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Discovery configuration read from a directory of files, one JSON flows object
+ * per relying party. The file of a relying party is named by the URL encoded
+ * relying party id or by the lower case hex encoded SHA-1 digest of it, with
+ * suffix {@value #FILE_SUFFIX}. Sections of discovery profiles are named the
+ * same way by their key, {@link DiscoveryConfiguration#PROFILE_KEY_PREFIX}
+ * and profile name. The default section is read from
+ * {@value DiscoveryConfiguration#DEFAULT_KEY}{@value #FILE_SUFFIX} when the
+ * configuration is created.
+ * 
+ * Other sections are read on first access and kept in a bounded cache, least
+ * recently used sections are evicted. A relying party without a file, or whose
+ * file fails to parse, gets the default section. {@link #refresh()} rereads the
+ * other sections in memory whose files have been modified, each section getting
+ * a new generation, see {@link #getGeneration(String, String)}. Relying party
+ * patterns and compact authority tokens are not supported.
+ */
+public final class DiscoveryDirectoryConfiguration extends DiscoveryConfiguration {
+
+    /** Suffix of the section files. */
+    public final static String FILE_SUFFIX = ".json";
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(DiscoveryDirectoryConfiguration.class);
+
+    /** Directory of the section files. */
+    @Nonnull
+    private final Path directory;
+
+    /** Last generation given to a section. */
+    @Nonnull
+    private final AtomicLong lastGeneration = new AtomicLong();
+
+    /** The default section. */
+    @Nonnull
+    private final Section defaultSection;
+
+    /** Sections read so far keyed by section key. */
+    @Nonnull
+    private final Cache<String, Section> sections;
+
+    /**
+     * Constructor.
+     * 
+     * @param path         directory of the section files
+     * @param maximumSize  maximum number of sections kept in memory
+     * @throws IOException thrown if the default section exists but cannot be read
+     */
+    public DiscoveryDirectoryConfiguration(@Nonnull final Path path, final long maximumSize) throws IOException {
+        directory = Constraint.isNotNull(path, "Directory cannot be null");
+        Constraint.isGreaterThanOrEqual(0, maximumSize, "Maximum size cannot be negative");
+        if (!Files.isDirectory(directory)) {
+            throw new IOException(directory + " is not a directory");
+        }
+        defaultSection = new Section(readSection(directory.resolve(DEFAULT_KEY + FILE_SUFFIX)), List.of(),
+                lastGeneration.incrementAndGet());
+        sections = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Get the sections in memory, the default section and the sections read so
+     * far.
+     * 
+     * @return sections in memory keyed by section key
+     */
+    @Override
+    public Map<String, DiscoveryFlows> getFlowMap() {
+        final Map<String, DiscoveryFlows> flows = new LinkedHashMap<>();
+        if (defaultSection.flows() != null) {
+            flows.put(DEFAULT_KEY, defaultSection.flows());
+        }
+        sections.asMap().forEach((key, section) -> {
+            if (section.flows() != null) {
+                flows.put(key, section.flows());
+            }
+        });
+        return Collections.unmodifiableMap(flows);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    public DiscoveryFlows getFlows(@Nullable final String relyingPartyId) {
+        return getServingSection(relyingPartyId, null).flows();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    public DiscoveryFlows getFlows(@Nullable final String relyingPartyId, @Nullable final String profile) {
+        return getServingSection(relyingPartyId, profile).flows();
+    }
+
+    /**
+     * Get the generation of the section serving a relying party. A section
+     * reread by {@link #refresh()} gets a new generation.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @return generation of the section
+     */
+    @Override
+    public long getGeneration(@Nullable final String relyingPartyId, @Nullable final String profile) {
+        return getServingSection(relyingPartyId, profile).generation();
+    }
+
+    /**
+     * Relying party patterns are not supported, returns this configuration.
+     * 
+     * @param groups   ignored
+     * @param memoSize ignored
+     * @return this configuration
+     */
+    @Override
+    @Nonnull
+    public DiscoveryConfiguration withRelyingPartyMatching(@Nonnull final Map<String, Set<String>> groups,
+            final long memoSize) {
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    DiscoveryFlows getSection(@Nonnull final String key) {
+        return getCachedSection(key).flows();
+    }
+
+    /**
+     * Rereads the sections in memory whose files have been added, removed or
+     * modified since they were read. Only the files of the sections in memory
+     * are checked, other sections are read when first accessed. A section failing
+     * to parse falls back to the default section like on first access. The
+     * default section is not reread.
+     * 
+     * @return number of sections reread
+     */
+    public int refresh() {
+        int refreshed = 0;
+        for (final Map.Entry<String, Section> entry : sections.asMap().entrySet()) {
+            final List<String> state = readState(getFiles(entry.getKey()));
+            if (!state.equals(entry.getValue().state())) {
+                sections.asMap().replace(entry.getKey(), entry.getValue(), loadSection(entry.getKey()));
+                refreshed++;
+            }
+        }
+        if (refreshed > 0) {
+            log.info("Reread {} discovery sections from {}", refreshed, directory);
+        }
+        return refreshed;
+    }
+
+    /**
+     * Get the section serving a relying party, the section of its discovery
+     * profile, its own section or the default section.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @return the section, the default section if there is no other
+     */
+    @Nonnull
+    private Section getServingSection(@Nullable final String relyingPartyId, @Nullable final String profile) {
+        if (profile != null) {
+            final Section section = getCachedSection(PROFILE_KEY_PREFIX + profile);
+            if (section.flows() != null) {
+                return section;
+            }
+        }
+        if (relyingPartyId != null) {
+            final Section section = getCachedSection(relyingPartyId);
+            if (section.flows() != null) {
+                return section;
+            }
+        }
+        return defaultSection;
+    }
+
+    /**
+     * Get the section of a key, reading it if not in memory.
+     * 
+     * @param key section key
+     * @return the section, without flows if there is no valid file
+     */
+    @Nonnull
+    private Section getCachedSection(@Nonnull final String key) {
+        if (DEFAULT_KEY.equals(key)) {
+            return defaultSection;
+        }
+        return sections.asMap().computeIfAbsent(key, this::loadSection);
+    }
+
+    /**
+     * Reads the section of a key, from the file named by the URL encoded key or
+     * by the SHA-1 digest of the key. A file failing to read or parse is logged.
+     * 
+     * @param key section key
+     * @return the section, without flows if there is no valid file
+     */
+    @Nonnull
+    private Section loadSection(@Nonnull final String key) {
+        final List<Path> files = getFiles(key);
+        final List<String> state = readState(files);
+        DiscoveryFlows flows = null;
+        try {
+            for (final Path file : files) {
+                flows = readSection(file);
+                if (flows != null) {
+                    break;
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            log.error("Failed reading discovery section of {} from {}", key, directory, e);
+        }
+        return new Section(flows, state, lastGeneration.incrementAndGet());
+    }
+
+    /**
+     * Get the files a section of a key may be read from, the file named by the
+     * URL encoded key if it is a valid file name and the file named by the SHA-1
+     * digest of the key.
+     * 
+     * @param key section key
+     * @return candidate files in lookup order
+     */
+    @Nonnull
+    private List<Path> getFiles(@Nonnull final String key) {
+        final String encoded = URLEncoder.encode(key, StandardCharsets.UTF_8);
+        if (encoded.length() + FILE_SUFFIX.length() <= 255 && !encoded.startsWith(".")) {
+            return List.of(directory.resolve(encoded + FILE_SUFFIX), directory.resolve(sha1(key) + FILE_SUFFIX));
+        }
+        return List.of(directory.resolve(sha1(key) + FILE_SUFFIX));
+    }
+
+    /**
+     * Reads a section file. The files are small, so they are read into memory
+     * instead of mapping them.
+     * 
+     * @param file section file
+     * @return the section, null if there is no file
+     * @throws IOException thrown if reading or parsing the file fails
+     */
+    @Nullable
+    private static DiscoveryFlows readSection(@Nonnull final Path file) throws IOException {
+        final byte[] content;
+        try {
+            content = Files.readAllBytes(file);
+        } catch (final NoSuchFileException e) {
+            return null;
+        }
+        return DiscoveryConfigurationLoader.loadFlows(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Reads the modification times and sizes of files. The state changes whenever
+     * one of the files is added, removed or modified.
+     * 
+     * @param files the files
+     * @return state of the files, null for a missing file
+     */
+    @Nonnull
+    private static List<String> readState(@Nonnull final List<Path> files) {
+        final List<String> state = new ArrayList<>(files.size());
+        for (final Path file : files) {
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                state.add(attributes.lastModifiedTime().toMillis() + "/" + attributes.size());
+            } catch (final IOException e) {
+                state.add(null);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Get the lower case hex encoded SHA-1 digest of a key.
+     * 
+     * @param key the key
+     * @return hex encoded digest
+     */
+    @Nonnull
+    static String sha1(@Nonnull final String key) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Section read from the directory.
+     * 
+     * @param flows      flow information, null if there is no valid file
+     * @param state      state of the files the section was read from, empty for
+     *                   the default section
+     * @param generation generation of the section
+     */
+    private record Section(@Nullable DiscoveryFlows flows, @Nonnull List<String> state, long generation) {
+    }
+}
@@ -23,18 +23,21 @@
 package fi.csc.shibboleth.authn.conf;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.collection.Pair;
 
 /**
  * Class is responsible of serializing and de-serializing
@@ -47,15 +50,101 @@ public class DiscoveryFlows {
     @NotEmpty
     private final Map<String, List<DiscoveryAuthenticatingAuthority>> flowsAndAuthorities;
 
+    /** Visible discovery items as flow and encoded authority pairs keyed by flows. */
+    @Nonnull
+    private final Map<String, List<Pair<String, String>>> flowsAndItems;
+
+    /** Authenticating authority information keyed by encoded authority. */
+    @Nonnull
+    private final Map<String, DiscoveryAuthenticatingAuthority> itemAuthorities;
+
+    /** Flow and authenticating authority information keyed by acr, hidden items included. */
+    @Nonnull
+    private final Map<String, Pair<String, DiscoveryAuthenticatingAuthority>> acrItems;
+
     /**
      * Constructor.
      * @param flowsAndAuthorities Authenticating authority information keyed by flows
+     * @throws JsonProcessingException thrown if encoding an authority fails
+     */
+    DiscoveryFlows(@Nonnull @NotEmpty Map<String, List<DiscoveryAuthenticatingAuthority>> flowsAndAuthorities)
+            throws JsonProcessingException {
+        this(flowsAndAuthorities, null);
+    }
+
+    /**
+     * Constructor.
+     * @param flowsAndAuthorities Authenticating authority information keyed by flows
+     * @param tokenCodec codec creating compact authority tokens, null for B64 url encoded authorities
+     * @throws JsonProcessingException thrown if encoding an authority fails
+     */
+    DiscoveryFlows(@Nonnull @NotEmpty Map<String, List<DiscoveryAuthenticatingAuthority>> flowsAndAuthorities,
+            @Nullable final DiscoveryTokenCodec tokenCodec) throws JsonProcessingException {
+        this(flowsAndAuthorities, tokenCodec,
+                tokenCodec != null ? tokenCodec.allocate(countVisible(flowsAndAuthorities)) : 0);
+    }
+
+    /**
+     * Constructor registering the visible authorities to token indexes allocated
+     * beforehand.
+     * 
+     * @param flowsAndAuthorities Authenticating authority information keyed by flows
+     * @param tokenCodec          codec creating compact authority tokens, null for
+     *                            B64 url encoded authorities
+     * @param firstTokenIndex     first of the token indexes allocated for the
+     *                            visible authorities
+     * @throws JsonProcessingException thrown if encoding an authority fails
+     * @see #countVisible(Map)
      */
-    private DiscoveryFlows(@Nonnull @NotEmpty Map<String, List<DiscoveryAuthenticatingAuthority>> flowsAndAuthorities) {
+    DiscoveryFlows(@Nonnull @NotEmpty Map<String, List<DiscoveryAuthenticatingAuthority>> flowsAndAuthorities,
+            @Nullable final DiscoveryTokenCodec tokenCodec, final int firstTokenIndex)
+            throws JsonProcessingException {
         if (flowsAndAuthorities == null || flowsAndAuthorities.isEmpty()) {
             throw new IllegalArgumentException("flowsAndAuthorities must not be null or empty");
         }
-        this.flowsAndAuthorities = flowsAndAuthorities;
+        final Map<String, List<DiscoveryAuthenticatingAuthority>> authorities = new LinkedHashMap<>();
+        final Map<String, List<Pair<String, String>>> items = new LinkedHashMap<>();
+        final Map<String, DiscoveryAuthenticatingAuthority> encodedAuthorities = new HashMap<>();
+        final Map<String, Pair<String, DiscoveryAuthenticatingAuthority>> acrs = new LinkedHashMap<>();
+        int tokenIndex = firstTokenIndex;
+        for (final Entry<String, List<DiscoveryAuthenticatingAuthority>> entry : flowsAndAuthorities.entrySet()) {
+            authorities.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+            final List<Pair<String, String>> flowItems = new ArrayList<>();
+            for (final DiscoveryAuthenticatingAuthority authority : entry.getValue()) {
+                if (authority.getAcr() != null) {
+                    acrs.putIfAbsent(authority.getAcr(), new Pair<>(entry.getKey(), authority));
+                }
+                if (!authority.isHidden()) {
+                    final String encoded = tokenCodec != null ? tokenCodec.register(tokenIndex++, authority)
+                            : authority.toB64UrlEncoded();
+                    flowItems.add(new Pair<>(entry.getKey(), encoded));
+                    encodedAuthorities.put(encoded, authority);
+                }
+            }
+            items.put(entry.getKey(), Collections.unmodifiableList(flowItems));
+        }
+        this.flowsAndAuthorities = Collections.unmodifiableMap(authorities);
+        this.flowsAndItems = Collections.unmodifiableMap(items);
+        this.itemAuthorities = Collections.unmodifiableMap(encodedAuthorities);
+        this.acrItems = Collections.unmodifiableMap(acrs);
+    }
+
+    /**
+     * Counts the visible authorities, the authorities getting a token.
+     * 
+     * @param flowsAndAuthorities Authenticating authority information keyed by flows
+     * @return number of visible authorities
+     */
+    static int countVisible(@Nonnull final Map<String, List<DiscoveryAuthenticatingAuthority>> flowsAndAuthorities) {
+        int count = 0;
+        for (final List<DiscoveryAuthenticatingAuthority> authorities : flowsAndAuthorities.values()) {
+            for (final DiscoveryAuthenticatingAuthority authority : authorities) {
+                if (!authority.isHidden()) {
+                    count++;
+                }
+            }
+        }
+        return count;
     }
 
     
@@ -69,6 +158,58 @@ public class DiscoveryFlows {
         return flowsAndAuthorities;
     }
 
+    /**
+     * Get the visible discovery items of a flow. Each item is a pair of flow id
+     * and B64 url encoded authority or compact authority token, encoded once when
+     * the object is created.
+     * 
+     * @param flowId flow id
+     * @return unmodifiable list of visible items, empty if all items of the flow
+     *         are hidden, or null if flow is not configured
+     */
+    @Nullable
+    public List<Pair<String, String>> getItems(@Nonnull final String flowId) {
+        return flowsAndItems.get(flowId);
+    }
+
+    /**
+     * Get the authenticating authority information of a visible item without
+     * decoding it.
+     * 
+     * @param encodedAuthority B64 url encoded authority or compact authority token
+     *                         of the item
+     * @return authenticating authority information, or null if no visible item
+     *         has the encoded authority
+     */
+    @Nullable
+    public DiscoveryAuthenticatingAuthority getAuthority(@Nullable final String encodedAuthority) {
+        return encodedAuthority != null ? itemAuthorities.get(encodedAuthority) : null;
+    }
+
+    /**
+     * Get the flow and authenticating authority information matching an acr.
+     * Hidden items are included. If several items have the acr, the first one in
+     * configuration order is returned.
+     * 
+     * @param acr acr value
+     * @return pair of flow id and authenticating authority information, or null
+     *         if no item has the acr
+     */
+    @Nullable
+    public Pair<String, DiscoveryAuthenticatingAuthority> getByAcr(@Nullable final String acr) {
+        return acr != null ? acrItems.get(acr) : null;
+    }
+
+    /**
+     * Get the acr values of all items, hidden items included.
+     * 
+     * @return unmodifiable set of acr values in configuration order
+     */
+    @Nonnull
+    public Set<String> getSupportedAcrs() {
+        return acrItems.keySet();
+    }
+
     /**
      * Serializes object to JSON string.
      * 
@@ -78,7 +219,7 @@ public class DiscoveryFlows {
     @Nonnull
     @NotEmpty
     public String toJSON() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this.flowsAndAuthorities);
+        return DiscoveryConfigurationLoader.WRITER.writeValueAsString(this.flowsAndAuthorities);
     }
 
     
@@ -91,8 +232,7 @@ public class DiscoveryFlows {
      */
     @Nonnull
     public static DiscoveryFlows parse(String flowsAndAuthorities) throws Exception {
-        return parse(new ObjectMapper().readValue(flowsAndAuthorities, new TypeReference<Map<String, Object>>() {
-        }));
+        return DiscoveryConfigurationLoader.parseFlows(flowsAndAuthorities);
     }
 
     /**
@@ -106,7 +246,7 @@ public class DiscoveryFlows {
     @Nonnull
     public static DiscoveryFlows parse(Object object) throws Exception {
         if (object instanceof Map<?, ?> authenticatingAuthoritiesPerFlow) {
-            Map<String, List<DiscoveryAuthenticatingAuthority>> path = new HashMap<String, List<DiscoveryAuthenticatingAuthority>>();
+            Map<String, List<DiscoveryAuthenticatingAuthority>> path = new LinkedHashMap<>();
             for (Entry<?, ?> entry : authenticatingAuthoritiesPerFlow.entrySet()) {
                 if (!(entry.getKey() instanceof String)) {
                     throw new Exception("Invalid key: Parsing failed");
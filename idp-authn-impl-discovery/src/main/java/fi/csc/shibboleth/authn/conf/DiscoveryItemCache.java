@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Bounded cache of {@link DiscoveryView}s shared between discovery requests. The
+ * items and their view models are keyed by configuration version, relying party,
+ * its discovery profile and the ordered ids of the potential flows, so a
+ * reloaded configuration never serves stale items.
+ * Least recently used entries are evicted once the maximum size is reached.
+ */
+public class DiscoveryItemCache extends AbstractIdentifiableInitializableComponent {
+
+    /** Maximum number of cached entries. */
+    private long maximumSize;
+
+    /** The cache. */
+    @Nullable
+    private Cache<Key, DiscoveryView> cache;
+
+    /**
+     * Constructor.
+     */
+    public DiscoveryItemCache() {
+        maximumSize = 1000;
+    }
+
+    /**
+     * Set maximum number of cached entries.
+     * 
+     * @param size maximum number of cached entries, zero disables caching
+     */
+    public void setMaximumSize(final long size) {
+        checkSetterPreconditions();
+        maximumSize = Constraint.isGreaterThanOrEqual(0, size, "Maximum size cannot be negative");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Get the cached items and view models, building and caching them if not
+     * present.
+     * 
+     * @param version        configuration version
+     * @param relyingPartyId relying party id
+     * @param flowIds        ordered ids of the potential flows
+     * @param builder        builds the items and view models if not cached
+     * @return the items and view models
+     */
+    @Nonnull
+    public DiscoveryView get(@Nonnull final String version, @Nullable final String relyingPartyId,
+            @Nonnull final List<String> flowIds, @Nonnull final Supplier<DiscoveryView> builder) {
+        return get(version, relyingPartyId, null, flowIds, builder);
+    }
+
+    /**
+     * Get the cached items and view models of a relying party having a discovery
+     * profile, building and caching them if not present.
+     * 
+     * @param version        configuration version
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @param flowIds        ordered ids of the potential flows
+     * @param builder        builds the items and view models if not cached
+     * @return the items and view models
+     */
+    @Nonnull
+    public DiscoveryView get(@Nonnull final String version, @Nullable final String relyingPartyId,
+            @Nullable final String profile, @Nonnull final List<String> flowIds,
+            @Nonnull final Supplier<DiscoveryView> builder) {
+        checkComponentActive();
+        final Key key = new Key(version, relyingPartyId, profile, List.copyOf(flowIds));
+        DiscoveryView view = cache.getIfPresent(key);
+        if (view == null) {
+            view = builder.get();
+            cache.put(key, view);
+        }
+        return view;
+    }
+
+    /**
+     * Get the number of cached entries.
+     * 
+     * @return the number of cached entries
+     */
+    public long size() {
+        return cache != null ? cache.size() : 0;
+    }
+
+    /**
+     * Cache key.
+     * 
+     * @param version        configuration version
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party
+     * @param flowIds        ordered ids of the potential flows
+     */
+    private record Key(@Nonnull String version, @Nullable String relyingPartyId, @Nullable String profile,
+            @Nonnull List<String> flowIds) {
+    }
+}
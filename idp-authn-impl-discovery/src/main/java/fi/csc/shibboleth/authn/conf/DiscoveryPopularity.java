@@ -0,0 +1,460 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Ranks the discovery items of relying parties by how often users select them.
+ * 
+ * Selections are counted per relying party, flow and authority in striped
+ * {@link LongAdder}s, so recording a selection never locks. Once per update
+ * interval a background thread folds the counts into scores decaying
+ * exponentially with the configured half-life, ranks the items of each
+ * relying party by the scores and publishes the ranks as an immutable
+ * snapshot. Items are ordered by the published ranks, most popular first,
+ * items without score keeping their configured order. Each relying party has
+ * a generation that changes only when the order of its items changes, so
+ * views cached by the generation are not rebuilt while the order stays.
+ * 
+ * The number of relying parties and items per relying party counted is bounded,
+ * selections beyond the limits are not counted. Scores decayed below
+ * {@link #MIN_SCORE} are dropped.
+ */
+public class DiscoveryPopularity extends AbstractIdentifiableInitializableComponent {
+
+    /** Score below which an item is not ranked anymore. */
+    public final static double MIN_SCORE = 0.01;
+
+    /** Key of the counts of selections without relying party. */
+    @Nonnull
+    private final static String NO_RELYING_PARTY = "";
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(DiscoveryPopularity.class);
+
+    /** Whether the items are ranked. */
+    private boolean enabled;
+
+    /** Interval between updates of the scores. */
+    @Nonnull
+    private Duration updateInterval;
+
+    /** Time after which a selection counts half. */
+    @Nonnull
+    private Duration halfLife;
+
+    /** Maximum number of relying parties counted. */
+    private int maxRelyingParties;
+
+    /** Maximum number of items counted per relying party. */
+    private int maxItemsPerRelyingParty;
+
+    /** Selections since the last update keyed by relying party, flow and url decoded authority. */
+    @Nonnull
+    private final Map<String, Map<Pair<String, String>, LongAdder>> counts;
+
+    /** Decayed scores keyed by relying party, flow and authority, accessed by updates only. */
+    @Nonnull
+    private final Map<String, Map<Pair<String, String>, Double>> scores;
+
+    /** Published scores and ranks. */
+    @Nonnull
+    private volatile Ranking ranking;
+
+    /** Last generation given to a relying party, accessed by updates only. */
+    private long lastGeneration;
+
+    /** Executor updating the scores. */
+    @Nullable
+    private ScheduledExecutorService updateExecutor;
+
+    /**
+     * Constructor.
+     */
+    public DiscoveryPopularity() {
+        updateInterval = Duration.ofMinutes(5);
+        halfLife = Duration.ofDays(7);
+        maxRelyingParties = 10000;
+        maxItemsPerRelyingParty = 1000;
+        counts = new ConcurrentHashMap<>();
+        scores = new HashMap<>();
+        ranking = new Ranking(Collections.emptyMap());
+    }
+
+    /**
+     * Set whether the items are ranked.
+     * 
+     * @param flag whether the items are ranked
+     */
+    public void setEnabled(final boolean flag) {
+        checkSetterPreconditions();
+        enabled = flag;
+    }
+
+    /**
+     * Whether the items are ranked.
+     * 
+     * @return whether the items are ranked
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set interval between updates of the scores. Zero disables scheduled updates.
+     * 
+     * @param interval interval between updates of the scores
+     */
+    public void setUpdateInterval(@Nonnull final Duration interval) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(interval, "Update interval cannot be null");
+        Constraint.isFalse(interval.isNegative(), "Update interval cannot be negative");
+        updateInterval = interval;
+    }
+
+    /**
+     * Set time after which a selection counts half.
+     * 
+     * @param time time after which a selection counts half
+     */
+    public void setHalfLife(@Nonnull final Duration time) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(time, "Half-life cannot be null");
+        Constraint.isFalse(time.isNegative() || time.isZero(), "Half-life must be positive");
+        halfLife = time;
+    }
+
+    /**
+     * Set maximum number of relying parties counted.
+     * 
+     * @param max maximum number of relying parties counted
+     */
+    public void setMaxRelyingParties(final int max) {
+        checkSetterPreconditions();
+        maxRelyingParties = Constraint.isGreaterThanOrEqual(0, max,
+                "Maximum number of relying parties cannot be negative");
+    }
+
+    /**
+     * Set maximum number of items counted per relying party.
+     * 
+     * @param max maximum number of items counted per relying party
+     */
+    public void setMaxItemsPerRelyingParty(final int max) {
+        checkSetterPreconditions();
+        maxItemsPerRelyingParty = Constraint.isGreaterThanOrEqual(0, max,
+                "Maximum number of items per relying party cannot be negative");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (enabled && !updateInterval.isZero()) {
+            updateExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "DiscoveryPopularityUpdate");
+                thread.setDaemon(true);
+                return thread;
+            });
+            updateExecutor.scheduleWithFixedDelay(this::update, updateInterval.toMillis(),
+                    updateInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (updateExecutor != null) {
+            updateExecutor.shutdownNow();
+            updateExecutor = null;
+        }
+        super.doDestroy();
+    }
+
+    /**
+     * Count a selection of the user.
+     * 
+     * @param relyingPartyId relying party id, may be null
+     * @param flow           selected flow
+     * @param authority      selected authority if any, B64 url encoded if
+     *                       resolved to the configuration, url decoded otherwise
+     */
+    public void selected(@Nullable final String relyingPartyId, @Nonnull final String flow,
+            @Nullable final String authority) {
+        if (!enabled) {
+            return;
+        }
+        final String rpKey = relyingPartyId != null ? relyingPartyId : NO_RELYING_PARTY;
+        Map<Pair<String, String>, LongAdder> rpCounts = counts.get(rpKey);
+        if (rpCounts == null) {
+            if (counts.size() >= maxRelyingParties) {
+                return;
+            }
+            rpCounts = counts.computeIfAbsent(rpKey, k -> new ConcurrentHashMap<>());
+        }
+        final Pair<String, String> key = new Pair<>(flow, authority);
+        LongAdder counter = rpCounts.get(key);
+        if (counter == null) {
+            if (rpCounts.size() >= maxItemsPerRelyingParty) {
+                return;
+            }
+            counter = rpCounts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Decays the scores, folds the selections since the last update into them,
+     * ranks the items and publishes them. A relying party gets a new generation
+     * only if the ranks of its items changed. Counters of items neither selected nor ranked anymore are
+     * removed, a selection counted concurrently to their removal may be lost.
+     * Called by the update thread, public for testing.
+     */
+    public synchronized void update() {
+        try {
+            final double factor = Math.pow(0.5, (double) updateInterval.toMillis() / halfLife.toMillis());
+            scores.values().forEach(rpScores -> rpScores.replaceAll((item, score) -> score * factor));
+            for (final Map.Entry<String, Map<Pair<String, String>, LongAdder>> rpCounts : counts.entrySet()) {
+                for (final Map.Entry<Pair<String, String>, LongAdder> count : rpCounts.getValue().entrySet()) {
+                    final long selections = count.getValue().sumThenReset();
+                    if (selections > 0) {
+                        scores.computeIfAbsent(rpCounts.getKey(), k -> new HashMap<>())
+                                .merge(count.getKey(), (double) selections, Double::sum);
+                    }
+                }
+            }
+            final Map<String, RelyingPartyRanking> previous = ranking.relyingParties();
+            final Map<String, RelyingPartyRanking> published = new HashMap<>(scores.size());
+            final Iterator<Map.Entry<String, Map<Pair<String, String>, Double>>> rps = scores.entrySet().iterator();
+            while (rps.hasNext()) {
+                final Map.Entry<String, Map<Pair<String, String>, Double>> rp = rps.next();
+                rp.getValue().values().removeIf(score -> score < MIN_SCORE);
+                if (rp.getValue().isEmpty()) {
+                    rps.remove();
+                } else {
+                    final Map<Pair<String, String>, Integer> ranks = rank(rp.getValue());
+                    final RelyingPartyRanking last = previous.get(rp.getKey());
+                    published.put(rp.getKey(), new RelyingPartyRanking(
+                            last != null && last.ranks().equals(ranks) ? last.generation() : ++lastGeneration,
+                            Map.copyOf(rp.getValue()), ranks));
+                }
+            }
+            final Iterator<Map.Entry<String, Map<Pair<String, String>, LongAdder>>> idle = counts.entrySet()
+                    .iterator();
+            while (idle.hasNext()) {
+                final Map.Entry<String, Map<Pair<String, String>, LongAdder>> rpCounts = idle.next();
+                final Map<Pair<String, String>, Double> rpScores = scores.getOrDefault(rpCounts.getKey(),
+                        Collections.emptyMap());
+                rpCounts.getValue().entrySet()
+                        .removeIf(count -> count.getValue().sum() == 0 && !rpScores.containsKey(count.getKey()));
+                if (rpCounts.getValue().isEmpty()) {
+                    idle.remove();
+                }
+            }
+            ranking = new Ranking(published);
+        } catch (final RuntimeException e) {
+            log.error("Discovery popularity {}: Update failed", getId(), e);
+        }
+    }
+
+    /**
+     * Ranks the items by their scores, most popular first. Items of equal score
+     * share the rank.
+     * 
+     * @param rpScores scores of the items of a relying party
+     * @return ranks of the items
+     */
+    @Nonnull
+    private static Map<Pair<String, String>, Integer> rank(@Nonnull final Map<Pair<String, String>, Double> rpScores) {
+        final List<Map.Entry<Pair<String, String>, Double>> sorted = new ArrayList<>(rpScores.entrySet());
+        sorted.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
+        final Map<Pair<String, String>, Integer> ranks = new HashMap<>(sorted.size());
+        int rank = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i > 0 && sorted.get(i).getValue() < sorted.get(i - 1).getValue()) {
+                rank = i;
+            }
+            ranks.put(sorted.get(i).getKey(), rank);
+        }
+        return Map.copyOf(ranks);
+    }
+
+    /**
+     * Get the generation of the published order of the items of a relying party.
+     * The generation changes only when the order changes, items ordered for the
+     * relying party are to be reordered once it does.
+     * 
+     * @param relyingPartyId relying party id, may be null
+     * @return the generation of the order, zero if the items are not ranked
+     */
+    public long getGeneration(@Nullable final String relyingPartyId) {
+        final RelyingPartyRanking rpRanking = ranking.relyingParties()
+                .get(relyingPartyId != null ? relyingPartyId : NO_RELYING_PARTY);
+        return rpRanking != null ? rpRanking.generation() : 0;
+    }
+
+    /**
+     * Get the published score of an item.
+     * 
+     * @param relyingPartyId relying party id, may be null
+     * @param flow           flow
+     * @param authority      url decoded authority if any
+     * @return the score, zero if not ranked
+     */
+    public double getScore(@Nullable final String relyingPartyId, @Nonnull final String flow,
+            @Nullable final String authority) {
+        final RelyingPartyRanking rpRanking = ranking.relyingParties()
+                .get(relyingPartyId != null ? relyingPartyId : NO_RELYING_PARTY);
+        final Double score = rpRanking != null ? rpRanking.scores().get(new Pair<>(flow, authority)) : null;
+        return score != null ? score : 0;
+    }
+
+    /**
+     * Orders the items of a relying party by the published ranks, most popular
+     * first. Items of equal rank keep their order.
+     * 
+     * @param relyingPartyId relying party id, may be null
+     * @param items          items with url encoded authorities
+     * @return the ordered items, the given list if nothing is ranked
+     */
+    @Nonnull
+    public List<Pair<String, String>> order(@Nullable final String relyingPartyId,
+            @Nonnull final List<Pair<String, String>> items) {
+        return order(relyingPartyId, items, null);
+    }
+
+    /**
+     * Orders the items of a relying party by the published ranks, most popular
+     * first. Items of equal rank keep their order. Listed authorities, compact
+     * tokens included, are resolved by the flows to the B64 url encoded
+     * authorities the selections are counted with.
+     * 
+     * @param relyingPartyId relying party id, may be null
+     * @param items          items with url encoded authorities or compact tokens
+     * @param flows          flows resolving the listed authorities, null if the
+     *                       items are not from the configuration
+     * @return the ordered items, the given list if nothing is ranked
+     */
+    @Nonnull
+    public List<Pair<String, String>> order(@Nullable final String relyingPartyId,
+            @Nonnull final List<Pair<String, String>> items, @Nullable final DiscoveryFlows flows) {
+        final RelyingPartyRanking rpRanking = ranking.relyingParties()
+                .get(relyingPartyId != null ? relyingPartyId : NO_RELYING_PARTY);
+        if (!enabled || rpRanking == null) {
+            return items;
+        }
+        final List<Ranked> ranked = new ArrayList<>(items.size());
+        for (final Pair<String, String> item : items) {
+            final Integer rank = rpRanking.ranks().get(key(item, flows));
+            ranked.add(new Ranked(item, rank != null ? rank : Integer.MAX_VALUE));
+        }
+        ranked.sort(Comparator.comparingInt(Ranked::rank));
+        final List<Pair<String, String>> ordered = new ArrayList<>(items.size());
+        ranked.forEach(r -> ordered.add(r.item()));
+        return ordered;
+    }
+
+    /**
+     * Get the key an item is counted with. Authorities of the configuration are
+     * counted B64 url encoded, other authorities url decoded the way submitted
+     * selections are.
+     * 
+     * @param item  item with url encoded authority or compact token
+     * @param flows flows resolving the listed authority, may be null
+     * @return item with the authority it is counted with
+     */
+    @Nonnull
+    private static Pair<String, String> key(@Nonnull final Pair<String, String> item,
+            @Nullable final DiscoveryFlows flows) {
+        if (item.getSecond() == null) {
+            return item;
+        }
+        final DiscoveryAuthenticatingAuthority authority = flows != null ? flows.getAuthority(item.getSecond())
+                : null;
+        try {
+            return new Pair<>(item.getFirst(), authority != null ? authority.toB64UrlEncoded()
+                    : URLDecoder.decode(item.getSecond(), StandardCharsets.UTF_8));
+        } catch (final JsonProcessingException | IllegalArgumentException e) {
+            return item;
+        }
+    }
+
+    /**
+     * Published scores and ranks.
+     * 
+     * @param relyingParties scores and ranks keyed by relying party
+     */
+    private record Ranking(@Nonnull Map<String, RelyingPartyRanking> relyingParties) {
+    }
+
+    /**
+     * Published scores and ranks of the items of a relying party.
+     * 
+     * @param generation changed when the ranks change
+     * @param scores     scores keyed by flow and authority
+     * @param ranks      ranks keyed by flow and authority, zero for the most
+     *                   popular
+     */
+    private record RelyingPartyRanking(long generation, @Nonnull Map<Pair<String, String>, Double> scores,
+            @Nonnull Map<Pair<String, String>, Integer> ranks) {
+    }
+
+    /**
+     * Item with its rank.
+     * 
+     * @param item the item
+     * @param rank the rank
+     */
+    private record Ranked(@Nonnull Pair<String, String> item, int rank) {
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Compiled matching of relying party ids to configuration sections. A section
+ * key is either an exact relying party id or one of
+ * <ul>
+ * <li>{@value #PREFIX_KEY_PREFIX}<i>prefix</i> matching relying party ids
+ * starting with the prefix,</li>
+ * <li>{@value #REGEX_KEY_PREFIX}<i>regex</i> matching relying party ids
+ * matching the whole regular expression,</li>
+ * <li>{@value #GROUP_KEY_PREFIX}<i>name</i> matching the members of the named
+ * relying party group, a group not defined has no members.</li>
+ * </ul>
+ * An exact key wins over a group, a group over a prefix and a prefix over a
+ * regular expression. Of several groups and regular expressions the first one
+ * in section order wins, of several prefixes the longest one.
+ * 
+ * Exact keys and group members are compiled to a single map, prefixes to a trie
+ * and regular expressions to one alternation matched in a single pass. Results
+ * of prefix and regular expression matching are memoized in a bounded cache.
+ * Regular expressions are combined to one pattern, so numbered back references
+ * are not supported, use named groups instead.
+ * 
+ * @param <T> type of the section
+ */
+public final class DiscoveryRelyingPartyMatcher<T> {
+
+    /** Prefix of section keys matching relying party ids by prefix. */
+    public final static String PREFIX_KEY_PREFIX = "prefix:";
+
+    /** Prefix of section keys matching relying party ids by regular expression. */
+    public final static String REGEX_KEY_PREFIX = "regex:";
+
+    /** Prefix of section keys matching the members of a relying party group. */
+    public final static String GROUP_KEY_PREFIX = "group:";
+
+    /** Default maximum number of memoized prefix and regular expression matches. */
+    public final static long DEFAULT_MEMO_SIZE = 10000;
+
+    /** Prefix of the names of the capturing groups of the combined pattern. */
+    private final static String ALTERNATIVE_PREFIX = "discoveryRp";
+
+    /** Sections of exact relying party ids and group members. */
+    @Nonnull
+    private final Map<String, T> exactSections;
+
+    /** Root of the prefix trie, null if there are no prefix keys. */
+    @Nullable
+    private final TrieNode<T> prefixes;
+
+    /** Combined pattern of the regular expression keys, null if there are none. */
+    @Nullable
+    private final Pattern combinedPattern;
+
+    /** Names of the alternatives of the combined pattern in section order. */
+    @Nonnull
+    private final List<String> alternatives;
+
+    /** Sections of the regular expression keys in section order. */
+    @Nonnull
+    private final List<T> patternSections;
+
+    /** Memoized results of prefix and regular expression matching, null if disabled. */
+    @Nullable
+    private final Cache<String, Optional<T>> memo;
+
+    /**
+     * Constructor.
+     * 
+     * @param sections sections keyed by exact relying party id or pattern, in
+     *                 section order
+     * @param groups   members of relying party groups keyed by group name
+     * @param memoSize maximum number of memoized prefix and regular expression
+     *                 matches, zero disables memoizing
+     * @throws IllegalArgumentException if a regular expression key is not valid
+     */
+    public DiscoveryRelyingPartyMatcher(@Nonnull final Map<String, T> sections,
+            @Nonnull final Map<String, Set<String>> groups, final long memoSize) {
+        Constraint.isNotNull(sections, "Sections cannot be null");
+        Constraint.isNotNull(groups, "Groups cannot be null");
+        Constraint.isGreaterThanOrEqual(0, memoSize, "Memo size cannot be negative");
+        final Map<String, T> exact = new HashMap<>();
+        final Map<String, T> members = new HashMap<>();
+        TrieNode<T> trie = null;
+        final StringBuilder combined = new StringBuilder();
+        final List<String> names = new ArrayList<>();
+        final List<T> patterns = new ArrayList<>();
+        for (final Map.Entry<String, T> entry : sections.entrySet()) {
+            final String key = entry.getKey();
+            if (key.startsWith(GROUP_KEY_PREFIX)) {
+                groups.getOrDefault(key.substring(GROUP_KEY_PREFIX.length()), Collections.emptySet())
+                        .forEach(member -> members.putIfAbsent(member, entry.getValue()));
+            } else if (key.startsWith(PREFIX_KEY_PREFIX)) {
+                if (trie == null) {
+                    trie = new TrieNode<>();
+                }
+                trie.put(key.substring(PREFIX_KEY_PREFIX.length()), entry.getValue());
+            } else if (key.startsWith(REGEX_KEY_PREFIX)) {
+                final String regex = compile(key).pattern();
+                final String name = ALTERNATIVE_PREFIX + names.size();
+                combined.append(combined.length() > 0 ? "|" : "").append("(?<").append(name).append(">(?:")
+                        .append(regex).append("))");
+                names.add(name);
+                patterns.add(entry.getValue());
+            } else {
+                exact.put(key, entry.getValue());
+            }
+        }
+        members.forEach(exact::putIfAbsent);
+        exactSections = exact;
+        prefixes = trie;
+        combinedPattern = names.isEmpty() ? null : Pattern.compile(combined.toString());
+        alternatives = List.copyOf(names);
+        patternSections = Collections.unmodifiableList(patterns);
+        memo = memoSize > 0 && (trie != null || combinedPattern != null)
+                ? CacheBuilder.newBuilder().maximumSize(memoSize).build()
+                : null;
+    }
+
+    /**
+     * Whether the section key is a pattern key rather than an exact relying party
+     * id.
+     * 
+     * @param key section key
+     * @return whether the key is a prefix, regular expression or group key
+     */
+    public static boolean isPatternKey(@Nonnull final String key) {
+        return key.startsWith(PREFIX_KEY_PREFIX) || key.startsWith(REGEX_KEY_PREFIX)
+                || key.startsWith(GROUP_KEY_PREFIX);
+    }
+
+    /**
+     * Compiles the regular expression of a regular expression key.
+     * 
+     * @param key section key prefixed with {@value #REGEX_KEY_PREFIX}
+     * @return the compiled regular expression
+     * @throws IllegalArgumentException if the regular expression is not valid
+     */
+    @Nonnull
+    static Pattern compile(@Nonnull final String key) {
+        return Pattern.compile(key.substring(REGEX_KEY_PREFIX.length()));
+    }
+
+    /**
+     * Get the section matching the relying party.
+     * 
+     * @param relyingPartyId relying party id
+     * @return the matching section, null if none matches
+     */
+    @Nullable
+    public T match(@Nullable final String relyingPartyId) {
+        if (relyingPartyId == null) {
+            return null;
+        }
+        final T section = exactSections.get(relyingPartyId);
+        if (section != null || memo == null && prefixes == null && combinedPattern == null) {
+            return section;
+        }
+        if (memo == null) {
+            return matchPatterns(relyingPartyId);
+        }
+        Optional<T> memoized = memo.getIfPresent(relyingPartyId);
+        if (memoized == null) {
+            memoized = Optional.ofNullable(matchPatterns(relyingPartyId));
+            memo.put(relyingPartyId, memoized);
+        }
+        return memoized.orElse(null);
+    }
+
+    /**
+     * Matches the relying party against the prefix trie and the combined
+     * regular expression.
+     * 
+     * @param relyingPartyId relying party id
+     * @return the matching section, null if none matches
+     */
+    @Nullable
+    private T matchPatterns(@Nonnull final String relyingPartyId) {
+        if (prefixes != null) {
+            final T section = prefixes.longestPrefixValue(relyingPartyId);
+            if (section != null) {
+                return section;
+            }
+        }
+        if (combinedPattern != null) {
+            final Matcher matcher = combinedPattern.matcher(relyingPartyId);
+            if (matcher.matches()) {
+                for (int i = 0; i < alternatives.size(); i++) {
+                    if (matcher.start(alternatives.get(i)) >= 0) {
+                        return patternSections.get(i);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts relying party groups to immutable sets of members.
+     * 
+     * @param groups members of relying party groups keyed by group name, may be
+     *               null
+     * @return immutable members of relying party groups keyed by group name
+     */
+    @Nonnull
+    public static Map<String, Set<String>> toGroups(@Nullable final Map<String, ? extends Collection<String>> groups) {
+        if (groups == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Set<String>> copy = new HashMap<>();
+        groups.forEach((name, members) -> copy.put(name, Set.copyOf(members)));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Node of the prefix trie.
+     * 
+     * @param <T> type of the section
+     */
+    private static final class TrieNode<T> {
+
+        /** Child nodes keyed by the next character. */
+        @Nonnull
+        private final Map<Character, TrieNode<T>> children = new HashMap<>();
+
+        /** Section of the prefix ending at this node, null if none ends here. */
+        @Nullable
+        private T value;
+
+        /**
+         * Adds a prefix. The first section of a prefix wins.
+         * 
+         * @param prefix  the prefix
+         * @param section section of the prefix
+         */
+        private void put(@Nonnull final String prefix, @Nonnull final T section) {
+            TrieNode<T> node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new TrieNode<>());
+            }
+            if (node.value == null) {
+                node.value = section;
+            }
+        }
+
+        /**
+         * Get the section of the longest prefix of the value.
+         * 
+         * @param value the value
+         * @return section of the longest prefix, null if no prefix matches
+         */
+        @Nullable
+        private T longestPrefixValue(@Nonnull final String value) {
+            TrieNode<T> node = this;
+            T section = node.value;
+            for (int i = 0; i < value.length(); i++) {
+                node = node.children.get(value.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                if (node.value != null) {
+                    section = node.value;
+                }
+            }
+            return section;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Immutable type-ahead search index over the texts of discovery items, such as
+ * names, authority values and localized labels. Texts are normalized to lower
+ * case letters and digits separated by single spaces.
+ * 
+ * Queries of at least three characters are answered from a trigram index:
+ * posting lists of the query trigrams are intersected and the candidates
+ * verified to contain the query. Shorter queries are answered from the sorted
+ * words of the texts by prefix. Matches are ranked by where the query is found,
+ * start of the first text of the item before start of any word before
+ * anywhere, and then by item order.
+ * 
+ * Searching does not allocate once the per thread scratch buffers have grown
+ * to the size of the query and the index.
+ */
+public final class DiscoverySearchIndex {
+
+    /** Score of a match at the start of the first text of the item. */
+    private final static int SCORE_PRIMARY_PREFIX = 3;
+
+    /** Score of a match at the start of a word. */
+    private final static int SCORE_WORD_PREFIX = 2;
+
+    /** Score of a match anywhere. */
+    private final static int SCORE_SUBSTRING = 1;
+
+    /** Separator of the texts of an item. */
+    private final static char TEXT_SEPARATOR = '\n';
+
+    /** Scratch buffers of the searching thread. */
+    @Nonnull
+    private final static ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /** Normalized texts of the items joined by {@link #TEXT_SEPARATOR}, first text first. */
+    @Nonnull
+    private final char[][] itemTexts;
+
+    /** Sorted trigram keys. */
+    @Nonnull
+    private final long[] trigrams;
+
+    /** Start offsets of the posting lists of the trigrams, one extra for the end. */
+    @Nonnull
+    private final int[] postingOffsets;
+
+    /** Sorted item indexes of the trigrams, concatenated. */
+    @Nonnull
+    private final int[] postings;
+
+    /** Sorted words of the texts. */
+    @Nonnull
+    private final String[] words;
+
+    /** Item index of each word. */
+    @Nonnull
+    private final int[] wordItems;
+
+    /** Score of a prefix match of each word. */
+    @Nonnull
+    private final byte[] wordScores;
+
+    /**
+     * Constructor.
+     * 
+     * @param texts texts of each item in item order, the first text of an item
+     *              ranks highest, null texts are skipped
+     */
+    public DiscoverySearchIndex(@Nonnull final List<? extends Collection<String>> texts) {
+        Constraint.isNotNull(texts, "Texts cannot be null");
+        itemTexts = new char[texts.size()][];
+        final Map<Long, List<Integer>> trigramItems = new TreeMap<>();
+        final Map<String, Integer> wordKeys = new HashMap<>();
+        final List<String> wordList = new ArrayList<>();
+        final List<int[]> wordEntries = new ArrayList<>();
+        final StringBuilder joined = new StringBuilder();
+        for (int item = 0; item < itemTexts.length; item++) {
+            joined.setLength(0);
+            boolean primary = true;
+            for (final String text : texts.get(item)) {
+                final String normalized = text != null ? normalize(text) : "";
+                if (normalized.isEmpty()) {
+                    continue;
+                }
+                if (joined.length() > 0) {
+                    joined.append(TEXT_SEPARATOR);
+                }
+                joined.append(normalized);
+                for (int i = 0; i + 3 <= normalized.length(); i++) {
+                    final List<Integer> items = trigramItems.computeIfAbsent(
+                            trigram(normalized.charAt(i), normalized.charAt(i + 1), normalized.charAt(i + 2)),
+                            key -> new ArrayList<>());
+                    if (items.isEmpty() || items.get(items.size() - 1) != item) {
+                        items.add(item);
+                    }
+                }
+                int start = 0;
+                for (final String word : normalized.split(" ")) {
+                    final int score = primary && start == 0 ? SCORE_PRIMARY_PREFIX : SCORE_WORD_PREFIX;
+                    final String key = word + TEXT_SEPARATOR + item;
+                    final Integer existing = wordKeys.get(key);
+                    if (existing == null) {
+                        wordKeys.put(key, wordList.size());
+                        wordList.add(word);
+                        wordEntries.add(new int[] { item, score });
+                    } else if (wordEntries.get(existing)[1] < score) {
+                        wordEntries.get(existing)[1] = score;
+                    }
+                    start += word.length() + 1;
+                }
+                primary = false;
+            }
+            itemTexts[item] = joined.toString().toCharArray();
+        }
+
+        trigrams = new long[trigramItems.size()];
+        postingOffsets = new int[trigramItems.size() + 1];
+        postings = new int[trigramItems.values().stream().mapToInt(List::size).sum()];
+        int index = 0;
+        int offset = 0;
+        for (final Map.Entry<Long, List<Integer>> entry : trigramItems.entrySet()) {
+            trigrams[index] = entry.getKey();
+            postingOffsets[index++] = offset;
+            for (final Integer item : entry.getValue()) {
+                postings[offset++] = item;
+            }
+        }
+        postingOffsets[index] = offset;
+
+        final Integer[] order = new Integer[wordList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            final int compared = wordList.get(a).compareTo(wordList.get(b));
+            return compared != 0 ? compared : Integer.compare(wordEntries.get(a)[0], wordEntries.get(b)[0]);
+        });
+        words = new String[order.length];
+        wordItems = new int[order.length];
+        wordScores = new byte[order.length];
+        for (int i = 0; i < order.length; i++) {
+            words[i] = wordList.get(order[i]);
+            wordItems[i] = wordEntries.get(order[i])[0];
+            wordScores[i] = (byte) wordEntries.get(order[i])[1];
+        }
+    }
+
+    /**
+     * Get the number of indexed items.
+     * 
+     * @return number of indexed items
+     */
+    public int size() {
+        return itemTexts.length;
+    }
+
+    /**
+     * Searches the items matching a query. The best matches, as many as fit the
+     * result array, are written to it in rank order.
+     * 
+     * @param query   the query, normalized as the texts
+     * @param results array receiving the indexes of the matching items
+     * @return number of matches written to the results, zero if the query is
+     *         empty after normalization
+     */
+    public int search(@Nullable final CharSequence query, @Nonnull final int[] results) {
+        if (query == null || results.length == 0) {
+            return 0;
+        }
+        final Scratch scratch = SCRATCH.get();
+        final int length = scratch.normalize(query);
+        if (length == 0) {
+            return 0;
+        }
+        scratch.reset(results.length, itemTexts.length);
+        if (length < 3) {
+            searchWords(scratch, length);
+        } else {
+            searchTrigrams(scratch, length);
+        }
+        System.arraycopy(scratch.topItems, 0, results, 0, scratch.topCount);
+        return scratch.topCount;
+    }
+
+    /**
+     * Collects the items having a word starting with a short query.
+     * 
+     * @param scratch scratch buffers holding the normalized query
+     * @param length  length of the normalized query
+     */
+    private void searchWords(@Nonnull final Scratch scratch, final int length) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (compare(words[middle], scratch.query, length) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < words.length && startsWith(words[i], scratch.query, length); i++) {
+            scratch.offer(wordItems[i], wordScores[i]);
+        }
+    }
+
+    /**
+     * Collects the items containing a query of at least three characters.
+     * 
+     * @param scratch scratch buffers holding the normalized query
+     * @param length  length of the normalized query
+     */
+    private void searchTrigrams(@Nonnull final Scratch scratch, final int length) {
+        final char[] query = scratch.query;
+        int shortest = -1;
+        for (int i = 0; i + 3 <= length; i++) {
+            final int index = Arrays.binarySearch(trigrams, trigram(query[i], query[i + 1], query[i + 2]));
+            if (index < 0) {
+                return;
+            }
+            if (shortest < 0 || postingLength(index) < postingLength(shortest)) {
+                shortest = index;
+            }
+        }
+        for (int p = postingOffsets[shortest]; p < postingOffsets[shortest + 1]; p++) {
+            final int item = postings[p];
+            if (hasAllTrigrams(item, query, length)) {
+                final int score = score(itemTexts[item], query, length);
+                if (score > 0) {
+                    scratch.offer(item, score);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the posting lists of all query trigrams contain an item.
+     * 
+     * @param item   item index
+     * @param query  normalized query
+     * @param length length of the normalized query
+     * @return true if all trigrams of the query are found in the item
+     */
+    private boolean hasAllTrigrams(final int item, @Nonnull final char[] query, final int length) {
+        for (int i = 0; i + 3 <= length; i++) {
+            final int index = Arrays.binarySearch(trigrams, trigram(query[i], query[i + 1], query[i + 2]));
+            if (Arrays.binarySearch(postings, postingOffsets[index], postingOffsets[index + 1], item) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the length of a posting list.
+     * 
+     * @param index index of the trigram
+     * @return number of items having the trigram
+     */
+    private int postingLength(final int index) {
+        return postingOffsets[index + 1] - postingOffsets[index];
+    }
+
+    /**
+     * Scores the best occurrence of a query in the texts of an item.
+     * 
+     * @param text   normalized texts of the item
+     * @param query  normalized query
+     * @param length length of the normalized query
+     * @return score of the best occurrence, zero if the query is not found
+     */
+    private static int score(@Nonnull final char[] text, @Nonnull final char[] query, final int length) {
+        int best = 0;
+        for (int start = 0; start + length <= text.length && best < SCORE_PRIMARY_PREFIX; start++) {
+            if (regionMatches(text, start, query, length)) {
+                final int score = start == 0 ? SCORE_PRIMARY_PREFIX
+                        : text[start - 1] == ' ' || text[start - 1] == TEXT_SEPARATOR ? SCORE_WORD_PREFIX
+                                : SCORE_SUBSTRING;
+                best = Math.max(best, score);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Whether a text contains the query at an offset.
+     * 
+     * @param text   the text
+     * @param start  offset in the text
+     * @param query  normalized query
+     * @param length length of the normalized query
+     * @return true if the query is found at the offset
+     */
+    private static boolean regionMatches(@Nonnull final char[] text, final int start, @Nonnull final char[] query,
+            final int length) {
+        for (int i = 0; i < length; i++) {
+            if (text[start + i] != query[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares a word to a query.
+     * 
+     * @param word   the word
+     * @param query  normalized query
+     * @param length length of the normalized query
+     * @return negative, zero or positive as the word sorts before, equal or after
+     *         the query
+     */
+    private static int compare(@Nonnull final String word, @Nonnull final char[] query, final int length) {
+        final int common = Math.min(word.length(), length);
+        for (int i = 0; i < common; i++) {
+            final int compared = Character.compare(word.charAt(i), query[i]);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return word.length() - length;
+    }
+
+    /**
+     * Whether a word starts with a query.
+     * 
+     * @param word   the word
+     * @param query  normalized query
+     * @param length length of the normalized query
+     * @return true if the word starts with the query
+     */
+    private static boolean startsWith(@Nonnull final String word, @Nonnull final char[] query, final int length) {
+        if (word.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != query[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Packs three characters into a trigram key.
+     * 
+     * @param first  first character
+     * @param second second character
+     * @param third  third character
+     * @return trigram key
+     */
+    private static long trigram(final char first, final char second, final char third) {
+        return (long) first << 32 | (long) second << 16 | third;
+    }
+
+    /**
+     * Normalizes a text to lower case letters and digits separated by single
+     * spaces.
+     * 
+     * @param text the text
+     * @return normalized text
+     */
+    @Nonnull
+    static String normalize(@Nonnull final CharSequence text) {
+        final StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+            } else if (normalized.length() > 0 && normalized.charAt(normalized.length() - 1) != ' ') {
+                normalized.append(' ');
+            }
+        }
+        final int end = normalized.length();
+        return end > 0 && normalized.charAt(end - 1) == ' ' ? normalized.substring(0, end - 1)
+                : normalized.toString();
+    }
+
+    /**
+     * Scratch buffers of a searching thread, grown on demand and reused.
+     */
+    private static final class Scratch {
+
+        /** Normalized query. */
+        @Nonnull
+        private char[] query = new char[64];
+
+        /** Query stamp of each item, the item is collected if equal to the current stamp. */
+        @Nonnull
+        private int[] collected = new int[0];
+
+        /** Current query stamp. */
+        private int stamp;
+
+        /** Items of the best matches in rank order. */
+        @Nonnull
+        private int[] topItems = new int[0];
+
+        /** Scores of the best matches. */
+        @Nonnull
+        private int[] topScores = new int[0];
+
+        /** Maximum number of best matches. */
+        private int limit;
+
+        /** Number of best matches collected. */
+        private int topCount;
+
+        /**
+         * Normalizes the query into the query buffer, as
+         * {@link DiscoverySearchIndex#normalize(CharSequence)}.
+         * 
+         * @param text the query
+         * @return length of the normalized query
+         */
+        private int normalize(@Nonnull final CharSequence text) {
+            if (query.length < text.length()) {
+                query = new char[text.length()];
+            }
+            int length = 0;
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    query[length++] = Character.toLowerCase(c);
+                } else if (length > 0 && query[length - 1] != ' ') {
+                    query[length++] = ' ';
+                }
+            }
+            return length > 0 && query[length - 1] == ' ' ? length - 1 : length;
+        }
+
+        /**
+         * Prepares the buffers for a query.
+         * 
+         * @param maximum   maximum number of best matches
+         * @param itemCount number of items in the index
+         */
+        private void reset(final int maximum, final int itemCount) {
+            if (topItems.length < maximum) {
+                topItems = new int[maximum];
+                topScores = new int[maximum];
+            }
+            if (collected.length < itemCount) {
+                collected = new int[itemCount];
+                stamp = 0;
+            }
+            if (++stamp == 0) {
+                Arrays.fill(collected, 0);
+                stamp = 1;
+            }
+            limit = maximum;
+            topCount = 0;
+        }
+
+        /**
+         * Offers a match, kept if it ranks among the best. An item offered again
+         * keeps the better of its scores.
+         * 
+         * @param item  item index
+         * @param score score of the match
+         */
+        private void offer(final int item, final int score) {
+            if (collected[item] == stamp) {
+                upgrade(item, score);
+                return;
+            }
+            collected[item] = stamp;
+            insert(item, score);
+        }
+
+        /**
+         * Raises the score of an item already collected.
+         * 
+         * @param item  item index
+         * @param score score of the new match
+         */
+        private void upgrade(final int item, final int score) {
+            for (int i = 0; i < topCount; i++) {
+                if (topItems[i] == item) {
+                    if (topScores[i] < score) {
+                        System.arraycopy(topItems, i + 1, topItems, i, topCount - i - 1);
+                        System.arraycopy(topScores, i + 1, topScores, i, topCount - i - 1);
+                        topCount--;
+                        insert(item, score);
+                    }
+                    return;
+                }
+            }
+            // Dropped from the best matches earlier, it may rank now with a better score.
+            insert(item, score);
+        }
+
+        /**
+         * Inserts a match in rank order if it ranks among the best.
+         * 
+         * @param item  item index
+         * @param score score of the match
+         */
+        private void insert(final int item, final int score) {
+            int position = topCount;
+            while (position > 0 && (topScores[position - 1] < score
+                    || topScores[position - 1] == score && topItems[position - 1] > item)) {
+                position--;
+            }
+            if (position >= limit) {
+                return;
+            }
+            final int end = Math.min(topCount, limit - 1);
+            System.arraycopy(topItems, position, topItems, position + 1, end - position);
+            System.arraycopy(topScores, position, topScores, position + 1, end - position);
+            topItems[position] = item;
+            topScores[position] = score;
+            topCount = end + 1;
+        }
+    }
+}
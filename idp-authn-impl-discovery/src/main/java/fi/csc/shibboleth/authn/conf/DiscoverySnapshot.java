@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+
+/**
+ * Immutable snapshot of discovery configuration sources. A request should
+ * fetch the snapshot once and use it throughout so that it sees a consistent
+ * configuration even if a newer one is loaded meanwhile.
+ */
+public final class DiscoverySnapshot {
+
+    /** Snapshot without any configuration. */
+    @Nonnull
+    public final static DiscoverySnapshot EMPTY = new DiscoverySnapshot("empty", Collections.emptyMap(), null);
+
+    /** Version derived from the content of the sources. */
+    @Nonnull
+    @NotEmpty
+    private final String version;
+
+    /** Authorities of authority properties keyed by property name. */
+    @Nonnull
+    private final Map<String, List<String>> authorityProperties;
+
+    /** JSON based alternative configuration to authority properties. */
+    @Nullable
+    private final DiscoveryConfiguration configuration;
+
+    /**
+     * Compiled matching of relying parties to the authority properties of pattern
+     * keys, authorities keyed by flow id.
+     */
+    @Nonnull
+    private final DiscoveryRelyingPartyMatcher<Map<String, List<String>>> propertyMatcher;
+
+    /**
+     * Constructor.
+     * 
+     * @param version             version derived from the content of the
+     *                            sources
+     * @param authorityProperties authorities of authority properties keyed by
+     *                            property name
+     * @param configuration       JSON based alternative configuration to
+     *                            authority properties
+     */
+    public DiscoverySnapshot(@Nonnull @NotEmpty final String version,
+            @Nonnull final Map<String, List<String>> authorityProperties,
+            @Nullable final DiscoveryConfiguration configuration) {
+        this(version, authorityProperties, configuration, Collections.emptyMap(),
+                DiscoveryRelyingPartyMatcher.DEFAULT_MEMO_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param version             version derived from the content of the
+     *                            sources
+     * @param authorityProperties authorities of authority properties keyed by
+     *                            property name
+     * @param configuration       JSON based alternative configuration to
+     *                            authority properties
+     * @param groups              members of relying party groups keyed by group
+     *                            name
+     * @param memoSize            maximum number of memoized relying party
+     *                            matches, zero disables memoizing
+     */
+    public DiscoverySnapshot(@Nonnull @NotEmpty final String version,
+            @Nonnull final Map<String, List<String>> authorityProperties,
+            @Nullable final DiscoveryConfiguration configuration, @Nonnull final Map<String, Set<String>> groups,
+            final long memoSize) {
+        this.version = version;
+        this.authorityProperties = Map.copyOf(authorityProperties);
+        this.configuration = configuration;
+        final Map<String, Map<String, List<String>>> patternProperties = new TreeMap<>();
+        for (final Map.Entry<String, List<String>> entry : this.authorityProperties.entrySet()) {
+            final String key = entry.getKey();
+            final int separator = key.lastIndexOf('.');
+            if (separator > 0 && DiscoveryRelyingPartyMatcher.isPatternKey(key)) {
+                patternProperties.computeIfAbsent(key.substring(0, separator), k -> new HashMap<>())
+                        .put(key.substring(separator + 1), entry.getValue());
+            }
+        }
+        propertyMatcher = new DiscoveryRelyingPartyMatcher<>(patternProperties, groups, memoSize);
+    }
+
+    /**
+     * Get version derived from the content of the sources.
+     * 
+     * @return version derived from the content of the sources
+     */
+    @Nonnull
+    @NotEmpty
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Get authorities of an authority property.
+     * 
+     * @param key property name, relying party id and flow id separated by dot or
+     *            just flow id
+     * @return authorities of the property, null if not set
+     */
+    @Nullable
+    public List<String> getAuthorityProperty(@Nonnull final String key) {
+        return authorityProperties.get(key);
+    }
+
+    /**
+     * Get authorities of a flow for a relying party. The property of the exact
+     * relying party id wins over the properties of pattern keys matched as
+     * described in {@link DiscoveryRelyingPartyMatcher}, which win over the
+     * property of the flow id alone. Properties do not define an order, so of
+     * several matching groups or regular expressions the one with the lowest key
+     * in string order wins.
+     * 
+     * @param relyingPartyId relying party id
+     * @param flowId         flow id
+     * @return authorities of the flow, null if not set
+     */
+    @Nullable
+    public List<String> getAuthorityProperty(@Nullable final String relyingPartyId, @Nonnull final String flowId) {
+        return getAuthorityProperty(relyingPartyId, null, flowId);
+    }
+
+    /**
+     * Get authorities of a flow for a relying party having a discovery profile.
+     * The property {@value DiscoveryConfiguration#PROFILE_KEY_PREFIX}<i>profile</i>
+     * and flow id separated by dot wins over the properties matched by relying
+     * party id.
+     * 
+     * @param relyingPartyId relying party id
+     * @param profile        discovery profile of the relying party, may be null
+     * @param flowId         flow id
+     * @return authorities of the flow, null if not set
+     */
+    @Nullable
+    public List<String> getAuthorityProperty(@Nullable final String relyingPartyId, @Nullable final String profile,
+            @Nonnull final String flowId) {
+        List<String> authorities = profile != null
+                ? authorityProperties.get(DiscoveryConfiguration.PROFILE_KEY_PREFIX + profile + "." + flowId)
+                : null;
+        if (authorities == null && relyingPartyId != null) {
+            authorities = authorityProperties.get(relyingPartyId + "." + flowId);
+        }
+        if (authorities == null) {
+            final Map<String, List<String>> section = propertyMatcher.match(relyingPartyId);
+            authorities = section != null ? section.get(flowId) : null;
+        }
+        return authorities != null ? authorities : authorityProperties.get(flowId);
+    }
+
+    /**
+     * Get JSON based alternative configuration to authority properties.
+     * 
+     * @return JSON based alternative configuration to authority properties, null
+     *         if not configured
+     */
+    @Nullable
+    public DiscoveryConfiguration getConfiguration() {
+        return configuration;
+    }
+}
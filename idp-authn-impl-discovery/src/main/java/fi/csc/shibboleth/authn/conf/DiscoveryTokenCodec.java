@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+
+/**
+ * Compact authority tokens used as the authority of discovery items in place of
+ * B64 url encoded JSON. A token is the configuration version and the index of
+ * the item, for instance <code>1a2b3c4d.17</code>, optionally followed by a
+ * truncated HMAC of the two. Tokens resolve to the authority instances created
+ * when the configuration was parsed, so no JSON is parsed on selection.
+ * 
+ * Tokens are registered while the configuration is parsed and only resolved
+ * after the configuration has been published.
+ */
+public final class DiscoveryTokenCodec {
+
+    /** MAC algorithm of the tokens. */
+    @Nonnull
+    @NotEmpty
+    public final static String MAC_ALGORITHM = "HmacSHA256";
+
+    /** Minimum length of the signing key in bytes. */
+    public final static int MIN_SIGNING_KEY_LENGTH = 32;
+
+    /** Length of the truncated MAC in bytes. */
+    private final static int MAC_LENGTH = 8;
+
+    /** Separator of the token parts. */
+    private final static char SEPARATOR = '.';
+
+    /** Configuration version the tokens are bound to. */
+    @Nonnull
+    @NotEmpty
+    private final String version;
+
+    /** Key used to sign the tokens, null if tokens are not signed. */
+    @Nullable
+    private final SecretKeySpec signingKey;
+
+    /** Registered authorities, token index is the index of the list. */
+    @Nonnull
+    private final List<DiscoveryAuthenticatingAuthority> authorities;
+
+    /**
+     * Constructor.
+     * 
+     * @param configurationVersion configuration version the tokens are bound to
+     * @param key                  key used to sign the tokens, null if tokens are
+     *                             not signed
+     * @throws IllegalArgumentException if the version or key is not valid
+     */
+    public DiscoveryTokenCodec(@Nonnull @NotEmpty final String configurationVersion,
+            @Nullable final SecretKeySpec key) {
+        if (configurationVersion == null || configurationVersion.isEmpty()
+                || configurationVersion.indexOf(SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("version must not be null, empty or contain separator");
+        }
+        if (key != null && key.getEncoded().length < MIN_SIGNING_KEY_LENGTH) {
+            throw new IllegalArgumentException("key must be at least " + MIN_SIGNING_KEY_LENGTH + " bytes");
+        }
+        version = configurationVersion;
+        signingKey = key;
+        authorities = new ArrayList<>();
+    }
+
+    /**
+     * Get the configuration version the tokens are bound to.
+     * 
+     * @return configuration version the tokens are bound to
+     */
+    @Nonnull
+    @NotEmpty
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the number of registered authorities.
+     * 
+     * @return number of registered authorities
+     */
+    public synchronized int size() {
+        return authorities.size();
+    }
+
+    /**
+     * Registers an authority and creates a token for it.
+     * 
+     * @param authority authority to register
+     * @return token of the authority
+     */
+    @Nonnull
+    @NotEmpty
+    String register(@Nonnull final DiscoveryAuthenticatingAuthority authority) {
+        return register(allocate(1), authority);
+    }
+
+    /**
+     * Allocates consecutive token indexes. Allocating in configuration order
+     * before registering keeps the tokens independent of the order authorities
+     * are registered in, so the same configuration always gets the same tokens.
+     * 
+     * @param count number of indexes to allocate
+     * @return first allocated index
+     */
+    synchronized int allocate(final int count) {
+        final int first = authorities.size();
+        for (int i = 0; i < count; i++) {
+            authorities.add(null);
+        }
+        return first;
+    }
+
+    /**
+     * Registers an authority to an allocated index and creates a token for it.
+     * 
+     * @param index     allocated index
+     * @param authority authority to register
+     * @return token of the authority
+     */
+    @Nonnull
+    @NotEmpty
+    String register(final int index, @Nonnull final DiscoveryAuthenticatingAuthority authority) {
+        synchronized (this) {
+            authorities.set(index, authority);
+        }
+        final String token = version + SEPARATOR + index;
+        return signingKey != null ? token + SEPARATOR + sign(token) : token;
+    }
+
+    /**
+     * Resolves a token to the registered authority. Tokens of other versions,
+     * unknown indexes and tokens with missing or invalid MAC are not resolved.
+     * 
+     * @param token token to resolve
+     * @return registered authority, or null if the token is not resolved
+     */
+    @Nullable
+    public DiscoveryAuthenticatingAuthority resolve(@Nullable final String token) {
+        if (token == null || token.length() <= version.length() || !token.startsWith(version)
+                || token.charAt(version.length()) != SEPARATOR) {
+            return null;
+        }
+        final int end = token.indexOf(SEPARATOR, version.length() + 1);
+        final int indexEnd = end < 0 ? token.length() : end;
+        if (indexEnd == version.length() + 1 || indexEnd - version.length() - 1 > 9) {
+            return null;
+        }
+        int index = 0;
+        for (int i = version.length() + 1; i < indexEnd; i++) {
+            final char c = token.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            index = index * 10 + c - '0';
+        }
+        if (signingKey != null) {
+            if (end < 0 || !MessageDigest.isEqual(sign(token.substring(0, end)).getBytes(StandardCharsets.US_ASCII),
+                    token.substring(end + 1).getBytes(StandardCharsets.US_ASCII))) {
+                return null;
+            }
+        } else if (end >= 0) {
+            return null;
+        }
+        return index < authorities.size() ? authorities.get(index) : null;
+    }
+
+    /**
+     * Calculates the truncated MAC of the token.
+     * 
+     * @param token token without MAC
+     * @return B64 url encoded truncated MAC
+     */
+    @Nonnull
+    private String sign(@Nonnull final String token) {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(signingKey);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    Arrays.copyOf(mac.doFinal(token.getBytes(StandardCharsets.US_ASCII)), MAC_LENGTH));
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("Signing token failed", e);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import fi.csc.shibboleth.authn.DiscoveryItems;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Immutable discovery items together with their precomputed view models. The
+ * JSON representation of the view models, its entity tag and the search indexes
+ * of the view models are built on first use and shared as the view itself.
+ */
+public final class DiscoveryView {
+
+    /** Maximum number of languages having a search index with localized labels. */
+    private final static int MAX_SEARCH_LANGUAGES = 16;
+
+    /** Languages that may have a search index with localized labels, the ISO 639 language codes. */
+    @Nonnull
+    private final static Set<String> SEARCH_LANGUAGES = Set.of(Locale.getISOLanguages());
+
+    /** Key of the search index without localized labels. */
+    @Nonnull
+    private final static String NO_LANGUAGE = "";
+
+    /** The items. */
+    @Nonnull
+    private final DiscoveryItems items;
+
+    /** The view models of the items in the same order. */
+    @Nonnull
+    private final List<DiscoveryViewItem> viewItems;
+
+    /** Start of the JSON representation up to the first item. */
+    @Nonnull
+    private final static byte[] JSON_PREFIX = "{\"items\":[".getBytes(StandardCharsets.UTF_8);
+
+    /** JSON representation of the view models with the item offsets, built on first use. */
+    @Nullable
+    private volatile JsonItems jsonItems;
+
+    /** Strong entity tag of the JSON representation, built on first use. */
+    @Nullable
+    private volatile String entityTag;
+
+    /** View models keyed by flow and selected authority, built on first use. */
+    @Nullable
+    private volatile Map<Pair<String, String>, DiscoveryViewItem> selectableItems;
+
+    /**
+     * Search indexes keyed by language of the localized labels, built on first
+     * use, the least recently used evicted beyond {@link #MAX_SEARCH_LANGUAGES}.
+     */
+    @Nonnull
+    private final Cache<String, DiscoverySearchIndex> searchIndexes;
+
+    /**
+     * Constructor.
+     * 
+     * @param discoveryItems the items
+     * @param views          the view models of the items
+     */
+    public DiscoveryView(@Nonnull final DiscoveryItems discoveryItems, @Nonnull final List<DiscoveryViewItem> views) {
+        items = Constraint.isNotNull(discoveryItems, "Items cannot be null");
+        viewItems = List.copyOf(Constraint.isNotNull(views, "View items cannot be null"));
+        searchIndexes = CacheBuilder.newBuilder().maximumSize(MAX_SEARCH_LANGUAGES).build();
+    }
+
+    /**
+     * Get the items.
+     * 
+     * @return the items
+     */
+    @Nonnull
+    public DiscoveryItems getItems() {
+        return items;
+    }
+
+    /**
+     * Get the view model of a selected item. The authority is matched in the url
+     * decoded form it is submitted in, and as the B64 url encoded authenticating
+     * authority of the item, the form independent of the configuration version
+     * selections are remembered in.
+     * 
+     * @param flow      selected flow
+     * @param authority selected authority, null for items without authority
+     * @return the view model of the item, null if not listed
+     */
+    @Nullable
+    public DiscoveryViewItem getViewItem(@Nullable final String flow, @Nullable final String authority) {
+        Map<Pair<String, String>, DiscoveryViewItem> lookup = selectableItems;
+        if (lookup == null) {
+            lookup = buildSelectableItems();
+            selectableItems = lookup;
+        }
+        return flow != null ? lookup.get(new Pair<>(flow, authority)) : null;
+    }
+
+    /**
+     * Builds the lookup of view models by flow and selected authority.
+     * 
+     * @return the lookup of view models by flow and selected authority
+     */
+    @Nonnull
+    private Map<Pair<String, String>, DiscoveryViewItem> buildSelectableItems() {
+        final Map<Pair<String, String>, DiscoveryViewItem> lookup = new HashMap<>();
+        for (final DiscoveryViewItem item : viewItems) {
+            if (item.getAuthority() == null) {
+                lookup.putIfAbsent(new Pair<>(item.getFlow(), null), item);
+                continue;
+            }
+            try {
+                lookup.putIfAbsent(new Pair<>(item.getFlow(),
+                        URLDecoder.decode(item.getAuthority(), StandardCharsets.UTF_8)), item);
+            } catch (final IllegalArgumentException e) {
+                // Authority not in url encoded form cannot be matched as submitted.
+            }
+            if (item.getAuthenticatingAuthority() != null) {
+                try {
+                    lookup.putIfAbsent(
+                            new Pair<>(item.getFlow(), item.getAuthenticatingAuthority().toB64UrlEncoded()), item);
+                } catch (final JsonProcessingException e) {
+                    // Authority that cannot be encoded is matched as submitted only.
+                }
+            }
+        }
+        return Map.copyOf(lookup);
+    }
+
+    /**
+     * Get the unmodifiable list of view models of the items.
+     * 
+     * @return the unmodifiable list of view models of the items
+     */
+    @Nonnull
+    public List<DiscoveryViewItem> getViewItems() {
+        return viewItems;
+    }
+
+    /**
+     * Get the JSON representation of the view models, an object with the array
+     * <code>items</code> of the view models in order. Each item has the flow,
+     * authority, message key, default message and query fragment, and the name,
+     * image path, type and value of its authority if configured. The
+     * representation is built once and must not be modified.
+     * 
+     * @return UTF-8 encoded JSON representation of the view models
+     */
+    @Nonnull
+    public byte[] getJson() {
+        return getJsonItems().json();
+    }
+
+    /**
+     * Get the JSON representation of a page of the view models, as
+     * {@link #getJson()} but listing the items of the page only and having the
+     * number of all items as <code>total</code>. The items are copied from the
+     * shared representation without serializing them again.
+     * 
+     * @param offset index of the first item of the page
+     * @param limit  maximum number of items on the page
+     * @return UTF-8 encoded JSON representation of the page
+     */
+    @Nonnull
+    public byte[] getJsonPage(final int offset, final int limit) {
+        Constraint.isGreaterThanOrEqual(0, offset, "Offset cannot be negative");
+        Constraint.isGreaterThanOrEqual(0, limit, "Limit cannot be negative");
+        final JsonItems content = getJsonItems();
+        final int from = Math.min(offset, viewItems.size());
+        final int to = (int) Math.min((long) from + limit, viewItems.size());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                JSON_PREFIX.length + 32 + (from < to ? content.ends()[to - 1] - content.starts()[from] : 0));
+        out.writeBytes(JSON_PREFIX);
+        if (from < to) {
+            out.write(content.json(), content.starts()[from], content.ends()[to - 1] - content.starts()[from]);
+        }
+        out.writeBytes(("],\"total\":" + viewItems.size() + "}").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    /**
+     * Get the strong entity tag of the JSON representation. The tag is derived
+     * from the digest of the representation, so it only changes when the items
+     * listed for the relying party change, not on every configuration reload.
+     * 
+     * @return quoted entity tag
+     */
+    @Nonnull
+    public String getEntityTag() {
+        String tag = entityTag;
+        if (tag == null) {
+            try {
+                final byte[] digest = MessageDigest.getInstance("SHA-256").digest(getJson());
+                tag = "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            entityTag = tag;
+        }
+        return tag;
+    }
+
+    /**
+     * Get the search index of the view models. The indexed texts of an item are
+     * its localized label, if any, its default message and the value of its
+     * authority. The index is built once per language of the locale, labels are
+     * looked up for ISO 639 languages only and the indexes of a small number of
+     * recently used languages are kept.
+     * 
+     * @param locale      locale of the localized labels, null for none
+     * @param labelLookup resolves the localized label of an item in the locale,
+     *                    null for none
+     * @return the search index, item indexes refer to {@link #getViewItems()}
+     */
+    @Nonnull
+    public DiscoverySearchIndex getSearchIndex(@Nullable final Locale locale,
+            @Nullable final BiFunction<DiscoveryViewItem, Locale, String> labelLookup) {
+        final String language = locale != null && labelLookup != null ? locale.getLanguage() : null;
+        final String key = language != null && SEARCH_LANGUAGES.contains(language) ? language : NO_LANGUAGE;
+        final DiscoverySearchIndex index = searchIndexes.getIfPresent(key);
+        if (index != null) {
+            return index;
+        }
+        return searchIndexes.asMap().computeIfAbsent(key, indexKey -> buildSearchIndex(
+                NO_LANGUAGE.equals(indexKey) ? null : item -> labelLookup.apply(item, locale)));
+    }
+
+    /**
+     * Get the JSON representation of some of the view models, as
+     * {@link #getJson()} but listing the given items only.
+     * 
+     * @param indexes indexes of the items in {@link #getViewItems()}
+     * @param count   number of indexes to use
+     * @return UTF-8 encoded JSON representation of the view models
+     */
+    @Nonnull
+    public byte[] getJson(@Nonnull final int[] indexes, final int count) {
+        final JsonItems content = getJsonItems();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(JSON_PREFIX.length + 2 + count * 256);
+        out.writeBytes(JSON_PREFIX);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            final int start = content.starts()[indexes[i]];
+            out.write(content.json(), start, content.ends()[indexes[i]] - start);
+        }
+        out.write(']');
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds the search index of the view models.
+     * 
+     * @param labelLookup resolves the localized label of an item, null for none
+     * @return the search index
+     */
+    @Nonnull
+    private DiscoverySearchIndex buildSearchIndex(@Nullable final Function<DiscoveryViewItem, String> labelLookup) {
+        final List<List<String>> texts = new ArrayList<>(viewItems.size());
+        for (final DiscoveryViewItem item : viewItems) {
+            final DiscoveryAuthenticatingAuthority authority = item.getAuthenticatingAuthority();
+            texts.add(Arrays.asList(labelLookup != null ? labelLookup.apply(item) : null, item.getDefaultMessage(),
+                    authority != null ? authority.getValue() : null));
+        }
+        return new DiscoverySearchIndex(texts);
+    }
+
+    /**
+     * Get the JSON representation, serializing it on first use.
+     * 
+     * @return JSON representation with the item offsets
+     */
+    @Nonnull
+    private JsonItems getJsonItems() {
+        JsonItems content = jsonItems;
+        if (content == null) {
+            content = toJson();
+            jsonItems = content;
+        }
+        return content;
+    }
+
+    /**
+     * Serializes the view models, recording where each item is in the
+     * representation.
+     * 
+     * @return JSON representation with the item offsets
+     */
+    @Nonnull
+    private JsonItems toJson() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(128 + viewItems.size() * 256);
+        final int[] starts = new int[viewItems.size()];
+        final int[] ends = new int[viewItems.size()];
+        try (JsonGenerator generator = DiscoveryConfigurationLoader.WRITER.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("items");
+            for (int i = 0; i < starts.length; i++) {
+                final DiscoveryViewItem item = viewItems.get(i);
+                generator.flush();
+                // The separator is written with the start of the item.
+                starts[i] = out.size() + (i > 0 ? 1 : 0);
+                generator.writeStartObject();
+                generator.writeStringField("flow", item.getFlow());
+                writeOptionalField(generator, "authority", item.getAuthority());
+                writeOptionalField(generator, DiscoveryAuthenticatingAuthority.NAME_KEY, item.getName());
+                final DiscoveryAuthenticatingAuthority authority = item.getAuthenticatingAuthority();
+                if (authority != null) {
+                    writeOptionalField(generator, DiscoveryAuthenticatingAuthority.AA_TYPE_KEY, authority.getType());
+                    writeOptionalField(generator, DiscoveryAuthenticatingAuthority.AA_VALUE_KEY,
+                            authority.getValue());
+                }
+                generator.writeStringField("messageKey", item.getMessageKey());
+                generator.writeStringField("defaultMessage", item.getDefaultMessage());
+                writeOptionalField(generator, "imagePath", item.getImagePath());
+                generator.writeStringField("queryFragment", item.getQueryFragment());
+                generator.writeEndObject();
+                generator.flush();
+                ends[i] = out.size();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new JsonItems(out.toByteArray(), starts, ends);
+    }
+
+    /**
+     * Writes a string field unless the value is null.
+     * 
+     * @param generator JSON generator
+     * @param name      field name
+     * @param value     field value, may be null
+     * @throws IOException thrown if writing fails
+     */
+    private static void writeOptionalField(@Nonnull final JsonGenerator generator, @Nonnull final String name,
+            @Nullable final String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    /**
+     * JSON representation of the view models.
+     * 
+     * @param json   UTF-8 encoded JSON representation
+     * @param starts offset of each item in the representation
+     * @param ends   offset after each item in the representation
+     */
+    private record JsonItems(@Nonnull byte[] json, @Nonnull int[] starts, @Nonnull int[] ends) {
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.conf;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Precomputed view model of a discovery item. Everything the discovery view
+ * needs to render the item is resolved once when the item is created.
+ */
+public final class DiscoveryViewItem {
+
+    /** Flow id. */
+    @Nonnull
+    @NotEmpty
+    private final String flow;
+
+    /** Authority as listed in the discovery context. */
+    @Nullable
+    private final String authority;
+
+    /** Authenticating authority information of the item. */
+    @Nullable
+    private final DiscoveryAuthenticatingAuthority authenticatingAuthority;
+
+    /** Message key of the item. */
+    @Nonnull
+    private final String messageKey;
+
+    /** Default message of the item. */
+    @Nonnull
+    private final String defaultMessage;
+
+    /** Image path of the item. */
+    @Nullable
+    private final String imagePath;
+
+    /** Query fragment selecting the item. */
+    @Nonnull
+    private final String queryFragment;
+
+    /**
+     * Constructor.
+     * 
+     * @param flowId                flow id
+     * @param listedAuthority       authority as listed in the discovery context,
+     *                              expected to be in url encoded form
+     * @param authorityInformation  authenticating authority information of the
+     *                              item if any
+     * @param flowFieldName         name of the flow request parameter
+     * @param authorityFieldName    name of the authority request parameter
+     */
+    public DiscoveryViewItem(@Nonnull @NotEmpty final String flowId, @Nullable final String listedAuthority,
+            @Nullable final DiscoveryAuthenticatingAuthority authorityInformation,
+            @Nonnull @NotEmpty final String flowFieldName, @Nonnull @NotEmpty final String authorityFieldName) {
+        flow = Constraint.isNotEmpty(flowId, "Flow id cannot be null or empty");
+        authority = listedAuthority;
+        authenticatingAuthority = authorityInformation;
+        final String name = getName();
+        final StringBuilder fragment = new StringBuilder("&").append(flowFieldName).append('=')
+                .append(URLEncoder.encode(flow, StandardCharsets.UTF_8));
+        if (authority != null) {
+            messageKey = flow + "." + authority + ".message";
+            fragment.append('&').append(authorityFieldName).append('=').append(authority);
+        } else {
+            messageKey = flow + ".message";
+        }
+        defaultMessage = name != null ? name : authority != null ? flow + "." + authority : flow;
+        imagePath = name != null ? "/images/" + name + ".png" : null;
+        queryFragment = fragment.append("&_eventId_proceed=_eventId_proceed").toString();
+    }
+
+    /**
+     * Get flow id.
+     * 
+     * @return flow id
+     */
+    @Nonnull
+    @NotEmpty
+    public String getFlow() {
+        return flow;
+    }
+
+    /**
+     * Get authority as listed in the discovery context.
+     * 
+     * @return authority as listed in the discovery context
+     */
+    @Nullable
+    public String getAuthority() {
+        return authority;
+    }
+
+    /**
+     * Get authenticating authority information of the item.
+     * 
+     * @return authenticating authority information of the item, null if the item
+     *         is not configured by JSON configuration
+     */
+    @Nullable
+    public DiscoveryAuthenticatingAuthority getAuthenticatingAuthority() {
+        return authenticatingAuthority;
+    }
+
+    /**
+     * Get display name of the item.
+     * 
+     * @return display name of the item, null if not configured
+     */
+    @Nullable
+    public String getName() {
+        return authenticatingAuthority != null ? authenticatingAuthority.getName() : null;
+    }
+
+    /**
+     * Get message key of the item.
+     * 
+     * @return message key of the item
+     */
+    @Nonnull
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    /**
+     * Get default message of the item.
+     * 
+     * @return default message of the item
+     */
+    @Nonnull
+    public String getDefaultMessage() {
+        return defaultMessage;
+    }
+
+    /**
+     * Get image path of the item.
+     * 
+     * @return image path of the item, null if the item has no name
+     */
+    @Nullable
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    /**
+     * Get query fragment selecting the item, to be appended to the flow execution
+     * url.
+     * 
+     * @return query fragment selecting the item
+     */
+    @Nonnull
+    public String getQueryFragment() {
+        return queryFragment;
+    }
+}
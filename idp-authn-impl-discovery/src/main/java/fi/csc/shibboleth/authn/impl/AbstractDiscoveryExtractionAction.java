@@ -23,25 +23,31 @@
 
 package fi.csc.shibboleth.authn.impl;
 
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
-
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.security.auth.Subject;
 
 import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.context.ProfileRequestContext;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.base.Predicates;
 
 import fi.csc.shibboleth.authn.AuthenticationDiscoveryContext;
+import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationService;
+import fi.csc.shibboleth.authn.conf.DiscoveryPopularity;
+import fi.csc.shibboleth.authn.conf.DiscoveryView;
+import fi.csc.shibboleth.authn.conf.DiscoveryViewItem;
 import net.shibboleth.idp.authn.AbstractExtractionAction;
 import net.shibboleth.idp.authn.AuthenticationResult;
 import net.shibboleth.idp.authn.AuthnEventIds;
 import net.shibboleth.idp.authn.context.AuthenticationContext;
-import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
 
 /**
  * Abstract class for discovery actions.
@@ -52,12 +58,6 @@ public abstract class AbstractDiscoveryExtractionAction extends AbstractExtracti
     @Nonnull
     private final Logger log = LoggerFactory.getLogger(AbstractDiscoveryExtractionAction.class);
 
-    /** Attribute name of selected flow. */
-    protected final static String FLOW_ATTRIBUTE = "fi.csc.shibboleth.authn.discovery.selectedFlow";
-
-    /** Attribute name of selected authority. */
-    protected final static String AUTHORITY_ATTRIBUTE = "fi.csc.shibboleth.authn.discovery.selectedAuthority";
-
     /** Authentication flow selected by the user. */
     protected String flow;
 
@@ -67,6 +67,77 @@ public abstract class AbstractDiscoveryExtractionAction extends AbstractExtracti
     /** Discovery context containing valid flow / authority pairs. */
     protected AuthenticationDiscoveryContext discoveryContext;
 
+    /** Service providing the authority properties and JSON configuration. */
+    @Nullable
+    protected DiscoveryConfigurationService configurationService;
+
+    /** Storage of the remembered user selection. */
+    @Nonnull
+    protected DiscoverySelectionStore selectionStore = new SessionSelectionStore();
+
+    /** Metrics of the discovery actions, null if not enabled. */
+    @Nullable
+    protected DiscoveryMetrics metrics;
+
+    /** Ranking of the items by popularity, null if not enabled. */
+    @Nullable
+    protected DiscoveryPopularity popularity;
+
+    /**
+     * Set the service providing the authority properties and JSON configuration.
+     * For {@link PopulateDiscoveryContext} it replaces configuration set by the
+     * other setters of the action.
+     * 
+     * @param service service providing the authority properties and JSON
+     *                configuration
+     */
+    public void setConfigurationService(@Nullable final DiscoveryConfigurationService service) {
+        checkSetterPreconditions();
+        configurationService = service;
+    }
+
+    /**
+     * Set storage of the remembered user selection.
+     * 
+     * @param store storage of the remembered user selection
+     */
+    public void setSelectionStore(@Nonnull final DiscoverySelectionStore store) {
+        checkSetterPreconditions();
+        selectionStore = Constraint.isNotNull(store, "Selection store cannot be null");
+    }
+
+    /**
+     * Set metrics of the discovery actions.
+     * 
+     * @param discoveryMetrics metrics of the discovery actions
+     */
+    public void setMetrics(@Nullable final DiscoveryMetrics discoveryMetrics) {
+        checkSetterPreconditions();
+        metrics = discoveryMetrics;
+    }
+
+    /**
+     * Set ranking of the items by popularity.
+     * 
+     * @param ranking ranking of the items by popularity
+     */
+    public void setPopularity(@Nullable final DiscoveryPopularity ranking) {
+        checkSetterPreconditions();
+        popularity = ranking;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (metrics != null && !metrics.isEnabled()) {
+            metrics = null;
+        }
+        if (popularity != null && !popularity.isEnabled()) {
+            popularity = null;
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext,
@@ -82,31 +153,16 @@ public abstract class AbstractDiscoveryExtractionAction extends AbstractExtracti
      * @return true if select matched listed options.
      */
     protected boolean validateUserSelection() {
-        for (final Pair<String, String> pair : discoveryContext.getFlowsWithAuthorities()) {
-            String configuredAuthority = pair.getSecond();
-            if (flow.equals(pair.getFirst())) {
-                if (authority == null && configuredAuthority == null) {
-                    return true;
-                }
-                if (configuredAuthority != null) {
-                    try {
-                        configuredAuthority = java.net.URLDecoder.decode(configuredAuthority,
-                                StandardCharsets.UTF_8.name());
-                        if (configuredAuthority.equals(authority)) {
-                            return true;
-                        }
-                    } catch (final UnsupportedEncodingException e) {
-                        log.error("{} Failed url decoding string", getLogPrefix(), e);
-                        // Just move to next one
-                    }
-                }
-            }
-        }
-        return false;
+        return discoveryContext.isSelectable(flow, authority);
     }
 
     /**
-     * Signals the next flow to be executed.
+     * Signals the next flow to be executed. The selected authority is resolved to
+     * the authenticating authority of the item listed in the populated view, so a
+     * compact authority token is resolved by the configuration version it was
+     * issued by even if the configuration has been reloaded since. The
+     * authenticating authority is set to {@link DiscoverySelectionContext} and as
+     * B64 url encoded authority to the authentication context for scripts.
      * 
      * @param profileRequestContext Profile request context.
      * @param authenticationContext Authentication context.
@@ -117,9 +173,43 @@ public abstract class AbstractDiscoveryExtractionAction extends AbstractExtracti
         final AuthenticationResult result = new AuthenticationResult(flow, new Subject());
         result.setReuseCondition(Predicates.alwaysFalse());
         authenticationContext.getActiveResults().put(flow, result);
+        final DiscoverySelectionContext selectionContext =
+                authenticationContext.ensureSubcontext(DiscoverySelectionContext.class);
+        selectionContext.setFlow(flow);
+        selectionContext.setAuthority(authority);
+        selectionContext.setAuthenticatingAuthority(null);
         if (authority != null && !authority.isEmpty()) {
-            authenticationContext.setAuthenticatingAuthority(authority);
+            final DiscoveryAuthenticatingAuthority resolved = resolveAuthority(authenticationContext);
+            String authenticatingAuthority = authority;
+            if (resolved != null) {
+                selectionContext.setAuthenticatingAuthority(resolved);
+                try {
+                    authenticatingAuthority = resolved.toB64UrlEncoded();
+                } catch (final JsonProcessingException e) {
+                    log.warn("{} Unable to encode authority {}", getLogPrefix(), authority, e);
+                }
+            }
+            authenticationContext.setAuthenticatingAuthority(authenticatingAuthority);
         }
         ActionSupport.buildEvent(profileRequestContext, AuthnEventIds.RESELECT_FLOW);
     }
+
+    /**
+     * Resolves the selected authority by the item listed in the populated view,
+     * or by the current configuration if the item is not listed in a view.
+     * 
+     * @param authenticationContext authentication context
+     * @return authenticating authority of the item, null if not resolved
+     */
+    @Nullable
+    private DiscoveryAuthenticatingAuthority resolveAuthority(
+            @Nonnull final AuthenticationContext authenticationContext) {
+        final DiscoveryViewContext viewContext = authenticationContext.getSubcontext(DiscoveryViewContext.class);
+        final DiscoveryView view = viewContext != null ? viewContext.getView() : null;
+        final DiscoveryViewItem item = view != null ? view.getViewItem(flow, authority) : null;
+        if (item != null) {
+            return item.getAuthenticatingAuthority();
+        }
+        return configurationService != null ? configurationService.resolveAuthority(authority) : null;
+    }
 }
@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.security.Principal;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfiguration;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationService;
+import fi.csc.shibboleth.authn.conf.DiscoveryFlows;
+import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.idp.authn.context.RequestedPrincipalContext;
+import net.shibboleth.profile.context.navigate.RelyingPartyIdLookupFunction;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.AbstractInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Abstract class for functions run after the discovery resolving the
+ * authenticating authority either from the discovery selection or, if the
+ * discovery was bypassed, from the requested principals of the relying party.
+ */
+public abstract class AbstractDiscoverySelectionFunction extends AbstractInitializableComponent {
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(AbstractDiscoverySelectionFunction.class);
+
+    /** Service providing the JSON configuration. */
+    @Nullable
+    private DiscoveryConfigurationService configurationService;
+
+    /** Strategy used to locate the relying party id. */
+    @Nonnull
+    private Function<ProfileRequestContext, String> relyingPartyIdLookupStrategy;
+
+    /** Strategy used to resolve the discovery profile of the relying party, null if not used. */
+    @Nullable
+    private Function<ProfileRequestContext, String> discoveryProfileLookupStrategy;
+
+    /**
+     * Constructor.
+     */
+    public AbstractDiscoverySelectionFunction() {
+        relyingPartyIdLookupStrategy = new RelyingPartyIdLookupFunction();
+    }
+
+    /**
+     * Set the service providing the JSON configuration.
+     * 
+     * @param service service providing the JSON configuration
+     */
+    public void setConfigurationService(@Nonnull final DiscoveryConfigurationService service) {
+        checkSetterPreconditions();
+        configurationService = Constraint.isNotNull(service, "Configuration service cannot be null");
+    }
+
+    /**
+     * Set the strategy used to locate the relying party id.
+     * 
+     * @param strategy strategy used to locate the relying party id
+     */
+    public void setRelyingPartyIdLookupStrategy(@Nonnull final Function<ProfileRequestContext, String> strategy) {
+        checkSetterPreconditions();
+        relyingPartyIdLookupStrategy = Constraint.isNotNull(strategy,
+                "Relying party id lookup strategy cannot be null");
+    }
+
+    /**
+     * Set the strategy used to resolve the discovery profile of the relying
+     * party. The profile selects the configuration section of the relying party,
+     * see {@link DiscoveryConfiguration#getFlows(String, String)}.
+     * 
+     * @param strategy strategy used to resolve the discovery profile, null if not
+     *                 used
+     */
+    public void setDiscoveryProfileLookupStrategy(@Nullable final Function<ProfileRequestContext, String> strategy) {
+        checkSetterPreconditions();
+        discoveryProfileLookupStrategy = strategy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (configurationService == null) {
+            throw new ComponentInitializationException("Configuration service cannot be null");
+        }
+    }
+
+    /**
+     * Get the JSON configuration of the current snapshot.
+     * 
+     * @return JSON configuration, or null if there is none
+     */
+    @Nullable
+    protected DiscoveryConfiguration getConfiguration() {
+        return configurationService.getConfiguration();
+    }
+
+    /**
+     * Get the relying party id.
+     * 
+     * @param input profile request context
+     * @return relying party id
+     */
+    @Nullable
+    protected String getRelyingPartyId(@Nonnull final ProfileRequestContext input) {
+        return relyingPartyIdLookupStrategy.apply(input);
+    }
+
+    /**
+     * Get the configuration section of the relying party, selected by its
+     * discovery profile or matched by its id.
+     * 
+     * @param input          profile request context
+     * @param configuration  discovery JSON configuration
+     * @param relyingPartyId relying party id
+     * @return configuration section of the relying party, null if there is none
+     */
+    @Nullable
+    protected DiscoveryFlows getFlows(@Nonnull final ProfileRequestContext input,
+            @Nonnull final DiscoveryConfiguration configuration, @Nullable final String relyingPartyId) {
+        return configuration.getFlows(relyingPartyId,
+                discoveryProfileLookupStrategy != null ? discoveryProfileLookupStrategy.apply(input) : null);
+    }
+
+    /**
+     * Resolves the authority selected in the discovery. The authority resolved by
+     * the discovery or the authority of a listed item is used as is, anything
+     * else is decoded.
+     * 
+     * @param authenticationContext authentication context
+     * @param flows                 configuration section of the relying party
+     * @return selected authority, or null if there is no selection or it cannot
+     *         be resolved
+     */
+    @Nullable
+    protected DiscoveryAuthenticatingAuthority resolveSelection(
+            @Nonnull final AuthenticationContext authenticationContext, @Nullable final DiscoveryFlows flows) {
+        final DiscoverySelectionContext selectionContext =
+                authenticationContext.getSubcontext(DiscoverySelectionContext.class);
+        if (selectionContext != null && selectionContext.getAuthenticatingAuthority() != null) {
+            return selectionContext.getAuthenticatingAuthority();
+        }
+        final String selection = authenticationContext.getAuthenticatingAuthority();
+        if (selection == null) {
+            return null;
+        }
+        final DiscoveryAuthenticatingAuthority listed = flows != null ? flows.getAuthority(selection) : null;
+        if (listed != null) {
+            return listed;
+        }
+        try {
+            return DiscoveryAuthenticatingAuthority.parseB64UrlEncoded(selection);
+        } catch (final Exception e) {
+            log.error("Unable to decode selected authority {}", selection, e);
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the authority matching the first requested principal with a match
+     * in the configuration of the relying party.
+     * 
+     * @param authenticationContext authentication context
+     * @param flows                 configuration section of the relying party
+     * @param relyingPartyId        relying party id
+     * @return matching authority, or null if there is no match
+     */
+    @Nullable
+    protected DiscoveryAuthenticatingAuthority matchRequestedPrincipals(
+            @Nonnull final AuthenticationContext authenticationContext, @Nullable final DiscoveryFlows flows,
+            @Nullable final String relyingPartyId) {
+        final RequestedPrincipalContext requestedPrincipalContext =
+                authenticationContext.getSubcontext(RequestedPrincipalContext.class);
+        if (flows == null || requestedPrincipalContext == null
+                || requestedPrincipalContext.getRequestedPrincipals() == null) {
+            return null;
+        }
+        for (final Principal principal : requestedPrincipalContext.getRequestedPrincipals()) {
+            log.debug("Relying party {} asked for principal with name {}", relyingPartyId, principal.getName());
+            final Pair<String, DiscoveryAuthenticatingAuthority> match = flows.getByAcr(principal.getName());
+            if (match != null) {
+                return match.getSecond();
+            }
+            log.debug("Missing ACR mapping for requested ACR {} by relying party {}", principal.getName(),
+                    relyingPartyId);
+        }
+        if (!requestedPrincipalContext.getRequestedPrincipals().isEmpty()) {
+            log.warn("Missing ACR mapping for all requested ACRs by relying party {}", relyingPartyId);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.AbstractInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Stores the remembered selection in a single cookie, keeping no state on the
+ * server. The cookie value is HMAC-SHA256 signed and optionally AES-GCM
+ * encrypted, and carries its own expiration time. Signatures are verified in
+ * constant time.
+ * 
+ * Value of the cookie is the B64 url encoded payload and signature separated
+ * by a dot. Payload is the expiration time in epoch seconds, the flow and the
+ * authority separated by new lines, encrypted with a random IV prepended if an
+ * encryption key is set. If more than one selection is remembered, the flows
+ * and authorities of the recent selections follow the expiration time, see
+ * {@link DiscoverySelections}. The oldest selections are dropped until the
+ * name and value of the cookie fit in {@link #MAX_COOKIE_SIZE} characters.
+ */
+public class CookieSelectionStore extends AbstractInitializableComponent implements DiscoverySelectionStore {
+
+    /** Default name of the cookie. */
+    @Nonnull
+    @NotEmpty
+    public final static String DEFAULT_COOKIE_NAME = "shib_idp_discovery_selection";
+
+    /** HMAC algorithm. */
+    @Nonnull
+    private final static String MAC_ALGORITHM = "HmacSHA256";
+
+    /** Cipher transformation. */
+    @Nonnull
+    private final static String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    /** Length of the GCM IV in bytes. */
+    private final static int IV_LENGTH = 12;
+
+    /** Length of the GCM tag in bits. */
+    private final static int TAG_LENGTH = 128;
+
+    /** Minimum length of the signing key in bytes. */
+    private final static int MIN_SIGNING_KEY_LENGTH = 32;
+
+    /**
+     * Maximum length of the name and value of the cookie, leaving room for the
+     * attributes within the 4096 bytes browsers keep of a cookie.
+     */
+    public final static int MAX_COOKIE_SIZE = 3800;
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(CookieSelectionStore.class);
+
+    /** Source of the IVs. */
+    @Nonnull
+    private final SecureRandom random;
+
+    /** Name of the cookie. */
+    @Nonnull
+    @NotEmpty
+    private String cookieName;
+
+    /** Path of the cookie, null for the context path. */
+    @Nullable
+    private String cookiePath;
+
+    /** Whether the cookie is secure. */
+    private boolean secure;
+
+    /** SameSite attribute of the cookie, null to leave unset. */
+    @Nullable
+    private String sameSite;
+
+    /** Lifetime of the remembered selection. */
+    @Nonnull
+    private Duration lifetime;
+
+    /** Maximum number of remembered selections. */
+    private int maxSelections;
+
+    /** Key signing the cookie. */
+    @Nullable
+    private SecretKeySpec signingKey;
+
+    /** Key encrypting the cookie, null if not encrypted. */
+    @Nullable
+    private SecretKeySpec encryptionKey;
+
+    /**
+     * Constructor.
+     */
+    public CookieSelectionStore() {
+        random = new SecureRandom();
+        cookieName = DEFAULT_COOKIE_NAME;
+        secure = true;
+        lifetime = Duration.ofDays(90);
+        maxSelections = 1;
+    }
+
+    /**
+     * Set name of the cookie.
+     * 
+     * @param name name of the cookie
+     */
+    public void setCookieName(@Nonnull @NotEmpty final String name) {
+        checkSetterPreconditions();
+        cookieName = Constraint.isNotEmpty(name, "Cookie name cannot be null or empty");
+    }
+
+    /**
+     * Set path of the cookie.
+     * 
+     * @param path path of the cookie, null or empty for the context path
+     */
+    public void setCookiePath(@Nullable final String path) {
+        checkSetterPreconditions();
+        cookiePath = path == null || path.isBlank() ? null : path.trim();
+    }
+
+    /**
+     * Set whether the cookie is secure.
+     * 
+     * @param flag whether the cookie is secure
+     */
+    public void setSecure(final boolean flag) {
+        checkSetterPreconditions();
+        secure = flag;
+    }
+
+    /**
+     * Set SameSite attribute of the cookie.
+     * 
+     * @param value SameSite attribute of the cookie, null or empty to leave unset
+     */
+    public void setSameSite(@Nullable final String value) {
+        checkSetterPreconditions();
+        sameSite = value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * Set lifetime of the remembered selection.
+     * 
+     * @param duration lifetime of the remembered selection
+     */
+    public void setLifetime(@Nonnull final Duration duration) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(duration, "Lifetime cannot be null");
+        Constraint.isFalse(duration.isNegative() || duration.isZero(), "Lifetime must be positive");
+        lifetime = duration;
+    }
+
+    /**
+     * Set maximum number of remembered selections. The cookie grows with each
+     * remembered selection.
+     * 
+     * @param max maximum number of remembered selections
+     */
+    public void setMaxSelections(final int max) {
+        checkSetterPreconditions();
+        maxSelections = Constraint.isGreaterThan(0, max, "Maximum number of selections must be positive");
+    }
+
+    /**
+     * Set B64 encoded key signing the cookie, at least 256 bits.
+     * 
+     * @param key B64 encoded key signing the cookie
+     */
+    public void setSigningKey(@Nullable final String key) {
+        checkSetterPreconditions();
+        signingKey = key == null || key.isBlank() ? null
+                : new SecretKeySpec(Base64.getDecoder().decode(key.trim()), MAC_ALGORITHM);
+    }
+
+    /**
+     * Set B64 encoded AES key encrypting the cookie.
+     * 
+     * @param key B64 encoded AES key encrypting the cookie, null or empty for no
+     *            encryption
+     */
+    public void setEncryptionKey(@Nullable final String key) {
+        checkSetterPreconditions();
+        encryptionKey = key == null || key.isBlank() ? null
+                : new SecretKeySpec(Base64.getDecoder().decode(key.trim()), "AES");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (signingKey == null || signingKey.getEncoded().length < MIN_SIGNING_KEY_LENGTH) {
+            throw new ComponentInitializationException("Signing key of at least 256 bits is required");
+        }
+        if (encryptionKey != null) {
+            final int length = encryptionKey.getEncoded().length;
+            if (length != 16 && length != 24 && length != 32) {
+                throw new ComponentInitializationException("Encryption key must be a 128, 192 or 256 bit AES key");
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    public Pair<String, String> load(@Nonnull final HttpServletRequest request) {
+        final List<Pair<String, String>> selections = loadRecent(request);
+        return selections.isEmpty() ? null : selections.get(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull
+    public List<Pair<String, String>> loadRecent(@Nonnull final HttpServletRequest request) {
+        final String value = getCookieValue(request);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        try {
+            final int separator = value.indexOf('.');
+            if (separator < 0) {
+                log.debug("Malformed selection cookie");
+                return Collections.emptyList();
+            }
+            final Base64.Decoder decoder = Base64.getUrlDecoder();
+            final byte[] data = decoder.decode(value.substring(0, separator));
+            final byte[] signature = decoder.decode(value.substring(separator + 1));
+            if (!MessageDigest.isEqual(sign(data), signature)) {
+                log.warn("Selection cookie signature verification failed");
+                return Collections.emptyList();
+            }
+            final String[] fields = new String(encryptionKey != null ? decrypt(data) : data,
+                    StandardCharsets.UTF_8).split("\n", 2);
+            if (fields.length < 2 || Instant.now().getEpochSecond() >= Long.parseLong(fields[0])) {
+                log.debug("Selection cookie has expired");
+                return Collections.emptyList();
+            }
+            return DiscoverySelections.decode(fields[1]);
+        } catch (final IllegalArgumentException | GeneralSecurityException e) {
+            log.warn("Invalid selection cookie: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void save(@Nonnull final HttpServletRequest request, @Nullable final HttpServletResponse response,
+            @Nonnull final String flow, @Nullable final String authority) {
+        if (response == null) {
+            log.error("No HttpServletResponse available, cannot remember selection");
+            return;
+        }
+        final List<Pair<String, String>> selections = maxSelections > 1
+                ? DiscoverySelections.add(loadRecent(request), flow, authority, maxSelections)
+                : List.of(new Pair<>(flow, authority));
+        final long expiration = Instant.now().plus(lifetime).getEpochSecond();
+        try {
+            int count = selections.size();
+            String value = protect(expiration, selections);
+            while (count > 1 && cookieName.length() + value.length() > MAX_COOKIE_SIZE) {
+                value = protect(expiration, selections.subList(0, --count));
+            }
+            if (count < selections.size()) {
+                log.debug("Selection cookie too large, remembering {} of {} recent selections", count,
+                        selections.size());
+            } else if (cookieName.length() + value.length() > MAX_COOKIE_SIZE) {
+                log.warn("Selection cookie of {} characters may be rejected by browsers",
+                        cookieName.length() + value.length());
+            }
+            final Cookie cookie = new Cookie(cookieName, value);
+            cookie.setPath(cookiePath != null ? cookiePath
+                    : request.getContextPath() == null || request.getContextPath().isEmpty() ? "/"
+                            : request.getContextPath());
+            cookie.setSecure(secure);
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.min(Integer.MAX_VALUE, lifetime.toSeconds()));
+            if (sameSite != null) {
+                cookie.setAttribute("SameSite", sameSite);
+            }
+            response.addCookie(cookie);
+        } catch (final GeneralSecurityException e) {
+            log.error("Unable to protect selection cookie", e);
+        }
+    }
+
+    /**
+     * Encodes, signs and optionally encrypts the payload of the cookie.
+     * 
+     * @param expiration expiration time in epoch seconds
+     * @param selections the selections, most recent first
+     * @return value of the cookie
+     * @throws GeneralSecurityException thrown if signing or encrypting fails
+     */
+    @Nonnull
+    private String protect(final long expiration, @Nonnull final List<Pair<String, String>> selections)
+            throws GeneralSecurityException {
+        byte[] data = (expiration + "\n" + DiscoverySelections.encode(selections)).getBytes(StandardCharsets.UTF_8);
+        if (encryptionKey != null) {
+            data = encrypt(data);
+        }
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(data) + "." + encoder.encodeToString(sign(data));
+    }
+
+    /**
+     * Get value of the selection cookie.
+     * 
+     * @param request current request
+     * @return value of the selection cookie, null if not present
+     */
+    @Nullable
+    private String getCookieValue(@Nonnull final HttpServletRequest request) {
+        final Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (final Cookie cookie : cookies) {
+                if (cookieName.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sign the data.
+     * 
+     * @param data data to sign
+     * @return signature
+     * @throws GeneralSecurityException if signing fails
+     */
+    @Nonnull
+    private byte[] sign(@Nonnull final byte[] data) throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(signingKey);
+        return mac.doFinal(data);
+    }
+
+    /**
+     * Encrypt the data with a random IV.
+     * 
+     * @param data data to encrypt
+     * @return IV followed by the cipher text
+     * @throws GeneralSecurityException if encryption fails
+     */
+    @Nonnull
+    private byte[] encrypt(@Nonnull final byte[] data) throws GeneralSecurityException {
+        final byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_LENGTH, iv));
+        final byte[] encrypted = cipher.doFinal(data);
+        return ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array();
+    }
+
+    /**
+     * Decrypt the data.
+     * 
+     * @param data IV followed by the cipher text
+     * @return decrypted data
+     * @throws GeneralSecurityException if decryption fails
+     */
+    @Nonnull
+    private byte[] decrypt(@Nonnull final byte[] data) throws GeneralSecurityException {
+        if (data.length <= IV_LENGTH) {
+            throw new GeneralSecurityException("Encrypted data too short");
+        }
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_LENGTH, data, 0, IV_LENGTH));
+        return cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH);
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.BiFunction;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.MessageSource;
+import org.springframework.context.MessageSourceAware;
+import org.springframework.webflow.execution.RequestContext;
+
+import fi.csc.shibboleth.authn.conf.DiscoverySearchIndex;
+import fi.csc.shibboleth.authn.conf.DiscoveryView;
+import fi.csc.shibboleth.authn.conf.DiscoveryViewItem;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.component.AbstractInitializableComponent;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Writes the discovery items of {@link DiscoveryViewContext} as JSON for client
+ * rendered discovery views, instead of rendering the discovery view. The items
+ * are requested from the paused discovery view state with the format request
+ * parameter set to <code>json</code>, see {@link DiscoveryView#getJson()}.
+ * 
+ * The response carries the strong entity tag of the items. A request whose
+ * <code>If-None-Match</code> header matches the tag is answered with 304 Not
+ * Modified without a body.
+ * 
+ * A request having also the query request parameter is answered with the best
+ * matching items only, in rank order, see {@link DiscoverySearchIndex}. Items
+ * are matched by their localized labels in the language of the request, their
+ * default messages and the values of their authorities.
+ * 
+ * A request having the offset or limit request parameter is answered with a
+ * page of the items, see {@link DiscoveryView#getJsonPage(int, int)}. The page
+ * lists at most limit items starting from the offset, all the remaining items if
+ * limit is not given. Views rendering only the first page of the items, see
+ * {@link DiscoveryViewContext#getPageSize()}, request the rest this way.
+ */
+public class DiscoveryItemsWriter extends AbstractInitializableComponent implements MessageSourceAware {
+
+    /** Value of the format request parameter requesting JSON. */
+    @Nonnull
+    @NotEmpty
+    public final static String FORMAT_JSON = "json";
+
+    /** Maximum length of a query, longer queries are truncated. */
+    private final static int MAX_QUERY_LENGTH = 256;
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(DiscoveryItemsWriter.class);
+
+    /** Whether the items are served as JSON. */
+    private boolean enabled;
+
+    /** Name of the format request parameter. */
+    @Nonnull
+    @NotEmpty
+    private String formatParameterName;
+
+    /** Name of the query request parameter. */
+    @Nonnull
+    @NotEmpty
+    private String queryParameterName;
+
+    /** Name of the offset request parameter. */
+    @Nonnull
+    @NotEmpty
+    private String offsetParameterName;
+
+    /** Name of the limit request parameter. */
+    @Nonnull
+    @NotEmpty
+    private String limitParameterName;
+
+    /** Maximum number of items answered to a query. */
+    private int maxSearchResults;
+
+    /** Source of the localized labels of the items, null if not available. */
+    @Nullable
+    private MessageSource messageSource;
+
+    /** Resolves the localized label of an item by the message source. */
+    @Nonnull
+    private final BiFunction<DiscoveryViewItem, Locale, String> labelLookup;
+
+    /** Buffer of the item indexes answered to a query, reused per thread. */
+    @Nonnull
+    private final ThreadLocal<int[]> searchResults;
+
+    /**
+     * Constructor.
+     */
+    public DiscoveryItemsWriter() {
+        formatParameterName = "format";
+        queryParameterName = "query";
+        offsetParameterName = "offset";
+        limitParameterName = "limit";
+        maxSearchResults = 10;
+        labelLookup = this::getLabel;
+        searchResults = ThreadLocal.withInitial(() -> new int[maxSearchResults]);
+    }
+
+    /**
+     * Set whether the items are served as JSON.
+     * 
+     * @param flag whether the items are served as JSON
+     */
+    public void setEnabled(final boolean flag) {
+        checkSetterPreconditions();
+        enabled = flag;
+    }
+
+    /**
+     * Set name of the format request parameter.
+     * 
+     * @param name name of the format request parameter
+     */
+    public void setFormatParameterName(@Nonnull @NotEmpty final String name) {
+        checkSetterPreconditions();
+        formatParameterName = Constraint.isNotEmpty(name, "Format parameter name cannot be null or empty");
+    }
+
+    /**
+     * Set name of the query request parameter.
+     * 
+     * @param name name of the query request parameter
+     */
+    public void setQueryParameterName(@Nonnull @NotEmpty final String name) {
+        checkSetterPreconditions();
+        queryParameterName = Constraint.isNotEmpty(name, "Query parameter name cannot be null or empty");
+    }
+
+    /**
+     * Set name of the offset request parameter.
+     * 
+     * @param name name of the offset request parameter
+     */
+    public void setOffsetParameterName(@Nonnull @NotEmpty final String name) {
+        checkSetterPreconditions();
+        offsetParameterName = Constraint.isNotEmpty(name, "Offset parameter name cannot be null or empty");
+    }
+
+    /**
+     * Set name of the limit request parameter.
+     * 
+     * @param name name of the limit request parameter
+     */
+    public void setLimitParameterName(@Nonnull @NotEmpty final String name) {
+        checkSetterPreconditions();
+        limitParameterName = Constraint.isNotEmpty(name, "Limit parameter name cannot be null or empty");
+    }
+
+    /**
+     * Set maximum number of items answered to a query.
+     * 
+     * @param maximum maximum number of items answered to a query
+     */
+    public void setMaxSearchResults(final int maximum) {
+        checkSetterPreconditions();
+        maxSearchResults = Constraint.isGreaterThan(0, maximum, "Maximum search results must be positive");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setMessageSource(@Nullable final MessageSource source) {
+        messageSource = source;
+    }
+
+    /**
+     * Writes the items if requested and records the response complete, so the
+     * view is not rendered.
+     * 
+     * @param requestContext web flow request context
+     * @param viewContext    view context of the discovery items, may be null
+     * @return true if the response was written
+     * @throws IOException thrown if writing the response fails
+     */
+    public boolean write(@Nonnull final RequestContext requestContext,
+            @Nullable final DiscoveryViewContext viewContext) throws IOException {
+        if (write((HttpServletRequest) requestContext.getExternalContext().getNativeRequest(),
+                (HttpServletResponse) requestContext.getExternalContext().getNativeResponse(), viewContext)) {
+            requestContext.getExternalContext().recordResponseComplete();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the items if requested.
+     * 
+     * @param request     HTTP request
+     * @param response    HTTP response
+     * @param viewContext view context of the discovery items, may be null
+     * @return true if the response was written
+     * @throws IOException thrown if writing the response fails
+     */
+    public boolean write(@Nonnull final HttpServletRequest request, @Nonnull final HttpServletResponse response,
+            @Nullable final DiscoveryViewContext viewContext) throws IOException {
+        checkComponentActive();
+        if (!enabled || !FORMAT_JSON.equals(request.getParameter(formatParameterName))) {
+            return false;
+        }
+        final DiscoveryView view = viewContext != null ? viewContext.getView() : null;
+        if (view == null) {
+            log.debug("No shared discovery view to write, rendering the view");
+            return false;
+        }
+        final String query = request.getParameter(queryParameterName);
+        if (query != null) {
+            writeSearchResults(request, response, view,
+                    query.length() > MAX_QUERY_LENGTH ? query.substring(0, MAX_QUERY_LENGTH) : query);
+            return true;
+        }
+        final String offsetValue = request.getParameter(offsetParameterName);
+        final String limitValue = request.getParameter(limitParameterName);
+        final int offset = parsePageParameter(offsetValue, 0);
+        final int limit = parsePageParameter(limitValue, Integer.MAX_VALUE);
+        if (offset < 0 || limit < 0) {
+            log.debug("Invalid page of items requested, offset '{}' limit '{}'", offsetValue, limitValue);
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return true;
+        }
+        final String entityTag = view.getEntityTag();
+        response.setHeader("ETag", entityTag);
+        response.setHeader("Cache-Control", "no-cache");
+        if (matches(request.getHeader("If-None-Match"), entityTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        writeJson(response, offsetValue == null && limitValue == null ? view.getJson()
+                : view.getJsonPage(offset, limit));
+        return true;
+    }
+
+    /**
+     * Parses a page request parameter.
+     * 
+     * @param value        parameter value, may be null
+     * @param defaultValue value used if the parameter is not given
+     * @return the parsed value, -1 if the value is not a non-negative integer
+     */
+    private static int parsePageParameter(@Nullable final String value, final int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(Integer.parseInt(value.trim()), -1);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Writes the items best matching a query.
+     * 
+     * @param request  HTTP request
+     * @param response HTTP response
+     * @param view     the shared view
+     * @param query    the query
+     * @throws IOException thrown if writing the response fails
+     */
+    private void writeSearchResults(@Nonnull final HttpServletRequest request,
+            @Nonnull final HttpServletResponse response, @Nonnull final DiscoveryView view,
+            @Nonnull final String query) throws IOException {
+        final DiscoverySearchIndex index = view.getSearchIndex(request.getLocale(),
+                messageSource != null ? labelLookup : null);
+        final int[] results = searchResults.get();
+        final int count = index.search(query, results);
+        response.setHeader("Cache-Control", "no-cache");
+        writeJson(response, view.getJson(results, count));
+    }
+
+    /**
+     * Get the localized label of an item.
+     * 
+     * @param item   the item
+     * @param locale locale of the label
+     * @return the label, null if the message source has none
+     */
+    @Nullable
+    private String getLabel(@Nonnull final DiscoveryViewItem item, @Nonnull final Locale locale) {
+        return messageSource.getMessage(item.getMessageKey(), null, null, locale);
+    }
+
+    /**
+     * Writes a JSON response body.
+     * 
+     * @param response HTTP response
+     * @param json     UTF-8 encoded JSON
+     * @throws IOException thrown if writing the response fails
+     */
+    private static void writeJson(@Nonnull final HttpServletResponse response, @Nonnull final byte[] json)
+            throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        response.setContentLength(json.length);
+        response.getOutputStream().write(json);
+        response.flushBuffer();
+    }
+
+    /**
+     * Whether an <code>If-None-Match</code> header matches an entity tag. Weak
+     * tags are compared by their opaque part, as conditional GET uses weak
+     * comparison.
+     * 
+     * @param header    header value, may be null
+     * @param entityTag quoted entity tag
+     * @return true if the header is <code>*</code> or lists the tag
+     */
+    static boolean matches(@Nullable final String header, @Nonnull final String entityTag) {
+        if (header == null) {
+            return false;
+        }
+        for (final String listed : header.split(",")) {
+            final String tag = listed.trim();
+            if ("*".equals(tag) || entityTag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Metrics of the discovery actions registered to a {@link MetricRegistry}.
+ * 
+ * Records execution times of populating the discovery context and extracting
+ * the user decision, counters for bypassed discovery views, prior selections
+ * and invalid submissions, selections per flow and authority and the time
+ * users spend on the discovery view. The number of selection counters is
+ * bounded, selections beyond the limit are counted as other. Selection
+ * counters are named by the name of the authority, not by the submitted value,
+ * so the names stay the same across configuration versions.
+ * 
+ * Actions ignore the metrics unless enabled and given a registry.
+ */
+public class DiscoveryMetrics extends AbstractIdentifiableInitializableComponent {
+
+    /** Default prefix of the metric names. */
+    @Nonnull
+    @NotEmpty
+    public final static String DEFAULT_PREFIX = "fi.csc.shibboleth.authn.discovery";
+
+    /** Registry of the metrics. */
+    @Nullable
+    private MetricRegistry metricRegistry;
+
+    /** Whether the metrics are enabled. */
+    private boolean enabled;
+
+    /** Prefix of the metric names. */
+    @Nonnull
+    @NotEmpty
+    private String prefix;
+
+    /** Maximum number of selection counters. */
+    private int maxSelectionCounters;
+
+    /** Execution time of populating the discovery context. */
+    @Nullable
+    private Timer populateTimer;
+
+    /** Execution time of extracting the user decision. */
+    @Nullable
+    private Timer extractTimer;
+
+    /** Number of discovery views bypassed as there was only one item. */
+    @Nullable
+    private Counter autoSelectCounter;
+
+    /** Number of valid prior selections. */
+    @Nullable
+    private Counter priorSelectionHitCounter;
+
+    /** Number of prior selections not available anymore. */
+    @Nullable
+    private Counter priorSelectionMissCounter;
+
+    /** Number of submissions not matching the listed items. */
+    @Nullable
+    private Counter invalidSelectionCounter;
+
+    /** Number of selections beyond the selection counter limit. */
+    @Nullable
+    private Counter otherSelectionCounter;
+
+    /** Selection counters keyed by flow and authority. */
+    @Nonnull
+    private final Map<Pair<String, String>, Counter> selectionCounters;
+
+    /** Time in milliseconds from rendering the discovery view to the submission. */
+    @Nullable
+    private Histogram decisionTime;
+
+    /**
+     * Constructor.
+     */
+    public DiscoveryMetrics() {
+        prefix = DEFAULT_PREFIX;
+        maxSelectionCounters = 100;
+        selectionCounters = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Set registry of the metrics.
+     * 
+     * @param registry registry of the metrics
+     */
+    public void setMetricRegistry(@Nullable final MetricRegistry registry) {
+        checkSetterPreconditions();
+        metricRegistry = registry;
+    }
+
+    /**
+     * Set whether the metrics are enabled.
+     * 
+     * @param flag whether the metrics are enabled
+     */
+    public void setEnabled(final boolean flag) {
+        checkSetterPreconditions();
+        enabled = flag;
+    }
+
+    /**
+     * Set prefix of the metric names.
+     * 
+     * @param metricPrefix prefix of the metric names
+     */
+    public void setPrefix(@Nonnull @NotEmpty final String metricPrefix) {
+        checkSetterPreconditions();
+        prefix = Constraint.isNotEmpty(metricPrefix, "Prefix cannot be null or empty");
+    }
+
+    /**
+     * Set maximum number of selection counters.
+     * 
+     * @param max maximum number of selection counters
+     */
+    public void setMaxSelectionCounters(final int max) {
+        checkSetterPreconditions();
+        maxSelectionCounters = Constraint.isGreaterThanOrEqual(0, max,
+                "Maximum number of selection counters cannot be negative");
+    }
+
+    /**
+     * Whether the metrics are enabled and have a registry.
+     * 
+     * @return whether the metrics are enabled and have a registry
+     */
+    public boolean isEnabled() {
+        return enabled && metricRegistry != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (!isEnabled()) {
+            return;
+        }
+        populateTimer = metricRegistry.timer(MetricRegistry.name(prefix, "populate"));
+        extractTimer = metricRegistry.timer(MetricRegistry.name(prefix, "extract"));
+        autoSelectCounter = metricRegistry.counter(MetricRegistry.name(prefix, "autoSelect"));
+        priorSelectionHitCounter = metricRegistry.counter(MetricRegistry.name(prefix, "priorSelection", "hit"));
+        priorSelectionMissCounter = metricRegistry.counter(MetricRegistry.name(prefix, "priorSelection", "miss"));
+        invalidSelectionCounter = metricRegistry.counter(MetricRegistry.name(prefix, "invalidSelection"));
+        otherSelectionCounter = metricRegistry.counter(MetricRegistry.name(prefix, "selection", "other"));
+        decisionTime = metricRegistry.histogram(MetricRegistry.name(prefix, "decisionTime"));
+    }
+
+    /**
+     * Record execution time of populating the discovery context.
+     * 
+     * @param nanos execution time in nanoseconds
+     */
+    public void populated(final long nanos) {
+        populateTimer.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record execution time of extracting the user decision.
+     * 
+     * @param nanos execution time in nanoseconds
+     */
+    public void extracted(final long nanos) {
+        extractTimer.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Count a discovery view bypassed as there was only one item. */
+    public void autoSelected() {
+        autoSelectCounter.inc();
+    }
+
+    /** Count a valid prior selection. */
+    public void priorSelectionHit() {
+        priorSelectionHitCounter.inc();
+    }
+
+    /** Count a prior selection not available anymore. */
+    public void priorSelectionMiss() {
+        priorSelectionMissCounter.inc();
+    }
+
+    /** Count a submission not matching the listed items. */
+    public void invalidSelection() {
+        invalidSelectionCounter.inc();
+    }
+
+    /**
+     * Count a selection of the user. The counter is named by the flow and the
+     * name of the resolved authority. A selected authority not resolved to the
+     * configuration is named by a short hash of the submitted value.
+     * 
+     * @param flow      selected flow
+     * @param authority selected authority as submitted, if any
+     * @param resolved  selected authority resolved to the configuration, if any
+     */
+    public void selected(@Nonnull final String flow, @Nullable final String authority,
+            @Nullable final DiscoveryAuthenticatingAuthority resolved) {
+        final String name = resolved != null ? resolved.getName()
+                : authority != null && !authority.isEmpty() ? "#" + Integer.toHexString(authority.hashCode())
+                        : null;
+        final Pair<String, String> key = new Pair<>(flow, name);
+        Counter counter = selectionCounters.get(key);
+        if (counter == null) {
+            if (selectionCounters.size() >= maxSelectionCounters) {
+                otherSelectionCounter.inc();
+                return;
+            }
+            counter = selectionCounters.computeIfAbsent(key, k -> metricRegistry.counter(
+                    name != null ? MetricRegistry.name(prefix, "selection", flow, name)
+                            : MetricRegistry.name(prefix, "selection", flow)));
+        }
+        counter.inc();
+    }
+
+    /**
+     * Record time the user spent on the discovery view.
+     * 
+     * @param time time from rendering the discovery view to the submission
+     */
+    public void decided(@Nonnull final Duration time) {
+        decisionTime.update(time.toMillis());
+    }
+}
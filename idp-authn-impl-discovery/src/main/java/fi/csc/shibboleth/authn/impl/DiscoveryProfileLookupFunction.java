@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.schema.XSAny;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.messaging.context.BaseContext;
+import org.opensaml.messaging.context.navigate.ChildContextLookup;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.opensaml.saml.common.messaging.context.SAMLMetadataContext;
+import org.opensaml.saml.ext.saml2mdattr.EntityAttributes;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.Extensions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryConfiguration;
+import net.shibboleth.profile.context.RelyingPartyContext;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.component.AbstractInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Function resolving the discovery profile of the relying party from an entity
+ * attribute of its SAML metadata. The profile selects the section
+ * {@value DiscoveryConfiguration#PROFILE_KEY_PREFIX}<i>profile</i> of the
+ * discovery configuration.
+ * 
+ * Results are cached per entity descriptor instance, so the entity attributes
+ * are walked once per relying party and loaded metadata. A refreshed or
+ * dynamically resolved descriptor is a new instance and is looked up again
+ * without discarding the results of other relying parties, and the results of
+ * discarded descriptors are released with them.
+ */
+public class DiscoveryProfileLookupFunction extends AbstractInitializableComponent
+        implements Function<ProfileRequestContext, String> {
+
+    /** Default name of the entity attribute naming the discovery profile. */
+    @Nonnull
+    @NotEmpty
+    public final static String DEFAULT_ATTRIBUTE_NAME = "https://www.csc.fi/shibboleth/discovery-profile";
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(DiscoveryProfileLookupFunction.class);
+
+    /** Name of the entity attribute naming the discovery profile. */
+    @Nonnull
+    @NotEmpty
+    private String attributeName;
+
+    /** Strategy used to locate the relying party context. */
+    @Nonnull
+    private Function<ProfileRequestContext, RelyingPartyContext> relyingPartyContextLookupStrategy;
+
+    /** Maximum number of cached results. */
+    private long maximumSize;
+
+    /** Cached profiles keyed by the identity of the entity descriptor. */
+    @Nullable
+    private Cache<EntityDescriptor, Optional<String>> cache;
+
+    /**
+     * Constructor.
+     */
+    public DiscoveryProfileLookupFunction() {
+        attributeName = DEFAULT_ATTRIBUTE_NAME;
+        relyingPartyContextLookupStrategy = new ChildContextLookup<>(RelyingPartyContext.class);
+        maximumSize = 10000;
+    }
+
+    /**
+     * Set name of the entity attribute naming the discovery profile.
+     * 
+     * @param name name of the entity attribute naming the discovery profile
+     */
+    public void setAttributeName(@Nonnull @NotEmpty final String name) {
+        checkSetterPreconditions();
+        attributeName = Constraint.isNotEmpty(name, "Attribute name cannot be null or empty");
+    }
+
+    /**
+     * Set the strategy used to locate the relying party context.
+     * 
+     * @param strategy strategy used to locate the relying party context
+     */
+    public void setRelyingPartyContextLookupStrategy(
+            @Nonnull final Function<ProfileRequestContext, RelyingPartyContext> strategy) {
+        checkSetterPreconditions();
+        relyingPartyContextLookupStrategy = Constraint.isNotNull(strategy,
+                "RelyingPartyContext lookup strategy cannot be null");
+    }
+
+    /**
+     * Set maximum number of cached results.
+     * 
+     * @param size maximum number of cached results, zero disables caching
+     */
+    public void setMaximumSize(final long size) {
+        checkSetterPreconditions();
+        maximumSize = Constraint.isGreaterThanOrEqual(0, size, "Maximum size cannot be negative");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (maximumSize > 0) {
+            cache = CacheBuilder.newBuilder().weakKeys().maximumSize(maximumSize).build();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    public String apply(@Nullable final ProfileRequestContext input) {
+        checkComponentActive();
+        final RelyingPartyContext rpCtx = input != null ? relyingPartyContextLookupStrategy.apply(input) : null;
+        final EntityDescriptor entity = rpCtx != null ? getEntityDescriptor(rpCtx) : null;
+        if (entity == null || entity.getEntityID() == null) {
+            log.trace("No metadata for the relying party");
+            return null;
+        }
+        if (cache == null) {
+            return resolveProfile(entity);
+        }
+        Optional<String> profile = cache.getIfPresent(entity);
+        if (profile == null) {
+            profile = Optional.ofNullable(resolveProfile(entity));
+            cache.put(entity, profile);
+        }
+        return profile.orElse(null);
+    }
+
+    /**
+     * Get the entity descriptor of the relying party from the metadata context of
+     * the relying party context tree.
+     * 
+     * @param rpCtx relying party context
+     * @return entity descriptor, null if there is none
+     */
+    @Nullable
+    private EntityDescriptor getEntityDescriptor(@Nonnull final RelyingPartyContext rpCtx) {
+        final BaseContext tree = rpCtx.getRelyingPartyIdContextTree();
+        final SAMLMetadataContext metadataContext = tree instanceof SAMLMetadataContext context ? context
+                : tree != null ? tree.getSubcontext(SAMLMetadataContext.class) : null;
+        return metadataContext != null ? metadataContext.getEntityDescriptor() : null;
+    }
+
+    /**
+     * Resolves the discovery profile from the first value of the entity
+     * attribute.
+     * 
+     * @param entity entity descriptor
+     * @return discovery profile, null if the entity has no such attribute
+     */
+    @Nullable
+    private String resolveProfile(@Nonnull final EntityDescriptor entity) {
+        final Extensions extensions = entity.getExtensions();
+        if (extensions == null) {
+            return null;
+        }
+        for (final XMLObject object : extensions.getUnknownXMLObjects(EntityAttributes.DEFAULT_ELEMENT_NAME)) {
+            for (final Attribute attribute : ((EntityAttributes) object).getAttributes()) {
+                if (!attributeName.equals(attribute.getName())) {
+                    continue;
+                }
+                for (final XMLObject value : attribute.getAttributeValues()) {
+                    final String profile = value instanceof XSString string ? string.getValue()
+                            : value instanceof XSAny any ? any.getTextContent() : null;
+                    if (profile != null && !profile.isBlank()) {
+                        log.debug("Relying party {} has discovery profile {}", entity.getEntityID(), profile);
+                        return profile.trim();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
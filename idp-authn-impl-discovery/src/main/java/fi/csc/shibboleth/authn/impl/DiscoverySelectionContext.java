@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import javax.annotation.Nullable;
+
+import org.opensaml.messaging.context.BaseContext;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+
+/**
+ * This class carries the discovery item selected by the user, or automatically,
+ * for the flows and scripts run after the discovery. The authenticating
+ * authority is available here without decoding the authority of the item.
+ */
+public class DiscoverySelectionContext extends BaseContext {
+
+    /** The selected flow. */
+    @Nullable
+    private String flow;
+
+    /** The authority of the selected item as listed. */
+    @Nullable
+    private String authority;
+
+    /** The authenticating authority of the selected item. */
+    @Nullable
+    private DiscoveryAuthenticatingAuthority authenticatingAuthority;
+
+    /**
+     * Get the selected flow.
+     * 
+     * @return the selected flow
+     */
+    @Nullable
+    public String getFlow() {
+        return flow;
+    }
+
+    /**
+     * Set the selected flow.
+     * 
+     * @param selectedFlow the selected flow
+     */
+    public void setFlow(@Nullable final String selectedFlow) {
+        flow = selectedFlow;
+    }
+
+    /**
+     * Get the authority of the selected item as listed, B64 url encoded authority
+     * or compact authority token.
+     * 
+     * @return the authority of the selected item as listed
+     */
+    @Nullable
+    public String getAuthority() {
+        return authority;
+    }
+
+    /**
+     * Set the authority of the selected item as listed.
+     * 
+     * @param selectedAuthority the authority of the selected item as listed
+     */
+    public void setAuthority(@Nullable final String selectedAuthority) {
+        authority = selectedAuthority;
+    }
+
+    /**
+     * Get the authenticating authority of the selected item.
+     * 
+     * @return the authenticating authority of the selected item, null if the
+     *         item has no authority or it was not resolved
+     */
+    @Nullable
+    public DiscoveryAuthenticatingAuthority getAuthenticatingAuthority() {
+        return authenticatingAuthority;
+    }
+
+    /**
+     * Set the authenticating authority of the selected item.
+     * 
+     * @param selectedAuthority the authenticating authority of the selected item
+     */
+    public void setAuthenticatingAuthority(@Nullable final DiscoveryAuthenticatingAuthority selectedAuthority) {
+        authenticatingAuthority = selectedAuthority;
+    }
+}
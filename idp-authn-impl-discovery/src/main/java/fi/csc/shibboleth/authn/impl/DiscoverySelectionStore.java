@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Storage of the remembered user selection of the discovery view. Stores may
+ * remember a bounded number of recent selections, see
+ * {@link #loadRecent(HttpServletRequest)}.
+ */
+public interface DiscoverySelectionStore {
+
+    /**
+     * Load the remembered selection.
+     * 
+     * @param request current request
+     * @return remembered flow and authority, or null if there is none
+     */
+    @Nullable
+    Pair<String, String> load(@Nonnull HttpServletRequest request);
+
+    /**
+     * Load the remembered recent selections. Stores remembering one selection
+     * only return it as the only one.
+     * 
+     * @param request current request
+     * @return remembered flows and authorities, most recent first
+     */
+    @Nonnull
+    default List<Pair<String, String>> loadRecent(@Nonnull final HttpServletRequest request) {
+        final Pair<String, String> selection = load(request);
+        return selection != null ? List.of(selection) : Collections.emptyList();
+    }
+
+    /**
+     * Remember the selection as the most recent one.
+     * 
+     * @param request   current request
+     * @param response  current response if available
+     * @param flow      selected flow
+     * @param authority selected authority if any
+     */
+    void save(@Nonnull HttpServletRequest request, @Nullable HttpServletResponse response, @Nonnull String flow,
+            @Nullable String authority);
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Compact encoding of the recent selections kept by the
+ * {@link DiscoverySelectionStore}s, most recent first. Each selection is the
+ * flow and the authority on lines of their own, an empty line for no authority.
+ * A single selection is encoded the way stores remembering one selection only
+ * encode it, so values remain readable either way.
+ */
+final class DiscoverySelections {
+
+    /** Constructor. */
+    private DiscoverySelections() {
+    }
+
+    /**
+     * Encodes the selections.
+     * 
+     * @param selections the selections, most recent first
+     * @return the encoded selections
+     */
+    @Nonnull
+    static String encode(@Nonnull final List<Pair<String, String>> selections) {
+        final StringBuilder value = new StringBuilder();
+        for (final Pair<String, String> selection : selections) {
+            if (value.length() > 0) {
+                value.append('\n');
+            }
+            value.append(selection.getFirst());
+            if (selection.getSecond() != null || selections.size() > 1) {
+                value.append('\n').append(selection.getSecond() != null ? selection.getSecond() : "");
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Decodes the selections.
+     * 
+     * @param value the encoded selections, may be null
+     * @return the selections, most recent first
+     */
+    @Nonnull
+    static List<Pair<String, String>> decode(@Nullable final String value) {
+        if (value == null || value.isBlank()) {
+            return Collections.emptyList();
+        }
+        final String[] lines = value.split("\n", -1);
+        final List<Pair<String, String>> selections = new ArrayList<>((lines.length + 1) / 2);
+        for (int i = 0; i < lines.length; i += 2) {
+            if (lines[i].isBlank()) {
+                continue;
+            }
+            final String authority = i + 1 < lines.length && !lines[i + 1].isEmpty() ? lines[i + 1] : null;
+            selections.add(new Pair<>(lines[i], authority));
+        }
+        return selections;
+    }
+
+    /**
+     * Adds a selection as the most recent one, removing an earlier equal one and
+     * the oldest ones beyond the maximum.
+     * 
+     * @param selections the selections, most recent first
+     * @param flow       selected flow
+     * @param authority  selected authority if any
+     * @param max        maximum number of selections kept
+     * @return the new selections, most recent first
+     */
+    @Nonnull
+    static List<Pair<String, String>> add(@Nonnull final List<Pair<String, String>> selections,
+            @Nonnull final String flow, @Nullable final String authority, final int max) {
+        final Pair<String, String> selection = new Pair<>(flow, authority);
+        final List<Pair<String, String>> recent = new ArrayList<>(Math.min(max, selections.size() + 1));
+        recent.add(selection);
+        for (final Pair<String, String> previous : selections) {
+            if (recent.size() >= max) {
+                break;
+            }
+            if (!selection.equals(previous)) {
+                recent.add(previous);
+            }
+        }
+        return recent;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfiguration;
+import fi.csc.shibboleth.authn.conf.DiscoveryFlows;
+import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.shared.annotation.constraint.NonnullElements;
+
+/**
+ * Function returning the upstream of the discovery selection, the value of the
+ * selected authenticating authority if its type is one of the configured types.
+ * With type {@value DiscoveryAuthenticatingAuthority#TYPE_ENTITY} it serves as
+ * the SAML entity id strategy, with
+ * {@value DiscoveryAuthenticatingAuthority#TYPE_DISCOVERY} as the SAML
+ * discovery url strategy and with
+ * {@value DiscoveryAuthenticatingAuthority#TYPE_ISSUER} as the OIDC issuer
+ * strategy.
+ * 
+ * The authority is resolved once per request, either from the discovery
+ * selection or from the requested principals if the discovery was bypassed, and
+ * carried in {@link DiscoverySelectionContext} for the other strategies.
+ */
+public class DiscoveryUpstreamLookupFunction extends AbstractDiscoverySelectionFunction
+        implements Function<ProfileRequestContext, String> {
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(DiscoveryUpstreamLookupFunction.class);
+
+    /** Authenticating authority types whose value is returned, empty for any type. */
+    @Nonnull
+    private Set<String> types;
+
+    /**
+     * Constructor.
+     */
+    public DiscoveryUpstreamLookupFunction() {
+        types = Collections.emptySet();
+    }
+
+    /**
+     * Set the authenticating authority types whose value is returned.
+     * 
+     * @param authorityTypes authenticating authority types, null or empty for any
+     *                       type
+     */
+    public void setTypes(@Nullable @NonnullElements final Collection<String> authorityTypes) {
+        checkSetterPreconditions();
+        types = authorityTypes != null ? Set.copyOf(authorityTypes) : Collections.emptySet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    public String apply(@Nullable final ProfileRequestContext input) {
+        checkComponentActive();
+        final AuthenticationContext authenticationContext = input != null
+                ? input.getSubcontext(AuthenticationContext.class)
+                : null;
+        if (authenticationContext == null) {
+            return null;
+        }
+        final DiscoverySelectionContext selectionContext =
+                authenticationContext.getSubcontext(DiscoverySelectionContext.class);
+        DiscoveryAuthenticatingAuthority authority = selectionContext != null
+                ? selectionContext.getAuthenticatingAuthority()
+                : null;
+        if (authority == null) {
+            final DiscoveryConfiguration configuration = getConfiguration();
+            if (configuration == null) {
+                log.warn("No discovery JSON configuration");
+                return null;
+            }
+            final String relyingPartyId = getRelyingPartyId(input);
+            final DiscoveryFlows flows = getFlows(input, configuration, relyingPartyId);
+            authority = authenticationContext.getAuthenticatingAuthority() != null
+                    ? resolveSelection(authenticationContext, flows)
+                    : matchRequestedPrincipals(authenticationContext, flows, relyingPartyId);
+            if (authority == null) {
+                log.debug("No authenticating authority for relying party {}", relyingPartyId);
+                return null;
+            }
+            authenticationContext.ensureSubcontext(DiscoverySelectionContext.class)
+                    .setAuthenticatingAuthority(authority);
+        }
+        if (!types.isEmpty() && !types.contains(authority.getType())) {
+            log.debug("Authenticating authority type {} is not one of {}", authority.getType(), types);
+            return null;
+        }
+        log.debug("Passing {} {} as upstream", authority.getType(), authority.getValue());
+        return authority.getValue();
+    }
+}
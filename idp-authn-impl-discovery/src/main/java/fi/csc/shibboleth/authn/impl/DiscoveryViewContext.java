@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.messaging.context.BaseContext;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryView;
+import fi.csc.shibboleth.authn.conf.DiscoveryViewItem;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * This class carries the precomputed view models of the discovery items for the
+ * discovery view.
+ */
+public class DiscoveryViewContext extends BaseContext {
+
+    /** The view models of the discovery items. */
+    @Nonnull
+    private List<DiscoveryViewItem> items;
+
+    /** The shared view the items are from, null if set as a list. */
+    @Nullable
+    private DiscoveryView view;
+
+    /** The view models of the remembered recent selections pinned at the top. */
+    @Nonnull
+    private List<DiscoveryViewItem> recentItems;
+
+    /** Number of items rendered on the first page, 0 for all items. */
+    private int pageSize;
+
+    /** When the discovery view was rendered for the user. */
+    @Nullable
+    private Instant renderInstant;
+
+    /**
+     * Constructor.
+     */
+    public DiscoveryViewContext() {
+        items = Collections.emptyList();
+        recentItems = Collections.emptyList();
+    }
+
+    /**
+     * Get the unmodifiable list of view models of the discovery items.
+     * 
+     * @return the unmodifiable list of view models of the discovery items
+     */
+    @Nonnull
+    public List<DiscoveryViewItem> getItems() {
+        return items;
+    }
+
+    /**
+     * Set the view models of the discovery items. The list is held by reference
+     * and must not be modified.
+     * 
+     * @param viewItems the unmodifiable list of view models of the discovery items
+     */
+    public void setItems(@Nonnull final List<DiscoveryViewItem> viewItems) {
+        items = Constraint.isNotNull(viewItems, "View items cannot be null");
+        view = null;
+    }
+
+    /**
+     * Get the shared view the items are from.
+     * 
+     * @return the shared view, null if the items were set as a list
+     */
+    @Nullable
+    public DiscoveryView getView() {
+        return view;
+    }
+
+    /**
+     * Set the view models of the discovery items from a shared view. The view
+     * also carries the JSON representation of the items.
+     * 
+     * @param discoveryView the shared view
+     */
+    public void setView(@Nonnull final DiscoveryView discoveryView) {
+        view = Constraint.isNotNull(discoveryView, "View cannot be null");
+        items = discoveryView.getViewItems();
+    }
+
+    /**
+     * Get the view models of the remembered recent selections to be pinned at the
+     * top of the view, most recent first. The instances are the ones listed in
+     * {@link #getItems()}.
+     * 
+     * @return the unmodifiable list of view models of the recent selections
+     */
+    @Nonnull
+    public List<DiscoveryViewItem> getRecentItems() {
+        return recentItems;
+    }
+
+    /**
+     * Set the view models of the remembered recent selections to be pinned at the
+     * top of the view.
+     * 
+     * @param viewItems the view models of the recent selections, most recent first
+     */
+    public void setRecentItems(@Nonnull final List<DiscoveryViewItem> viewItems) {
+        recentItems = List.copyOf(Constraint.isNotNull(viewItems, "Recent items cannot be null"));
+    }
+
+    /**
+     * Get the number of items rendered on the first page.
+     * 
+     * @return the number of items rendered on the first page, 0 for all items
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Set the number of items rendered on the first page. The rest of the items
+     * are delivered on demand.
+     * 
+     * @param size the number of items rendered on the first page, 0 for all items
+     */
+    public void setPageSize(final int size) {
+        pageSize = Constraint.isGreaterThanOrEqual(0, size, "Page size cannot be negative");
+    }
+
+    /**
+     * Get the unmodifiable list of view models of the items rendered on the first
+     * page.
+     * 
+     * @return the unmodifiable list of view models of the items on the first page
+     */
+    @Nonnull
+    public List<DiscoveryViewItem> getPageItems() {
+        return hasMoreItems() ? items.subList(0, pageSize) : items;
+    }
+
+    /**
+     * Whether there are more items than rendered on the first page.
+     * 
+     * @return true if there are more items than rendered on the first page
+     */
+    public boolean hasMoreItems() {
+        return pageSize > 0 && items.size() > pageSize;
+    }
+
+    /**
+     * Get when the discovery view was rendered for the user.
+     * 
+     * @return when the discovery view was rendered for the user, null if not
+     *         rendered
+     */
+    @Nullable
+    public Instant getRenderInstant() {
+        return renderInstant;
+    }
+
+    /**
+     * Set when the discovery view was rendered for the user.
+     * 
+     * @param instant when the discovery view was rendered for the user
+     */
+    public void setRenderInstant(@Nullable final Instant instant) {
+        renderInstant = instant;
+    }
+}
@@ -22,6 +22,9 @@
  */
 package fi.csc.shibboleth.authn.impl;
 
+import java.time.Duration;
+import java.time.Instant;
+
 import javax.annotation.Nonnull;
 
 import org.opensaml.profile.action.ActionSupport;
@@ -32,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import jakarta.servlet.http.HttpServletRequest;
 import net.shibboleth.idp.authn.AuthnEventIds;
 import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.profile.context.RelyingPartyContext;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.logic.Constraint;
 
@@ -64,7 +68,7 @@ public class ExtractAuthenticationFlowDecision extends AbstractDiscoveryExtracti
     /** Parameter name for selected authentication authority. */
     private String selectedAuthorityFieldName;
 
-    /** Whether to store user selection to session. */
+    /** Whether to store user selection to the selection store. */
     private boolean storeSelection;
 
     /**
@@ -89,9 +93,9 @@ public class ExtractAuthenticationFlowDecision extends AbstractDiscoveryExtracti
     }
 
     /**
-     * Set whether to store user selection to session.
+     * Set whether to store user selection to the selection store.
      * 
-     * @param store Whether to store user selection to session
+     * @param store Whether to store user selection to the selection store
      */
     public void setStoreSelection(final boolean store) {
         checkSetterPreconditions();
@@ -126,18 +130,56 @@ public class ExtractAuthenticationFlowDecision extends AbstractDiscoveryExtracti
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext,
             @Nonnull final AuthenticationContext authenticationContext) {
+        if (metrics == null) {
+            extract(profileRequestContext, authenticationContext);
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            extract(profileRequestContext, authenticationContext);
+        } finally {
+            metrics.extracted(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Validates the user selection and signals the selected flow.
+     * 
+     * @param profileRequestContext profile request context
+     * @param authenticationContext authentication context
+     */
+    private void extract(@Nonnull final ProfileRequestContext profileRequestContext,
+            @Nonnull final AuthenticationContext authenticationContext) {
 
         if (!validateUserSelection()) {
             log.error("{} Extracted user selections did not match provided ones", getLogPrefix());
+            if (metrics != null) {
+                metrics.invalidSelection();
+            }
             ActionSupport.buildEvent(profileRequestContext, AuthnEventIds.REQUEST_UNSUPPORTED);
             return;
         }
         log.info("{} User selected {} {}", getLogPrefix(), flow, authority);
+        signalNextFlow(profileRequestContext, authenticationContext);
+        if (metrics != null) {
+            metrics.selected(flow, authority, authenticationContext.getSubcontext(DiscoverySelectionContext.class)
+                    .getAuthenticatingAuthority());
+            final DiscoveryViewContext viewContext = authenticationContext.getSubcontext(DiscoveryViewContext.class);
+            final Instant rendered = viewContext != null ? viewContext.getRenderInstant() : null;
+            if (rendered != null) {
+                metrics.decided(Duration.between(rendered, Instant.now()));
+            }
+        }
+        // Count and remember the resolved authority, compact tokens are valid for one configuration version only.
+        final String resolvedAuthority = authority != null && !authority.isEmpty()
+                ? authenticationContext.getAuthenticatingAuthority()
+                : authority;
+        if (popularity != null) {
+            final RelyingPartyContext rpCtx = profileRequestContext.getSubcontext(RelyingPartyContext.class);
+            popularity.selected(rpCtx != null ? rpCtx.getRelyingPartyId() : null, flow, resolvedAuthority);
+        }
         if (storeSelection) {
-            getHttpServletRequest().getSession().setAttribute(FLOW_ATTRIBUTE, flow);
-            getHttpServletRequest().getSession().setAttribute(AUTHORITY_ATTRIBUTE, authority);
+            selectionStore.save(getHttpServletRequest(), getHttpServletResponse(), flow, resolvedAuthority);
         }
-        ActionSupport.buildEvent(profileRequestContext, AuthnEventIds.RESELECT_FLOW);
-        signalNextFlow(profileRequestContext, authenticationContext);
     }
 }
\ No newline at end of file
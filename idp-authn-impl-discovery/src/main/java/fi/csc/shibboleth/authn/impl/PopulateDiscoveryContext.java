@@ -23,13 +23,13 @@
 
 package fi.csc.shibboleth.authn.impl;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -41,16 +41,21 @@ import org.opensaml.profile.context.ProfileRequestContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-
 import fi.csc.shibboleth.authn.AuthenticationDiscoveryContext;
+import fi.csc.shibboleth.authn.DiscoveryItems;
 import fi.csc.shibboleth.authn.conf.DiscoveryConfiguration;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationService;
 import fi.csc.shibboleth.authn.conf.DiscoveryFlows;
+import fi.csc.shibboleth.authn.conf.DiscoveryItemCache;
+import fi.csc.shibboleth.authn.conf.DiscoverySnapshot;
+import fi.csc.shibboleth.authn.conf.DiscoveryView;
+import fi.csc.shibboleth.authn.conf.DiscoveryViewItem;
 import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
 import net.shibboleth.idp.authn.AuthnEventIds;
 import net.shibboleth.idp.authn.context.AuthenticationContext;
 import net.shibboleth.idp.profile.IdPEventIds;
 import net.shibboleth.profile.context.RelyingPartyContext;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.logic.Constraint;
@@ -59,7 +64,8 @@ import net.shibboleth.shared.logic.Constraint;
  * 
  * This actions populates {@link AuthenticationDiscoveryContext} and attaches it
  * as a subcontext of {@link AuthenticationContext} for Discovery view to
- * present the user as selectable authentication methods.
+ * present the user as selectable authentication methods. The precomputed view
+ * models of the items are attached as {@link DiscoveryViewContext}.
  * 
  * If a user selections can be extracted and validated already from session it
  * is set as signaled authentication flow in {@link AuthenticationContext}.
@@ -81,23 +87,50 @@ public class PopulateDiscoveryContext extends AbstractDiscoveryExtractionAction
     /** The list of flow ids to be ignored from the discovery context. */
     private List<String> ignoredFlows;
 
-    /** Properties having list of authenticating authorities per flow. */
+    /** Service owned by the action if configured by the action setters. */
     @Nullable
-    private Properties authorityProperties;
+    private DiscoveryConfigurationService localConfigurationService;
 
-    /** JSON initialized alternative configuration to authorityProperties. */
+    /** Cache of items shared between requests, null disables caching. */
     @Nullable
-    private DiscoveryConfiguration authorityConfiguration;
+    private DiscoveryItemCache itemCache;
+
+    /** Name of the flow request parameter. */
+    @Nonnull
+    @NotEmpty
+    private String authnFlowFieldName;
+
+    /** Name of the authority request parameter. */
+    @Nonnull
+    @NotEmpty
+    private String selectedAuthorityFieldName;
 
     /** Relying party id. */
     private String relyingPartyId;
 
+    /** Strategy used to resolve the discovery profile of the relying party, null if not used. */
+    @Nullable
+    private Function<ProfileRequestContext, String> discoveryProfileLookupStrategy;
+
+    /** Discovery profile of the relying party. */
+    @Nullable
+    private String discoveryProfile;
+
     /**
      * Whether to automatically select item bypassing discovery view if there is
      * only one to select from.
      */
     private boolean autoSelectSingleItem;
 
+    /**
+     * Whether remembered selections are pinned at the top of the discovery view
+     * instead of being applied.
+     */
+    private boolean pinRecentSelections;
+
+    /** Number of items rendered on the first page of the discovery view, 0 for all items. */
+    private int pageSize;
+
     /**
      * Strategy used to locate the {@link RelyingPartyContext} associated with a
      * given {@link ProfileRequestContext}.
@@ -110,7 +143,8 @@ public class PopulateDiscoveryContext extends AbstractDiscoveryExtractionAction
      */
     public PopulateDiscoveryContext() {
         ignoredFlows = Collections.emptyList();
-        authorityProperties = new Properties();
+        authnFlowFieldName = "j_authnflow";
+        selectedAuthorityFieldName = "j_authnauthority";
         relyingPartyContextLookupStrategy = new ChildContextLookup<>(RelyingPartyContext.class);
     }
 
@@ -126,10 +160,92 @@ public class PopulateDiscoveryContext extends AbstractDiscoveryExtractionAction
         autoSelectSingleItem = autoSelect;
     }
 
+    /**
+     * Set whether remembered selections are pinned at the top of the discovery
+     * view instead of applying the most recent one available.
+     * 
+     * @param flag whether remembered selections are pinned at the top of the
+     *             discovery view
+     */
+    public void setPinRecentSelections(final boolean flag) {
+        checkSetterPreconditions();
+        pinRecentSelections = flag;
+    }
+
+    /**
+     * Set number of items rendered on the first page of the discovery view. The
+     * rest of the items are delivered on demand.
+     * 
+     * @param size number of items rendered on the first page, 0 for all items
+     */
+    public void setPageSize(final int size) {
+        checkSetterPreconditions();
+        pageSize = Constraint.isGreaterThanOrEqual(0, size, "Page size cannot be negative");
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
+        if (configurationService == null) {
+            localConfigurationService = getLocalConfigurationService();
+            localConfigurationService.setId(PopulateDiscoveryContext.class.getSimpleName());
+            localConfigurationService.initialize();
+            configurationService = localConfigurationService;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (localConfigurationService != null) {
+            localConfigurationService.destroy();
+        }
+        super.doDestroy();
+    }
+
+    /**
+     * Set the cache of items shared between requests.
+     * 
+     * @param cache cache of items shared between requests, null disables caching
+     */
+    public void setItemCache(@Nullable final DiscoveryItemCache cache) {
+        checkSetterPreconditions();
+        itemCache = cache;
+    }
+
+    /**
+     * Set the name of the flow request parameter used in the view models.
+     * 
+     * @param fieldName name of the flow request parameter
+     */
+    public void setAuthnFlowFieldName(@Nonnull @NotEmpty final String fieldName) {
+        checkSetterPreconditions();
+        authnFlowFieldName = Constraint.isNotEmpty(fieldName, "AuthnFlow field name cannot be null or empty.");
+    }
+
+    /**
+     * Set the name of the authority request parameter used in the view models.
+     * 
+     * @param fieldName name of the authority request parameter
+     */
+    public void setSelectedAuthorityFieldName(@Nonnull @NotEmpty final String fieldName) {
+        checkSetterPreconditions();
+        selectedAuthorityFieldName = Constraint.isNotEmpty(fieldName,
+                "Selected authority field name cannot be null or empty.");
+    }
+
+    /**
+     * Get the service owned by the action, creating it if needed.
+     * 
+     * @return the service owned by the action
+     */
+    @Nonnull
+    private DiscoveryConfigurationService getLocalConfigurationService() {
+        if (localConfigurationService == null) {
+            localConfigurationService = new DiscoveryConfigurationService();
+        }
+        return localConfigurationService;
     }
 
     /**
@@ -149,18 +265,7 @@ public class PopulateDiscoveryContext extends AbstractDiscoveryExtractionAction
      */
     public void setAuthorityProperties(@Nullable final String propertiesFile) {
         checkSetterPreconditions();
-        if (propertiesFile == null || propertiesFile.isEmpty()) {
-            log.debug("{} No authority properties configured", getLogPrefix());
-        } else {
-            log.debug("{} Reading authority properties from {}", getLogPrefix(), propertiesFile);
-            authorityProperties = new Properties();
-            try {
-                final InputStream stream = new FileInputStream(propertiesFile);
-                authorityProperties.load(stream);
-            } catch (final IOException e) {
-                log.error("{} Error loading {}", getLogPrefix(), propertiesFile, e);
-            }
-        }
+        getLocalConfigurationService().setAuthorityProperties(propertiesFile);
     }
 
     /**
@@ -169,14 +274,22 @@ public class PopulateDiscoveryContext extends AbstractDiscoveryExtractionAction
      * @param authorities JSON based alternative configuration to
      *                    authorityProperties
      */
-    public void setAuthorities(String authorities) {
-        if (authorities != null && !authorities.isBlank()) {
-            try {
-                authorityConfiguration = DiscoveryConfiguration.parse(authorities);
-            } catch (Exception e) {
-                log.error("{} Failed parsing {}", getLogPrefix(), authorities, e);
-            }
-        }
+    public void setAuthorities(@Nullable final String authorities) {
+        checkSetterPreconditions();
+        getLocalConfigurationService().setAuthorities(authorities);
+    }
+
+    /**
+     * Set location of JSON based alternative configuration to
+     * authorityProperties. Location prefixed with classpath: is read as class path
+     * resource, anything else as a file.
+     * 
+     * @param location location of JSON based alternative configuration to
+     *                 authorityProperties
+     */
+    public void setAuthoritiesResource(@Nullable final String location) {
+        checkSetterPreconditions();
+        getLocalConfigurationService().setAuthoritiesResource(location);
     }
 
     /**
@@ -194,6 +307,19 @@ public class PopulateDiscoveryContext extends AbstractDiscoveryExtractionAction
                 "RelyingPartyContext lookup strategy cannot be null");
     }
 
+    /**
+     * Set the strategy used to resolve the discovery profile of the relying
+     * party. The profile selects the configuration section of the relying party,
+     * see {@link DiscoveryConfiguration#getFlows(String, String)}.
+     * 
+     * @param strategy strategy used to resolve the discovery profile, null if not
+     *                 used
+     */
+    public void setDiscoveryProfileLookupStrategy(@Nullable final Function<ProfileRequestContext, String> strategy) {
+        checkSetterPreconditions();
+        discoveryProfileLookupStrategy = strategy;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext,
@@ -205,109 +331,239 @@ public class PopulateDiscoveryContext extends AbstractDiscoveryExtractionAction
             return false;
         }
         relyingPartyId = rpCtx.getRelyingPartyId();
+        discoveryProfile = discoveryProfileLookupStrategy != null
+                ? discoveryProfileLookupStrategy.apply(profileRequestContext)
+                : null;
         return super.doPreExecute(profileRequestContext, authenticationContext);
     }
 
     /**
-     * Add selectable flow to {@link DiscoveryContext} with authenticating
-     * authorities using properties file.
+     * Add selectable flow with authenticating authorities using properties file.
      * 
-     * @param flow flow to be added
+     * @param items    items to add to
+     * @param snapshot configuration snapshot
+     * @param flow     flow to be added
      */
-    private void addItemsUsingProperties(@Nonnull final AuthenticationFlowDescriptor flow) {
+    private void addItemsUsingProperties(@Nonnull final List<Pair<String, String>> items,
+            @Nonnull final DiscoverySnapshot snapshot, @Nonnull final AuthenticationFlowDescriptor flow) {
 
         assert flow != null;
-        String authorities = null;
-        if (relyingPartyId != null) {
-            authorities = (String) authorityProperties.get(relyingPartyId + "." + flow.getId());
-        }
-        if (authorities == null || authorities.isEmpty()) {
-            authorities = (String) authorityProperties.get(flow.getId());
-        }
-        if (authorities != null && !authorities.isEmpty()) {
-            for (final String authority : authorities.split(",")) {
-                discoveryContext.getFlowsWithAuthorities().add(new Pair<>(flow.getId(), authority.trim()));
+        final List<String> authorities = snapshot.getAuthorityProperty(relyingPartyId, discoveryProfile,
+                flow.getId());
+        if (authorities != null) {
+            for (final String authority : authorities) {
+                items.add(new Pair<>(flow.getId(), authority));
             }
         } else {
-            discoveryContext.getFlowsWithAuthorities().add(new Pair<>(flow.getId(), null));
+            items.add(new Pair<>(flow.getId(), null));
         }
 
     }
 
     /**
-     * Add selectable flow to {@link DiscoveryContext} with authenticating
-     * authorities using {@link DiscoveryConfiguration}.
+     * Add selectable flow with authenticating authorities using
+     * {@link DiscoveryConfiguration}. The items are encoded already when the
+     * configuration is parsed.
      * 
-     * @param flow flow to be added
+     * @param items  items to add to
+     * @param rpConf JSON configuration of the relying party, may be null
+     * @param flow   flow to be added
      */
-    private void addItemsUsingDiscoveryConfiguration(@Nonnull final AuthenticationFlowDescriptor flow) {
+    private void addItemsUsingDiscoveryConfiguration(@Nonnull final List<Pair<String, String>> items,
+            @Nullable final DiscoveryFlows rpConf, @Nonnull final AuthenticationFlowDescriptor flow) {
 
         assert flow != null;
-        DiscoveryFlows rpConf = authorityConfiguration.getFlowMap().containsKey(relyingPartyId)
-                ? authorityConfiguration.getFlowMap().get(relyingPartyId)
-                : authorityConfiguration.getFlowMap().get("default");
-        if (rpConf.getAuthorityMap().containsKey(flow.getId())) {
-            rpConf.getAuthorityMap().get(flow.getId()).forEach(authority -> {
-                try {
-                    if (!authority.isHidden()) {
-                        String authorityValue = authority.toB64UrlEncoded();
-                        log.debug("{} Setting authority as {}", getLogPrefix(), authorityValue);
-                        discoveryContext.getFlowsWithAuthorities().add(new Pair<>(flow.getId(), authorityValue));
-                    }
-
-                } catch (JsonProcessingException e) {
-                    log.error("{} Processing exception", getLogPrefix(), e);
-                }
-            });
+        final List<Pair<String, String>> flowItems = rpConf != null ? rpConf.getItems(flow.getId()) : null;
+        if (flowItems != null) {
+            log.debug("{} Setting {} authorities for {}", getLogPrefix(), flowItems.size(), flow.getId());
+            items.addAll(flowItems);
         } else {
-            discoveryContext.getFlowsWithAuthorities().add(new Pair<>(flow.getId(), null));
+            items.add(new Pair<>(flow.getId(), null));
         }
 
     }
 
+    /**
+     * Build the selectable items and their view models for the potential flows,
+     * ordered by popularity if ranked.
+     * 
+     * @param snapshot configuration snapshot
+     * @param flows    potential flows not ignored
+     * @return the selectable items and their view models
+     */
+    @Nonnull
+    private DiscoveryView buildView(@Nonnull final DiscoverySnapshot snapshot,
+            @Nonnull final List<AuthenticationFlowDescriptor> flows) {
+        final DiscoveryConfiguration authorityConfiguration = snapshot.getConfiguration();
+        final DiscoveryFlows rpConf = authorityConfiguration != null
+                ? authorityConfiguration.getFlows(relyingPartyId, discoveryProfile)
+                : null;
+        final List<Pair<String, String>> items = new ArrayList<>();
+        for (final AuthenticationFlowDescriptor flow : flows) {
+            if (authorityConfiguration != null) {
+                addItemsUsingDiscoveryConfiguration(items, rpConf, flow);
+            } else {
+                addItemsUsingProperties(items, snapshot, flow);
+            }
+        }
+        final List<Pair<String, String>> ordered = popularity != null ? popularity.order(relyingPartyId, items, rpConf)
+                : items;
+        final List<DiscoveryViewItem> viewItems = new ArrayList<>(ordered.size());
+        for (final Pair<String, String> item : ordered) {
+            viewItems.add(new DiscoveryViewItem(item.getFirst(), item.getSecond(),
+                    rpConf != null ? rpConf.getAuthority(item.getSecond()) : null, authnFlowFieldName,
+                    selectedAuthorityFieldName));
+        }
+        return new DiscoveryView(DiscoveryItems.of(ordered), viewItems);
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext,
             @Nonnull final AuthenticationContext authenticationContext) {
+        if (metrics == null) {
+            populate(profileRequestContext, authenticationContext);
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            populate(profileRequestContext, authenticationContext);
+        } finally {
+            metrics.populated(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Populates the discovery context and signals the next flow if the selection
+     * is already known.
+     * 
+     * @param profileRequestContext profile request context
+     * @param authenticationContext authentication context
+     */
+    private void populate(@Nonnull final ProfileRequestContext profileRequestContext,
+            @Nonnull final AuthenticationContext authenticationContext) {
 
         // Determine what can be shown for user to select
-        final Map<String, AuthenticationFlowDescriptor> flows = authenticationContext.getPotentialFlows();
-        for (final String key : flows.keySet()) {
-            if (ignoredFlows.contains(key)) {
-                log.debug("{} Ignoring {} from the context", getLogPrefix(), key);
+        final DiscoverySnapshot snapshot = configurationService.getSnapshot();
+        final List<String> flowKeys = new ArrayList<>();
+        final List<AuthenticationFlowDescriptor> flows = new ArrayList<>();
+        for (final Map.Entry<String, AuthenticationFlowDescriptor> entry : authenticationContext.getPotentialFlows()
+                .entrySet()) {
+            if (ignoredFlows.contains(entry.getKey())) {
+                log.debug("{} Ignoring {} from the context", getLogPrefix(), entry.getKey());
                 continue;
             }
-            if (authorityConfiguration != null) {
-                addItemsUsingDiscoveryConfiguration(flows.get(key));
-            } else {
-                addItemsUsingProperties(flows.get(key));
-            }
+            flowKeys.add(entry.getKey());
+            flows.add(entry.getValue());
         }
+        // Items of a reread section, or ordered by popularity, are rebuilt once they change.
+        final DiscoveryConfiguration configuration = snapshot.getConfiguration();
+        final long generation = configuration != null
+                ? configuration.getGeneration(relyingPartyId, discoveryProfile)
+                : 0;
+        String version = generation != 0 ? snapshot.getVersion() + "/" + generation : snapshot.getVersion();
+        if (popularity != null) {
+            version += "#" + popularity.getGeneration(relyingPartyId);
+        }
+        final DiscoveryView view = itemCache != null
+                ? itemCache.get(version, relyingPartyId, discoveryProfile, flowKeys,
+                        () -> buildView(snapshot, flows))
+                : buildView(snapshot, flows);
+        discoveryContext.shareFlowsWithAuthorities(view.getItems());
+        final DiscoveryViewContext viewContext = authenticationContext.ensureSubcontext(DiscoveryViewContext.class);
+        viewContext.setView(view);
+        viewContext.setPageSize(pageSize);
 
         // If there is only one item to select there is no point to show discovery view.
         if (autoSelectSingleItem && discoveryContext.getFlowsWithAuthorities().size() == 1) {
             flow = discoveryContext.getFlowsWithAuthorities().get(0).getFirst();
             authority = discoveryContext.getFlowsWithAuthorities().get(0).getSecond();
             log.debug("{} Only one item to select {} {}, bypassing discovery view", getLogPrefix(), flow, authority);
+            if (metrics != null) {
+                metrics.autoSelected();
+            }
             signalNextFlow(profileRequestContext, authenticationContext);
             return;
         }
 
-        // Look for prior selection
-        flow = (String) getHttpServletRequest().getSession().getAttribute(FLOW_ATTRIBUTE);
-        authority = (String) getHttpServletRequest().getSession().getAttribute(AUTHORITY_ATTRIBUTE);
+        // Look for prior selections
+        final List<Pair<String, String>> selections = selectionStore.loadRecent(getHttpServletRequest());
+        if (selections.isEmpty()) {
+            if (metrics != null) {
+                viewContext.setRenderInstant(Instant.now());
+            }
+            return;
+        }
 
-        if (flow == null || flow.isBlank()) {
+        if (pinRecentSelections) {
+            viewContext.setRecentItems(findViewItems(view, selections));
+            log.debug("{} Pinning {} prior selections", getLogPrefix(), viewContext.getRecentItems().size());
+            if (metrics != null) {
+                viewContext.setRenderInstant(Instant.now());
+            }
             return;
         }
 
         // Prior selection is used only if it matches what is currently available.
-        if (!validateUserSelection()) {
+        for (final Pair<String, String> selection : selections) {
+            // Remembered authorities are matched to the items in the form they are listed in now.
+            final DiscoveryViewItem item = view.getViewItem(selection.getFirst(), selection.getSecond());
+            flow = selection.getFirst();
+            authority = item != null ? decode(item.getAuthority()) : selection.getSecond();
+            if (flow != null && !flow.isBlank() && validateUserSelection()) {
+                log.info("{} User has prior selection {} {}", getLogPrefix(), flow, authority);
+                if (metrics != null) {
+                    metrics.priorSelectionHit();
+                }
+                signalNextFlow(profileRequestContext, authenticationContext);
+                return;
+            }
             log.debug("{} Prior selection {} {} is not available", getLogPrefix(), flow, authority);
-            return;
         }
+        flow = null;
+        authority = null;
+        if (metrics != null) {
+            metrics.priorSelectionMiss();
+            viewContext.setRenderInstant(Instant.now());
+        }
+    }
 
-        log.info("{} User has prior selection {} {}", getLogPrefix(), flow, authority);
-        signalNextFlow(profileRequestContext, authenticationContext);
+    /**
+     * Find the view models of the remembered selections available in the view.
+     * 
+     * @param view       the view
+     * @param selections the remembered selections, most recent first
+     * @return the view models of the available selections, most recent first
+     * @see DiscoveryView#getViewItem(String, String)
+     */
+    @Nonnull
+    private List<DiscoveryViewItem> findViewItems(@Nonnull final DiscoveryView view,
+            @Nonnull final List<Pair<String, String>> selections) {
+        final List<DiscoveryViewItem> found = new ArrayList<>(selections.size());
+        for (final Pair<String, String> selection : selections) {
+            final DiscoveryViewItem item = view.getViewItem(selection.getFirst(), selection.getSecond());
+            if (item != null && !found.contains(item)) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Url decodes a listed authority.
+     * 
+     * @param authority listed authority, may be null
+     * @return url decoded authority, the authority as is if not url encoded
+     */
+    @Nullable
+    private static String decode(@Nullable final String authority) {
+        if (authority == null) {
+            return null;
+        }
+        try {
+            return URLDecoder.decode(authority, StandardCharsets.UTF_8);
+        } catch (final IllegalArgumentException e) {
+            return authority;
+        }
     }
 }
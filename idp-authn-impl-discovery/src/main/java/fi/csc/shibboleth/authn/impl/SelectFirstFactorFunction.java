@@ -0,0 +1,325 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.lang.reflect.Constructor;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfiguration;
+import fi.csc.shibboleth.authn.conf.DiscoveryFlows;
+import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.idp.authn.context.MultiFactorAuthenticationContext;
+import net.shibboleth.idp.authn.context.RequestedPrincipalContext;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Function selecting the first factor of the MFA flow by the discovery
+ * configuration. It is the native replacement of the scripted selectFirstFactor
+ * example.
+ * 
+ * If the user has made a selection in the discovery, the authority of the
+ * selection is resolved and its acr is set as the requested principal. If the
+ * discovery was bypassed, the authority is looked up by the requested principals
+ * of the relying party. The next flow is the flow of the authority, or the flow
+ * mapped to its acr, or the default flow. The authority is stored to
+ * {@link DiscoverySelectionContext} for the upstream flows. If no flow is
+ * resolved, the unsupported event is signaled to the MFA flow and null is
+ * returned.
+ */
+public class SelectFirstFactorFunction extends AbstractDiscoverySelectionFunction
+        implements Function<ProfileRequestContext, String> {
+
+    /** Profile id of the OIDC single sign-on. */
+    @Nonnull
+    @NotEmpty
+    public final static String OIDC_SSO_PROFILE_ID = "http://shibboleth.net/ns/profiles/oidc/sso/browser";
+
+    /** Default principal type of the requested acr. */
+    @Nonnull
+    @NotEmpty
+    public final static String DEFAULT_PRINCIPAL_TYPE =
+            "net.shibboleth.idp.saml.authn.principal.AuthnContextClassRefPrincipal";
+
+    /** Principal type of the requested acr of OIDC single sign-on. */
+    @Nonnull
+    @NotEmpty
+    public final static String OIDC_PRINCIPAL_TYPE =
+            "net.shibboleth.oidc.authn.principal.AuthenticationContextClassReferencePrincipal";
+
+    /** Default event signaled to the MFA flow if no flow is resolved. */
+    @Nonnull
+    @NotEmpty
+    public final static String DEFAULT_UNSUPPORTED_EVENT = "RequestUnsupported";
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(SelectFirstFactorFunction.class);
+
+    /** Next flows keyed by acr for authorities without flow. */
+    @Nonnull
+    private Map<String, String> acrFlows;
+
+    /** Next flow if authority has no flow and acr is not mapped. */
+    @Nullable
+    private String defaultFlow;
+
+    /** Principal type names of the requested acr keyed by profile id. */
+    @Nonnull
+    private Map<String, String> principalTypes;
+
+    /** Principal type name of the requested acr for other profiles. */
+    @Nonnull
+    @NotEmpty
+    private String defaultPrincipalType;
+
+    /** Event signaled to the MFA flow if no flow is resolved. */
+    @Nonnull
+    @NotEmpty
+    private String unsupportedEvent;
+
+    /** Principal constructors keyed by profile id, resolved on initialization. */
+    @Nonnull
+    private Map<String, Constructor<? extends Principal>> principalConstructors;
+
+    /** Principal constructor for other profiles, resolved on initialization. */
+    @Nullable
+    private Constructor<? extends Principal> defaultPrincipalConstructor;
+
+    /**
+     * Constructor.
+     */
+    public SelectFirstFactorFunction() {
+        acrFlows = Collections.emptyMap();
+        principalTypes = Map.of(OIDC_SSO_PROFILE_ID, OIDC_PRINCIPAL_TYPE);
+        defaultPrincipalType = DEFAULT_PRINCIPAL_TYPE;
+        unsupportedEvent = DEFAULT_UNSUPPORTED_EVENT;
+        principalConstructors = Collections.emptyMap();
+    }
+
+    /**
+     * Set the next flows keyed by acr, used for authorities without flow.
+     * 
+     * @param flows next flows keyed by acr
+     */
+    public void setAcrFlows(@Nullable final Map<String, String> flows) {
+        checkSetterPreconditions();
+        acrFlows = flows != null ? Map.copyOf(flows) : Collections.emptyMap();
+    }
+
+    /**
+     * Set the next flow used if the authority has no flow and its acr is not
+     * mapped.
+     * 
+     * @param flow next flow, null or empty if the request is not supported
+     */
+    public void setDefaultFlow(@Nullable final String flow) {
+        checkSetterPreconditions();
+        defaultFlow = flow == null || flow.isBlank() ? null : flow.trim();
+    }
+
+    /**
+     * Set the principal type names of the requested acr keyed by profile id. Types
+     * not available at runtime are ignored.
+     * 
+     * @param types principal type names keyed by profile id
+     */
+    public void setPrincipalTypes(@Nullable final Map<String, String> types) {
+        checkSetterPreconditions();
+        principalTypes = types != null ? Map.copyOf(types) : Collections.emptyMap();
+    }
+
+    /**
+     * Set the principal type name of the requested acr for profiles without own
+     * type.
+     * 
+     * @param type principal type name
+     */
+    public void setDefaultPrincipalType(@Nonnull @NotEmpty final String type) {
+        checkSetterPreconditions();
+        defaultPrincipalType = Constraint.isNotEmpty(type, "Default principal type cannot be null or empty");
+    }
+
+    /**
+     * Set the event signaled to the MFA flow if no flow is resolved.
+     * 
+     * @param event event signaled to the MFA flow
+     */
+    public void setUnsupportedEvent(@Nonnull @NotEmpty final String event) {
+        checkSetterPreconditions();
+        unsupportedEvent = Constraint.isNotEmpty(event, "Unsupported event cannot be null or empty");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        defaultPrincipalConstructor = resolvePrincipalConstructor(defaultPrincipalType);
+        if (defaultPrincipalConstructor == null) {
+            throw new ComponentInitializationException("Default principal type " + defaultPrincipalType
+                    + " is not available");
+        }
+        final Map<String, Constructor<? extends Principal>> constructors = new HashMap<>();
+        for (final Map.Entry<String, String> entry : principalTypes.entrySet()) {
+            final Constructor<? extends Principal> constructor = resolvePrincipalConstructor(entry.getValue());
+            if (constructor != null) {
+                constructors.put(entry.getKey(), constructor);
+            } else {
+                log.debug("Principal type {} of profile {} is not available", entry.getValue(), entry.getKey());
+            }
+        }
+        principalConstructors = Map.copyOf(constructors);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    public String apply(@Nullable final ProfileRequestContext input) {
+        checkComponentActive();
+        final AuthenticationContext authenticationContext = input != null
+                ? input.getSubcontext(AuthenticationContext.class)
+                : null;
+        if (authenticationContext == null) {
+            log.error("No authentication context");
+            return null;
+        }
+        final DiscoveryConfiguration configuration = getConfiguration();
+        if (configuration == null) {
+            log.error("No discovery JSON configuration");
+            return unsupported(authenticationContext);
+        }
+        final String relyingPartyId = getRelyingPartyId(input);
+        final DiscoveryFlows flows = getFlows(input, configuration, relyingPartyId);
+
+        final DiscoveryAuthenticatingAuthority authority;
+        if (authenticationContext.getAuthenticatingAuthority() != null) {
+            // User has been presented with discovery, acr of the selection is the requested principal.
+            authority = resolveSelection(authenticationContext, flows);
+            if (authority == null) {
+                return unsupported(authenticationContext);
+            }
+            final Principal principal = createPrincipal(input.getProfileId(), authority.getAcr());
+            if (principal == null) {
+                return unsupported(authenticationContext);
+            }
+            log.info("User selection matched to ACR {}", principal);
+            final RequestedPrincipalContext requestedPrincipalContext = new RequestedPrincipalContext();
+            requestedPrincipalContext.setPrincipalEvalPredicateFactoryRegistry(
+                    authenticationContext.getPrincipalEvalPredicateFactoryRegistry());
+            requestedPrincipalContext.setOperator("exact");
+            requestedPrincipalContext.setRequestedPrincipals(List.of(principal));
+            authenticationContext.addSubcontext(requestedPrincipalContext, true);
+        } else {
+            // Discovery has been bypassed, requested principals must match the configuration of relying party.
+            authority = matchRequestedPrincipals(authenticationContext, flows, relyingPartyId);
+            if (authority == null) {
+                log.error("Unable to pick method for requested acr of relying party {}", relyingPartyId);
+                return unsupported(authenticationContext);
+            }
+        }
+
+        String nextFlow = authority.getFlow();
+        if (nextFlow == null) {
+            nextFlow = acrFlows.getOrDefault(authority.getAcr(), defaultFlow);
+        }
+        if (nextFlow == null) {
+            log.error("Unable to pick method for acr {}", authority.getAcr());
+            return unsupported(authenticationContext);
+        }
+        final DiscoverySelectionContext selectionContext =
+                authenticationContext.ensureSubcontext(DiscoverySelectionContext.class);
+        selectionContext.setAuthenticatingAuthority(authority);
+        log.debug("Picked {} as next flow", nextFlow);
+        return nextFlow;
+    }
+
+    /**
+     * Creates the requested principal of the acr by the type of the profile.
+     * 
+     * @param profileId profile id
+     * @param acr       acr value
+     * @return requested principal, or null if creating it fails
+     */
+    @Nullable
+    private Principal createPrincipal(@Nullable final String profileId, @Nullable final String acr) {
+        if (acr == null) {
+            log.error("Selected authority has no acr");
+            return null;
+        }
+        final Constructor<? extends Principal> constructor = profileId != null
+                ? principalConstructors.getOrDefault(profileId, defaultPrincipalConstructor)
+                : defaultPrincipalConstructor;
+        try {
+            return constructor.newInstance(acr);
+        } catch (final ReflectiveOperationException e) {
+            log.error("Unable to create principal {} for acr {}", constructor.getDeclaringClass(), acr, e);
+            return null;
+        }
+    }
+
+    /**
+     * Signals the unsupported event to the MFA flow.
+     * 
+     * @param authenticationContext authentication context
+     * @return null
+     */
+    @Nullable
+    private String unsupported(@Nonnull final AuthenticationContext authenticationContext) {
+        final MultiFactorAuthenticationContext mfaContext =
+                authenticationContext.getSubcontext(MultiFactorAuthenticationContext.class);
+        if (mfaContext != null) {
+            mfaContext.setEvent(unsupportedEvent);
+        }
+        return null;
+    }
+
+    /**
+     * Resolves the single string argument constructor of a principal type.
+     * 
+     * @param type principal type name
+     * @return constructor, or null if the type is not available
+     */
+    @Nullable
+    private Constructor<? extends Principal> resolvePrincipalConstructor(@Nonnull final String type) {
+        try {
+            return Class.forName(type).asSubclass(Principal.class).getConstructor(String.class);
+        } catch (final ClassNotFoundException | NoSuchMethodException | ClassCastException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Stores the remembered selection as attributes of the {@link HttpSession}. If
+ * more than one selection is remembered, the recent selections are instead
+ * stored as one attribute in the encoding of {@link DiscoverySelections}, the
+ * most recent one first.
+ */
+public class SessionSelectionStore implements DiscoverySelectionStore {
+
+    /** Attribute name of selected flow. */
+    @Nonnull
+    public final static String FLOW_ATTRIBUTE = "fi.csc.shibboleth.authn.discovery.selectedFlow";
+
+    /** Attribute name of selected authority. */
+    @Nonnull
+    public final static String AUTHORITY_ATTRIBUTE = "fi.csc.shibboleth.authn.discovery.selectedAuthority";
+
+    /** Attribute name of the recent selections. */
+    @Nonnull
+    public final static String SELECTIONS_ATTRIBUTE = "fi.csc.shibboleth.authn.discovery.recentSelections";
+
+    /** Maximum number of remembered selections. */
+    private int maxSelections = 1;
+
+    /**
+     * Set maximum number of remembered selections.
+     * 
+     * @param max maximum number of remembered selections
+     */
+    public void setMaxSelections(final int max) {
+        maxSelections = Constraint.isGreaterThan(0, max, "Maximum number of selections must be positive");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    public Pair<String, String> load(@Nonnull final HttpServletRequest request) {
+        if (maxSelections > 1) {
+            final List<Pair<String, String>> selections = loadRecent(request);
+            return selections.isEmpty() ? null : selections.get(0);
+        }
+        final HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        final String flow = (String) session.getAttribute(FLOW_ATTRIBUTE);
+        if (flow == null || flow.isBlank()) {
+            return null;
+        }
+        return new Pair<>(flow, (String) session.getAttribute(AUTHORITY_ATTRIBUTE));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull
+    public List<Pair<String, String>> loadRecent(@Nonnull final HttpServletRequest request) {
+        if (maxSelections == 1) {
+            return DiscoverySelectionStore.super.loadRecent(request);
+        }
+        final HttpSession session = request.getSession(false);
+        final Object selections = session != null ? session.getAttribute(SELECTIONS_ATTRIBUTE) : null;
+        return selections instanceof String value ? DiscoverySelections.decode(value) : Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void save(@Nonnull final HttpServletRequest request, @Nullable final HttpServletResponse response,
+            @Nonnull final String flow, @Nullable final String authority) {
+        if (maxSelections > 1) {
+            request.getSession().setAttribute(SELECTIONS_ATTRIBUTE,
+                    DiscoverySelections.encode(DiscoverySelections.add(loadRecent(request), flow, authority,
+                            maxSelections)));
+            return;
+        }
+        request.getSession().setAttribute(FLOW_ATTRIBUTE, flow);
+        request.getSession().setAttribute(AUTHORITY_ATTRIBUTE, authority);
+    }
+}
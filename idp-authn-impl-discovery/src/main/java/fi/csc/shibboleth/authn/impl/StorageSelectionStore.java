@@ -0,0 +1,340 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.AbstractInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * Stores the remembered selection to a {@link StorageService} keyed by a random
+ * browser identifier kept in a cookie. Selections are kept in a bounded in
+ * memory near cache in front of the storage service, so repeated logins on the
+ * same node do not read the storage service. If more than one selection is
+ * remembered, the record holds the recent selections, see
+ * {@link DiscoverySelections}.
+ */
+public class StorageSelectionStore extends AbstractInitializableComponent implements DiscoverySelectionStore {
+
+    /** Default name of the browser identifier cookie. */
+    @Nonnull
+    @NotEmpty
+    public final static String DEFAULT_COOKIE_NAME = "shib_idp_discovery_browser";
+
+    /** Storage context of the selections. */
+    @Nonnull
+    @NotEmpty
+    public final static String STORAGE_CONTEXT = "fi.csc.shibboleth.authn.discovery.selection";
+
+    /** Length of the browser identifier in bytes. */
+    private final static int IDENTIFIER_LENGTH = 16;
+
+    /** Pattern of a valid browser identifier. */
+    @Nonnull
+    private final static Pattern IDENTIFIER_PATTERN = Pattern.compile("[A-Za-z0-9_-]{22}");
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(StorageSelectionStore.class);
+
+    /** Source of the browser identifiers. */
+    @Nonnull
+    private final SecureRandom random;
+
+    /** The storage service. */
+    @Nullable
+    private StorageService storageService;
+
+    /** Name of the browser identifier cookie. */
+    @Nonnull
+    @NotEmpty
+    private String cookieName;
+
+    /** Path of the cookie, null for the context path. */
+    @Nullable
+    private String cookiePath;
+
+    /** Whether the cookie is secure. */
+    private boolean secure;
+
+    /** SameSite attribute of the cookie, null to leave unset. */
+    @Nullable
+    private String sameSite;
+
+    /** Lifetime of the remembered selection. */
+    @Nonnull
+    private Duration lifetime;
+
+    /** Maximum number of remembered selections per browser. */
+    private int maxSelections;
+
+    /** Maximum number of selections in the near cache. */
+    private long nearCacheSize;
+
+    /** Lifetime of the selections in the near cache. */
+    @Nonnull
+    private Duration nearCacheLifetime;
+
+    /** Near cache of the selections keyed by browser identifier. */
+    @Nullable
+    private Cache<String, List<Pair<String, String>>> nearCache;
+
+    /**
+     * Constructor.
+     */
+    public StorageSelectionStore() {
+        random = new SecureRandom();
+        cookieName = DEFAULT_COOKIE_NAME;
+        secure = true;
+        lifetime = Duration.ofDays(90);
+        maxSelections = 1;
+        nearCacheSize = 10000;
+        nearCacheLifetime = Duration.ofMinutes(5);
+    }
+
+    /**
+     * Set the storage service.
+     * 
+     * @param storage the storage service
+     */
+    public void setStorageService(@Nonnull final StorageService storage) {
+        checkSetterPreconditions();
+        storageService = Constraint.isNotNull(storage, "StorageService cannot be null");
+    }
+
+    /**
+     * Set name of the browser identifier cookie.
+     * 
+     * @param name name of the browser identifier cookie
+     */
+    public void setCookieName(@Nonnull @NotEmpty final String name) {
+        checkSetterPreconditions();
+        cookieName = Constraint.isNotEmpty(name, "Cookie name cannot be null or empty");
+    }
+
+    /**
+     * Set path of the cookie.
+     * 
+     * @param path path of the cookie, null or empty for the context path
+     */
+    public void setCookiePath(@Nullable final String path) {
+        checkSetterPreconditions();
+        cookiePath = path == null || path.isBlank() ? null : path.trim();
+    }
+
+    /**
+     * Set whether the cookie is secure.
+     * 
+     * @param flag whether the cookie is secure
+     */
+    public void setSecure(final boolean flag) {
+        checkSetterPreconditions();
+        secure = flag;
+    }
+
+    /**
+     * Set SameSite attribute of the cookie.
+     * 
+     * @param value SameSite attribute of the cookie, null or empty to leave unset
+     */
+    public void setSameSite(@Nullable final String value) {
+        checkSetterPreconditions();
+        sameSite = value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * Set lifetime of the remembered selection.
+     * 
+     * @param duration lifetime of the remembered selection
+     */
+    public void setLifetime(@Nonnull final Duration duration) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(duration, "Lifetime cannot be null");
+        Constraint.isFalse(duration.isNegative() || duration.isZero(), "Lifetime must be positive");
+        lifetime = duration;
+    }
+
+    /**
+     * Set maximum number of remembered selections per browser.
+     * 
+     * @param max maximum number of remembered selections per browser
+     */
+    public void setMaxSelections(final int max) {
+        checkSetterPreconditions();
+        maxSelections = Constraint.isGreaterThan(0, max, "Maximum number of selections must be positive");
+    }
+
+    /**
+     * Set maximum number of selections in the near cache.
+     * 
+     * @param size maximum number of selections in the near cache, zero disables
+     *             the near cache
+     */
+    public void setNearCacheSize(final long size) {
+        checkSetterPreconditions();
+        nearCacheSize = Constraint.isGreaterThanOrEqual(0, size, "Near cache size cannot be negative");
+    }
+
+    /**
+     * Set lifetime of the selections in the near cache.
+     * 
+     * @param duration lifetime of the selections in the near cache
+     */
+    public void setNearCacheLifetime(@Nonnull final Duration duration) {
+        checkSetterPreconditions();
+        Constraint.isNotNull(duration, "Near cache lifetime cannot be null");
+        Constraint.isFalse(duration.isNegative(), "Near cache lifetime cannot be negative");
+        nearCacheLifetime = duration;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (storageService == null) {
+            throw new ComponentInitializationException("StorageService cannot be null");
+        }
+        nearCache = CacheBuilder.newBuilder().maximumSize(nearCacheSize).expireAfterWrite(nearCacheLifetime)
+                .build();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    public Pair<String, String> load(@Nonnull final HttpServletRequest request) {
+        final List<Pair<String, String>> selections = loadRecent(request);
+        return selections.isEmpty() ? null : selections.get(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull
+    public List<Pair<String, String>> loadRecent(@Nonnull final HttpServletRequest request) {
+        final String identifier = getIdentifier(request);
+        if (identifier == null) {
+            return Collections.emptyList();
+        }
+        List<Pair<String, String>> selections = nearCache.getIfPresent(identifier);
+        if (selections != null) {
+            return selections;
+        }
+        try {
+            final StorageRecord<?> record = storageService.read(STORAGE_CONTEXT, identifier);
+            if (record == null || record.getValue() == null) {
+                return Collections.emptyList();
+            }
+            selections = DiscoverySelections.decode(record.getValue());
+            nearCache.put(identifier, selections);
+            return selections;
+        } catch (final IOException e) {
+            log.error("Unable to read remembered selection", e);
+            return Collections.emptyList();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void save(@Nonnull final HttpServletRequest request, @Nullable final HttpServletResponse response,
+            @Nonnull final String flow, @Nullable final String authority) {
+        if (response == null) {
+            log.error("No HttpServletResponse available, cannot remember selection");
+            return;
+        }
+        String identifier = getIdentifier(request);
+        if (identifier == null) {
+            final byte[] bytes = new byte[IDENTIFIER_LENGTH];
+            random.nextBytes(bytes);
+            identifier = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        }
+        final List<Pair<String, String>> selections = maxSelections > 1
+                ? DiscoverySelections.add(loadRecent(request), flow, authority, maxSelections)
+                : List.of(new Pair<>(flow, authority));
+        final String value = DiscoverySelections.encode(selections);
+        final long expiration = System.currentTimeMillis() + lifetime.toMillis();
+        try {
+            if (!storageService.update(STORAGE_CONTEXT, identifier, value, expiration)) {
+                storageService.create(STORAGE_CONTEXT, identifier, value, expiration);
+            }
+        } catch (final IOException e) {
+            log.error("Unable to store remembered selection", e);
+            return;
+        }
+        nearCache.put(identifier, selections);
+        final Cookie cookie = new Cookie(cookieName, identifier);
+        cookie.setPath(cookiePath != null ? cookiePath
+                : request.getContextPath() == null || request.getContextPath().isEmpty() ? "/"
+                        : request.getContextPath());
+        cookie.setSecure(secure);
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.min(Integer.MAX_VALUE, lifetime.toSeconds()));
+        if (sameSite != null) {
+            cookie.setAttribute("SameSite", sameSite);
+        }
+        response.addCookie(cookie);
+    }
+
+    /**
+     * Get the browser identifier from the cookie.
+     * 
+     * @param request current request
+     * @return the browser identifier, null if not present or malformed
+     */
+    @Nullable
+    private String getIdentifier(@Nonnull final HttpServletRequest request) {
+        final Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (final Cookie cookie : cookies) {
+                if (cookieName.equals(cookie.getName()) && cookie.getValue() != null
+                        && IDENTIFIER_PATTERN.matcher(cookie.getValue()).matches()) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+}
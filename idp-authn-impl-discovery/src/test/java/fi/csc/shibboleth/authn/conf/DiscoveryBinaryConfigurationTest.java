@@ -0,0 +1,131 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DiscoveryBinaryConfiguration}.
+ */
+public class DiscoveryBinaryConfigurationTest {
+
+    private final String json = "{\"default\":{\"authn/MFA\":[{\"acr\":\"https://example.org/first\","
+            + "\"aaType\":\"entity\",\"aaValue\":\"https://idp.example.org\",\"name\":\"First\"},"
+            + "{\"acr\":\"second\",\"hidden\":true}],\"authn/Password\":[]},"
+            + "\"regex:https://sp[0-9]\\\\.example\\\\.org\":{\"authn/Password\":[{\"acr\":\"third\","
+            + "\"flow\":\"authn/Other\"}]}}";
+
+    private void assertSameConfiguration(DiscoveryConfiguration loaded, DiscoveryConfiguration parsed)
+            throws Exception {
+        Assert.assertEquals(List.copyOf(loaded.getFlowMap().keySet()), List.copyOf(parsed.getFlowMap().keySet()));
+        for (final String key : parsed.getFlowMap().keySet()) {
+            final DiscoveryFlows expected = parsed.getFlowMap().get(key);
+            final DiscoveryFlows actual = loaded.getFlowMap().get(key);
+            Assert.assertEquals(actual.toJSON(), expected.toJSON());
+            for (final String flow : expected.getAuthorityMap().keySet()) {
+                Assert.assertEquals(actual.getItems(flow), expected.getItems(flow));
+            }
+            Assert.assertEquals(actual.getSupportedAcrs(), expected.getSupportedAcrs());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final DiscoveryConfiguration parsed = DiscoveryConfiguration.parse(json);
+        final byte[] snapshot = DiscoveryBinaryConfiguration.compile(parsed);
+        Assert.assertTrue(DiscoveryBinaryConfiguration.isBinary(ByteBuffer.wrap(snapshot)));
+        final DiscoveryConfiguration loaded = DiscoveryBinaryConfiguration.load(ByteBuffer.wrap(snapshot), null);
+        assertSameConfiguration(loaded, parsed);
+        final List<DiscoveryAuthenticatingAuthority> authorities = loaded.getFlows(null).getAuthorityMap()
+                .get("authn/MFA");
+        final DiscoveryAuthenticatingAuthority first = authorities.get(0);
+        Assert.assertEquals(first.getName(), "First");
+        Assert.assertEquals(first.getType(), "entity");
+        Assert.assertNull(first.getFlow());
+        Assert.assertEquals(authorities.get(1).getName(), "second");
+        Assert.assertTrue(authorities.get(1).isHidden());
+        Assert.assertEquals(DiscoveryBinaryConfiguration.compile(loaded), snapshot);
+    }
+
+    @Test
+    public void testCompactTokens() throws Exception {
+        final DiscoveryConfiguration parsed = DiscoveryConfigurationLoader.load(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                new DiscoveryTokenCodec("abcdefgh", null));
+        final ByteBuffer snapshot = ByteBuffer.wrap(DiscoveryBinaryConfiguration.compile(parsed));
+        final DiscoveryConfiguration loaded = DiscoveryBinaryConfiguration.load(snapshot,
+                new DiscoveryTokenCodec("abcdefgh", null));
+        assertSameConfiguration(loaded, parsed);
+        final String token = loaded.getFlows(null).getItems("authn/MFA").get(0).getSecond();
+        Assert.assertEquals(loaded.resolveAuthority(token).getAcr(), "https://example.org/first");
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        final Path file = Files.createTempFile("discovery", ".bin");
+        try {
+            Files.write(file, DiscoveryBinaryConfiguration.compile(DiscoveryConfiguration.parse(json)));
+            final DiscoveryConfiguration loaded = DiscoveryBinaryConfiguration.load(file, null);
+            Assert.assertEquals(loaded.getByAcr("https://sp1.example.org", "third").getFirst(), "authn/Password");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testIsBinary() throws Exception {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        Assert.assertFalse(DiscoveryBinaryConfiguration.isBinary(ByteBuffer.wrap(bytes)));
+        Assert.assertFalse(DiscoveryBinaryConfiguration.isBinary(ByteBuffer.allocate(2)));
+    }
+
+    @Test
+    public void testInvalidSnapshot() throws Exception {
+        final byte[] snapshot = DiscoveryBinaryConfiguration.compile(DiscoveryConfiguration.parse(json));
+        for (final int length : new int[] { 0, 6, 20, snapshot.length - 1 }) {
+            try {
+                DiscoveryBinaryConfiguration.load(ByteBuffer.wrap(Arrays.copyOf(snapshot, length)), null);
+                Assert.fail("Truncated snapshot of " + length + " bytes loaded");
+            } catch (final IOException e) {
+                // expected
+            }
+        }
+        final byte[] unsupported = snapshot.clone();
+        unsupported[7] = 99;
+        Assert.assertThrows(IOException.class,
+                () -> DiscoveryBinaryConfiguration.load(ByteBuffer.wrap(unsupported), null));
+        final byte[] trailing = Arrays.copyOf(snapshot, snapshot.length + 1);
+        Assert.assertThrows(IOException.class,
+                () -> DiscoveryBinaryConfiguration.load(ByteBuffer.wrap(trailing), null));
+    }
+
+    @Test
+    public void testCorruptCounts() throws Exception {
+        final byte[] snapshot = DiscoveryBinaryConfiguration.compile(DiscoveryConfiguration.parse(json));
+        // String count follows the magic number and the format version
+        final byte[] strings = snapshot.clone();
+        ByteBuffer.wrap(strings).putInt(8, Integer.MAX_VALUE);
+        Assert.assertThrows(IOException.class,
+                () -> DiscoveryBinaryConfiguration.load(ByteBuffer.wrap(strings), null));
+        // Length of the first string
+        final byte[] length = snapshot.clone();
+        ByteBuffer.wrap(length).putInt(12, snapshot.length);
+        Assert.assertThrows(IOException.class,
+                () -> DiscoveryBinaryConfiguration.load(ByteBuffer.wrap(length), null));
+        // Authority count of the last flow, a count of one authority too many
+        final byte[] authorities = snapshot.clone();
+        final int authorityCount = snapshot.length - 6 * Integer.BYTES - 1 - Integer.BYTES;
+        Assert.assertEquals(ByteBuffer.wrap(snapshot).getInt(authorityCount), 1);
+        ByteBuffer.wrap(authorities).putInt(authorityCount, 2);
+        Assert.assertThrows(IOException.class,
+                () -> DiscoveryBinaryConfiguration.load(ByteBuffer.wrap(authorities), null));
+    }
+}
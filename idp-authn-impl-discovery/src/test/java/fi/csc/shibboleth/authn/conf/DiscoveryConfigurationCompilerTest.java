@@ -0,0 +1,83 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DiscoveryConfigurationCompiler}.
+ */
+public class DiscoveryConfigurationCompilerTest {
+
+    private Path directory;
+
+    private Path jsonFile;
+
+    private Path snapshotFile;
+
+    private ByteArrayOutputStream out;
+
+    private ByteArrayOutputStream err;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("discovery");
+        jsonFile = directory.resolve("discovery.json");
+        snapshotFile = directory.resolve("discovery.bin");
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+
+    @AfterMethod
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(jsonFile);
+        Files.deleteIfExists(snapshotFile);
+        Files.delete(directory);
+    }
+
+    private int run(String... args) {
+        return DiscoveryConfigurationCompiler.run(args, new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCompile() throws Exception {
+        Files.writeString(jsonFile, "{\"default\":{\"authn/MFA\":[{\"acr\":\"first\"}]}}");
+        Assert.assertEquals(run(jsonFile.toString(), snapshotFile.toString()), 0);
+        final DiscoveryConfiguration loaded = DiscoveryBinaryConfiguration
+                .load(ByteBuffer.wrap(Files.readAllBytes(snapshotFile)), null);
+        Assert.assertEquals(loaded.getByAcr(null, "first").getFirst(), "authn/MFA");
+        try (var files = Files.list(directory)) {
+            Assert.assertEquals(files.count(), 2);
+        }
+    }
+
+    @Test
+    public void testValidateOnly() throws Exception {
+        Files.writeString(jsonFile, "{\"default\":{\"authn/MFA\":[{\"acr\":\"first\"}]}}");
+        Assert.assertEquals(run(jsonFile.toString()), 0);
+        Assert.assertFalse(Files.exists(snapshotFile));
+    }
+
+    @Test
+    public void testInvalidConfiguration() throws Exception {
+        Files.writeString(jsonFile, "{\"default\":{\"authn/MFA\":[{\"acr\":\"first\"}]},\n\"regex:[\":{}}");
+        Assert.assertEquals(run(jsonFile.toString(), snapshotFile.toString()),
+                DiscoveryConfigurationCompiler.EXIT_INVALID);
+        Assert.assertFalse(Files.exists(snapshotFile));
+        Assert.assertTrue(err.toString(StandardCharsets.UTF_8).contains("line: 2"));
+    }
+
+    @Test
+    public void testUsage() throws Exception {
+        Assert.assertEquals(run(), DiscoveryConfigurationCompiler.EXIT_USAGE);
+    }
+}
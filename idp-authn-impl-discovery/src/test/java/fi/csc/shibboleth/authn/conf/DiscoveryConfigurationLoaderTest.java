@@ -0,0 +1,138 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.core.JsonParseException;
+
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Unit tests for {@link DiscoveryConfigurationLoader}.
+ */
+public class DiscoveryConfigurationLoaderTest {
+
+    private void assertConfiguration(DiscoveryConfiguration discoveryConfiguration) throws Exception {
+        Assert.assertEquals(discoveryConfiguration.getFlowMap().size(), 2);
+        Assert.assertEquals(discoveryConfiguration.getFlows("default").getAuthorityMap().size(), 2);
+        Assert.assertEquals(discoveryConfiguration.getFlows("default").getItems("authn/test1").size(), 1);
+        DiscoveryAuthenticatingAuthority authority = discoveryConfiguration.getFlows("default").getAuthorityMap()
+                .get("authn/test1").get(1);
+        Assert.assertEquals(authority.getAcr(), "https://dev-user-auth.csc.fi/LoginHaka");
+        Assert.assertEquals(authority.getType(), "entity");
+        Assert.assertEquals(authority.getValue(), "https://idp.csc.fi/idp/shibboleth");
+        Assert.assertTrue(authority.isHidden());
+        Assert.assertEquals(discoveryConfiguration.getFlows("IK1GX427KQ").getAuthorityMap().size(), 1);
+    }
+
+    @Test
+    public void testLoadFile() throws Exception {
+        assertConfiguration(
+                DiscoveryConfigurationLoader.load(Path.of("./src/test/resources/discovery-authorities.json")));
+        assertConfiguration(
+                DiscoveryConfigurationLoader.loadResource("./src/test/resources/discovery-authorities.json"));
+    }
+
+    @Test
+    public void testLoadClasspathResource() throws Exception {
+        assertConfiguration(DiscoveryConfigurationLoader.loadResource("classpath:/discovery-authorities.json"));
+    }
+
+    @Test
+    public void testLoadStream() throws Exception {
+        DiscoveryConfiguration discoveryConfiguration = DiscoveryConfigurationLoader.load(new ByteArrayInputStream(
+                "{\"default\":{\"authn/MFA\":[{\"acr\":\"a\",\"extra\":{\"nested\":[1]},\"name\":\"b\"}]}}"
+                        .getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(discoveryConfiguration.getFlows("default").getItems("authn/MFA").size(), 1);
+        Assert.assertEquals(
+                discoveryConfiguration.getFlows("default").getAuthorityMap().get("authn/MFA").get(0).getName(), "b");
+    }
+
+    @Test(expectedExceptions = java.io.IOException.class)
+    public void testMissingResource() throws Exception {
+        DiscoveryConfigurationLoader.loadResource("classpath:/not-there.json");
+    }
+
+    @Test
+    public void testErrorLocation() throws Exception {
+        try {
+            DiscoveryConfigurationLoader.parse("{\n  \"default\": {\n    \"authn/MFA\": {}\n  }\n}");
+            Assert.fail("Invalid configuration parsed");
+        } catch (JsonParseException e) {
+            Assert.assertEquals(e.getLocation().getLineNr(), 3);
+            Assert.assertTrue(e.getMessage().contains("line: 3"));
+        }
+    }
+
+    @Test
+    public void testParallelLoad() throws Exception {
+        final byte[] json = Files.readAllBytes(Path.of("./src/test/resources/discovery-authorities.json"));
+        assertConfiguration(DiscoveryConfigurationLoader.load(json, null, 4));
+        Assert.assertEquals(DiscoveryConfigurationLoader.load(json, null, 4).getFlowMap().keySet(),
+                DiscoveryConfigurationLoader.load(json, null, 1).getFlowMap().keySet());
+    }
+
+    @Test
+    public void testParallelLoadTokens() throws Exception {
+        final StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 100; i++) {
+            json.append(i > 0 ? "," : "").append("\"rp").append(i).append("\": {\"authn/MFA\": [{\"acr\": \"a")
+                    .append(i).append("\"}, {\"acr\": \"hidden\", \"hidden\": true}, {\"acr\": \"b")
+                    .append(i).append("\"}]}");
+        }
+        final byte[] bytes = json.append("}").toString().getBytes(StandardCharsets.UTF_8);
+        final DiscoveryConfiguration sequential =
+                DiscoveryConfigurationLoader.load(bytes, new DiscoveryTokenCodec("v1", null), 1);
+        final DiscoveryConfiguration parallel =
+                DiscoveryConfigurationLoader.load(bytes, new DiscoveryTokenCodec("v1", null), 8);
+        Assert.assertEquals(parallel.getTokenCodec().size(), 200);
+        for (int i = 0; i < 100; i++) {
+            final List<Pair<String, String>> items = parallel.getFlows("rp" + i).getItems("authn/MFA");
+            Assert.assertEquals(items, sequential.getFlows("rp" + i).getItems("authn/MFA"));
+            Assert.assertEquals(items.get(0).getSecond(), "v1." + 2 * i);
+            Assert.assertEquals(parallel.resolveAuthority(items.get(1).getSecond()).getAcr(), "b" + i);
+        }
+    }
+
+    @Test
+    public void testParallelLoadErrors() throws Exception {
+        final byte[] json = ("{\n  \"rp1\": {\n    \"authn/MFA\": {}\n  },\n  \"rp2\": {\"authn/MFA\": []},\n"
+                + "  \"rp3\": {\n    \"authn/MFA\": [\"acr\"]\n  }\n}").getBytes(StandardCharsets.UTF_8);
+        try {
+            DiscoveryConfigurationLoader.load(json, null, 4);
+            Assert.fail("Invalid configuration parsed");
+        } catch (JsonParseException e) {
+            Assert.assertTrue(e.getMessage().contains("rp1"));
+            Assert.assertEquals(e.getLocation().getLineNr(), 3);
+            Assert.assertEquals(e.getSuppressed().length, 1);
+            Assert.assertTrue(e.getSuppressed()[0].getMessage().contains("rp3"));
+            Assert.assertEquals(((JsonParseException) e.getSuppressed()[0]).getLocation().getLineNr(), 7);
+        }
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testInvalidAuthority() throws Exception {
+        DiscoveryConfigurationLoader.parse("{\"default\": {\"authn/MFA\": [\"acr\"]}}");
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testInvalidRelyingPartyPattern() throws Exception {
+        DiscoveryConfigurationLoader.parse("{\"regex:https://(\": {\"authn/MFA\": []}}");
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testEmptyConfiguration() throws Exception {
+        DiscoveryConfigurationLoader.parse("{}");
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testTrailingContent() throws Exception {
+        DiscoveryConfigurationLoader.parse("{\"default\": {\"authn/MFA\": []}} {}");
+    }
+}
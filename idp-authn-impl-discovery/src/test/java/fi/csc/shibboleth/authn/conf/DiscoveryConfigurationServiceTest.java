@@ -0,0 +1,239 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/**
+ * Unit tests for {@link DiscoveryConfigurationService}.
+ */
+public class DiscoveryConfigurationServiceTest {
+
+    private DiscoveryConfigurationService service;
+
+    private Path directory;
+
+    private Path propertiesFile;
+
+    private Path jsonFile;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("discovery");
+        propertiesFile = directory.resolve("discovery.properties");
+        jsonFile = directory.resolve("discovery.json");
+        Files.writeString(propertiesFile, "authn/test1 = authority1, authority2\n");
+        write(jsonFile, "{\"default\":{\"authn/MFA\":[{\"acr\":\"first\"}]}}", 1);
+        service = new DiscoveryConfigurationService();
+        service.setId("test");
+        service.setAuthorityProperties(propertiesFile.toString());
+        service.setAuthoritiesResource(jsonFile.toString());
+    }
+
+    @AfterMethod
+    protected void tearDown() throws Exception {
+        service.destroy();
+        Files.deleteIfExists(propertiesFile);
+        Files.deleteIfExists(jsonFile);
+        final Path sections = directory.resolve("sections");
+        if (Files.isDirectory(sections)) {
+            try (var files = Files.list(sections)) {
+                for (final Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(sections);
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    private void write(Path file, String content, int generation) throws Exception {
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.ofEpochSecond(1_000_000 + generation)));
+    }
+
+    private String firstAcr(DiscoverySnapshot snapshot) {
+        return snapshot.getConfiguration().getFlows(null).getAuthorityMap().get("authn/MFA").get(0).getAcr();
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        service.initialize();
+        DiscoverySnapshot snapshot = service.getSnapshot();
+        Assert.assertEquals(snapshot.getAuthorityProperty("authn/test1"), List.of("authority1", "authority2"));
+        Assert.assertNull(snapshot.getAuthorityProperty("authn/test2"));
+        Assert.assertEquals(firstAcr(snapshot), "first");
+        Assert.assertFalse(service.reloadIfModified());
+        Assert.assertSame(service.getSnapshot(), snapshot);
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        service.initialize();
+        Assert.assertSame(service.getConfiguration(), service.getSnapshot().getConfiguration());
+        Assert.assertSame(service.getFlows("rp1"), service.getConfiguration().getFlows(null));
+        Assert.assertEquals(service.getByAcr("rp1", "first").getFirst(), "authn/MFA");
+        Assert.assertEquals(service.getSupportedAcrs("rp1"), Set.of("first"));
+        Assert.assertNull(service.resolveAuthority("token"));
+    }
+
+    @Test
+    public void testProfileLookup() throws Exception {
+        write(jsonFile, "{\"default\":{\"authn/MFA\":[{\"acr\":\"first\"}]},"
+                + "\"profile:academic\":{\"authn/Password\":[{\"acr\":\"second\"}]}}", 1);
+        service.initialize();
+        Assert.assertSame(service.getFlows("rp1", "academic"),
+                service.getConfiguration().getFlowMap().get("profile:academic"));
+        Assert.assertSame(service.getFlows("rp1", "other"), service.getFlows("rp1"));
+        Assert.assertEquals(service.getByAcr("rp1", "academic", "second").getFirst(), "authn/Password");
+        Assert.assertNull(service.getByAcr("rp1", "academic", "first"));
+        Assert.assertEquals(service.getByAcr("rp1", null, "first").getFirst(), "authn/MFA");
+        Assert.assertEquals(service.getSupportedAcrs("rp1", "academic"), Set.of("second"));
+        Assert.assertEquals(service.getSupportedAcrs("rp1", null), Set.of("first"));
+    }
+
+    @Test
+    public void testLookupWithoutConfiguration() throws Exception {
+        service.setAuthoritiesResource(null);
+        service.initialize();
+        Assert.assertNull(service.getConfiguration());
+        Assert.assertNull(service.getFlows("rp1"));
+        Assert.assertNull(service.getByAcr("rp1", "first"));
+        Assert.assertTrue(service.getSupportedAcrs("rp1").isEmpty());
+        Assert.assertNull(service.resolveAuthority("token"));
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        service.setReloadCheckInterval(Duration.ofHours(1));
+        service.initialize();
+        DiscoverySnapshot snapshot = service.getSnapshot();
+        write(jsonFile, "{\"default\":{\"authn/MFA\":[{\"acr\":\"second\"}]}}", 2);
+        Assert.assertTrue(service.reloadIfModified());
+        Assert.assertEquals(firstAcr(service.getSnapshot()), "second");
+        Assert.assertNotEquals(service.getSnapshot().getVersion(), snapshot.getVersion());
+        // Snapshot taken earlier is not affected.
+        Assert.assertEquals(firstAcr(snapshot), "first");
+    }
+
+    @Test
+    public void testFailedReloadKeepsSnapshot() throws Exception {
+        service.initialize();
+        DiscoverySnapshot snapshot = service.getSnapshot();
+        write(jsonFile, "{\"default\":{\"authn/MFA\":[", 2);
+        Assert.assertFalse(service.reloadIfModified());
+        Assert.assertSame(service.getSnapshot(), snapshot);
+        write(jsonFile, "{\"default\":{\"authn/MFA\":[{\"acr\":\"third\"}]}}", 3);
+        Assert.assertTrue(service.reloadIfModified());
+        Assert.assertEquals(firstAcr(service.getSnapshot()), "third");
+    }
+
+    @Test
+    public void testCompactTokens() throws Exception {
+        service.setCompactTokens(true);
+        service.setTokenSigningKey("c2VjcmV0c2VjcmV0c2VjcmV0c2VjcmV0c2VjcmV0ISE=");
+        service.initialize();
+        final DiscoverySnapshot snapshot = service.getSnapshot();
+        final DiscoveryFlows flows = snapshot.getConfiguration().getFlows(null);
+        final String token = flows.getItems("authn/MFA").get(0).getSecond();
+        Assert.assertTrue(token.startsWith(snapshot.getVersion().substring(0, 8) + ".0."));
+        Assert.assertSame(snapshot.getConfiguration().resolveAuthority(token),
+                flows.getAuthorityMap().get("authn/MFA").get(0));
+        Assert.assertSame(flows.getAuthority(token), flows.getAuthorityMap().get("authn/MFA").get(0));
+        Assert.assertNull(snapshot.getConfiguration().resolveAuthority(token + "x"));
+    }
+
+    @Test
+    public void testB64Authorities() throws Exception {
+        service.initialize();
+        final DiscoveryConfiguration configuration = service.getSnapshot().getConfiguration();
+        final String encoded = configuration.getFlows(null).getItems("authn/MFA").get(0).getSecond();
+        Assert.assertEquals(DiscoveryAuthenticatingAuthority.parseB64UrlEncoded(encoded).getAcr(), "first");
+        Assert.assertNull(configuration.getTokenCodec());
+        Assert.assertNull(configuration.resolveAuthority(encoded));
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testShortTokenSigningKey() throws Exception {
+        service.setCompactTokens(true);
+        service.setTokenSigningKey("c2VjcmV0");
+        service.initialize();
+    }
+
+    @Test
+    public void testInvalidSourceAtStartup() throws Exception {
+        write(jsonFile, "{", 2);
+        service.initialize();
+        Assert.assertNull(service.getSnapshot().getConfiguration());
+        Assert.assertNotNull(service.getSnapshot().getAuthorityProperty("authn/test1"));
+    }
+
+    @Test
+    public void testDirectory() throws Exception {
+        final Path sections = Files.createDirectory(directory.resolve("sections"));
+        write(sections.resolve("default.json"), "{\"authn/MFA\":[{\"acr\":\"dir\"}]}", 1);
+        write(sections.resolve("rp1.json"), "{\"authn/Password\":[]}", 1);
+        service.setAuthoritiesDirectory(sections.toString());
+        service.initialize();
+        DiscoverySnapshot snapshot = service.getSnapshot();
+        Assert.assertTrue(snapshot.getConfiguration() instanceof DiscoveryDirectoryConfiguration);
+        Assert.assertEquals(firstAcr(snapshot), "dir");
+        Assert.assertEquals(service.getFlows("rp1").getAuthorityMap().keySet(), Set.of("authn/Password"));
+        Assert.assertFalse(service.reloadIfModified());
+
+        // Sections are reread one by one in the same snapshot.
+        write(sections.resolve("rp2.json"), "{\"authn/Other\":[]}", 2);
+        write(sections.resolve("rp1.json"), "{\"authn/Changed\":[]}", 2);
+        Assert.assertFalse(service.reloadIfModified());
+        Assert.assertSame(service.getSnapshot(), snapshot);
+        Assert.assertEquals(service.getFlows("rp2").getAuthorityMap().keySet(), Set.of("authn/Other"));
+        Assert.assertEquals(service.getFlows("rp1").getAuthorityMap().keySet(), Set.of("authn/Changed"));
+
+        write(sections.resolve("default.json"), "{\"authn/MFA\":[{\"acr\":\"changed\"}]}", 2);
+        Assert.assertTrue(service.reloadIfModified());
+        Assert.assertNotEquals(service.getSnapshot().getVersion(), snapshot.getVersion());
+        Assert.assertEquals(firstAcr(service.getSnapshot()), "changed");
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testDirectoryWithCompactTokens() throws Exception {
+        service.setAuthoritiesDirectory(directory.toString());
+        service.setCompactTokens(true);
+        service.initialize();
+    }
+
+    @Test
+    public void testBinarySnapshot() throws Exception {
+        final Path snapshotFile = directory.resolve("discovery.bin");
+        try {
+            Files.write(snapshotFile, DiscoveryBinaryConfiguration.compile(
+                    DiscoveryConfiguration.parse("{\"default\":{\"authn/MFA\":[{\"acr\":\"binary\"}]}}")));
+            service.setAuthoritiesResource(snapshotFile.toString());
+            service.setReloadCheckInterval(Duration.ofHours(1));
+            service.initialize();
+            final DiscoverySnapshot snapshot = service.getSnapshot();
+            Assert.assertEquals(firstAcr(snapshot), "binary");
+
+            Files.write(snapshotFile, DiscoveryBinaryConfiguration.compile(
+                    DiscoveryConfiguration.parse("{\"default\":{\"authn/MFA\":[{\"acr\":\"binary2\"}]}}")));
+            Files.setLastModifiedTime(snapshotFile, FileTime.from(Instant.ofEpochSecond(1_000_002)));
+            Assert.assertTrue(service.reloadIfModified());
+            Assert.assertEquals(firstAcr(service.getSnapshot()), "binary2");
+            Assert.assertNotEquals(service.getSnapshot().getVersion(), snapshot.getVersion());
+        } finally {
+            Files.deleteIfExists(snapshotFile);
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package fi.csc.shibboleth.authn.conf;
 
+import java.util.Set;
+
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import net.shibboleth.shared.collection.Pair;
+
 
 /**
  * Unit tests for {@link DiscoveryConfiguration}.
@@ -78,6 +82,30 @@ public class DiscoveryConfigurationTest {
         Assert.assertEquals(findMatch("NotListed", "https://dev-user-auth.csc.fi/LoginHakaCSC"), "authn/Password");
     }
 
+    @Test
+    public void testByAcr() {
+        for (String rp : new String[] { "NotListed", "IK1GX427KQ", null }) {
+            for (String acr : new String[] { "https://dev-user-auth.csc.fi/LoginHaka",
+                    "https://dev-user-auth.csc.fi/LoginHakaTest", "https://dev-user-auth.csc.fi/LoginHakaCSC" }) {
+                final Pair<String, DiscoveryAuthenticatingAuthority> match = discoveryConfiguration.getByAcr(rp, acr);
+                if (rp != null) {
+                    Assert.assertEquals(match != null ? match.getFirst() : null, findMatch(rp, acr));
+                }
+                Assert.assertEquals(match != null, discoveryConfiguration.getSupportedAcrs(rp).contains(acr));
+                if (match != null) {
+                    Assert.assertEquals(match.getSecond().getAcr(), acr);
+                }
+            }
+        }
+        Assert.assertEquals(discoveryConfiguration.getByAcr("NotListed", "https://dev-user-auth.csc.fi/LoginHaka")
+                .getSecond().getValue(), "https://idp.csc.fi/idp/shibboleth");
+        Assert.assertNull(discoveryConfiguration.getByAcr("NotListed", "unknown"));
+        Assert.assertNull(discoveryConfiguration.getByAcr("NotListed", null));
+        Assert.assertEquals(discoveryConfiguration.getSupportedAcrs("IK1GX427KQ"),
+                Set.of("https://dev-user-auth.csc.fi/LoginHakaTest"));
+        Assert.assertEquals(discoveryConfiguration.getSupportedAcrs(null).size(), 3);
+    }
+
     private String findMatch(String rp, String acr) {
         DiscoveryFlows rpConf = discoveryConfiguration.getFlowMap().containsKey(rp)
                 ? discoveryConfiguration.getFlowMap().get(rp)
@@ -97,6 +125,22 @@ public class DiscoveryConfigurationTest {
         return flowMatch;
     }
 
+    @Test
+    public void testItemsPerRelyingParty() throws Exception {
+        Assert.assertSame(discoveryConfiguration.getFlows("NotListed"),
+                discoveryConfiguration.getFlowMap().get("default"));
+        Assert.assertSame(discoveryConfiguration.getFlows(null), discoveryConfiguration.getFlowMap().get("default"));
+        Assert.assertEquals(discoveryConfiguration.getFlows("IK1GX427KQ").getItems("authn/MFA").size(), 1);
+        Assert.assertNull(discoveryConfiguration.getFlows("IK1GX427KQ").getItems("authn/Password"));
+        Assert.assertEquals(discoveryConfiguration.getFlows("NotListed").getItems("authn/MFA").size(), 2);
+        Assert.assertEquals(discoveryConfiguration.getFlows("NotListed").getItems("authn/MFA").get(1).getFirst(),
+                "authn/MFA");
+        Assert.assertEquals(DiscoveryAuthenticatingAuthority
+                .parseB64UrlEncoded(
+                        discoveryConfiguration.getFlows("NotListed").getItems("authn/MFA").get(1).getSecond())
+                .getAcr(), "https://dev-user-auth.csc.fi/LoginHaka");
+    }
+
     @Test
     public void testSerialization() throws Exception {
 
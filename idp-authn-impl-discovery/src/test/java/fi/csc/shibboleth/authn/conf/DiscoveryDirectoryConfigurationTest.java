@@ -0,0 +1,121 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DiscoveryDirectoryConfiguration}.
+ */
+public class DiscoveryDirectoryConfigurationTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("discovery");
+        Files.writeString(directory.resolve("default.json"), "{\"authn/MFA\":[{\"acr\":\"default\"}]}");
+        Files.writeString(directory.resolve("https%3A%2F%2Fsp.example.org%2Fsp.json"),
+                "{\"authn/Password\":[{\"acr\":\"encoded\"}]}");
+        Files.writeString(directory.resolve(DiscoveryDirectoryConfiguration.sha1("rp2") + ".json"),
+                "{\"authn/Password\":[{\"acr\":\"digest\"}]}");
+        Files.writeString(directory.resolve("profile%3Astrong.json"), "{\"authn/MFA\":[{\"acr\":\"strong\"}]}");
+        Files.writeString(directory.resolve("broken.json"), "{\"authn/MFA\":[");
+    }
+
+    @AfterMethod
+    protected void tearDown() throws Exception {
+        try (var files = Files.list(directory)) {
+            for (final Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private String firstAcr(DiscoveryFlows flows) {
+        return flows.getAuthorityMap().values().iterator().next().get(0).getAcr();
+    }
+
+    @Test
+    public void testLazyLoading() throws Exception {
+        final DiscoveryConfiguration configuration = new DiscoveryDirectoryConfiguration(directory, 10);
+        Assert.assertEquals(configuration.getFlowMap().keySet(), Set.of("default"));
+        Assert.assertEquals(firstAcr(configuration.getFlows("https://sp.example.org/sp")), "encoded");
+        Assert.assertEquals(firstAcr(configuration.getFlows("rp2")), "digest");
+        Assert.assertEquals(firstAcr(configuration.getFlows("rp3")), "default");
+        Assert.assertEquals(firstAcr(configuration.getFlows(null)), "default");
+        Assert.assertEquals(configuration.getFlowMap().keySet(),
+                Set.of("default", "https://sp.example.org/sp", "rp2"));
+        Assert.assertSame(configuration.getFlows("rp2"), configuration.getFlows("rp2"));
+        Assert.assertEquals(configuration.getByAcr("rp2", "digest").getFirst(), "authn/Password");
+    }
+
+    @Test
+    public void testProfile() throws Exception {
+        final DiscoveryConfiguration configuration = new DiscoveryDirectoryConfiguration(directory, 10);
+        Assert.assertEquals(firstAcr(configuration.getFlows("rp2", "strong")), "strong");
+        Assert.assertEquals(firstAcr(configuration.getFlows("rp2", "weak")), "digest");
+    }
+
+    @Test
+    public void testBrokenSectionFallsBackToDefault() throws Exception {
+        final DiscoveryConfiguration configuration = new DiscoveryDirectoryConfiguration(directory, 10);
+        Assert.assertEquals(firstAcr(configuration.getFlows("broken")), "default");
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        final DiscoveryConfiguration configuration = new DiscoveryDirectoryConfiguration(directory, 1);
+        final DiscoveryFlows flows = configuration.getFlows("rp2");
+        configuration.getFlows("https://sp.example.org/sp");
+        Assert.assertEquals(configuration.getFlowMap().size(), 2);
+        Assert.assertNotSame(configuration.getFlows("rp2"), flows);
+    }
+
+    @Test
+    public void testWithoutDefault() throws Exception {
+        Files.delete(directory.resolve("default.json"));
+        final DiscoveryConfiguration configuration = new DiscoveryDirectoryConfiguration(directory, 10);
+        Assert.assertNull(configuration.getFlows("rp3"));
+        Assert.assertEquals(firstAcr(configuration.getFlows("rp2")), "digest");
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        final DiscoveryDirectoryConfiguration configuration = new DiscoveryDirectoryConfiguration(directory, 10);
+        Assert.assertEquals(firstAcr(configuration.getFlows("rp2")), "digest");
+        Assert.assertEquals(firstAcr(configuration.getFlows("rp3")), "default");
+        final DiscoveryFlows encoded = configuration.getFlows("https://sp.example.org/sp");
+        final long generation = configuration.getGeneration("rp2", null);
+        final long defaultGeneration = configuration.getGeneration("rp3", null);
+        Assert.assertEquals(configuration.refresh(), 0);
+
+        write(DiscoveryDirectoryConfiguration.sha1("rp2") + ".json", "{\"authn/Password\":[{\"acr\":\"changed\"}]}");
+        write("rp3.json", "{\"authn/Password\":[{\"acr\":\"added\"}]}");
+        Assert.assertEquals(configuration.refresh(), 2);
+        Assert.assertEquals(firstAcr(configuration.getFlows("rp2")), "changed");
+        Assert.assertEquals(firstAcr(configuration.getFlows("rp3")), "added");
+        Assert.assertNotEquals(configuration.getGeneration("rp2", null), generation);
+        Assert.assertNotEquals(configuration.getGeneration("rp3", null), defaultGeneration);
+        // Other sections are kept
+        Assert.assertSame(configuration.getFlows("https://sp.example.org/sp"), encoded);
+        Assert.assertEquals(configuration.getGeneration("rp4", null), defaultGeneration);
+
+        Files.delete(directory.resolve("rp3.json"));
+        Assert.assertEquals(configuration.refresh(), 1);
+        Assert.assertEquals(configuration.getGeneration("rp3", null), defaultGeneration);
+    }
+
+    private void write(String file, String content) throws Exception {
+        final Path path = directory.resolve(file);
+        Files.writeString(path, content);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10_000));
+    }
+}
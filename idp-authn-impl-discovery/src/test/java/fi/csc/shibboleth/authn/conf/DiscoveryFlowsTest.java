@@ -2,6 +2,7 @@ package fi.csc.shibboleth.authn.conf;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,9 +25,13 @@ public class DiscoveryFlowsTest {
         authenticatingAuthority.put(DiscoveryAuthenticatingAuthority.AA_TYPE_KEY, "anyStringType");
         authenticatingAuthority.put(DiscoveryAuthenticatingAuthority.AA_VALUE_KEY, "anyStringValue");
 
+        Map<String, Object> hiddenAuthenticatingAuthority = new HashMap<String, Object>(authenticatingAuthority);
+        hiddenAuthenticatingAuthority.put(DiscoveryAuthenticatingAuthority.HIDDEN_KEY, true);
+
         Map<String, List<Map<String, Object>>> flow = new HashMap<String, List<Map<String, Object>>>();
         flow.put("flow1", Arrays.asList(authenticatingAuthority));
         flow.put("flow2", Arrays.asList(authenticatingAuthority, authenticatingAuthority));
+        flow.put("flow3", Arrays.asList(hiddenAuthenticatingAuthority));
         discoveryFlows = DiscoveryFlows.parse(flow);
     }
 
@@ -35,6 +40,48 @@ public class DiscoveryFlowsTest {
         Assert.assertTrue(discoveryFlows.getAuthorityMap().containsKey("flow1"));
     }
 
+    @Test
+    public void testItems() throws Exception {
+        Assert.assertEquals(discoveryFlows.getItems("flow2").size(), 2);
+        Assert.assertEquals(discoveryFlows.getItems("flow2").get(0).getFirst(), "flow2");
+        Assert.assertEquals(discoveryFlows.getItems("flow2").get(0).getSecond(),
+                discoveryFlows.getAuthorityMap().get("flow2").get(0).toB64UrlEncoded());
+        Assert.assertTrue(discoveryFlows.getItems("flow3").isEmpty());
+        Assert.assertNull(discoveryFlows.getItems("flow4"));
+    }
+
+    @Test
+    public void testAuthority() throws Exception {
+        final String encoded = discoveryFlows.getItems("flow1").get(0).getSecond();
+        Assert.assertEquals(discoveryFlows.getAuthority(encoded).getAcr(), "anyStringAcr");
+        Assert.assertNull(discoveryFlows.getAuthority("unknown"));
+        Assert.assertNull(discoveryFlows.getAuthority(null));
+    }
+
+    @Test
+    public void testByAcr() throws Exception {
+        final DiscoveryFlows flows = DiscoveryFlows.parse("{\"flow1\":[{\"acr\":\"acr1\",\"hidden\":true},"
+                + "{\"acr\":\"acr2\"}],\"flow2\":[{\"acr\":\"acr2\"},{\"acr\":\"acr3\"}]}");
+        Assert.assertEquals(flows.getByAcr("acr1").getFirst(), "flow1");
+        Assert.assertTrue(flows.getByAcr("acr1").getSecond().isHidden());
+        Assert.assertSame(flows.getByAcr("acr2").getSecond(), flows.getAuthorityMap().get("flow1").get(1));
+        Assert.assertEquals(flows.getByAcr("acr3").getFirst(), "flow2");
+        Assert.assertNull(flows.getByAcr("acr4"));
+        Assert.assertNull(flows.getByAcr(null));
+        Assert.assertEquals(List.copyOf(flows.getSupportedAcrs()), List.of("acr1", "acr2", "acr3"));
+    }
+
+    @Test
+    public void testObjectParsingOrder() throws Exception {
+        final Map<String, List<Map<String, Object>>> flow = new LinkedHashMap<String, List<Map<String, Object>>>();
+        for (final String flowId : List.of("flow9", "flow1", "flow5", "flow3")) {
+            flow.put(flowId, List.of(Map.of(DiscoveryAuthenticatingAuthority.ACR_KEY, flowId)));
+        }
+        final DiscoveryFlows flows = DiscoveryFlows.parse(flow);
+        Assert.assertEquals(List.copyOf(flows.getAuthorityMap().keySet()), List.copyOf(flow.keySet()));
+        Assert.assertEquals(List.copyOf(flows.getSupportedAcrs()), List.copyOf(flow.keySet()));
+    }
+
     @Test
     public void testSerialization() throws Exception {
         String serialized = discoveryFlows.toJSON();
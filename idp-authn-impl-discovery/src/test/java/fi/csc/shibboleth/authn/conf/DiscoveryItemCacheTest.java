@@ -0,0 +1,65 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import fi.csc.shibboleth.authn.DiscoveryItems;
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Unit tests for {@link DiscoveryItemCache}.
+ */
+public class DiscoveryItemCacheTest {
+
+    private DiscoveryItemCache cache;
+
+    private AtomicInteger builds;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        cache = new DiscoveryItemCache();
+        cache.setId("test");
+        builds = new AtomicInteger();
+    }
+
+    private DiscoveryView build() {
+        builds.incrementAndGet();
+        return new DiscoveryView(DiscoveryItems.of(List.of(new Pair<>("authn/test1", null))), List.of());
+    }
+
+    @Test
+    public void testShared() throws Exception {
+        cache.initialize();
+        final DiscoveryView items = cache.get("v1", "rp1", List.of("test1"), this::build);
+        Assert.assertSame(cache.get("v1", "rp1", List.of("test1"), this::build), items);
+        Assert.assertEquals(builds.get(), 1);
+        Assert.assertNotSame(cache.get("v2", "rp1", List.of("test1"), this::build), items);
+        Assert.assertNotSame(cache.get("v1", "rp2", List.of("test1"), this::build), items);
+        Assert.assertNotSame(cache.get("v1", null, List.of("test1"), this::build), items);
+        Assert.assertNotSame(cache.get("v1", "rp1", List.of("test1", "test2"), this::build), items);
+        Assert.assertEquals(builds.get(), 5);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        cache.setMaximumSize(2);
+        cache.initialize();
+        for (int i = 0; i < 10; i++) {
+            cache.get("v1", "rp" + i, List.of("test1"), this::build);
+        }
+        Assert.assertTrue(cache.size() <= 2);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        cache.setMaximumSize(0);
+        cache.initialize();
+        cache.get("v1", "rp1", List.of("test1"), this::build);
+        cache.get("v1", "rp1", List.of("test1"), this::build);
+        Assert.assertEquals(builds.get(), 2);
+    }
+}
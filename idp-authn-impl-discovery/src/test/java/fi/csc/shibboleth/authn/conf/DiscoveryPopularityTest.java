@@ -0,0 +1,164 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Unit tests for {@link DiscoveryPopularity}.
+ */
+public class DiscoveryPopularityTest {
+
+    private DiscoveryPopularity popularity;
+
+    private final List<Pair<String, String>> items = List.of(new Pair<>("authn/Password", null),
+            new Pair<>("authn/SAML", "https%3A%2F%2Fidp1.example.org"),
+            new Pair<>("authn/SAML", "https%3A%2F%2Fidp2.example.org"));
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        popularity = new DiscoveryPopularity();
+        popularity.setId("test");
+        popularity.setEnabled(true);
+        popularity.setUpdateInterval(Duration.ZERO);
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        popularity.destroy();
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        popularity.initialize();
+        Assert.assertSame(popularity.order("rp1", items), items);
+        popularity.selected("rp1", "authn/SAML", "https://idp2.example.org");
+        popularity.selected("rp1", "authn/SAML", "https://idp2.example.org");
+        popularity.selected("rp1", "authn/SAML", "https://idp1.example.org");
+        popularity.selected("rp2", "authn/Password", null);
+        // Not ranked before the update
+        Assert.assertSame(popularity.order("rp1", items), items);
+        Assert.assertEquals(popularity.getGeneration("rp1"), 0);
+        popularity.update();
+        Assert.assertNotEquals(popularity.getGeneration("rp1"), 0);
+        Assert.assertEquals(popularity.order("rp1", items), List.of(items.get(2), items.get(1), items.get(0)));
+        Assert.assertEquals(popularity.order("rp2", items), items);
+        Assert.assertSame(popularity.order(null, items), items);
+    }
+
+    @Test
+    public void testGeneration() throws Exception {
+        popularity.initialize();
+        popularity.selected("rp1", "authn/SAML", "https://idp2.example.org");
+        popularity.selected("rp1", "authn/SAML", "https://idp2.example.org");
+        popularity.selected("rp1", "authn/SAML", "https://idp1.example.org");
+        popularity.selected("rp2", "authn/Password", null);
+        popularity.update();
+        final long rp1 = popularity.getGeneration("rp1");
+        final long rp2 = popularity.getGeneration("rp2");
+        Assert.assertNotEquals(rp1, rp2);
+        // Neither decaying the scores nor selections keeping the order change the generation
+        popularity.update();
+        popularity.selected("rp1", "authn/SAML", "https://idp2.example.org");
+        popularity.update();
+        Assert.assertEquals(popularity.getGeneration("rp1"), rp1);
+        for (int i = 0; i < 3; i++) {
+            popularity.selected("rp1", "authn/SAML", "https://idp1.example.org");
+        }
+        popularity.update();
+        Assert.assertNotEquals(popularity.getGeneration("rp1"), rp1);
+        Assert.assertEquals(popularity.order("rp1", items), List.of(items.get(1), items.get(2), items.get(0)));
+        Assert.assertEquals(popularity.getGeneration("rp2"), rp2);
+        Assert.assertEquals(popularity.getGeneration("rp3"), 0);
+    }
+
+    @Test
+    public void testOrderCompactTokens() throws Exception {
+        popularity.initialize();
+        final String json = "{\"default\":{\"authn/SAML\":[{\"acr\":\"acr1\"},{\"acr\":\"acr2\"}]}}";
+        final DiscoveryConfiguration configuration = DiscoveryConfigurationLoader.load(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                new DiscoveryTokenCodec("abcdefgh", null));
+        final DiscoveryFlows flows = configuration.getFlows(null);
+        final List<Pair<String, String>> tokens = flows.getItems("authn/SAML");
+        popularity.selected("rp1", "authn/SAML", flows.getAuthorityMap().get("authn/SAML").get(1).toB64UrlEncoded());
+        popularity.update();
+        Assert.assertEquals(popularity.order("rp1", tokens, flows), List.of(tokens.get(1), tokens.get(0)));
+    }
+
+    @Test
+    public void testDecay() throws Exception {
+        // The executor is not run during the test, updates are triggered explicitly
+        popularity.setUpdateInterval(Duration.ofDays(1));
+        popularity.setHalfLife(Duration.ofHours(12));
+        popularity.initialize();
+        for (int i = 0; i < 3; i++) {
+            popularity.selected("rp1", "authn/Password", null);
+        }
+        popularity.selected("rp1", "authn/SAML", "https://idp1.example.org");
+        popularity.update();
+        Assert.assertEquals(popularity.getScore("rp1", "authn/Password", null), 3.0, 0.0001);
+        popularity.selected("rp1", "authn/SAML", "https://idp1.example.org");
+        popularity.update();
+        // Both halved twice, the recent selection counts in full
+        Assert.assertEquals(popularity.getScore("rp1", "authn/Password", null), 0.75, 0.0001);
+        Assert.assertEquals(popularity.getScore("rp1", "authn/SAML", "https://idp1.example.org"), 1.25, 0.0001);
+        Assert.assertEquals(popularity.order("rp1", items).get(0), items.get(1));
+        for (int i = 0; i < 10; i++) {
+            popularity.update();
+        }
+        Assert.assertEquals(popularity.getScore("rp1", "authn/Password", null), 0.0);
+        Assert.assertSame(popularity.order("rp1", items), items);
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        popularity.setMaxRelyingParties(1);
+        popularity.setMaxItemsPerRelyingParty(1);
+        popularity.initialize();
+        popularity.selected("rp1", "authn/Password", null);
+        popularity.selected("rp1", "authn/SAML", "https://idp1.example.org");
+        popularity.selected("rp2", "authn/Password", null);
+        popularity.update();
+        Assert.assertEquals(popularity.getScore("rp1", "authn/Password", null), 1.0);
+        Assert.assertEquals(popularity.getScore("rp1", "authn/SAML", "https://idp1.example.org"), 0.0);
+        Assert.assertEquals(popularity.getScore("rp2", "authn/Password", null), 0.0);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        popularity.setEnabled(false);
+        popularity.initialize();
+        popularity.selected("rp1", "authn/SAML", "https://idp2.example.org");
+        popularity.update();
+        Assert.assertSame(popularity.order("rp1", items), items);
+    }
+
+    @Test
+    public void testConcurrentSelections() throws Exception {
+        popularity.initialize();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    popularity.selected("rp1", "authn/Password", null);
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        popularity.update();
+        Assert.assertEquals(popularity.getScore("rp1", "authn/Password", null), 4000.0);
+    }
+}
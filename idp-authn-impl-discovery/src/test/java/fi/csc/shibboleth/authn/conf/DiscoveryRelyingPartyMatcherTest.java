@@ -0,0 +1,114 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DiscoveryRelyingPartyMatcher}.
+ */
+public class DiscoveryRelyingPartyMatcherTest {
+
+    private Map<String, String> sections;
+
+    private Map<String, Set<String>> groups;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        sections = new LinkedHashMap<>();
+        sections.put("regex:https://.*\\.example\\.org/.*", "regex1");
+        sections.put("regex:https://sp\\.example\\.org/.*", "regex2");
+        sections.put("prefix:https://sp.example.org/", "prefix1");
+        sections.put("prefix:https://sp.example.org/app/", "prefix2");
+        sections.put("group:academic", "group1");
+        sections.put("group:undefined", "group2");
+        sections.put("https://sp.example.org/app/exact", "exact");
+        groups = Map.of("academic", Set.of("https://sp.example.org/app/member", "https://member.example.com"));
+    }
+
+    @Test
+    public void testPrecedence() {
+        final DiscoveryRelyingPartyMatcher<String> matcher = new DiscoveryRelyingPartyMatcher<>(sections, groups,
+                10);
+        Assert.assertEquals(matcher.match("https://sp.example.org/app/exact"), "exact");
+        Assert.assertEquals(matcher.match("https://sp.example.org/app/member"), "group1");
+        Assert.assertEquals(matcher.match("https://member.example.com"), "group1");
+        Assert.assertEquals(matcher.match("https://sp.example.org/app/other"), "prefix2");
+        Assert.assertEquals(matcher.match("https://sp.example.org/other"), "prefix1");
+        Assert.assertEquals(matcher.match("https://other.example.org/"), "regex1");
+        Assert.assertNull(matcher.match("https://other.example.com/"));
+        Assert.assertNull(matcher.match("https://sp.example.org"));
+        Assert.assertNull(matcher.match(null));
+    }
+
+    @Test
+    public void testMemo() {
+        for (final long memoSize : List.of(0L, 1L, 10L)) {
+            final DiscoveryRelyingPartyMatcher<String> matcher = new DiscoveryRelyingPartyMatcher<>(sections,
+                    groups, memoSize);
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals(matcher.match("https://sp.example.org/other"), "prefix1");
+                Assert.assertEquals(matcher.match("https://other.example.org/"), "regex1");
+                Assert.assertNull(matcher.match("https://other.example.com/"));
+            }
+        }
+    }
+
+    @Test
+    public void testRegexOrder() {
+        sections.clear();
+        sections.put("regex:https://(?<host>[a-z]+)\\.example\\.org/\\k<host>", "regex1");
+        sections.put("regex:https://.*", "regex2");
+        final DiscoveryRelyingPartyMatcher<String> matcher = new DiscoveryRelyingPartyMatcher<>(sections, groups,
+                10);
+        Assert.assertEquals(matcher.match("https://sp.example.org/sp"), "regex1");
+        Assert.assertEquals(matcher.match("https://sp.example.org/idp"), "regex2");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRegex() {
+        new DiscoveryRelyingPartyMatcher<>(Map.of("regex:https://(", "regex"), groups, 10);
+    }
+
+    @Test
+    public void testAuthorityProperties() {
+        final DiscoverySnapshot snapshot = new DiscoverySnapshot("v1",
+                Map.of("https://sp.example.org/app/exact.authn/SAML", List.of("exact"),
+                        "prefix:https://sp.example.org/.authn/SAML", List.of("prefix"),
+                        "group:academic.authn/SAML", List.of("group"),
+                        "regex:https://.*\\.example\\.org/.*.authn/Password", List.of("regex"),
+                        "authn/SAML", List.of("flow")),
+                null, groups, 10);
+        Assert.assertEquals(snapshot.getAuthorityProperty("https://sp.example.org/app/exact", "authn/SAML"),
+                List.of("exact"));
+        Assert.assertEquals(snapshot.getAuthorityProperty("https://sp.example.org/app/member", "authn/SAML"),
+                List.of("group"));
+        Assert.assertEquals(snapshot.getAuthorityProperty("https://sp.example.org/other", "authn/SAML"),
+                List.of("prefix"));
+        Assert.assertEquals(snapshot.getAuthorityProperty("https://other.example.com", "authn/SAML"),
+                List.of("flow"));
+        Assert.assertEquals(snapshot.getAuthorityProperty(null, "authn/SAML"), List.of("flow"));
+        Assert.assertEquals(snapshot.getAuthorityProperty("https://other.example.org/", "authn/Password"),
+                List.of("regex"));
+        Assert.assertNull(snapshot.getAuthorityProperty("https://other.example.com/", "authn/Password"));
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        final DiscoveryConfiguration configuration = DiscoveryConfiguration
+                .parse("{\"default\": {\"authn/SAML\": []}, \"prefix:https://sp.example.org/\": {\"authn/SAML\": []}, "
+                        + "\"group:academic\": {\"authn/Password\": []}}")
+                .withRelyingPartyMatching(groups, 10);
+        Assert.assertSame(configuration.getFlows("https://sp.example.org/other"),
+                configuration.getFlowMap().get("prefix:https://sp.example.org/"));
+        Assert.assertSame(configuration.getFlows("https://member.example.com"),
+                configuration.getFlowMap().get("group:academic"));
+        Assert.assertSame(configuration.getFlows("https://other.example.com"),
+                configuration.getFlowMap().get("default"));
+    }
+}
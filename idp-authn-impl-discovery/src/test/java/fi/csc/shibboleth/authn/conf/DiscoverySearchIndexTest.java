@@ -0,0 +1,81 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DiscoverySearchIndex}.
+ */
+public class DiscoverySearchIndexTest {
+
+    private DiscoverySearchIndex index;
+
+    @BeforeMethod
+    protected void setUp() {
+        index = new DiscoverySearchIndex(List.of(
+                List.of("University of Helsinki", "https://login.helsinki.fi/shibboleth"),
+                List.of("Aalto University", "https://idp.aalto.fi/idp/shibboleth"),
+                Arrays.asList(null, "Helsingin yliopisto", "https://idp.example.org"),
+                List.of("CSC - IT Center for Science", "https://idp.csc.fi/idp/shibboleth"),
+                List.of("Tampere University of Applied Sciences")));
+    }
+
+    private int[] search(String query, int limit) {
+        final int[] results = new int[limit];
+        return Arrays.copyOf(results, index.search(query, results));
+    }
+
+    @Test
+    public void testPrefix() {
+        Assert.assertEquals(search("u", 10), new int[] { 0, 1, 4 });
+        Assert.assertEquals(search("He", 10), new int[] { 2, 0 });
+        Assert.assertEquals(search("x", 10), new int[0]);
+    }
+
+    @Test
+    public void testTrigrams() {
+        Assert.assertEquals(search("helsin", 10), new int[] { 2, 0 });
+        Assert.assertEquals(search("University", 10), new int[] { 0, 1, 4 });
+        Assert.assertEquals(search("niversity", 10), new int[] { 0, 1, 4 });
+        Assert.assertEquals(search("csc.fi", 10), new int[] { 3 });
+        Assert.assertEquals(search("of applied", 10), new int[] { 4 });
+        Assert.assertEquals(search("helsinkix", 10), new int[0]);
+    }
+
+    @Test
+    public void testRanking() {
+        // Start of the first text before start of a word before anywhere.
+        Assert.assertEquals(search("aalto", 10), new int[] { 1 });
+        Assert.assertEquals(search("sci", 10), new int[] { 3, 4 });
+        Assert.assertEquals(search("idp", 10), new int[] { 1, 2, 3 });
+        Assert.assertEquals(search("ers", 10), new int[] { 0, 1, 4 });
+    }
+
+    @Test
+    public void testTopK() {
+        Assert.assertEquals(search("university", 2), new int[] { 0, 1 });
+        Assert.assertEquals(search("u", 1), new int[] { 0 });
+        Assert.assertEquals(search("University", 0), new int[0]);
+    }
+
+    @Test
+    public void testNormalization() {
+        Assert.assertEquals(search("  CSC -- IT ", 10), new int[] { 3 });
+        Assert.assertEquals(search("---", 10), new int[0]);
+        Assert.assertEquals(search(null, 10), new int[0]);
+        Assert.assertEquals(DiscoverySearchIndex.normalize(" CSC - IT Center! "), "csc it center");
+    }
+
+    @Test
+    public void testEmpty() {
+        final DiscoverySearchIndex empty = new DiscoverySearchIndex(List.of());
+        Assert.assertEquals(empty.size(), 0);
+        Assert.assertEquals(empty.search("abc", new int[5]), 0);
+        Assert.assertEquals(empty.search("a", new int[5]), 0);
+        Assert.assertEquals(index.size(), 5);
+    }
+}
@@ -0,0 +1,73 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.Base64;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DiscoveryTokenCodec}.
+ */
+public class DiscoveryTokenCodecTest {
+
+    private final DiscoveryAuthenticatingAuthority first = new DiscoveryAuthenticatingAuthority("acr1", "entity",
+            "https://idp1.example.org", null, "IdP 1", false);
+
+    private final DiscoveryAuthenticatingAuthority second = new DiscoveryAuthenticatingAuthority("acr2", null, null,
+            null, null, false);
+
+    private SecretKeySpec key(int length) {
+        return new SecretKeySpec(new byte[length], DiscoveryTokenCodec.MAC_ALGORITHM);
+    }
+
+    @Test
+    public void testUnsigned() throws Exception {
+        final DiscoveryTokenCodec codec = new DiscoveryTokenCodec("1a2b3c4d", null);
+        Assert.assertEquals(codec.register(first), "1a2b3c4d.0");
+        Assert.assertEquals(codec.register(second), "1a2b3c4d.1");
+        Assert.assertEquals(codec.size(), 2);
+        Assert.assertSame(codec.resolve("1a2b3c4d.0"), first);
+        Assert.assertSame(codec.resolve("1a2b3c4d.1"), second);
+        Assert.assertNull(codec.resolve(null));
+        Assert.assertNull(codec.resolve("1a2b3c4d.2"));
+        Assert.assertNull(codec.resolve("1a2b3c4d."));
+        Assert.assertNull(codec.resolve("1a2b3c4d"));
+        Assert.assertNull(codec.resolve("1a2b3c4d.-1"));
+        Assert.assertNull(codec.resolve("1a2b3c4d.99999999999"));
+        Assert.assertNull(codec.resolve("1a2b3c4e.0"));
+        Assert.assertNull(codec.resolve("1a2b3c4d0.0"));
+        Assert.assertNull(codec.resolve("1a2b3c4d.0.mac"));
+        Assert.assertNull(codec.resolve(first.toB64UrlEncoded()));
+    }
+
+    @Test
+    public void testSigned() throws Exception {
+        final DiscoveryTokenCodec codec = new DiscoveryTokenCodec("1a2b3c4d", key(32));
+        final String token = codec.register(first);
+        Assert.assertTrue(token.startsWith("1a2b3c4d.0."));
+        Assert.assertSame(codec.resolve(token), first);
+        Assert.assertNull(codec.resolve("1a2b3c4d.0"));
+        Assert.assertNull(codec.resolve("1a2b3c4d.0."));
+        Assert.assertNull(codec.resolve(token.substring(0, token.length() - 1)));
+        final String mac = token.substring("1a2b3c4d.0.".length());
+        Assert.assertNull(codec.resolve("1a2b3c4d.1." + mac));
+        // Token signed with other key is not resolved.
+        final DiscoveryTokenCodec other = new DiscoveryTokenCodec("1a2b3c4d",
+                new SecretKeySpec(Base64.getDecoder().decode("c2VjcmV0c2VjcmV0c2VjcmV0c2VjcmV0c2VjcmV0ISE="),
+                        DiscoveryTokenCodec.MAC_ALGORITHM));
+        other.register(first);
+        Assert.assertNull(other.resolve(token));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testShortKey() throws Exception {
+        new DiscoveryTokenCodec("1a2b3c4d", key(16));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidVersion() throws Exception {
+        new DiscoveryTokenCodec("1a2b.3c4d", null);
+    }
+}
@@ -0,0 +1,54 @@
+package fi.csc.shibboleth.authn.conf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DiscoveryViewItem}.
+ */
+public class DiscoveryViewItemTest {
+
+    @Test
+    public void testFlowOnly() throws Exception {
+        final DiscoveryViewItem item = new DiscoveryViewItem("authn/Password", null, null, "j_authnflow",
+                "j_authnauthority");
+        Assert.assertEquals(item.getFlow(), "authn/Password");
+        Assert.assertNull(item.getAuthority());
+        Assert.assertNull(item.getName());
+        Assert.assertNull(item.getImagePath());
+        Assert.assertEquals(item.getMessageKey(), "authn/Password.message");
+        Assert.assertEquals(item.getDefaultMessage(), "authn/Password");
+        Assert.assertEquals(item.getQueryFragment(),
+                "&j_authnflow=authn%2FPassword&_eventId_proceed=_eventId_proceed");
+    }
+
+    @Test
+    public void testPropertyAuthority() throws Exception {
+        final DiscoveryViewItem item = new DiscoveryViewItem("authn/Password", "mock%20Authority", null, "flow",
+                "authority");
+        Assert.assertEquals(item.getMessageKey(), "authn/Password.mock%20Authority.message");
+        Assert.assertEquals(item.getDefaultMessage(), "authn/Password.mock%20Authority");
+        Assert.assertEquals(item.getQueryFragment(),
+                "&flow=authn%2FPassword&authority=mock%20Authority&_eventId_proceed=_eventId_proceed");
+    }
+
+    @Test
+    public void testNamedAuthority() throws Exception {
+        final Map<String, Object> object = new HashMap<>();
+        object.put(DiscoveryAuthenticatingAuthority.ACR_KEY, "anyStringAcr");
+        object.put(DiscoveryAuthenticatingAuthority.NAME_KEY, "MethodOne");
+        final DiscoveryAuthenticatingAuthority authority = DiscoveryAuthenticatingAuthority.parse(object);
+        final String encoded = authority.toB64UrlEncoded();
+        final DiscoveryViewItem item = new DiscoveryViewItem("authn/MFA", encoded, authority, "j_authnflow",
+                "j_authnauthority");
+        Assert.assertSame(item.getAuthenticatingAuthority(), authority);
+        Assert.assertEquals(item.getName(), "MethodOne");
+        Assert.assertEquals(item.getDefaultMessage(), "MethodOne");
+        Assert.assertEquals(item.getImagePath(), "/images/MethodOne.png");
+        Assert.assertEquals(item.getMessageKey(), "authn/MFA." + encoded + ".message");
+        Assert.assertTrue(item.getQueryFragment().contains("&j_authnauthority=" + encoded + "&"));
+    }
+}
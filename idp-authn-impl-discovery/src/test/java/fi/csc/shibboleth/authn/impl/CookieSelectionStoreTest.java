@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jakarta.servlet.http.Cookie;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/**
+ * Unit tests for {@link CookieSelectionStore}.
+ */
+public class CookieSelectionStoreTest {
+
+    private final static String SIGNING_KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+    private final static String ENCRYPTION_KEY = Base64.getEncoder().encodeToString(new byte[16]);
+
+    private CookieSelectionStore store;
+
+    @BeforeMethod
+    public void setUp() {
+        store = new CookieSelectionStore();
+        store.setSigningKey(SIGNING_KEY);
+    }
+
+    private Cookie save(final CookieSelectionStore cookieStore, final String flow, final String authority) {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        cookieStore.save(new MockHttpServletRequest(), response, flow, authority);
+        return response.getCookie(CookieSelectionStore.DEFAULT_COOKIE_NAME);
+    }
+
+    private Pair<String, String> load(final CookieSelectionStore cookieStore, final Cookie cookie) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        return cookieStore.load(request);
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoSigningKey() throws Exception {
+        store.setSigningKey(null);
+        store.initialize();
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testShortSigningKey() throws Exception {
+        store.setSigningKey(Base64.getEncoder().encodeToString(new byte[16]));
+        store.initialize();
+    }
+
+    @Test
+    public void testSigned() throws Exception {
+        store.initialize();
+        final Cookie cookie = save(store, "authn/MFA", "authority");
+        Assert.assertTrue(cookie.isHttpOnly());
+        Assert.assertTrue(cookie.getSecure());
+        Assert.assertEquals(cookie.getMaxAge(), Duration.ofDays(90).toSeconds());
+        Assert.assertEquals(load(store, cookie), new Pair<>("authn/MFA", "authority"));
+        Assert.assertEquals(load(store, save(store, "authn/Password", null)), new Pair<>("authn/Password", null));
+        Assert.assertNull(store.load(new MockHttpServletRequest()));
+    }
+
+    @Test
+    public void testEncrypted() throws Exception {
+        store.setEncryptionKey(ENCRYPTION_KEY);
+        store.initialize();
+        final Cookie cookie = save(store, "authn/MFA", "authority");
+        final String payload = cookie.getValue().substring(0, cookie.getValue().indexOf('.'));
+        Assert.assertFalse(new String(Base64.getUrlDecoder().decode(payload)).contains("authn/MFA"));
+        Assert.assertEquals(load(store, cookie), new Pair<>("authn/MFA", "authority"));
+    }
+
+    @Test
+    public void testTampered() throws Exception {
+        store.initialize();
+        final Cookie cookie = save(store, "authn/MFA", "authority");
+        final String value = cookie.getValue();
+        final String payload = new String(Base64.getUrlDecoder().decode(value.substring(0, value.indexOf('.'))));
+        final String tampered = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(payload.replace("authority", "other").getBytes());
+        Assert.assertNull(load(store, new Cookie(cookie.getName(), tampered + value.substring(value.indexOf('.')))));
+        Assert.assertNull(load(store, new Cookie(cookie.getName(), "garbage")));
+        Assert.assertNull(load(store, new Cookie(cookie.getName(), "!!.!!")));
+    }
+
+    @Test
+    public void testOtherKey() throws Exception {
+        store.initialize();
+        final Cookie cookie = save(store, "authn/MFA", "authority");
+        final CookieSelectionStore other = new CookieSelectionStore();
+        final byte[] key = new byte[32];
+        key[0] = 1;
+        other.setSigningKey(Base64.getEncoder().encodeToString(key));
+        other.initialize();
+        Assert.assertNull(load(other, cookie));
+    }
+
+    @Test
+    public void testRecentSelections() throws Exception {
+        store.setMaxSelections(3);
+        store.setEncryptionKey(ENCRYPTION_KEY);
+        store.initialize();
+        final Cookie first = save(store, "authn/MFA", "authority");
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(first);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        store.save(request, response, "authn/Password", null);
+        request.setCookies(response.getCookie(CookieSelectionStore.DEFAULT_COOKIE_NAME));
+        Assert.assertEquals(store.loadRecent(request),
+                List.of(new Pair<>("authn/Password", null), new Pair<>("authn/MFA", "authority")));
+        Assert.assertEquals(store.load(request), new Pair<>("authn/Password", null));
+
+        // A single selection is readable by a store remembering one only
+        final CookieSelectionStore single = new CookieSelectionStore();
+        single.setSigningKey(SIGNING_KEY);
+        single.setEncryptionKey(ENCRYPTION_KEY);
+        single.initialize();
+        Assert.assertEquals(load(single, first), new Pair<>("authn/MFA", "authority"));
+        Assert.assertEquals(store.loadRecent(request(save(single, "authn/SAML", "idp"))),
+                List.of(new Pair<>("authn/SAML", "idp")));
+    }
+
+    @Test
+    public void testCookieSize() throws Exception {
+        store.setMaxSelections(5);
+        store.initialize();
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        for (int i = 0; i < 4; i++) {
+            final MockHttpServletResponse response = new MockHttpServletResponse();
+            store.save(request, response, "authn/SAML", String.valueOf(i).repeat(1200));
+            final Cookie cookie = response.getCookie(CookieSelectionStore.DEFAULT_COOKIE_NAME);
+            Assert.assertTrue(cookie.getName().length() + cookie.getValue().length()
+                    <= CookieSelectionStore.MAX_COOKIE_SIZE);
+            request.setCookies(cookie);
+        }
+        // The oldest selections are dropped to keep the cookie within the limit
+        Assert.assertEquals(store.loadRecent(request), List.of(new Pair<>("authn/SAML", "3".repeat(1200)),
+                new Pair<>("authn/SAML", "2".repeat(1200))));
+    }
+
+    private MockHttpServletRequest request(final Cookie cookie) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        return request;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiFunction;
+
+import org.springframework.context.MessageSource;
+import org.springframework.context.MessageSourceResolvable;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import fi.csc.shibboleth.authn.DiscoveryItems;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfiguration;
+import fi.csc.shibboleth.authn.conf.DiscoveryFlows;
+import fi.csc.shibboleth.authn.conf.DiscoverySearchIndex;
+import fi.csc.shibboleth.authn.conf.DiscoveryView;
+import fi.csc.shibboleth.authn.conf.DiscoveryViewItem;
+import jakarta.servlet.http.HttpServletResponse;
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Unit tests for {@link DiscoveryItemsWriter}.
+ */
+public class DiscoveryItemsWriterTest {
+
+    private DiscoveryItemsWriter writer;
+
+    private DiscoveryViewContext viewContext;
+
+    private MockHttpServletRequest request;
+
+    private MockHttpServletResponse response;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        writer = new DiscoveryItemsWriter();
+        writer.setEnabled(true);
+        writer.initialize();
+        final DiscoveryFlows flows = DiscoveryConfiguration
+                .parse("{\"default\":{\"authn/SAML\":[{\"acr\":\"https://example.org/acr\",\"aaType\":\"entity\","
+                        + "\"aaValue\":\"https://idp.example.org\",\"name\":\"Example\"}]}}")
+                .getFlows(null);
+        final Pair<String, String> item = flows.getItems("authn/SAML").get(0);
+        final List<DiscoveryViewItem> viewItems = List.of(
+                new DiscoveryViewItem("authn/SAML", item.getSecond(), flows.getAuthority(item.getSecond()),
+                        "j_authnflow", "j_authnauthority"),
+                new DiscoveryViewItem("authn/Password", null, null, "j_authnflow", "j_authnauthority"));
+        viewContext = new DiscoveryViewContext();
+        viewContext.setView(new DiscoveryView(DiscoveryItems.of(List.of(item, new Pair<>("authn/Password", null))),
+                viewItems));
+        request = new MockHttpServletRequest();
+        request.setParameter("format", "json");
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        Assert.assertEquals(response.getStatus(), HttpServletResponse.SC_OK);
+        Assert.assertEquals(response.getHeader("ETag"), viewContext.getView().getEntityTag());
+        Assert.assertTrue(response.getContentType().startsWith("application/json"));
+        final String json = response.getContentAsString(StandardCharsets.UTF_8);
+        Assert.assertTrue(json.startsWith("{\"items\":[{\"flow\":\"authn/SAML\""));
+        Assert.assertTrue(json.contains("\"name\":\"Example\",\"aaType\":\"entity\""));
+        Assert.assertTrue(json.contains("\"aaValue\":\"https://idp.example.org\""));
+        Assert.assertTrue(json.contains("{\"flow\":\"authn/Password\",\"messageKey\":\"authn/Password.message\""));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        request.addHeader("If-None-Match", "\"other\", W/" + viewContext.getView().getEntityTag());
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        Assert.assertEquals(response.getStatus(), HttpServletResponse.SC_NOT_MODIFIED);
+        Assert.assertEquals(response.getContentAsByteArray().length, 0);
+        Assert.assertEquals(response.getHeader("ETag"), viewContext.getView().getEntityTag());
+    }
+
+    @Test
+    public void testModified() throws Exception {
+        request.addHeader("If-None-Match", "\"other\"");
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        Assert.assertEquals(response.getStatus(), HttpServletResponse.SC_OK);
+        Assert.assertTrue(response.getContentAsByteArray().length > 0);
+    }
+
+    @Test
+    public void testNotRequested() throws Exception {
+        Assert.assertFalse(writer.write(new MockHttpServletRequest(), response, viewContext));
+        Assert.assertFalse(writer.write(request, response, null));
+        final DiscoveryViewContext listContext = new DiscoveryViewContext();
+        listContext.setItems(viewContext.getItems());
+        Assert.assertFalse(writer.write(request, response, listContext));
+        Assert.assertNull(response.getHeader("ETag"));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final DiscoveryItemsWriter disabled = new DiscoveryItemsWriter();
+        disabled.initialize();
+        Assert.assertFalse(disabled.write(request, response, viewContext));
+    }
+
+    @Test
+    public void testEntityTag() throws Exception {
+        final DiscoveryView view = viewContext.getView();
+        Assert.assertSame(view.getJson(), view.getJson());
+        Assert.assertTrue(view.getEntityTag().matches("\"[0-9a-f]{32}\""));
+        final DiscoveryView copy = new DiscoveryView(view.getItems(), view.getViewItems());
+        Assert.assertEquals(copy.getEntityTag(), view.getEntityTag());
+        final DiscoveryView other = new DiscoveryView(view.getItems(), view.getViewItems().subList(0, 1));
+        Assert.assertNotEquals(other.getEntityTag(), view.getEntityTag());
+        Assert.assertTrue(DiscoveryItemsWriter.matches("*", view.getEntityTag()));
+        Assert.assertFalse(DiscoveryItemsWriter.matches(null, view.getEntityTag()));
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        request.setParameter("query", "exam");
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        final String json = response.getContentAsString(StandardCharsets.UTF_8);
+        Assert.assertTrue(json.startsWith("{\"items\":[{\"flow\":\"authn/SAML\""));
+        Assert.assertFalse(json.contains("authn/Password"));
+        Assert.assertNull(response.getHeader("ETag"));
+
+        response = new MockHttpServletResponse();
+        request.setParameter("query", "nothing");
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        Assert.assertEquals(response.getContentAsString(StandardCharsets.UTF_8), "{\"items\":[]}");
+    }
+
+    @Test
+    public void testSearchLocalizedLabels() throws Exception {
+        writer = new DiscoveryItemsWriter();
+        writer.setEnabled(true);
+        writer.setMessageSource(new MessageSource() {
+            public String getMessage(String code, Object[] args, String defaultMessage, Locale locale) {
+                return "authn/Password.message".equals(code) && "fi".equals(locale.getLanguage()) ? "Salasana"
+                        : defaultMessage;
+            }
+
+            public String getMessage(String code, Object[] args, Locale locale) {
+                return getMessage(code, args, null, locale);
+            }
+
+            public String getMessage(MessageSourceResolvable resolvable, Locale locale) {
+                return null;
+            }
+        });
+        writer.initialize();
+        request.setParameter("query", "sala");
+        request.addPreferredLocale(new Locale("fi"));
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        Assert.assertTrue(response.getContentAsString(StandardCharsets.UTF_8)
+                .startsWith("{\"items\":[{\"flow\":\"authn/Password\""));
+
+        response = new MockHttpServletResponse();
+        final MockHttpServletRequest english = new MockHttpServletRequest();
+        english.setParameter("format", "json");
+        english.setParameter("query", "sala");
+        Assert.assertTrue(writer.write(english, response, viewContext));
+        Assert.assertEquals(response.getContentAsString(StandardCharsets.UTF_8), "{\"items\":[]}");
+    }
+
+    @Test
+    public void testSearchLanguages() throws Exception {
+        final DiscoveryView view = viewContext.getView();
+        final BiFunction<DiscoveryViewItem, Locale, String> labelLookup = (item, locale) -> locale.getLanguage();
+        final DiscoverySearchIndex unlabeled = view.getSearchIndex(null, null);
+        Assert.assertSame(view.getSearchIndex(new Locale("fi"), null), unlabeled);
+        Assert.assertSame(view.getSearchIndex(new Locale("not-a-language"), labelLookup), unlabeled);
+        final DiscoverySearchIndex finnish = view.getSearchIndex(new Locale("fi", "FI"), labelLookup);
+        Assert.assertNotSame(finnish, unlabeled);
+        Assert.assertSame(view.getSearchIndex(new Locale("fi"), labelLookup), finnish);
+    }
+
+    @Test
+    public void testPage() throws Exception {
+        request.setParameter("offset", "1");
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        Assert.assertEquals(response.getHeader("ETag"), viewContext.getView().getEntityTag());
+        final String json = response.getContentAsString(StandardCharsets.UTF_8);
+        Assert.assertTrue(json.startsWith("{\"items\":[{\"flow\":\"authn/Password\""));
+        Assert.assertTrue(json.endsWith("}],\"total\":2}"));
+        Assert.assertFalse(json.contains("authn/SAML"));
+
+        response = new MockHttpServletResponse();
+        request.removeParameter("offset");
+        request.setParameter("limit", "1");
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        final String first = response.getContentAsString(StandardCharsets.UTF_8);
+        Assert.assertTrue(first.startsWith("{\"items\":[{\"flow\":\"authn/SAML\""));
+        Assert.assertFalse(first.contains("authn/Password"));
+
+        response = new MockHttpServletResponse();
+        request.setParameter("offset", "5");
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        Assert.assertEquals(response.getContentAsString(StandardCharsets.UTF_8), "{\"items\":[],\"total\":2}");
+    }
+
+    @Test
+    public void testPageMatchesFullItems() throws Exception {
+        final DiscoveryView view = viewContext.getView();
+        final String full = new String(view.getJson(), StandardCharsets.UTF_8);
+        final String page = new String(view.getJsonPage(0, Integer.MAX_VALUE), StandardCharsets.UTF_8);
+        Assert.assertEquals(page, full.substring(0, full.length() - 1) + ",\"total\":2}");
+        Assert.assertEquals(new String(view.getJson(new int[] { 0, 1 }, 2), StandardCharsets.UTF_8), full);
+        final String reversed = new String(view.getJson(new int[] { 1, 0 }, 2), StandardCharsets.UTF_8);
+        Assert.assertTrue(reversed.startsWith("{\"items\":[{\"flow\":\"authn/Password\""));
+        Assert.assertEquals(reversed.length(), full.length());
+    }
+
+    @Test
+    public void testInvalidPage() throws Exception {
+        request.setParameter("offset", "-1");
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        Assert.assertEquals(response.getStatus(), HttpServletResponse.SC_BAD_REQUEST);
+
+        response = new MockHttpServletResponse();
+        request.setParameter("offset", "0");
+        request.setParameter("limit", "many");
+        Assert.assertTrue(writer.write(request, response, viewContext));
+        Assert.assertEquals(response.getStatus(), HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    @Test
+    public void testPageItems() throws Exception {
+        Assert.assertEquals(viewContext.getPageItems(), viewContext.getItems());
+        Assert.assertFalse(viewContext.hasMoreItems());
+        viewContext.setPageSize(1);
+        Assert.assertEquals(viewContext.getPageItems(), viewContext.getItems().subList(0, 1));
+        Assert.assertTrue(viewContext.hasMoreItems());
+        viewContext.setPageSize(2);
+        Assert.assertEquals(viewContext.getPageItems(), viewContext.getItems());
+        Assert.assertFalse(viewContext.hasMoreItems());
+    }
+}
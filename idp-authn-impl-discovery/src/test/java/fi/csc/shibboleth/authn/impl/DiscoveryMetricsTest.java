@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.time.Duration;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+
+/**
+ * Unit tests for {@link DiscoveryMetrics}.
+ */
+public class DiscoveryMetricsTest {
+
+    private DiscoveryMetrics metrics;
+
+    private MetricRegistry registry;
+
+    @BeforeMethod
+    public void setUp() {
+        registry = new MetricRegistry();
+        metrics = new DiscoveryMetrics();
+        metrics.setId("test");
+        metrics.setMetricRegistry(registry);
+    }
+
+    private long count(final String name) {
+        return registry.counter(MetricRegistry.name(DiscoveryMetrics.DEFAULT_PREFIX, name)).getCount();
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        metrics.initialize();
+        Assert.assertFalse(metrics.isEnabled());
+        Assert.assertTrue(registry.getMetrics().isEmpty());
+    }
+
+    @Test
+    public void testNoRegistry() throws Exception {
+        metrics.setEnabled(true);
+        metrics.setMetricRegistry(null);
+        metrics.initialize();
+        Assert.assertFalse(metrics.isEnabled());
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        metrics.setEnabled(true);
+        metrics.initialize();
+        metrics.autoSelected();
+        metrics.priorSelectionHit();
+        metrics.priorSelectionMiss();
+        metrics.priorSelectionMiss();
+        metrics.invalidSelection();
+        metrics.populated(1000);
+        metrics.extracted(1000);
+        metrics.decided(Duration.ofSeconds(2));
+        Assert.assertEquals(count("autoSelect"), 1);
+        Assert.assertEquals(count("priorSelection.hit"), 1);
+        Assert.assertEquals(count("priorSelection.miss"), 2);
+        Assert.assertEquals(count("invalidSelection"), 1);
+        Assert.assertEquals(registry.timer(DiscoveryMetrics.DEFAULT_PREFIX + ".populate").getCount(), 1);
+        Assert.assertEquals(registry.timer(DiscoveryMetrics.DEFAULT_PREFIX + ".extract").getCount(), 1);
+        Assert.assertEquals(
+                registry.histogram(DiscoveryMetrics.DEFAULT_PREFIX + ".decisionTime").getSnapshot().getMax(), 2000);
+    }
+
+    @Test
+    public void testSelectionCardinality() throws Exception {
+        metrics.setEnabled(true);
+        metrics.setMaxSelectionCounters(2);
+        metrics.initialize();
+        final DiscoveryAuthenticatingAuthority authority = DiscoveryAuthenticatingAuthority
+                .parse("{\"acr\":\"https://example.org/acr\",\"name\":\"Example\"}");
+        metrics.selected("authn/flow1", null, null);
+        metrics.selected("authn/flow1", null, null);
+        metrics.selected("authn/flow2", "version1.0", authority);
+        metrics.selected("authn/flow3", null, null);
+        metrics.selected("authn/flow2", "version2.0", authority);
+        Assert.assertEquals(count("selection.authn/flow1"), 2);
+        Assert.assertEquals(count("selection.authn/flow2.Example"), 2);
+        Assert.assertEquals(count("selection.other"), 1);
+    }
+
+    @Test
+    public void testUnresolvedSelection() throws Exception {
+        metrics.setEnabled(true);
+        metrics.initialize();
+        metrics.selected("authn/flow1", "authority", null);
+        Assert.assertEquals(count("selection.authn/flow1.#" + Integer.toHexString("authority".hashCode())), 1);
+    }
+}
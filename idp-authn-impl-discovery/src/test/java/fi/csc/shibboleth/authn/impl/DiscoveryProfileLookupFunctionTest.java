@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import org.opensaml.core.testing.OpenSAMLInitBaseTestCase;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.opensaml.saml.common.messaging.context.SAMLMetadataContext;
+import org.opensaml.saml.ext.saml2mdattr.EntityAttributes;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeValue;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.Extensions;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.profile.context.RelyingPartyContext;
+
+/**
+ * Unit tests for {@link DiscoveryProfileLookupFunction}.
+ */
+public class DiscoveryProfileLookupFunctionTest extends OpenSAMLInitBaseTestCase {
+
+    private ProfileRequestContext prc;
+
+    private SAMLMetadataContext metadataCtx;
+
+    private DiscoveryProfileLookupFunction function;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        prc = new ProfileRequestContext();
+        metadataCtx = new SAMLMetadataContext();
+        prc.ensureSubcontext(RelyingPartyContext.class).setRelyingPartyIdContextTree(metadataCtx);
+        function = new DiscoveryProfileLookupFunction();
+    }
+
+    private EntityDescriptor entity(String entityId, String attributeName, String profile) {
+        final EntityDescriptor entity =
+                (EntityDescriptor) XMLObjectSupport.buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        entity.setEntityID(entityId);
+        final Extensions extensions = (Extensions) XMLObjectSupport.buildXMLObject(Extensions.DEFAULT_ELEMENT_NAME);
+        final EntityAttributes entityAttributes =
+                (EntityAttributes) XMLObjectSupport.buildXMLObject(EntityAttributes.DEFAULT_ELEMENT_NAME);
+        final Attribute attribute = (Attribute) XMLObjectSupport.buildXMLObject(Attribute.DEFAULT_ELEMENT_NAME);
+        attribute.setName(attributeName);
+        final XSString value =
+                (XSString) XMLObjectSupport.buildXMLObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+        value.setValue(profile);
+        attribute.getAttributeValues().add(value);
+        entityAttributes.getAttributes().add(attribute);
+        extensions.getUnknownXMLObjects().add(entityAttributes);
+        entity.setExtensions(extensions);
+        return entity;
+    }
+
+    private void setProfile(EntityDescriptor entity, String profile) {
+        final EntityAttributes entityAttributes = (EntityAttributes) entity.getExtensions()
+                .getUnknownXMLObjects(EntityAttributes.DEFAULT_ELEMENT_NAME).get(0);
+        ((XSString) entityAttributes.getAttributes().get(0).getAttributeValues().get(0)).setValue(profile);
+    }
+
+    @Test
+    public void testProfile() throws Exception {
+        function.initialize();
+        metadataCtx.setEntityDescriptor(
+                entity("https://sp.example.org", DiscoveryProfileLookupFunction.DEFAULT_ATTRIBUTE_NAME, "academic"));
+        Assert.assertEquals(function.apply(prc), "academic");
+    }
+
+    @Test
+    public void testNoProfile() throws Exception {
+        function.initialize();
+        Assert.assertNull(function.apply(prc));
+        Assert.assertNull(function.apply(new ProfileRequestContext()));
+        metadataCtx.setEntityDescriptor(entity("https://sp.example.org", "other", "academic"));
+        Assert.assertNull(function.apply(prc));
+    }
+
+    @Test
+    public void testAttributeName() throws Exception {
+        function.setAttributeName("other");
+        function.initialize();
+        metadataCtx.setEntityDescriptor(entity("https://sp.example.org", "other", "academic"));
+        Assert.assertEquals(function.apply(prc), "academic");
+    }
+
+    @Test
+    public void testEntityCache() throws Exception {
+        function.initialize();
+        final EntityDescriptor entity =
+                entity("https://sp.example.org", DiscoveryProfileLookupFunction.DEFAULT_ATTRIBUTE_NAME, "academic");
+        metadataCtx.setEntityDescriptor(entity);
+        Assert.assertEquals(function.apply(prc), "academic");
+        setProfile(entity, "commercial");
+        // Same descriptor, cached
+        Assert.assertEquals(function.apply(prc), "academic");
+        // Refreshed descriptor
+        metadataCtx.setEntityDescriptor(
+                entity("https://sp.example.org", DiscoveryProfileLookupFunction.DEFAULT_ATTRIBUTE_NAME, "commercial"));
+        Assert.assertEquals(function.apply(prc), "commercial");
+    }
+
+    @Test
+    public void testWithoutCache() throws Exception {
+        function.setMaximumSize(0);
+        function.initialize();
+        final EntityDescriptor entity =
+                entity("https://sp.example.org", DiscoveryProfileLookupFunction.DEFAULT_ATTRIBUTE_NAME, "academic");
+        metadataCtx.setEntityDescriptor(entity);
+        Assert.assertEquals(function.apply(prc), "academic");
+        setProfile(entity, "commercial");
+        Assert.assertEquals(function.apply(prc), "commercial");
+    }
+}
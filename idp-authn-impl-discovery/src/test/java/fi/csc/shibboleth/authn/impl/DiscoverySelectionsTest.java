@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Unit tests for {@link DiscoverySelections}.
+ */
+public class DiscoverySelectionsTest {
+
+    @Test
+    public void testEncode() throws Exception {
+        Assert.assertEquals(DiscoverySelections.encode(List.of(new Pair<>("authn/Password", null))), "authn/Password");
+        Assert.assertEquals(DiscoverySelections.encode(List.of(new Pair<>("authn/SAML", "idp"))), "authn/SAML\nidp");
+        final List<Pair<String, String>> selections = List.of(new Pair<>("authn/Password", null),
+                new Pair<>("authn/SAML", "idp"), new Pair<>("authn/MFA", null));
+        Assert.assertEquals(DiscoverySelections.encode(selections), "authn/Password\n\nauthn/SAML\nidp\nauthn/MFA\n");
+        Assert.assertEquals(DiscoverySelections.decode(DiscoverySelections.encode(selections)), selections);
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        Assert.assertEquals(DiscoverySelections.decode("authn/Password"), List.of(new Pair<>("authn/Password", null)));
+        Assert.assertEquals(DiscoverySelections.decode("authn/SAML\nidp"), List.of(new Pair<>("authn/SAML", "idp")));
+        Assert.assertTrue(DiscoverySelections.decode(null).isEmpty());
+        Assert.assertTrue(DiscoverySelections.decode(" ").isEmpty());
+    }
+
+    @Test
+    public void testAdd() throws Exception {
+        List<Pair<String, String>> selections = DiscoverySelections.add(List.of(), "authn/SAML", "idp1", 3);
+        selections = DiscoverySelections.add(selections, "authn/SAML", "idp2", 3);
+        selections = DiscoverySelections.add(selections, "authn/Password", null, 3);
+        Assert.assertEquals(selections, List.of(new Pair<>("authn/Password", null), new Pair<>("authn/SAML", "idp2"),
+                new Pair<>("authn/SAML", "idp1")));
+        selections = DiscoverySelections.add(selections, "authn/SAML", "idp1", 3);
+        Assert.assertEquals(selections, List.of(new Pair<>("authn/SAML", "idp1"), new Pair<>("authn/Password", null),
+                new Pair<>("authn/SAML", "idp2")));
+        selections = DiscoverySelections.add(selections, "authn/MFA", null, 2);
+        Assert.assertEquals(selections, List.of(new Pair<>("authn/MFA", null), new Pair<>("authn/SAML", "idp1")));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.security.Principal;
+import java.util.List;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationService;
+import fi.csc.shibboleth.authn.impl.SelectFirstFactorFunctionTest.TestPrincipal;
+import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.idp.authn.context.RequestedPrincipalContext;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/**
+ * Unit tests for {@link DiscoveryUpstreamLookupFunction}.
+ */
+public class DiscoveryUpstreamLookupFunctionTest {
+
+    private DiscoveryConfigurationService service;
+
+    private ProfileRequestContext prc;
+
+    private AuthenticationContext authnCtx;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        service = new DiscoveryConfigurationService();
+        service.setId("test");
+        service.setAuthorities("{\"default\":{\"authn/MFA\":["
+                + "{\"acr\":\"acr1\",\"aaType\":\"entity\",\"aaValue\":\"https://idp.example.org\"},"
+                + "{\"acr\":\"acr2\",\"aaType\":\"discovery\",\"aaValue\":\"https://ds.example.org\"},"
+                + "{\"acr\":\"acr3\",\"aaType\":\"issuer\",\"aaValue\":\"https://op.example.org\"}]}}");
+        service.initialize();
+        prc = new ProfileRequestContext();
+        authnCtx = prc.ensureSubcontext(AuthenticationContext.class);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        service.destroy();
+    }
+
+    private DiscoveryUpstreamLookupFunction function(String... types) throws ComponentInitializationException {
+        final DiscoveryUpstreamLookupFunction function = new DiscoveryUpstreamLookupFunction();
+        function.setConfigurationService(service);
+        function.setRelyingPartyIdLookupStrategy(prc -> "rp1");
+        function.setTypes(List.of(types));
+        function.initialize();
+        return function;
+    }
+
+    private DiscoveryAuthenticatingAuthority authority(String acr) {
+        return service.getSnapshot().getConfiguration().getByAcr(null, acr).getSecond();
+    }
+
+    @Test
+    public void testDiscoveryProfile() throws Exception {
+        service.destroy();
+        service = new DiscoveryConfigurationService();
+        service.setId("test");
+        service.setAuthorities("{\"default\":{\"authn/MFA\":["
+                + "{\"acr\":\"acr1\",\"aaType\":\"entity\",\"aaValue\":\"https://idp.example.org\"}]},"
+                + "\"profile:academic\":{\"authn/MFA\":["
+                + "{\"acr\":\"acr1\",\"aaType\":\"entity\",\"aaValue\":\"https://idp.example.edu\"}]}}");
+        service.initialize();
+        final DiscoveryUpstreamLookupFunction function = new DiscoveryUpstreamLookupFunction();
+        function.setConfigurationService(service);
+        function.setRelyingPartyIdLookupStrategy(prc -> "rp1");
+        function.setDiscoveryProfileLookupStrategy(prc -> "academic");
+        function.initialize();
+        authnCtx.ensureSubcontext(RequestedPrincipalContext.class)
+                .setRequestedPrincipals(List.of((Principal) new TestPrincipal("acr1")));
+        Assert.assertEquals(function.apply(prc), "https://idp.example.edu");
+    }
+
+    @Test
+    public void testDiscoverySelection() throws Exception {
+        final DiscoveryUpstreamLookupFunction entityId = function(DiscoveryAuthenticatingAuthority.TYPE_ENTITY);
+        final DiscoveryUpstreamLookupFunction discoveryUrl =
+                function(DiscoveryAuthenticatingAuthority.TYPE_DISCOVERY);
+        authnCtx.setAuthenticatingAuthority(authority("acr2").toB64UrlEncoded());
+        Assert.assertNull(entityId.apply(prc));
+        Assert.assertSame(authnCtx.getSubcontext(DiscoverySelectionContext.class).getAuthenticatingAuthority(),
+                authority("acr2"));
+        Assert.assertEquals(discoveryUrl.apply(prc), "https://ds.example.org");
+        Assert.assertNull(authnCtx.getHintedName());
+    }
+
+    @Test
+    public void testResolvedSelection() throws Exception {
+        authnCtx.ensureSubcontext(DiscoverySelectionContext.class).setAuthenticatingAuthority(authority("acr3"));
+        Assert.assertEquals(function(DiscoveryAuthenticatingAuthority.TYPE_ISSUER).apply(prc),
+                "https://op.example.org");
+        Assert.assertNull(function(DiscoveryAuthenticatingAuthority.TYPE_ENTITY).apply(prc));
+        Assert.assertEquals(function().apply(prc), "https://op.example.org");
+    }
+
+    @Test
+    public void testRequestedAcr() throws Exception {
+        authnCtx.ensureSubcontext(RequestedPrincipalContext.class)
+                .setRequestedPrincipals(List.of((Principal) new TestPrincipal("acr1")));
+        Assert.assertEquals(function(DiscoveryAuthenticatingAuthority.TYPE_ENTITY).apply(prc),
+                "https://idp.example.org");
+        Assert.assertSame(authnCtx.getSubcontext(DiscoverySelectionContext.class).getAuthenticatingAuthority(),
+                authority("acr1"));
+    }
+
+    @Test
+    public void testNoSelection() throws Exception {
+        Assert.assertNull(function().apply(prc));
+        authnCtx.ensureSubcontext(RequestedPrincipalContext.class)
+                .setRequestedPrincipals(List.of((Principal) new TestPrincipal("unknown")));
+        Assert.assertNull(function().apply(prc));
+        Assert.assertNull(authnCtx.getSubcontext(DiscoverySelectionContext.class));
+    }
+}
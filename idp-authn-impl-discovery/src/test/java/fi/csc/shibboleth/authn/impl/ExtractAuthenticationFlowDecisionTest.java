@@ -23,6 +23,10 @@
 
 package fi.csc.shibboleth.authn.impl;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 import org.opensaml.profile.context.ProfileRequestContext;
@@ -33,7 +37,16 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
+
 import fi.csc.shibboleth.authn.AuthenticationDiscoveryContext;
+import fi.csc.shibboleth.authn.DiscoveryItems;
+import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationService;
+import fi.csc.shibboleth.authn.conf.DiscoveryFlows;
+import fi.csc.shibboleth.authn.conf.DiscoveryPopularity;
+import fi.csc.shibboleth.authn.conf.DiscoveryView;
+import fi.csc.shibboleth.authn.conf.DiscoveryViewItem;
 import jakarta.servlet.http.HttpServletRequest;
 import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
 import net.shibboleth.idp.authn.AuthnEventIds;
@@ -41,6 +54,7 @@ import net.shibboleth.idp.authn.context.AuthenticationContext;
 import net.shibboleth.idp.profile.context.navigate.WebflowRequestContextProfileRequestContextLookup;
 import net.shibboleth.idp.profile.testing.ActionTestingSupport;
 import net.shibboleth.idp.profile.testing.RequestContextBuilder;
+import net.shibboleth.profile.context.RelyingPartyContext;
 import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.primitive.NonnullSupplier;
@@ -102,6 +116,7 @@ public class ExtractAuthenticationFlowDecisionTest {
                 .getSubcontext(AuthenticationContext.class).addSubcontext(new AuthenticationDiscoveryContext());
         discoveryCtx.getFlowsWithAuthorities().add(new Pair<String, String>("mockDecision", "mockAuthorityDecision"));
         discoveryCtx.getFlowsWithAuthorities().add(new Pair<String, String>("mockDecision2", null));
+        discoveryCtx.getFlowsWithAuthorities().add(new Pair<String, String>("mockDecision3", "mock%20Authority"));
         action = new ExtractAuthenticationFlowDecision();
         action.setTrim(true);
         action.setAuthnFlowFieldName(authnFlowField);
@@ -182,6 +197,28 @@ public class ExtractAuthenticationFlowDecisionTest {
         Assert.assertEquals(authCtx.getAuthenticatingAuthority(), authnAuthorityDecision);
     }
 
+    /**
+     * Runs the action with valid input counting the selection.
+     */
+    @Test
+    public void testPopularity() throws Exception {
+        final DiscoveryPopularity popularity = new DiscoveryPopularity();
+        popularity.setId("test");
+        popularity.setEnabled(true);
+        popularity.setUpdateInterval(Duration.ZERO);
+        popularity.initialize();
+        action.setPopularity(popularity);
+        action.initialize();
+        ((MockHttpServletRequest) action.getHttpServletRequest()).addParameter(authnFlowField, "mockDecision3");
+        ((MockHttpServletRequest) action.getHttpServletRequest()).addParameter(authnAuthorityField,
+                "mock Authority");
+        ActionTestingSupport.assertEvent(action.execute(src), AuthnEventIds.RESELECT_FLOW);
+        popularity.update();
+        final RelyingPartyContext rpCtx = prc.getSubcontext(RelyingPartyContext.class);
+        Assert.assertEquals(popularity.getScore(rpCtx != null ? rpCtx.getRelyingPartyId() : null, "mockDecision3",
+                "mock Authority"), 1.0);
+    }
+
     /**
      * Runs the action with valid input with input needing trim.
      */
@@ -215,4 +252,151 @@ public class ExtractAuthenticationFlowDecisionTest {
         Assert.assertNull(authCtx.getSignaledFlowId());
         Assert.assertNull(authCtx.getAuthenticatingAuthority());
     }
+
+    /**
+     * Runs the action with authority listed in url encoded form.
+     */
+    @Test
+    public void testValidUrlEncodedAuthority() throws Exception {
+        action.initialize();
+        ((MockHttpServletRequest) action.getHttpServletRequest()).addParameter(authnFlowField, "mockDecision3");
+        ((MockHttpServletRequest) action.getHttpServletRequest()).addParameter(authnAuthorityField,
+                "mock Authority");
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertEvent(event, AuthnEventIds.RESELECT_FLOW);
+        AuthenticationContext authCtx = prc.getSubcontext(AuthenticationContext.class);
+        Assert.assertEquals(authCtx.getSignaledFlowId(), "mockDecision3");
+        Assert.assertEquals(authCtx.getAuthenticatingAuthority(), "mock Authority");
+    }
+
+    /**
+     * Runs the action with authority that has been removed from the list.
+     */
+    @Test
+    public void testRemovedAuthority() throws Exception {
+        action.initialize();
+        prc.getSubcontext(AuthenticationContext.class).getSubcontext(AuthenticationDiscoveryContext.class)
+                .getFlowsWithAuthorities().set(0, new Pair<String, String>("mockDecision", "replaced"));
+        ((MockHttpServletRequest) action.getHttpServletRequest()).addParameter(authnFlowField, authnFlowDecision);
+        ((MockHttpServletRequest) action.getHttpServletRequest()).addParameter(authnAuthorityField,
+                authnAuthorityDecision);
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertEvent(event, AuthnEventIds.REQUEST_UNSUPPORTED);
+    }
+
+    /**
+     * Runs the action with metrics enabled.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final DiscoveryMetrics metrics = new DiscoveryMetrics();
+        metrics.setId("test");
+        metrics.setMetricRegistry(registry);
+        metrics.setEnabled(true);
+        metrics.initialize();
+        action.setMetrics(metrics);
+        action.initialize();
+        prc.getSubcontext(AuthenticationContext.class).ensureSubcontext(DiscoveryViewContext.class)
+                .setRenderInstant(Instant.now().minusSeconds(5));
+        ((MockHttpServletRequest) action.getHttpServletRequest()).addParameter(authnFlowField, authnFlowDecision2);
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertEvent(event, AuthnEventIds.RESELECT_FLOW);
+        Assert.assertEquals(registry.counter(DiscoveryMetrics.DEFAULT_PREFIX + ".selection.mockDecision2").getCount(),
+                1);
+        Assert.assertEquals(registry.timer(DiscoveryMetrics.DEFAULT_PREFIX + ".extract").getCount(), 1);
+        Assert.assertTrue(registry.histogram(DiscoveryMetrics.DEFAULT_PREFIX + ".decisionTime").getSnapshot()
+                .getMin() >= 5000);
+    }
+
+    /**
+     * Runs the action with compact authority token resolved to the configured authority.
+     */
+    @Test
+    public void testCompactToken() throws Exception {
+        final DiscoveryConfigurationService service = new DiscoveryConfigurationService();
+        service.setId("test");
+        service.setCompactTokens(true);
+        service.setAuthorities("{\"default\":{\"mockDecision4\":[{\"acr\":\"acr1\",\"aaValue\":\"aa1\"}]}}");
+        service.initialize();
+        final MetricRegistry registry = new MetricRegistry();
+        final DiscoveryMetrics metrics = new DiscoveryMetrics();
+        metrics.setId("test");
+        metrics.setMetricRegistry(registry);
+        metrics.setEnabled(true);
+        metrics.initialize();
+        action.setMetrics(metrics);
+        final DiscoveryFlows flows = service.getSnapshot().getConfiguration().getFlows(null);
+        final String token = flows.getItems("mockDecision4").get(0).getSecond();
+        final DiscoveryAuthenticatingAuthority authority = flows.getAuthorityMap().get("mockDecision4").get(0);
+        prc.getSubcontext(AuthenticationContext.class).getSubcontext(AuthenticationDiscoveryContext.class)
+                .getFlowsWithAuthorities().add(new Pair<>("mockDecision4", token));
+        action.setConfigurationService(service);
+        action.initialize();
+        ((MockHttpServletRequest) action.getHttpServletRequest()).addParameter(authnFlowField, "mockDecision4");
+        ((MockHttpServletRequest) action.getHttpServletRequest()).addParameter(authnAuthorityField, token);
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertEvent(event, AuthnEventIds.RESELECT_FLOW);
+        final AuthenticationContext authCtx = prc.getSubcontext(AuthenticationContext.class);
+        Assert.assertEquals(authCtx.getSignaledFlowId(), "mockDecision4");
+        Assert.assertEquals(authCtx.getAuthenticatingAuthority(), authority.toB64UrlEncoded());
+        Assert.assertEquals(DiscoveryAuthenticatingAuthority
+                .parseB64UrlEncoded(authCtx.getAuthenticatingAuthority()).getValue(), "aa1");
+        final DiscoverySelectionContext selectionCtx = authCtx.getSubcontext(DiscoverySelectionContext.class);
+        Assert.assertEquals(selectionCtx.getFlow(), "mockDecision4");
+        Assert.assertEquals(selectionCtx.getAuthority(), token);
+        Assert.assertSame(selectionCtx.getAuthenticatingAuthority(), authority);
+        Assert.assertEquals(registry.counter(DiscoveryMetrics.DEFAULT_PREFIX + ".selection.mockDecision4.acr1")
+                .getCount(), 1);
+        service.destroy();
+    }
+
+    /**
+     * Runs the action with compact authority token issued before the configuration
+     * was reloaded, resolving it by the populated view.
+     */
+    @Test
+    public void testCompactTokenAfterReload() throws Exception {
+        final Path file = Files.createTempFile("discovery", ".json");
+        try {
+            Files.writeString(file, "{\"default\":{\"mockDecision4\":[{\"acr\":\"acr1\",\"aaValue\":\"aa1\"}]}}");
+            final DiscoveryConfigurationService service = new DiscoveryConfigurationService();
+            service.setId("test");
+            service.setCompactTokens(true);
+            service.setAuthoritiesResource(file.toString());
+            service.initialize();
+            final DiscoveryFlows flows = service.getSnapshot().getConfiguration().getFlows(null);
+            final Pair<String, String> item = flows.getItems("mockDecision4").get(0);
+            final DiscoveryAuthenticatingAuthority authority = flows.getAuthorityMap().get("mockDecision4").get(0);
+            final AuthenticationContext authCtx = prc.getSubcontext(AuthenticationContext.class);
+            authCtx.getSubcontext(AuthenticationDiscoveryContext.class).getFlowsWithAuthorities().add(item);
+            authCtx.ensureSubcontext(DiscoveryViewContext.class)
+                    .setView(new DiscoveryView(DiscoveryItems.of(List.of(item)), List.of(new DiscoveryViewItem(
+                            "mockDecision4", item.getSecond(), authority, authnFlowField, authnAuthorityField))));
+
+            Files.writeString(file, "{\"default\":{\"mockDecision4\":[{\"acr\":\"acr2\",\"aaValue\":\"aa2\"},"
+                    + "{\"acr\":\"acr1\",\"aaValue\":\"aa1\"}]}}");
+            Assert.assertTrue(service.reloadIfModified());
+            Assert.assertNull(service.resolveAuthority(item.getSecond()));
+
+            action.setConfigurationService(service);
+            action.setStoreSelection(true);
+            action.initialize();
+            final MockHttpServletRequest request = (MockHttpServletRequest) action.getHttpServletRequest();
+            request.addParameter(authnFlowField, "mockDecision4");
+            request.addParameter(authnAuthorityField, item.getSecond());
+            ActionTestingSupport.assertEvent(action.execute(src), AuthnEventIds.RESELECT_FLOW);
+            Assert.assertEquals(authCtx.getAuthenticatingAuthority(), authority.toB64UrlEncoded());
+            Assert.assertEquals(DiscoveryAuthenticatingAuthority
+                    .parseB64UrlEncoded(authCtx.getAuthenticatingAuthority()).getValue(), "aa1");
+            Assert.assertSame(authCtx.getSubcontext(DiscoverySelectionContext.class).getAuthenticatingAuthority(),
+                    authority);
+            // The selection is remembered independent of the configuration version
+            Assert.assertEquals(request.getSession().getAttribute(SessionSelectionStore.AUTHORITY_ATTRIBUTE),
+                    authority.toB64UrlEncoded());
+            service.destroy();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
 }
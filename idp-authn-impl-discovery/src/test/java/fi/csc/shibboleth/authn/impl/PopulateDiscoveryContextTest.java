@@ -23,6 +23,9 @@
 
 package fi.csc.shibboleth.authn.impl;
 
+import java.time.Duration;
+import java.util.List;
+
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.webflow.execution.Event;
@@ -33,12 +36,18 @@ import org.testng.annotations.Test;
 
 import fi.csc.shibboleth.authn.AuthenticationDiscoveryContext;
 import fi.csc.shibboleth.authn.conf.DiscoveryAuthenticatingAuthority;
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationService;
+import fi.csc.shibboleth.authn.conf.DiscoveryItemCache;
+import fi.csc.shibboleth.authn.conf.DiscoveryPopularity;
 import jakarta.servlet.http.HttpServletRequest;
 import net.shibboleth.idp.authn.AuthenticationFlowDescriptor;
+import net.shibboleth.idp.authn.AuthnEventIds;
 import net.shibboleth.idp.authn.context.AuthenticationContext;
 import net.shibboleth.idp.profile.context.navigate.WebflowRequestContextProfileRequestContextLookup;
 import net.shibboleth.idp.profile.testing.ActionTestingSupport;
 import net.shibboleth.idp.profile.testing.RequestContextBuilder;
+import net.shibboleth.profile.context.RelyingPartyContext;
+import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.primitive.NonnullSupplier;
 
@@ -133,6 +142,18 @@ public class PopulateDiscoveryContextTest {
         Assert.assertNull(discoContext.getFlowsWithAuthorities().get(2).getSecond());
     }
 
+    @Test
+    public void testPageSize() throws Exception {
+        action.setPageSize(2);
+        action.initialize();
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        final DiscoveryViewContext viewContext = authenticationContext.getSubcontext(DiscoveryViewContext.class);
+        Assert.assertEquals(viewContext.getPageSize(), 2);
+        Assert.assertEquals(viewContext.getItems().size(), 3);
+        Assert.assertEquals(viewContext.getPageItems().size(), 2);
+        Assert.assertTrue(viewContext.hasMoreItems());
+    }
+
     @Test
     public void testDiscoveryProperties() throws Exception {
         action.setAuthorityProperties("./src/test/resources/discovery.properties");
@@ -180,6 +201,173 @@ public class PopulateDiscoveryContextTest {
         Assert.assertNull(discoContext.getFlowsWithAuthorities().get(1).getSecond());
         Assert.assertEquals(discoContext.getFlowsWithAuthorities().get(2).getFirst(), "authn/test3");
         Assert.assertNull(discoContext.getFlowsWithAuthorities().get(2).getSecond());
+
+        final DiscoveryViewContext viewContext = authenticationContext.getSubcontext(DiscoveryViewContext.class);
+        Assert.assertNotNull(viewContext);
+        Assert.assertEquals(viewContext.getItems().size(), 3);
+        Assert.assertEquals(viewContext.getItems().get(0).getAuthority(),
+                discoContext.getFlowsWithAuthorities().get(0).getSecond());
+        Assert.assertEquals(viewContext.getItems().get(0).getAuthenticatingAuthority().getAcr(),
+                "https://dev-user-auth.csc.fi/LoginHakaTest");
+        Assert.assertNull(viewContext.getItems().get(1).getAuthenticatingAuthority());
+        Assert.assertEquals(viewContext.getItems().get(1).getQueryFragment(),
+                "&j_authnflow=authn%2Ftest2&_eventId_proceed=_eventId_proceed");
+    }
+
+    @Test
+    public void testDiscoveryProfile() throws Exception {
+        action.setAuthorities("{\"default\": {\"authn/test1\": []}, \"profile:academic\": {\"authn/test2\": [{"
+                + "\"acr\": \"acr1\", \"aaType\": \"entity\", \"aaValue\": \"https://idp.example.org\"}]}}");
+        action.setDiscoveryProfileLookupStrategy(prc -> "academic");
+        action.initialize();
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        final AuthenticationDiscoveryContext discoContext = authenticationContext
+                .getSubcontext(AuthenticationDiscoveryContext.class);
+        Assert.assertEquals(discoContext.getFlowsWithAuthorities().size(), 3);
+        Assert.assertNull(discoContext.getFlowsWithAuthorities().get(0).getSecond());
+        Assert.assertEquals(DiscoveryAuthenticatingAuthority
+                .parseB64UrlEncoded(discoContext.getFlowsWithAuthorities().get(1).getSecond()).getAcr(), "acr1");
+    }
+
+    @Test
+    public void testPopularity() throws Exception {
+        final DiscoveryPopularity popularity = new DiscoveryPopularity();
+        popularity.setId("test");
+        popularity.setEnabled(true);
+        popularity.setUpdateInterval(Duration.ZERO);
+        popularity.initialize();
+        final DiscoveryItemCache cache = new DiscoveryItemCache();
+        cache.setId("test");
+        cache.initialize();
+        action.setPopularity(popularity);
+        action.setItemCache(cache);
+        action.initialize();
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        Assert.assertEquals(authenticationContext.getSubcontext(AuthenticationDiscoveryContext.class)
+                .getFlowsWithAuthorities().get(0).getFirst(), "authn/test1");
+
+        final RelyingPartyContext rpCtx = prc.getSubcontext(RelyingPartyContext.class);
+        popularity.selected(rpCtx.getRelyingPartyId(), "authn/test3", null);
+        popularity.update();
+        initializeMembers();
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        final AuthenticationDiscoveryContext discoContext = authenticationContext
+                .getSubcontext(AuthenticationDiscoveryContext.class);
+        Assert.assertEquals(discoContext.getFlowsWithAuthorities().get(0).getFirst(), "authn/test3");
+        Assert.assertEquals(discoContext.getFlowsWithAuthorities().get(1).getFirst(), "authn/test1");
+        Assert.assertEquals(authenticationContext.getSubcontext(DiscoveryViewContext.class).getItems().get(0)
+                .getFlow(), "authn/test3");
+        Assert.assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void testItemCache() throws Exception {
+        final DiscoveryItemCache cache = new DiscoveryItemCache();
+        cache.setId("test");
+        cache.initialize();
+        action.setAuthorityProperties("./src/test/resources/discovery.properties");
+        action.setItemCache(cache);
+        action.initialize();
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        final AuthenticationDiscoveryContext first = authenticationContext
+                .getSubcontext(AuthenticationDiscoveryContext.class);
+
+        initializeMembers();
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        final AuthenticationDiscoveryContext second = authenticationContext
+                .getSubcontext(AuthenticationDiscoveryContext.class);
+        Assert.assertNotSame(second, first);
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertEquals(second.getFlowsWithAuthorities(), first.getFlowsWithAuthorities());
+        Assert.assertTrue(second.isSelectable("authn/test1", "authority1"));
+
+        // Modifying one context must not leak into the shared items
+        second.getFlowsWithAuthorities().remove(0);
+        second.getFlowsWithAuthorities().add(new Pair<>("authn/test4", null));
+        Assert.assertEquals(first.getFlowsWithAuthorities().size(), 5);
+        Assert.assertTrue(first.isSelectable("authn/test1", "authority1"));
+        Assert.assertFalse(first.isSelectable("authn/test4", null));
+        Assert.assertFalse(second.isSelectable("authn/test1", "authority1"));
+        Assert.assertTrue(second.isSelectable("authn/test4", null));
+    }
+
+    @Test
+    public void testPriorSelection() throws Exception {
+        final MockHttpServletRequest request = (MockHttpServletRequest) action.getHttpServletRequest();
+        request.getSession().setAttribute(SessionSelectionStore.FLOW_ATTRIBUTE, "authn/test2");
+        action.initialize();
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertEvent(event, AuthnEventIds.RESELECT_FLOW);
+        Assert.assertEquals(authenticationContext.getSignaledFlowId(), "authn/test2");
+    }
+
+    @Test
+    public void testPriorCompactSelection() throws Exception {
+        final DiscoveryConfigurationService service = new DiscoveryConfigurationService();
+        service.setId("test");
+        service.setCompactTokens(true);
+        service.setAuthorities(configuration);
+        service.initialize();
+        final DiscoveryAuthenticatingAuthority authority = service.getSnapshot().getConfiguration().getFlows(null)
+                .getAuthorityMap().get("authn/test1").get(0);
+        final MockHttpServletRequest request = (MockHttpServletRequest) action.getHttpServletRequest();
+        request.getSession().setAttribute(SessionSelectionStore.FLOW_ATTRIBUTE, "authn/test1");
+        request.getSession().setAttribute(SessionSelectionStore.AUTHORITY_ATTRIBUTE, authority.toB64UrlEncoded());
+        action.setConfigurationService(service);
+        action.initialize();
+        ActionTestingSupport.assertEvent(action.execute(src), AuthnEventIds.RESELECT_FLOW);
+        Assert.assertEquals(authenticationContext.getSignaledFlowId(), "authn/test1");
+        Assert.assertEquals(authenticationContext.getAuthenticatingAuthority(), authority.toB64UrlEncoded());
+        final DiscoverySelectionContext selectionCtx = authenticationContext
+                .getSubcontext(DiscoverySelectionContext.class);
+        Assert.assertEquals(selectionCtx.getAuthority(), authenticationContext
+                .getSubcontext(AuthenticationDiscoveryContext.class).getFlowsWithAuthorities().get(0).getSecond());
+        Assert.assertNotEquals(selectionCtx.getAuthority(), authority.toB64UrlEncoded());
+        service.destroy();
+    }
+
+    @Test
+    public void testRecentSelections() throws Exception {
+        final MockHttpServletRequest request = (MockHttpServletRequest) action.getHttpServletRequest();
+        final SessionSelectionStore store = new SessionSelectionStore();
+        store.setMaxSelections(3);
+        action.setSelectionStore(store);
+        request.getSession().setAttribute(SessionSelectionStore.SELECTIONS_ATTRIBUTE,
+                DiscoverySelections
+                        .encode(List.of(new Pair<>("authn/removed", null), new Pair<>("authn/test3", null))));
+        action.initialize();
+        ActionTestingSupport.assertEvent(action.execute(src), AuthnEventIds.RESELECT_FLOW);
+        Assert.assertEquals(authenticationContext.getSignaledFlowId(), "authn/test3");
+    }
+
+    @Test
+    public void testPinRecentSelections() throws Exception {
+        final MockHttpServletRequest request = (MockHttpServletRequest) action.getHttpServletRequest();
+        final SessionSelectionStore store = new SessionSelectionStore();
+        store.setMaxSelections(3);
+        action.setSelectionStore(store);
+        request.getSession().setAttribute(SessionSelectionStore.SELECTIONS_ATTRIBUTE,
+                DiscoverySelections.encode(List.of(new Pair<>("authn/test3", null), new Pair<>("authn/removed", null),
+                        new Pair<>("authn/test1", null))));
+        action.setPinRecentSelections(true);
+        action.initialize();
+        ActionTestingSupport.assertProceedEvent(action.execute(src));
+        Assert.assertNull(authenticationContext.getSignaledFlowId());
+        final DiscoveryViewContext viewContext = authenticationContext.getSubcontext(DiscoveryViewContext.class);
+        Assert.assertEquals(viewContext.getRecentItems().size(), 2);
+        Assert.assertSame(viewContext.getRecentItems().get(0), viewContext.getItems().get(2));
+        Assert.assertSame(viewContext.getRecentItems().get(1), viewContext.getItems().get(0));
+    }
+
+    @Test
+    public void testUnavailablePriorSelection() throws Exception {
+        final MockHttpServletRequest request = (MockHttpServletRequest) action.getHttpServletRequest();
+        request.getSession().setAttribute(SessionSelectionStore.FLOW_ATTRIBUTE, "authn/test2");
+        request.getSession().setAttribute(SessionSelectionStore.AUTHORITY_ATTRIBUTE, "removed");
+        action.initialize();
+        final Event event = action.execute(src);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertNull(authenticationContext.getSignaledFlowId());
     }
 
 }
@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import fi.csc.shibboleth.authn.conf.DiscoveryConfigurationService;
+import net.shibboleth.idp.authn.context.AuthenticationContext;
+import net.shibboleth.idp.authn.context.MultiFactorAuthenticationContext;
+import net.shibboleth.idp.authn.context.RequestedPrincipalContext;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/**
+ * Unit tests for {@link SelectFirstFactorFunction}.
+ */
+public class SelectFirstFactorFunctionTest {
+
+    private SelectFirstFactorFunction function;
+
+    private DiscoveryConfigurationService service;
+
+    private ProfileRequestContext prc;
+
+    private AuthenticationContext authnCtx;
+
+    private MultiFactorAuthenticationContext mfaCtx;
+
+    /** Principal type used in place of SAML and OIDC acr principals. */
+    public static class TestPrincipal implements Principal {
+
+        private final String name;
+
+        public TestPrincipal(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+
+    /** Other principal type. */
+    public static class OtherPrincipal extends TestPrincipal {
+
+        public OtherPrincipal(String name) {
+            super(name);
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        service = new DiscoveryConfigurationService();
+        service.setId("test");
+        service.setAuthorities("{\"default\":{\"authn/MFA\":[{\"acr\":\"acr1\",\"flow\":\"authn/SAML\"},"
+                + "{\"acr\":\"acr2\"},{\"acr\":\"acr3\",\"hidden\":true}]},"
+                + "\"rp2\":{\"authn/MFA\":[{\"acr\":\"acr2\"}]}}");
+        service.initialize();
+        function = new SelectFirstFactorFunction();
+        function.setConfigurationService(service);
+        function.setRelyingPartyIdLookupStrategy(prc -> "rp1");
+        function.setDefaultPrincipalType(TestPrincipal.class.getName());
+        function.setPrincipalTypes(Map.of("oidc", OtherPrincipal.class.getName(), "missing", "not.Available"));
+        function.setAcrFlows(Map.of("acr2", "authn/OIDC"));
+        prc = new ProfileRequestContext();
+        authnCtx = prc.ensureSubcontext(AuthenticationContext.class);
+        mfaCtx = authnCtx.ensureSubcontext(MultiFactorAuthenticationContext.class);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        service.destroy();
+    }
+
+    private void request(String... acrs) {
+        final RequestedPrincipalContext requested = authnCtx.ensureSubcontext(RequestedPrincipalContext.class);
+        requested.setRequestedPrincipals(List.of(acrs).stream().map(acr -> (Principal) new TestPrincipal(acr))
+                .toList());
+    }
+
+    private String select(String acr) throws Exception {
+        return service.getSnapshot().getConfiguration().getByAcr(null, acr).getSecond().toB64UrlEncoded();
+    }
+
+    @Test
+    public void testDiscoverySelection() throws Exception {
+        function.initialize();
+        authnCtx.setAuthenticatingAuthority(select("acr2"));
+        Assert.assertEquals(function.apply(prc), "authn/OIDC");
+        final RequestedPrincipalContext requested = authnCtx.getSubcontext(RequestedPrincipalContext.class);
+        Assert.assertEquals(requested.getOperator(), "exact");
+        Assert.assertEquals(requested.getRequestedPrincipals().size(), 1);
+        Assert.assertEquals(requested.getRequestedPrincipals().get(0).getClass(), TestPrincipal.class);
+        Assert.assertEquals(requested.getRequestedPrincipals().get(0).getName(), "acr2");
+        Assert.assertEquals(authnCtx.getSubcontext(DiscoverySelectionContext.class).getAuthenticatingAuthority()
+                .getAcr(), "acr2");
+        Assert.assertNull(mfaCtx.getEvent());
+    }
+
+    @Test
+    public void testDiscoverySelectionByProfile() throws Exception {
+        function.initialize();
+        prc.setProfileId("oidc");
+        authnCtx.setAuthenticatingAuthority(select("acr1"));
+        Assert.assertEquals(function.apply(prc), "authn/SAML");
+        Assert.assertEquals(authnCtx.getSubcontext(RequestedPrincipalContext.class).getRequestedPrincipals().get(0)
+                .getClass(), OtherPrincipal.class);
+        prc.setProfileId("missing");
+        Assert.assertEquals(function.apply(prc), "authn/SAML");
+        Assert.assertEquals(authnCtx.getSubcontext(RequestedPrincipalContext.class).getRequestedPrincipals().get(0)
+                .getClass(), TestPrincipal.class);
+    }
+
+    @Test
+    public void testResolvedSelection() throws Exception {
+        function.initialize();
+        authnCtx.setAuthenticatingAuthority("resolved");
+        authnCtx.ensureSubcontext(DiscoverySelectionContext.class).setAuthenticatingAuthority(
+                service.getSnapshot().getConfiguration().getByAcr(null, "acr1").getSecond());
+        Assert.assertEquals(function.apply(prc), "authn/SAML");
+    }
+
+    @Test
+    public void testInvalidSelection() throws Exception {
+        function.initialize();
+        authnCtx.setAuthenticatingAuthority("invalid");
+        Assert.assertNull(function.apply(prc));
+        Assert.assertEquals(mfaCtx.getEvent(), SelectFirstFactorFunction.DEFAULT_UNSUPPORTED_EVENT);
+    }
+
+    @Test
+    public void testRequestedAcr() throws Exception {
+        function.initialize();
+        request("unknown", "acr3");
+        Assert.assertNull(function.apply(prc));
+        Assert.assertEquals(mfaCtx.getEvent(), SelectFirstFactorFunction.DEFAULT_UNSUPPORTED_EVENT);
+        mfaCtx.setEvent(null);
+        function = new SelectFirstFactorFunction();
+        function.setConfigurationService(service);
+        function.setRelyingPartyIdLookupStrategy(prc -> "rp1");
+        function.setDefaultPrincipalType(TestPrincipal.class.getName());
+        function.setDefaultFlow("authn/Default");
+        function.initialize();
+        Assert.assertEquals(function.apply(prc), "authn/Default");
+        Assert.assertEquals(authnCtx.getSubcontext(DiscoverySelectionContext.class).getAuthenticatingAuthority()
+                .getAcr(), "acr3");
+        Assert.assertNull(mfaCtx.getEvent());
+    }
+
+    @Test
+    public void testRequestedAcrOfRelyingParty() throws Exception {
+        function.setRelyingPartyIdLookupStrategy(prc -> "rp2");
+        function.initialize();
+        request("acr1");
+        Assert.assertNull(function.apply(prc));
+        request("acr1", "acr2");
+        Assert.assertEquals(function.apply(prc), "authn/OIDC");
+    }
+
+    @Test
+    public void testNoRequest() throws Exception {
+        function.initialize();
+        Assert.assertNull(function.apply(prc));
+        Assert.assertEquals(mfaCtx.getEvent(), SelectFirstFactorFunction.DEFAULT_UNSUPPORTED_EVENT);
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testMissingDefaultPrincipalType() throws Exception {
+        function.setDefaultPrincipalType("not.Available");
+        function.initialize();
+    }
+}
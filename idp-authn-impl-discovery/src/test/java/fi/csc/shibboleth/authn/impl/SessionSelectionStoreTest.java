@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.collection.Pair;
+
+/**
+ * Unit tests for {@link SessionSelectionStore}.
+ */
+public class SessionSelectionStoreTest {
+
+    private MockHttpServletRequest request;
+
+    private SessionSelectionStore store;
+
+    @BeforeMethod
+    public void setUp() {
+        request = new MockHttpServletRequest();
+        store = new SessionSelectionStore();
+    }
+
+    @Test
+    public void testSelection() {
+        Assert.assertNull(store.load(request));
+        store.save(request, null, "authn/MFA", "authority");
+        Assert.assertEquals(store.load(request), new Pair<>("authn/MFA", "authority"));
+        Assert.assertEquals(store.loadRecent(request), List.of(new Pair<>("authn/MFA", "authority")));
+        Assert.assertNull(request.getSession().getAttribute(SessionSelectionStore.SELECTIONS_ATTRIBUTE));
+    }
+
+    @Test
+    public void testRecentSelections() {
+        store.setMaxSelections(2);
+        Assert.assertNull(store.load(request));
+        Assert.assertEquals(store.loadRecent(request), Collections.emptyList());
+        store.save(request, null, "authn/MFA", "authority");
+        store.save(request, null, "authn/Password", null);
+        Assert.assertEquals(store.loadRecent(request),
+                List.of(new Pair<>("authn/Password", null), new Pair<>("authn/MFA", "authority")));
+        Assert.assertEquals(store.load(request), new Pair<>("authn/Password", null));
+        Assert.assertEquals(Collections.list(request.getSession().getAttributeNames()),
+                List.of(SessionSelectionStore.SELECTIONS_ATTRIBUTE));
+    }
+}
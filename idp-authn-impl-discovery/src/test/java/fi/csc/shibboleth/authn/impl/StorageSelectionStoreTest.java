@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ * Copyright (c) 2026 CSC - IT Center for Science, http://www.csc.fi
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package fi.csc.shibboleth.authn.impl;
+
+import java.util.List;
+
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jakarta.servlet.http.Cookie;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/**
+ * Unit tests for {@link StorageSelectionStore}.
+ */
+public class StorageSelectionStoreTest {
+
+    private MemoryStorageService storageService;
+
+    private StorageSelectionStore store;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        store = newStore();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        storageService.destroy();
+    }
+
+    private StorageSelectionStore newStore() throws ComponentInitializationException {
+        final StorageSelectionStore selectionStore = new StorageSelectionStore();
+        selectionStore.setStorageService(storageService);
+        selectionStore.initialize();
+        return selectionStore;
+    }
+
+    private Cookie save(final MockHttpServletRequest request, final String flow, final String authority) {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        store.save(request, response, flow, authority);
+        return response.getCookie(StorageSelectionStore.DEFAULT_COOKIE_NAME);
+    }
+
+    private MockHttpServletRequest request(final Cookie cookie) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        return request;
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoStorageService() throws Exception {
+        new StorageSelectionStore().initialize();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Cookie cookie = save(new MockHttpServletRequest(), "authn/MFA", "authority");
+        Assert.assertNotNull(cookie);
+        Assert.assertTrue(cookie.isHttpOnly());
+        Assert.assertEquals(store.load(request(cookie)), new Pair<>("authn/MFA", "authority"));
+        Assert.assertNull(store.load(new MockHttpServletRequest()));
+        Assert.assertNull(store.load(request(new Cookie(StorageSelectionStore.DEFAULT_COOKIE_NAME, "unknown"))));
+    }
+
+    @Test
+    public void testOtherNode() throws Exception {
+        final Cookie cookie = save(new MockHttpServletRequest(), "authn/Password", null);
+        Assert.assertEquals(newStore().load(request(cookie)), new Pair<>("authn/Password", null));
+    }
+
+    @Test
+    public void testUpdateKeepsIdentifier() throws Exception {
+        final Cookie cookie = save(new MockHttpServletRequest(), "authn/MFA", "authority");
+        final Cookie updated = save(request(cookie), "authn/Password", null);
+        Assert.assertEquals(updated.getValue(), cookie.getValue());
+        Assert.assertEquals(newStore().load(request(cookie)), new Pair<>("authn/Password", null));
+    }
+
+    @Test
+    public void testNearCache() throws Exception {
+        final Cookie cookie = save(new MockHttpServletRequest(), "authn/MFA", "authority");
+        final StorageSelectionStore otherNode = newStore();
+        Assert.assertNotNull(otherNode.load(request(cookie)));
+        storageService.delete(StorageSelectionStore.STORAGE_CONTEXT, cookie.getValue());
+        // Served from the near caches without reading the storage service
+        Assert.assertEquals(store.load(request(cookie)), new Pair<>("authn/MFA", "authority"));
+        Assert.assertEquals(otherNode.load(request(cookie)), new Pair<>("authn/MFA", "authority"));
+        Assert.assertNull(newStore().load(request(cookie)));
+    }
+
+    @Test
+    public void testRecentSelections() throws Exception {
+        store = new StorageSelectionStore();
+        store.setStorageService(storageService);
+        store.setMaxSelections(2);
+        store.initialize();
+        final Cookie cookie = save(new MockHttpServletRequest(), "authn/MFA", "authority");
+        save(request(cookie), "authn/Password", null);
+        Assert.assertEquals(store.loadRecent(request(cookie)),
+                List.of(new Pair<>("authn/Password", null), new Pair<>("authn/MFA", "authority")));
+        save(request(cookie), "authn/SAML", "idp");
+        Assert.assertEquals(newStore().loadRecent(request(cookie)),
+                List.of(new Pair<>("authn/SAML", "idp"), new Pair<>("authn/Password", null)));
+        Assert.assertEquals(newStore().load(request(cookie)), new Pair<>("authn/SAML", "idp"));
+    }
+}